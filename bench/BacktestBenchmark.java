@@ -0,0 +1,61 @@
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * Replays synthetic hourly history through many rebalancing thresholds in parallel.
+ * Usage: java -cp out BacktestBenchmark [symbols] [years] [strategies]
+ */
+public class BacktestBenchmark {
+    private static final long HOUR_MILLIS = 60L * 60 * 1000;
+    
+    public static void main(String[] args) throws Exception {
+        int symbolCount = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+        int years = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        int strategyCount = args.length > 2 ? Integer.parseInt(args[2]) : 16;
+        int hours = years * 252 * 7;
+        
+        Path directory = Files.createTempDirectory("backtest-bench");
+        PriceHistoryStore store = new PriceHistoryStore(directory.toString());
+        String[] symbols = new String[symbolCount];
+        SplittableRandom random = new SplittableRandom(42);
+        
+        long start = System.nanoTime();
+        for (int s = 0; s < symbolCount; s++) {
+            symbols[s] = "SYM" + s;
+            double price = 100;
+            for (int h = 0; h < hours; h++) {
+                price *= Math.exp(0.006 * (random.nextDouble() * 2 - 1) + 0.00002);
+                store.record(symbols[s], h * HOUR_MILLIS, price);
+            }
+        }
+        System.out.printf("Generated %d ticks in %.1f ms%n", (long) symbolCount * hours, (System.nanoTime() - start) / 1e6);
+        
+        double[] weights = new double[symbolCount];
+        for (int s = 0; s < symbolCount; s++) {
+            weights[s] = 1.0 / symbolCount;
+        }
+        List<TradingStrategy> strategies = new ArrayList<>();
+        for (int k = 0; k < strategyCount; k++) {
+            strategies.add(new RebalancingStrategy(weights, 0.001 * (k + 1), HOUR_MILLIS));
+        }
+        
+        BacktestEngine engine = BacktestEngine.overHistory(store, symbols, 0, Long.MAX_VALUE, 1_000_000, 24 * HOUR_MILLIS);
+        engine.run(strategies.get(0)); // Warm up
+        
+        start = System.nanoTime();
+        List<BacktestResult> results = engine.runAll(strategies);
+        double elapsedMillis = (System.nanoTime() - start) / 1e6;
+        
+        long ticks = 0;
+        for (BacktestResult result : results) {
+            System.out.println(result);
+            ticks += result.getTicks();
+        }
+        System.out.printf("%d runs, %d ticks in %.1f ms (%.0f ticks/sec)%n",
+                results.size(), ticks, elapsedMillis, ticks * 1000.0 / elapsedMillis);
+        store.close();
+    }
+}
@@ -0,0 +1,232 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Stream;
+
+/**
+ * Writes synthetic portfolios for scale testing. Symbol popularity follows a Zipf distribution,
+ * so a few symbols appear in most portfolios and the long tail is held rarely; prices are
+ * log-normal per symbol and every holding of a symbol shares its current price.
+ * Usage: java -cp out DatasetGenerator csv|store output [portfolios] [holdings per portfolio] [symbols] [skew] [seed]
+ * where csv writes a FileHandler file and store writes a PortfolioStore directory.
+ */
+public class DatasetGenerator {
+    private final Random random;
+    private final String[] symbols;
+    private final double[] prices;
+    private final Map<String, Integer> indexes = new HashMap<>();
+    private final ZipfSampler popularity;
+    
+    /**
+     * @param symbolCount Size of the symbol universe
+     * @param skew Zipf exponent; 0 makes every symbol equally popular, 1 and above concentrates on the head
+     */
+    public DatasetGenerator(int symbolCount, double skew, long seed) {
+        if (symbolCount <= 0 || skew < 0) {
+            throw new IllegalArgumentException("Symbol count must be positive and skew non-negative");
+        }
+        this.random = new Random(seed);
+        this.symbols = new String[symbolCount];
+        this.prices = new double[symbolCount];
+        for (int i = 0; i < symbolCount; i++) {
+            symbols[i] = symbolName(i);
+            prices[i] = round(Math.min(5000, Math.max(1, Math.exp(Math.log(60) + random.nextGaussian()))));
+            indexes.put(symbols[i], i);
+        }
+        this.popularity = new ZipfSampler(symbolCount, skew);
+    }
+    
+    /**
+     * Takes the symbol universe from existing portfolios, ranked by how many portfolios hold each
+     * symbol, with each symbol's current price as its starting price
+     */
+    public DatasetGenerator(List<Portfolio> portfolios, double skew, long seed) {
+        Map<String, Integer> holders = new HashMap<>();
+        Map<String, Double> currentPrices = new HashMap<>();
+        for (Portfolio portfolio : portfolios) {
+            for (Stock stock : portfolio.getStocks()) {
+                holders.merge(stock.getSymbol(), 1, Integer::sum);
+                currentPrices.put(stock.getSymbol(), stock.getCurrentPrice());
+            }
+        }
+        if (holders.isEmpty() || skew < 0) {
+            throw new IllegalArgumentException("Portfolios must hold at least one stock and skew must be non-negative");
+        }
+        this.random = new Random(seed);
+        this.symbols = holders.keySet().stream()
+                .sorted(Comparator.comparing((String symbol) -> -holders.get(symbol)).thenComparing(symbol -> symbol))
+                .toArray(String[]::new);
+        this.prices = new double[symbols.length];
+        for (int i = 0; i < symbols.length; i++) {
+            prices[i] = currentPrices.get(symbols[i]);
+            indexes.put(symbols[i], i);
+        }
+        this.popularity = new ZipfSampler(symbols.length, skew);
+    }
+    
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2 || !(args[0].equals("csv") || args[0].equals("store"))) {
+            System.err.println("Usage: DatasetGenerator csv|store output [portfolios] [holdings per portfolio] [symbols] [skew] [seed]");
+            System.exit(2);
+        }
+        int portfolioCount = args.length > 2 ? Integer.parseInt(args[2]) : 1000;
+        int holdings = args.length > 3 ? Integer.parseInt(args[3]) : 50;
+        int symbolCount = args.length > 4 ? Integer.parseInt(args[4]) : 5000;
+        double skew = args.length > 5 ? Double.parseDouble(args[5]) : 1.0;
+        long seed = args.length > 6 ? Long.parseLong(args[6]) : 42;
+        
+        long start = System.nanoTime();
+        DatasetGenerator generator = new DatasetGenerator(symbolCount, skew, seed);
+        List<Portfolio> portfolios = generator.generate(portfolioCount, holdings);
+        Path output = Paths.get(args[1]);
+        if (args[0].equals("csv")) {
+            new FileHandler(output.toString()).savePortfolios(portfolios);
+        } else {
+            new PortfolioStore(output.toString()).savePortfolios(portfolios);
+        }
+        System.out.printf("Wrote %,d portfolios with %,d holdings over %,d symbols to %s (%,d bytes) in %.1f ms%n",
+                portfolios.size(), FileHandler.countHoldings(portfolios), symbolCount, output, sizeOf(output),
+                (System.nanoTime() - start) / 1e6);
+        
+        // How concentrated the holdings are, as a check on the skew
+        int[] holders = new int[symbolCount];
+        for (Portfolio portfolio : portfolios) {
+            for (Stock stock : portfolio.getStocks()) {
+                holders[generator.indexOf(stock.getSymbol())]++;
+            }
+        }
+        int head = Math.max(1, symbolCount / 100);
+        long headHoldings = 0;
+        for (int i = 0; i < head; i++) {
+            headHoldings += holders[i];
+        }
+        System.out.printf("Most popular symbol %s is held by %,d portfolios; the top %d symbols hold %.1f%% of all holdings%n",
+                generator.getSymbol(0), holders[0], head, 100.0 * headHoldings / Math.max(1, FileHandler.countHoldings(portfolios)));
+    }
+    
+    /**
+     * Creates portfolios named "Portfolio 1".."Portfolio n", each holding distinct symbols
+     * @param holdingsPerPortfolio Holdings per portfolio, capped at the symbol universe
+     */
+    public List<Portfolio> generate(int portfolioCount, int holdingsPerPortfolio) {
+        int holdings = Math.min(holdingsPerPortfolio, symbols.length);
+        List<Portfolio> portfolios = new ArrayList<>(portfolioCount);
+        BitSet held = new BitSet(symbols.length);
+        for (int p = 1; p <= portfolioCount; p++) {
+            Portfolio portfolio = new Portfolio("Portfolio " + p, "Synthetic portfolio " + p + " of " + portfolioCount);
+            held.clear();
+            int attempts = 0;
+            while (portfolio.getStocks().size() < holdings) {
+                // Once the popular symbols are exhausted, fill the remainder uniformly
+                int symbol = attempts++ < 10 * holdings ? nextSymbol() : random.nextInt(symbols.length);
+                if (!held.get(symbol)) {
+                    held.set(symbol);
+                    portfolio.addStock(newHolding(symbol));
+                }
+            }
+            portfolios.add(portfolio);
+        }
+        return portfolios;
+    }
+    
+    /**
+     * Draws a symbol index; index 0 is the most popular symbol
+     */
+    public int nextSymbol() {
+        return popularity.next(random);
+    }
+    
+    /**
+     * A new holding of the symbol, bought within roughly 30% of its current price
+     */
+    public Stock newHolding(int symbol) {
+        int quantity = (int) Math.min(100_000, 1 + Math.exp(3 + 1.2 * random.nextGaussian()));
+        double purchasePrice = round(Math.max(0.01, prices[symbol] * Math.exp(0.3 * random.nextGaussian())));
+        Stock stock = new Stock(symbols[symbol], "Company " + symbols[symbol], quantity, purchasePrice);
+        stock.setCurrentPrice(prices[symbol]);
+        return stock;
+    }
+    
+    /**
+     * Moves the symbol's current price by a random step of about the given relative size
+     * @return The new price
+     */
+    public double tick(int symbol, double volatility) {
+        prices[symbol] = round(Math.max(0.01, prices[symbol] * Math.exp(volatility * random.nextGaussian())));
+        return prices[symbol];
+    }
+    
+    public int getSymbolCount() { return symbols.length; }
+    public String getSymbol(int index) { return symbols[index]; }
+    public double getPrice(int index) { return prices[index]; }
+    
+    /**
+     * Index of a symbol in the universe, or -1
+     */
+    public int indexOf(String symbol) {
+        Integer index = indexes.get(symbol);
+        return index != null ? index : -1;
+    }
+    
+    /**
+     * Ticker for a symbol index in bijective base 26, starting from AAA so all tickers are 3+ letters
+     */
+    static String symbolName(int index) {
+        StringBuilder name = new StringBuilder();
+        for (int n = index + 703; n > 0; n = (n - 1) / 26) {
+            name.append((char) ('A' + (n - 1) % 26));
+        }
+        return name.reverse().toString();
+    }
+    
+    private static double round(double price) {
+        return Math.round(price * 100) / 100.0;
+    }
+    
+    private static long sizeOf(Path path) throws IOException {
+        if (!Files.isDirectory(path)) {
+            return Files.size(path);
+        }
+        try (Stream<Path> files = Files.list(path)) {
+            long total = 0;
+            for (Path file : (Iterable<Path>) files::iterator) {
+                total += Files.size(file);
+            }
+            return total;
+        }
+    }
+    
+    /**
+     * Samples ranks 0..n-1 with probability proportional to 1 / (rank + 1)^skew by binary search
+     * over the cumulative distribution
+     */
+    static class ZipfSampler {
+        private final double[] cumulative;
+        
+        ZipfSampler(int n, double skew) {
+            cumulative = new double[n];
+            double sum = 0;
+            for (int i = 0; i < n; i++) {
+                sum += 1 / Math.pow(i + 1, skew);
+                cumulative[i] = sum;
+            }
+            for (int i = 0; i < n; i++) {
+                cumulative[i] /= sum;
+            }
+        }
+        
+        int next(Random random) {
+            int index = Arrays.binarySearch(cumulative, random.nextDouble());
+            return Math.min(index >= 0 ? index : -index - 1, cumulative.length - 1);
+        }
+    }
+}
@@ -0,0 +1,113 @@
+import java.lang.management.ManagementFactory;
+import java.util.List;
+
+/**
+ * Measures how many ticks per second the MarketDataBus sustains from one producer to its
+ * consumers: a counting consumer, the holdings consumer over synthetic portfolios with the
+ * application's indexes listening, and optionally the price history. Symbols are drawn with
+ * Zipf skew and the ticks are precomputed, so the producer's time is the bus's own cost, and the
+ * bytes the producer thread allocates while publishing are reported.
+ * Usage: java -cp out MarketDataBusBenchmark [ticks] [portfolios] [holdings per portfolio] [symbols] [capacity]
+ * With -Dhistory=directory the ticks are also recorded in a PriceHistoryStore there.
+ */
+public class MarketDataBusBenchmark {
+    private static final int PRECOMPUTED_TICKS = 1 << 20;
+    
+    public static void main(String[] args) throws Exception {
+        long ticks = args.length > 0 ? Long.parseLong(args[0]) : 10_000_000;
+        int portfolioCount = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+        int holdings = args.length > 2 ? Integer.parseInt(args[2]) : 20;
+        int symbolCount = args.length > 3 ? Integer.parseInt(args[3]) : 5000;
+        int capacity = args.length > 4 ? Integer.parseInt(args[4]) : MarketDataBus.DEFAULT_CAPACITY;
+        
+        DatasetGenerator generator = new DatasetGenerator(symbolCount, 1.0, 42);
+        List<Portfolio> portfolios = generator.generate(portfolioCount, holdings);
+        ExposureIndex exposureIndex = new ExposureIndex(portfolios);
+        RankingIndex rankingIndex = new RankingIndex(portfolios);
+        new PortfolioAnalytics(portfolios, rankingIndex);
+        new AlertEngine(portfolios);
+        
+        MarketDataBus bus = new MarketDataBus(capacity);
+        int[] symbolIds = new int[PRECOMPUTED_TICKS];
+        double[] prices = new double[PRECOMPUTED_TICKS];
+        for (int i = 0; i < generator.getSymbolCount(); i++) {
+            bus.symbolId(generator.getSymbol(i));
+        }
+        for (int i = 0; i < PRECOMPUTED_TICKS; i++) {
+            int symbol = generator.nextSymbol();
+            symbolIds[i] = bus.symbolId(generator.getSymbol(symbol));
+            prices[i] = generator.tick(symbol, 0.001);
+        }
+        
+        CountingHandler counter = new CountingHandler();
+        HoldingsTickHandler holdingsHandler = new HoldingsTickHandler(bus, exposureIndex);
+        bus.addConsumer("bench-count", counter);
+        bus.addConsumer("bench-holdings", holdingsHandler);
+        PriceHistoryStore history = null;
+        String historyDirectory = System.getProperty("history");
+        if (historyDirectory != null) {
+            history = new PriceHistoryStore(historyDirectory);
+            bus.addConsumer("bench-history", new HistoryTickHandler(bus, history));
+        }
+        bus.start();
+        
+        // Warm up on a tenth of the ticks so the measured run sees compiled code
+        publish(bus, ticks / 10, symbolIds, prices);
+        bus.drain();
+        long warmupTicks = counter.count;
+        
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long producerId = Thread.currentThread().getId();
+        long allocatedBefore = threads.getThreadAllocatedBytes(producerId);
+        long start = System.nanoTime();
+        publish(bus, ticks, symbolIds, prices);
+        double publishSeconds = (System.nanoTime() - start) / 1e9;
+        bus.drain();
+        double seconds = (System.nanoTime() - start) / 1e9;
+        long allocated = threads.getThreadAllocatedBytes(producerId) - allocatedBefore;
+        
+        System.out.printf("%,d portfolios with %,d holdings over %,d symbols, ring of %,d ticks%n",
+                portfolios.size(), FileHandler.countHoldings(portfolios), symbolCount, bus.getCapacity());
+        System.out.printf("Published %,d ticks in %.2f s (%,.0f ticks/sec), all consumed after %.2f s (%,.0f ticks/sec)%n",
+                ticks, publishSeconds, ticks / publishSeconds, seconds, ticks / seconds);
+        System.out.printf("Producer allocated %,d bytes (%.3f per tick); waited for consumers %,d times%n",
+                allocated, (double) allocated / ticks, Metrics.counter("marketdata.backpressure").getCount());
+        for (MarketDataBus.Consumer consumer : bus.getConsumers()) {
+            System.out.printf("%-15s %,d ticks in %,d batches (avg %,.0f per batch)%n", consumer.getName(),
+                    consumer.getProcessedCount(), consumer.getBatchCount(),
+                    (double) consumer.getProcessedCount() / Math.max(1, consumer.getBatchCount()));
+        }
+        System.out.printf("Holdings consumer applied %,d symbol prices for %,d ticks; checksum %d%n",
+                holdingsHandler.getAppliedCount(), counter.count - warmupTicks, counter.checksum);
+        
+        bus.close();
+        if (history != null) {
+            history.close();
+        }
+    }
+    
+    private static void publish(MarketDataBus bus, long ticks, int[] symbolIds, double[] prices) {
+        for (long i = 0; i < ticks; i++) {
+            int index = (int) (i & (PRECOMPUTED_TICKS - 1));
+            bus.publish(symbolIds[index], prices[index], i);
+        }
+    }
+    
+    /**
+     * The cheapest possible consumer, to show the bus's own overhead
+     */
+    private static final class CountingHandler implements TickHandler {
+        long count;
+        long checksum;
+        
+        @Override
+        public void onTick(int symbolId, double price, long timestamp) {
+            count++;
+            checksum += symbolId;
+        }
+        
+        @Override
+        public void onEndOfBatch() {
+        }
+    }
+}
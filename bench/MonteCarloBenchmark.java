@@ -0,0 +1,62 @@
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Measures Monte Carlo throughput (paths/sec) at increasing worker counts.
+ * Usage: java -cp out MonteCarloBenchmark [holdings] [paths] [days]
+ */
+public class MonteCarloBenchmark {
+    public static void main(String[] args) {
+        int holdings = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+        int paths = args.length > 1 ? Integer.parseInt(args[1]) : 200_000;
+        int days = args.length > 2 ? Integer.parseInt(args[2]) : 21;
+        long seed = 42;
+        
+        Portfolio portfolio = new Portfolio("Benchmark", "Synthetic portfolio");
+        for (int i = 0; i < holdings; i++) {
+            Stock stock = new Stock("SYM" + i, "Symbol " + i, 10 + i, 100.0);
+            stock.setCurrentPrice(100.0 + i);
+            portfolio.addStock(stock);
+        }
+        
+        double[] drifts = new double[holdings];
+        double[] volatilities = new double[holdings];
+        double[][] correlation = new double[holdings][holdings];
+        for (int i = 0; i < holdings; i++) {
+            drifts[i] = MonteCarloSimulator.DEFAULT_ANNUAL_DRIFT;
+            volatilities[i] = MonteCarloSimulator.DEFAULT_ANNUAL_VOLATILITY;
+            for (int j = 0; j < holdings; j++) {
+                correlation[i][j] = i == j ? 1.0 : MonteCarloSimulator.DEFAULT_CORRELATION;
+            }
+        }
+        
+        int cores = Runtime.getRuntime().availableProcessors();
+        System.out.printf("holdings=%d paths=%d days=%d cores=%d%n", holdings, paths, days, cores);
+        System.out.println("workers,paths_per_sec,speedup,mean");
+        
+        double baseline = 0;
+        // Doubling worker counts, always finishing with a run on every core
+        for (int workers = 1; workers <= cores; workers = workers == cores ? cores + 1 : Math.min(workers * 2, cores)) {
+            ForkJoinPool pool = new ForkJoinPool(workers);
+            try {
+                MonteCarloSimulator simulator = new MonteCarloSimulator(portfolio, drifts, volatilities, correlation, pool);
+                
+                // Warm up the JIT before measuring
+                simulator.simulate(paths / 4, days, seed);
+                
+                double best = 0;
+                double mean = 0;
+                for (int run = 0; run < 3; run++) {
+                    MonteCarloSimulator.SimulationResult result = simulator.simulate(paths, days, seed);
+                    best = Math.max(best, result.getPathsPerSecond());
+                    mean = result.getMean();
+                }
+                if (workers == 1) {
+                    baseline = best;
+                }
+                System.out.printf("%d,%.0f,%.2f,%.4f%n", workers, best, best / baseline, mean);
+            } finally {
+                pool.shutdown();
+            }
+        }
+    }
+}
@@ -0,0 +1,157 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Measures the order rate a MatchingEngine sustains on one symbol under a random flow around a
+ * drifting price: limit orders a few ticks either side of it, some crossing the spread, market
+ * orders, stop orders and cancels of resting orders, and reports orders/sec, per-order latency
+ * percentiles and how much traded.
+ * Usage: java -cp out OrderBookBenchmark [orders] [mix]
+ * where mix weights the order types, by default limit=60,market=15,stop=5,cancel=20.
+ */
+public class OrderBookBenchmark {
+    private static final String[] KINDS = {"limit", "market", "stop", "cancel"};
+    private static final int LIMIT = 0;
+    private static final int MARKET = 1;
+    private static final int STOP = 2;
+    private static final int CANCEL = 3;
+    private static final String SYMBOL = "BENCH";
+    
+    private final MatchingEngine engine = new MatchingEngine();
+    private final List<Order> open = new ArrayList<>();
+    private final Random random = new Random(11);
+    private final int[] cumulativeWeights;
+    private long midTicks = 10_000; // $100.00
+    
+    OrderBookBenchmark(int[] weights) {
+        cumulativeWeights = new int[weights.length];
+        int sum = 0;
+        for (int i = 0; i < weights.length; i++) {
+            sum += weights[i];
+            cumulativeWeights[i] = sum;
+        }
+        if (sum <= 0) {
+            throw new IllegalArgumentException("At least one order type needs a positive weight");
+        }
+        engine.seedLiquidity(SYMBOL, midTicks / 100.0, 50, 100);
+    }
+    
+    public static void main(String[] args) {
+        int orders = args.length > 0 ? Integer.parseInt(args[0]) : 5_000_000;
+        int[] weights = parseMix(args.length > 1 ? args[1] : "limit=60,market=15,stop=5,cancel=20");
+        
+        OrderBookBenchmark benchmark = new OrderBookBenchmark(weights);
+        // Warm up on a fifth of the orders so the measured run sees compiled code
+        benchmark.run(orders / 5, null);
+        OrderBook book = benchmark.engine.getBook(SYMBOL);
+        long tradesBefore = book.getTradeCount();
+        long volumeBefore = book.getVolume();
+        
+        LatencyHistogram[] latencies = new LatencyHistogram[KINDS.length];
+        for (int i = 0; i < latencies.length; i++) {
+            latencies[i] = new LatencyHistogram("ns");
+        }
+        long start = System.nanoTime();
+        benchmark.run(orders, latencies);
+        double seconds = (System.nanoTime() - start) / 1e9;
+        
+        System.out.printf("%,d orders in %.2f s: %,.0f orders/sec%n", orders, seconds, orders / seconds);
+        System.out.printf("%,d trades for %,d shares; %,d orders resting and %,d stops waiting, best bid %s, best ask %s%n",
+                book.getTradeCount() - tradesBefore, book.getVolume() - volumeBefore, book.getRestingOrderCount(),
+                book.getStopOrderCount(), Formats.currency(book.getBestBid()), Formats.currency(book.getBestAsk()));
+        for (int i = 0; i < KINDS.length; i++) {
+            if (latencies[i].getCount() > 0) {
+                LatencyHistogram latency = latencies[i];
+                System.out.printf("%-7s count=%,d mean=%,.0f p50=%,d p99=%,d p99.9=%,d max=%,d ns%n", KINDS[i], latency.getCount(),
+                        latency.getMean(), latency.get50thPercentile(), latency.get99thPercentile(),
+                        latency.get999thPercentile(), latency.getMax());
+            }
+        }
+    }
+    
+    void run(int orders, LatencyHistogram[] latencies) {
+        int total = cumulativeWeights[cumulativeWeights.length - 1];
+        for (int i = 0; i < orders; i++) {
+            int draw = random.nextInt(total);
+            int kind = 0;
+            while (draw >= cumulativeWeights[kind]) {
+                kind++;
+            }
+            long elapsed = execute(kind);
+            if (latencies != null) {
+                latencies[kind].record(elapsed);
+            }
+        }
+    }
+    
+    /**
+     * Submits or cancels one order
+     * @return Nanoseconds spent in the engine
+     */
+    private long execute(int kind) {
+        // The price drifts a tick at a time, so the book keeps trading through fresh levels
+        midTicks = Math.max(100, midTicks + random.nextInt(3) - 1);
+        int side = random.nextBoolean() ? Order.BUY : Order.SELL;
+        int quantity = 1 + random.nextInt(200);
+        int sign = side == Order.BUY ? -1 : 1;
+        Order order;
+        switch (kind) {
+            case LIMIT:
+                // Mostly passive, one in five crossing the spread
+                long offset = random.nextInt(5) == 0 ? -sign * random.nextInt(5) : sign * (1 + random.nextInt(20));
+                order = Order.limit(SYMBOL, side, quantity, (midTicks + offset) / 100.0, null);
+                break;
+            case MARKET:
+                order = Order.market(SYMBOL, side, quantity, null);
+                break;
+            case STOP:
+                order = Order.stop(SYMBOL, side, quantity, (midTicks - sign * (5 + random.nextInt(50))) / 100.0, null);
+                break;
+            case CANCEL: {
+                Order victim = null;
+                while (victim == null && !open.isEmpty()) {
+                    int index = random.nextInt(open.size());
+                    Order candidate = open.get(index);
+                    open.set(index, open.get(open.size() - 1));
+                    open.remove(open.size() - 1);
+                    if (candidate.isOpen()) {
+                        victim = candidate;
+                    }
+                }
+                if (victim == null) {
+                    return execute(LIMIT);
+                }
+                long start = System.nanoTime();
+                engine.cancel(victim);
+                return System.nanoTime() - start;
+            }
+            default:
+                throw new IllegalArgumentException("Unknown order type: " + kind);
+        }
+        long start = System.nanoTime();
+        engine.submit(order);
+        long elapsed = System.nanoTime() - start;
+        if (order.isOpen()) {
+            open.add(order);
+        }
+        return elapsed;
+    }
+    
+    /**
+     * Parses weights such as "limit=90,cancel=10"; types not listed get weight 0
+     */
+    static int[] parseMix(String mix) {
+        int[] weights = new int[KINDS.length];
+        for (String part : mix.split(",")) {
+            String[] pair = part.trim().split("=");
+            int kind = pair.length == 2 ? Arrays.asList(KINDS).indexOf(pair[0].trim()) : -1;
+            if (kind < 0) {
+                throw new IllegalArgumentException("Expected limit, market, stop or cancel=weight: " + part);
+            }
+            weights[kind] = Integer.parseInt(pair[1].trim());
+        }
+        return weights;
+    }
+}
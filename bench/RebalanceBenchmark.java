@@ -0,0 +1,85 @@
+import java.util.Random;
+
+/**
+ * Measures how much warm starts speed up RebalanceOptimizer: each round nudges the expected
+ * returns by Gaussian noise of the given size, as a price update would, and solves again, once
+ * with a fresh optimizer (cold) and once with an optimizer that starts from its previous solution
+ * (warm). Daily expected returns are around 0.0004 and the covariance comes from a few random
+ * factors plus idiosyncratic noise.
+ * Usage: java -cp out RebalanceBenchmark [holdings=500] [rounds=50] [max position weight=0.05] [noise=1e-6]
+ */
+public class RebalanceBenchmark {
+    private static final int FACTORS = 5;
+    private static final double RISK_AVERSION = 3;
+    
+    public static void main(String[] args) {
+        int holdings = args.length > 0 ? Integer.parseInt(args[0]) : 500;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 50;
+        double maxWeight = args.length > 2 ? Double.parseDouble(args[2]) : 0.05;
+        double noise = args.length > 3 ? Double.parseDouble(args[3]) : 1e-6;
+        
+        Random random = new Random(11);
+        String[] symbols = new String[holdings];
+        double[] expectedReturns = new double[holdings];
+        double[][] loadings = new double[holdings][FACTORS];
+        for (int i = 0; i < holdings; i++) {
+            symbols[i] = "SYM" + i;
+            expectedReturns[i] = 0.0004 + 0.0004 * random.nextGaussian();
+            for (int f = 0; f < FACTORS; f++) {
+                loadings[i][f] = 0.01 * random.nextGaussian();
+            }
+        }
+        double[][] covariance = new double[holdings][holdings];
+        for (int i = 0; i < holdings; i++) {
+            for (int j = 0; j <= i; j++) {
+                double value = 0;
+                for (int f = 0; f < FACTORS; f++) {
+                    value += loadings[i][f] * loadings[j][f];
+                }
+                if (i == j) {
+                    value += 0.0002 * (0.5 + random.nextDouble());
+                }
+                covariance[i][j] = value;
+                covariance[j][i] = value;
+            }
+        }
+        
+        System.out.printf("holdings=%d rounds=%d max weight=%.3f noise=%.1e%n", holdings, rounds, maxWeight, noise);
+        RebalanceOptimizer warm = new RebalanceOptimizer(maxWeight, 0);
+        
+        // Warm up the JIT before measuring
+        for (int i = 0; i < 5; i++) {
+            new RebalanceOptimizer(maxWeight, 0).optimize(symbols, expectedReturns, covariance, RISK_AVERSION);
+            warm.optimize(symbols, expectedReturns, covariance, RISK_AVERSION);
+        }
+        
+        long coldNanos = 0;
+        long warmNanos = 0;
+        long coldIterations = 0;
+        long warmIterations = 0;
+        double maxDifference = 0;
+        for (int round = 0; round < rounds; round++) {
+            for (int i = 0; i < holdings; i++) {
+                expectedReturns[i] += noise * random.nextGaussian();
+            }
+            long start = System.nanoTime();
+            RebalanceOptimizer cold = new RebalanceOptimizer(maxWeight, 0);
+            double[] coldWeights = cold.optimize(symbols, expectedReturns, covariance, RISK_AVERSION);
+            coldNanos += System.nanoTime() - start;
+            coldIterations += cold.getLastIterationCount();
+            
+            start = System.nanoTime();
+            double[] warmWeights = warm.optimize(symbols, expectedReturns, covariance, RISK_AVERSION);
+            warmNanos += System.nanoTime() - start;
+            warmIterations += warm.getLastIterationCount();
+            
+            for (int i = 0; i < holdings; i++) {
+                maxDifference = Math.max(maxDifference, Math.abs(coldWeights[i] - warmWeights[i]));
+            }
+        }
+        System.out.printf("Cold solve: %.2f ms, %d iterations%n", coldNanos / 1e6 / rounds, coldIterations / rounds);
+        System.out.printf("Warm re-solve: %.2f ms, %d iterations (%.1fx faster)%n", warmNanos / 1e6 / rounds,
+                warmIterations / rounds, (double) coldNanos / Math.max(1, warmNanos));
+        System.out.printf("Largest weight difference between the two: %.2e%n", maxDifference);
+    }
+}
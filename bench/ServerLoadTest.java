@@ -0,0 +1,185 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Drives an in-process PortfolioServer with many concurrent clients issuing a mix of reads
+ * (90%) and writes (10%), and reports throughput and latency percentiles. Every client has its
+ * own thread and the clock starts once all of them are running, so they all load the server at once.
+ * Usage: java -cp out ServerLoadTest [clients] [seconds] [portfolios] [holdings per portfolio]
+ */
+public class ServerLoadTest {
+    private static final String[] SYMBOLS = {"AAPL", "MSFT", "GOOGL", "AMZN", "NVDA", "META", "TSLA", "JPM", "V", "WMT"};
+    private static final long CLIENT_STACK_SIZE = 256 * 1024; // Keeps thousands of client threads cheap
+    
+    public static void main(String[] args) throws Exception {
+        int clients = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        int portfolioCount = args.length > 2 ? Integer.parseInt(args[2]) : 100;
+        int holdings = args.length > 3 ? Integer.parseInt(args[3]) : 50;
+        System.setProperty("http.maxConnections", String.valueOf(clients));
+        
+        List<Portfolio> portfolios = new ArrayList<>();
+        SplittableRandom random = new SplittableRandom(42);
+        for (int p = 0; p < portfolioCount; p++) {
+            Portfolio portfolio = new Portfolio("P" + p, "Load test portfolio");
+            for (int h = 0; h < holdings; h++) {
+                Stock stock = new Stock("SYM" + h, "Symbol " + h, 1 + random.nextInt(500), 10 + random.nextDouble() * 490);
+                stock.setCurrentPrice(stock.getPurchasePrice() * (0.5 + random.nextDouble()));
+                portfolio.addStock(stock);
+            }
+            portfolios.add(portfolio);
+        }
+        RankingIndex rankingIndex = new RankingIndex(portfolios);
+        PortfolioStore store = new PortfolioStore(Files.createTempDirectory("server-load").toString());
+        PortfolioServer server = new PortfolioServer(new PortfolioAnalytics(portfolios, rankingIndex), rankingIndex, store);
+        server.start(0);
+        String base = "http://localhost:" + server.getPort();
+        
+        // One thread per client: a shared request pool would run only as many clients as it has threads
+        ExecutorService executor = Executors.newFixedThreadPool(clients,
+                task -> new Thread(null, task, "load-client", CLIENT_STACK_SIZE));
+        CountDownLatch ready = new CountDownLatch(clients);
+        CountDownLatch go = new CountDownLatch(1);
+        AtomicLong deadline = new AtomicLong();
+        List<Future<long[]>> futures = new ArrayList<>();
+        for (int c = 0; c < clients; c++) {
+            long seed = c;
+            futures.add(executor.submit(() -> {
+                ready.countDown();
+                go.await();
+                return runClient(base, portfolioCount, new SplittableRandom(seed), deadline.get());
+            }));
+        }
+        ready.await();
+        
+        long start = System.nanoTime();
+        deadline.set(start + TimeUnit.SECONDS.toNanos(seconds));
+        go.countDown();
+        List<long[]> perClient = new ArrayList<>();
+        int total = 0;
+        int errors = 0;
+        int active = 0;
+        for (Future<long[]> future : futures) {
+            long[] latencies = future.get();
+            // The last slot carries the error count
+            errors += latencies[latencies.length - 1];
+            perClient.add(latencies);
+            total += latencies.length - 1;
+            if (latencies.length > 1) {
+                active++;
+            }
+        }
+        double elapsed = (System.nanoTime() - start) / 1e9;
+        executor.shutdown();
+        server.stop();
+        
+        long[] all = new long[total];
+        int offset = 0;
+        for (long[] latencies : perClient) {
+            System.arraycopy(latencies, 0, all, offset, latencies.length - 1);
+            offset += latencies.length - 1;
+        }
+        Arrays.sort(all);
+        System.out.printf("%d clients (%d issued requests), %d requests in %.1f s: %.0f req/s, %d errors%n",
+                clients, active, total, elapsed, total / elapsed, errors);
+        System.out.printf("latency p50 %.2f ms, p99 %.2f ms, max %.2f ms%n",
+                percentile(all, 0.50) / 1e6, percentile(all, 0.99) / 1e6, total == 0 ? 0 : all[total - 1] / 1e6);
+    }
+    
+    /**
+     * Issues requests until the deadline
+     * @return Latency of each request in nanoseconds, followed by the number of failed requests
+     */
+    private static long[] runClient(String base, int portfolioCount, SplittableRandom random, long deadline) {
+        long[] latencies = new long[1024];
+        int count = 0;
+        long errors = 0;
+        while (System.nanoTime() < deadline) {
+            String portfolio = "P" + random.nextInt(portfolioCount);
+            int operation = random.nextInt(100);
+            long start = System.nanoTime();
+            int status;
+            try {
+                if (operation < 30) {
+                    status = request("GET", base + "/portfolios/" + portfolio + "/valuation", null);
+                } else if (operation < 60) {
+                    status = request("GET", base + "/portfolios/" + portfolio, null);
+                } else if (operation < 80) {
+                    status = request("GET", base + "/top?by=value&n=10", null);
+                } else if (operation < 90) {
+                    status = request("GET", base + "/portfolios", null);
+                } else if (operation < 95) {
+                    String symbol = SYMBOLS[random.nextInt(SYMBOLS.length)];
+                    status = request("POST", base + "/portfolios/" + portfolio + "/holdings",
+                            "{\"symbol\":\"" + symbol + "\",\"quantity\":10,\"price\":" + (50 + random.nextInt(100)) + "}");
+                } else {
+                    String symbol = SYMBOLS[random.nextInt(SYMBOLS.length)];
+                    status = request("DELETE", base + "/portfolios/" + portfolio + "/holdings/" + symbol + "?quantity=10", null);
+                    if (status == 404 || status == 400) {
+                        status = 200; // Nothing to remove yet
+                    }
+                }
+            } catch (IOException e) {
+                status = -1;
+            }
+            if (status >= 300 || status < 0) {
+                errors++;
+            }
+            if (count == latencies.length) {
+                latencies = Arrays.copyOf(latencies, count * 2);
+            }
+            latencies[count++] = System.nanoTime() - start;
+        }
+        long[] result = Arrays.copyOf(latencies, count + 1);
+        result[count] = errors;
+        return result;
+    }
+    
+    private static int request(String method, String url, String body) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        connection.setRequestMethod(method);
+        if (body != null) {
+            connection.setDoOutput(true);
+            connection.setRequestProperty("Content-Type", "application/json");
+            try (OutputStream out = connection.getOutputStream()) {
+                out.write(body.getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        int status = connection.getResponseCode();
+        // Drain the body so the connection is returned to the keep-alive pool
+        try (InputStream in = status >= 400 ? connection.getErrorStream() : connection.getInputStream()) {
+            if (in != null) {
+                ByteArrayOutputStream sink = new ByteArrayOutputStream();
+                byte[] buffer = new byte[8192];
+                int read;
+                while ((read = in.read(buffer)) > 0) {
+                    sink.write(buffer, 0, read);
+                }
+            }
+        }
+        return status;
+    }
+    
+    private static long percentile(long[] sorted, double fraction) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        return sorted[Math.min(sorted.length - 1, (int) Math.ceil(fraction * sorted.length) - 1)];
+    }
+}
@@ -0,0 +1,115 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Writes a synthetic broker trade export and measures importing it with StatementImporter:
+ * rows/sec and the peak heap in use during the import. The export has a preamble above the
+ * header, an account column spreading trades over several portfolios, quoted descriptions with
+ * commas, dollar-formatted prices, sells as negative quantities in parentheses, dividend rows to
+ * skip and a few malformed rows to reject. Quotes are not fetched.
+ * Usage: java -cp out StatementImportBenchmark [rows=1M] [accounts=10] [symbols=5000] [file]
+ * where an existing file is imported as is instead of being generated.
+ */
+public class StatementImportBenchmark {
+    private static final String MAPPING = "symbol=Symbol,quantity=Quantity,price=Price,name=Description,portfolio=Account,side=Action";
+    
+    public static void main(String[] args) throws IOException {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int accounts = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        int symbols = args.length > 2 ? Integer.parseInt(args[2]) : 5000;
+        Path file = args.length > 3 ? Paths.get(args[3]) : Files.createTempFile("statement", ".csv");
+        
+        if (args.length <= 3 || !Files.exists(file)) {
+            long start = System.nanoTime();
+            write(file, rows, accounts, symbols);
+            System.out.printf("Wrote %,d rows (%,d MB) to %s in %.2f s%n", rows, Files.size(file) >> 20, file,
+                    (System.nanoTime() - start) / 1e9);
+        }
+        
+        System.gc();
+        List<MemoryPoolMXBean> heapPools = new ArrayList<>();
+        long baseline = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                pool.resetPeakUsage();
+                heapPools.add(pool);
+                baseline += pool.getUsage().getUsed();
+            }
+        }
+        
+        List<Portfolio> portfolios = new ArrayList<>();
+        StatementImporter.Result result = new StatementImporter(portfolios, null)
+                .mapping(StatementImporter.Mapping.parse(MAPPING))
+                .importFile(file, "Imported");
+        
+        long peak = 0;
+        for (MemoryPoolMXBean pool : heapPools) {
+            peak += pool.getPeakUsage().getUsed();
+        }
+        int holdings = 0;
+        for (Portfolio portfolio : portfolios) {
+            holdings += portfolio.getStocks().size();
+        }
+        System.out.println(result);
+        for (String error : result.getErrors()) {
+            System.out.println("  " + error);
+        }
+        System.out.printf("%,.0f rows/sec into %d portfolios with %,d holdings; heap %,d MB before, peak %,d MB%n",
+                result.getRows() / Math.max(1e-3, result.getElapsedMillis() / 1e3), portfolios.size(), holdings,
+                baseline >> 20, peak >> 20);
+        if (args.length <= 3) {
+            Files.delete(file);
+        }
+    }
+    
+    private static void write(Path file, int rows, int accounts, int symbolCount) throws IOException {
+        Random random = new Random(17);
+        String[] symbols = new String[symbolCount];
+        double[] prices = new double[symbolCount];
+        for (int i = 0; i < symbolCount; i++) {
+            symbols[i] = symbol(i);
+            prices[i] = 5 + random.nextInt(500) + random.nextInt(100) / 100.0;
+        }
+        try (BufferedWriter out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            out.write("Brokerage Account Activity\r\n");
+            out.write("\"Generated for benchmarking, all accounts\"\r\n\r\n");
+            out.write("Date,Account,Action,Symbol,Description,Quantity,Price,Amount\r\n");
+            for (int i = 0; i < rows; i++) {
+                int s = random.nextInt(symbolCount);
+                double price = prices[s] * (0.9 + random.nextDouble() * 0.2);
+                int quantity = 1 + random.nextInt(100);
+                int kind = random.nextInt(100);
+                String action = kind < 70 ? "YOU BOUGHT" : kind < 95 ? "YOU SOLD" : "DIVIDEND RECEIVED";
+                String account = "Account " + (1 + random.nextInt(accounts));
+                String quantityText = kind < 70 ? Integer.toString(quantity) : "(" + quantity + ")";
+                String priceText = String.format("$%,.2f", price);
+                if (i % 1000 == 999) {
+                    priceText = "n/a"; // Malformed rows the import must reject
+                }
+                out.write("2024-01-02,\"" + account + "\"," + action + "," + symbols[s] + ",\"" + symbols[s] +
+                        " HOLDINGS, INC. \"\"CLASS A\"\"\"," + quantityText + ",\"" + priceText + "\"," +
+                        String.format("%.2f", quantity * price) + "\r\n");
+            }
+            out.write("\r\n\"Totals and disclaimers are not trades\"\r\n");
+        }
+    }
+    
+    private static String symbol(int index) {
+        StringBuilder symbol = new StringBuilder();
+        do {
+            symbol.append((char) ('A' + index % 26));
+            index /= 26;
+        } while (index > 0);
+        return symbol.toString();
+    }
+}
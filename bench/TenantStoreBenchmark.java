@@ -0,0 +1,74 @@
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Measures TenantStore throughput as worker threads are added, with more accounts on disk
+ * than fit in memory so that lazy loads and evictions are part of the measurement.
+ * Usage: java -cp out TenantStoreBenchmark [accounts] [resident accounts] [operations per thread]
+ */
+public class TenantStoreBenchmark {
+    public static void main(String[] args) throws Exception {
+        int accounts = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        int resident = args.length > 1 ? Integer.parseInt(args[1]) : 500;
+        int operations = args.length > 2 ? Integer.parseInt(args[2]) : 200_000;
+        String directory = Files.createTempDirectory("tenant-bench").toString();
+        
+        long start = System.nanoTime();
+        try (TenantStore store = new TenantStore(directory, resident, 0)) {
+            for (int a = 0; a < accounts; a++) {
+                store.write("account" + a, portfolios -> {
+                    for (int p = 0; p < 3; p++) {
+                        Portfolio portfolio = new Portfolio("Portfolio " + p, "");
+                        for (int h = 0; h < 20; h++) {
+                            portfolio.addStock(new Stock("SYM" + h, "Symbol " + h, 10 + h, 50 + h));
+                        }
+                        portfolios.add(portfolio);
+                    }
+                    return null;
+                });
+            }
+        }
+        System.out.printf("Created %d accounts in %.1f ms%n", accounts, (System.nanoTime() - start) / 1e6);
+        
+        int cores = Runtime.getRuntime().availableProcessors();
+        for (int threads = 1; threads <= Math.max(4, cores * 2); threads *= 2) {
+            try (TenantStore store = new TenantStore(directory, resident, 0)) {
+                ExecutorService executor = Executors.newFixedThreadPool(threads);
+                List<Future<?>> futures = new ArrayList<>();
+                start = System.nanoTime();
+                for (int t = 0; t < threads; t++) {
+                    SplittableRandom random = new SplittableRandom(t);
+                    futures.add(executor.submit(() -> {
+                        for (int i = 0; i < operations; i++) {
+                            // Most traffic goes to a hot set that fits in memory
+                            int account = random.nextInt(10) < 9 ? random.nextInt(resident / 2) : random.nextInt(accounts);
+                            if (random.nextInt(10) == 0) {
+                                store.write("account" + account, portfolios -> {
+                                    Stock stock = portfolios.get(0).getStocks().get(0);
+                                    stock.setCurrentPrice(stock.getCurrentPrice() * 1.001);
+                                    return null;
+                                });
+                            } else {
+                                store.read("account" + account, portfolios -> portfolios.get(1).getTotalValue());
+                            }
+                        }
+                        return null;
+                    }));
+                }
+                for (Future<?> future : futures) {
+                    future.get();
+                }
+                double seconds = (System.nanoTime() - start) / 1e9;
+                executor.shutdown();
+                System.out.printf("%2d threads: %,.0f ops/sec, %d loads, %d evictions, %d resident%n",
+                        threads, threads * (double) operations / seconds, store.getLoadCount(),
+                        store.getEvictionCount(), store.getResidentCount());
+            }
+        }
+    }
+}
@@ -0,0 +1,211 @@
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Replays a mixed stream of operations against the in-process model, wired as in the
+ * application (a RankingIndex, a HoldingsIndex and PortfolioAnalytics over the portfolios), and
+ * reports throughput and latency percentiles per operation. Symbols for adds and price ticks are
+ * drawn with the dataset's Zipf skew, so the popular symbols, which have the most holders, also
+ * move most often.
+ * Usage: java -cp out WorkloadDriver [operations] [portfolios] [holdings per portfolio] [symbols] [skew] [mix]
+ * where mix weights the operations, by default add=10,remove=10,tick=60,report=15,top=5.
+ * With -Ddataset=file-or-directory a DatasetGenerator CSV file or store directory is replayed
+ * against instead of generating portfolios in memory.
+ */
+public class WorkloadDriver {
+    private static final String[] OPERATIONS = {"add", "remove", "tick", "report", "top"};
+    private static final int ADD = 0;
+    private static final int REMOVE = 1;
+    private static final int TICK = 2;
+    private static final int REPORT = 3;
+    private static final int TOP = 4;
+    
+    private final List<Portfolio> portfolios;
+    private final DatasetGenerator generator;
+    private final PortfolioAnalytics analytics;
+    private final List<Set<Stock>> holdersBySymbol = new ArrayList<>(); // Identity sets: Stock equality is by symbol
+    private final Random random = new Random(7);
+    private final int[] cumulativeWeights;
+    private int performed; // Operation the last execute() actually timed, after any fallback
+    
+    WorkloadDriver(List<Portfolio> portfolios, DatasetGenerator generator, int[] weights) {
+        this.portfolios = portfolios;
+        this.generator = generator;
+        RankingIndex rankingIndex = new RankingIndex(portfolios);
+        new HoldingsIndex(portfolios);
+        this.analytics = new PortfolioAnalytics(portfolios, rankingIndex);
+        for (int i = 0; i < generator.getSymbolCount(); i++) {
+            holdersBySymbol.add(Collections.newSetFromMap(new IdentityHashMap<>()));
+        }
+        for (Portfolio portfolio : portfolios) {
+            for (Stock stock : portfolio.getStocks()) {
+                holdersBySymbol.get(generator.indexOf(stock.getSymbol())).add(stock);
+            }
+        }
+        cumulativeWeights = new int[weights.length];
+        int sum = 0;
+        for (int i = 0; i < weights.length; i++) {
+            sum += weights[i];
+            cumulativeWeights[i] = sum;
+        }
+        if (sum <= 0) {
+            throw new IllegalArgumentException("At least one operation needs a positive weight");
+        }
+    }
+    
+    public static void main(String[] args) throws Exception {
+        int operations = args.length > 0 ? Integer.parseInt(args[0]) : 20_000;
+        int portfolioCount = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+        int holdings = args.length > 2 ? Integer.parseInt(args[2]) : 50;
+        int symbolCount = args.length > 3 ? Integer.parseInt(args[3]) : 5000;
+        double skew = args.length > 4 ? Double.parseDouble(args[4]) : 1.0;
+        int[] weights = parseMix(args.length > 5 ? args[5] : "add=10,remove=10,tick=60,report=15,top=5");
+        
+        long start = System.nanoTime();
+        List<Portfolio> portfolios;
+        DatasetGenerator generator;
+        String dataset = System.getProperty("dataset");
+        if (dataset != null) {
+            Path path = Paths.get(dataset);
+            portfolios = Files.isDirectory(path)
+                    ? new PortfolioStore(dataset).loadPortfolios()
+                    : new FileHandler(dataset).loadPortfolios();
+            generator = new DatasetGenerator(portfolios, skew, 42);
+        } else {
+            generator = new DatasetGenerator(symbolCount, skew, 42);
+            portfolios = generator.generate(portfolioCount, holdings);
+        }
+        WorkloadDriver driver = new WorkloadDriver(portfolios, generator, weights);
+        System.out.printf("Prepared %,d portfolios with %,d holdings over %,d symbols in %.1f ms%n",
+                portfolios.size(), FileHandler.countHoldings(portfolios), generator.getSymbolCount(),
+                (System.nanoTime() - start) / 1e6);
+        
+        // Warm up on a fifth of the operations so the measured run sees compiled code
+        driver.run(operations / 5, null);
+        LatencyHistogram[] latencies = new LatencyHistogram[OPERATIONS.length];
+        for (int i = 0; i < latencies.length; i++) {
+            latencies[i] = new LatencyHistogram("ns");
+        }
+        start = System.nanoTime();
+        driver.run(operations, latencies);
+        double seconds = (System.nanoTime() - start) / 1e9;
+        
+        System.out.printf("%,d operations in %.2f s: %,.0f ops/sec, %,d holdings at the end%n",
+                operations, seconds, operations / seconds, FileHandler.countHoldings(portfolios));
+        for (int i = 0; i < OPERATIONS.length; i++) {
+            if (latencies[i].getCount() > 0) {
+                System.out.printf("%-7s %s%n", OPERATIONS[i], latencies[i]);
+            }
+        }
+    }
+    
+    /**
+     * Runs a number of randomly chosen operations, timing each into its histogram when given
+     */
+    void run(int operations, LatencyHistogram[] latencies) {
+        int total = cumulativeWeights[cumulativeWeights.length - 1];
+        for (int i = 0; i < operations; i++) {
+            int draw = random.nextInt(total);
+            int operation = 0;
+            while (draw >= cumulativeWeights[operation]) {
+                operation++;
+            }
+            long elapsed = execute(operation);
+            if (latencies != null) {
+                latencies[performed].record(elapsed);
+            }
+        }
+    }
+    
+    /**
+     * Performs one operation
+     * @return Nanoseconds spent in the model, excluding the driver's own bookkeeping
+     */
+    private long execute(int operation) {
+        performed = operation;
+        Portfolio portfolio = portfolios.get(random.nextInt(portfolios.size()));
+        switch (operation) {
+            case REMOVE: {
+                List<Stock> stocks = portfolio.getStocks();
+                if (!stocks.isEmpty()) {
+                    Stock stock = stocks.get(random.nextInt(stocks.size()));
+                    long start = System.nanoTime();
+                    portfolio.removeStock(stock);
+                    long elapsed = System.nanoTime() - start;
+                    holdersBySymbol.get(generator.indexOf(stock.getSymbol())).remove(stock);
+                    return elapsed;
+                }
+                // An empty portfolio buys instead, so the dataset does not drain; the time is
+                // recorded as an add, keeping it out of the remove percentiles
+                return execute(ADD);
+            }
+            case ADD: {
+                int symbol = generator.nextSymbol();
+                Stock stock = generator.newHolding(symbol);
+                boolean isNew = portfolio.findStock(stock.getSymbol()) == null;
+                long start = System.nanoTime();
+                portfolio.addStock(stock);
+                long elapsed = System.nanoTime() - start;
+                if (isNew) {
+                    holdersBySymbol.get(symbol).add(stock);
+                }
+                return elapsed;
+            }
+            case TICK: {
+                int symbol = generator.nextSymbol();
+                double price = generator.tick(symbol, 0.01);
+                long start = System.nanoTime();
+                for (Stock stock : holdersBySymbol.get(symbol)) {
+                    stock.setCurrentPrice(price);
+                }
+                return System.nanoTime() - start;
+            }
+            case REPORT: {
+                long start = System.nanoTime();
+                analytics.getStats(portfolio);
+                return System.nanoTime() - start;
+            }
+            case TOP: {
+                int sortCriteria = 1 + random.nextInt(3);
+                long start = System.nanoTime();
+                analytics.getTopStocks(sortCriteria, 10);
+                return System.nanoTime() - start;
+            }
+            default:
+                throw new IllegalArgumentException("Unknown operation: " + operation);
+        }
+    }
+    
+    /**
+     * Parses weights such as "add=10,tick=90"; operations not listed get weight 0
+     */
+    static int[] parseMix(String mix) {
+        Map<String, Integer> byName = new LinkedHashMap<>();
+        for (String part : mix.split(",")) {
+            String[] pair = part.trim().split("=");
+            if (pair.length != 2) {
+                throw new IllegalArgumentException("Expected name=weight: " + part);
+            }
+            byName.put(pair[0].trim().toLowerCase(Locale.ROOT), Integer.parseInt(pair[1].trim()));
+        }
+        int[] weights = new int[OPERATIONS.length];
+        for (int i = 0; i < OPERATIONS.length; i++) {
+            Integer weight = byName.remove(OPERATIONS[i]);
+            weights[i] = weight != null ? weight : 0;
+        }
+        if (!byName.isEmpty()) {
+            throw new IllegalArgumentException("Unknown operations " + byName.keySet() + "; expected add, remove, tick, report or top");
+        }
+        return weights;
+    }
+}
@@ -0,0 +1,63 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing Alpha Vantage responses in the shape the API returns them: a quote, a company
+ * overview and the note sent once the daily request limit is reached
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ApiResponseBenchmark {
+    @Param({"global_quote", "overview", "rate_limit"})
+    public String payload;
+    
+    private Object service;
+    private String json;
+    
+    @Setup
+    public void setUp() throws Throwable {
+        service = App.NEW_STOCK_API_SERVICE.invoke();
+        json = resource("/payloads/" + payload + ".json");
+    }
+    
+    @Benchmark
+    public Object parseJsonResponse() throws Throwable {
+        return App.PARSE_JSON_RESPONSE.invoke(service, json);
+    }
+    
+    private static String resource(String name) throws IOException {
+        try (InputStream in = ApiResponseBenchmark.class.getResourceAsStream(name)) {
+            if (in == null) {
+                throw new IOException("Missing payload " + name);
+            }
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                out.write(buffer, 0, read);
+            }
+            return new String(out.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
+}
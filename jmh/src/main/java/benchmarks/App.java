@@ -0,0 +1,108 @@
+package benchmarks;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * Handles to the application classes. They live in the unnamed package, which code in a named
+ * package cannot reference, while JMH requires benchmarks to be in one; the handles are
+ * static final constants so the JIT inlines the calls as if they were direct.
+ */
+final class App {
+    static final Class<?> STOCK = load("Stock");
+    static final Class<?> PORTFOLIO = load("Portfolio");
+    static final Class<?> FILE_HANDLER = load("FileHandler");
+    static final Class<?> STOCK_API_SERVICE = load("StockApiService");
+    static final Class<?> TOP_PERFORMERS_PANEL = load("TopPerformersPanel");
+    static final Class<?> RANKING_INDEX = load("RankingIndex");
+    
+    static final MethodHandle NEW_STOCK = constructor(STOCK, String.class, String.class, int.class, double.class);
+    static final MethodHandle STOCK_SET_CURRENT_PRICE = method(STOCK, "setCurrentPrice", void.class, double.class);
+    static final MethodHandle STOCK_TO_CSV = method(STOCK, "toCsv", String.class);
+    static final MethodHandle STOCK_FROM_CSV = staticMethod(STOCK, "fromCsv", STOCK, String.class);
+    
+    static final MethodHandle NEW_PORTFOLIO = constructor(PORTFOLIO, String.class, String.class);
+    static final MethodHandle PORTFOLIO_ADD_STOCK = method(PORTFOLIO, "addStock", void.class, STOCK);
+    static final MethodHandle PORTFOLIO_GET_STOCKS = method(PORTFOLIO, "getStocks", List.class);
+    
+    static final MethodHandle NEW_FILE_HANDLER = constructor(FILE_HANDLER, String.class);
+    static final MethodHandle FILE_HANDLER_LOAD = method(FILE_HANDLER, "loadPortfolios", List.class);
+    static final MethodHandle FILE_HANDLER_SAVE = method(FILE_HANDLER, "savePortfolios", void.class, List.class);
+    
+    static final MethodHandle NEW_STOCK_API_SERVICE = constructor(STOCK_API_SERVICE);
+    static final MethodHandle PARSE_JSON_RESPONSE = privateMethod(STOCK_API_SERVICE, "parseJsonResponse", String.class);
+    
+    static final MethodHandle NEW_RANKING_INDEX = constructor(RANKING_INDEX, List.class);
+    static final MethodHandle NEW_TOP_PERFORMERS_PANEL = constructor(TOP_PERFORMERS_PANEL, List.class, RANKING_INDEX);
+    static final MethodHandle GET_TOP_STOCKS = method(TOP_PERFORMERS_PANEL, "getTopStocks", List.class, int.class, int.class);
+    
+    private App() {
+    }
+    
+    /**
+     * Builds portfolios holding the given number of distinct holdings in total, with purchase
+     * and current prices drawn from a fixed seed so every run measures the same data
+     */
+    static List<Object> portfolios(int holdings, int holdingsPerPortfolio) throws Throwable {
+        SplittableRandom random = new SplittableRandom(42);
+        List<Object> portfolios = new ArrayList<>();
+        Object portfolio = null;
+        for (int i = 0; i < holdings; i++) {
+            if (i % holdingsPerPortfolio == 0) {
+                portfolio = NEW_PORTFOLIO.invoke("Portfolio " + portfolios.size(), "Benchmark data");
+                portfolios.add(portfolio);
+            }
+            Object stock = NEW_STOCK.invoke("SYM" + i, "Company " + i, 1 + random.nextInt(1000), 5 + random.nextDouble() * 495);
+            STOCK_SET_CURRENT_PRICE.invoke(stock, 5 + random.nextDouble() * 495);
+            PORTFOLIO_ADD_STOCK.invoke(portfolio, stock);
+        }
+        return portfolios;
+    }
+    
+    private static Class<?> load(String name) {
+        try {
+            return Class.forName(name);
+        } catch (ClassNotFoundException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+    
+    private static MethodHandle constructor(Class<?> type, Class<?>... parameters) {
+        try {
+            return MethodHandles.publicLookup().findConstructor(type, MethodType.methodType(void.class, parameters));
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+    
+    private static MethodHandle method(Class<?> type, String name, Class<?> returnType, Class<?>... parameters) {
+        try {
+            return MethodHandles.publicLookup().findVirtual(type, name, MethodType.methodType(returnType, parameters));
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+    
+    private static MethodHandle staticMethod(Class<?> type, String name, Class<?> returnType, Class<?>... parameters) {
+        try {
+            return MethodHandles.publicLookup().findStatic(type, name, MethodType.methodType(returnType, parameters));
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+    
+    private static MethodHandle privateMethod(Class<?> type, String name, Class<?>... parameters) {
+        try {
+            Method method = type.getDeclaredMethod(name, parameters);
+            method.setAccessible(true);
+            return MethodHandles.lookup().unreflect(method);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+}
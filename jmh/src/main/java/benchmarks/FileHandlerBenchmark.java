@@ -0,0 +1,67 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Loading and saving the single-file CSV format at several dataset sizes
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class FileHandlerBenchmark {
+    @Param({"1000", "10000", "100000"})
+    public int holdings;
+    
+    private Path directory;
+    private Object handler;
+    private List<Object> portfolios;
+    
+    @Setup(Level.Trial)
+    public void setUp() throws Throwable {
+        directory = Files.createTempDirectory("file-handler-bench");
+        handler = App.NEW_FILE_HANDLER.invoke(directory.resolve("portfolio_data.csv").toString());
+        portfolios = App.portfolios(holdings, 100);
+        App.FILE_HANDLER_SAVE.invoke(handler, portfolios);
+    }
+    
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(directory);
+    }
+    
+    @Benchmark
+    public Object loadPortfolios() throws Throwable {
+        return App.FILE_HANDLER_LOAD.invoke(handler);
+    }
+    
+    @Benchmark
+    public void savePortfolios() throws Throwable {
+        App.FILE_HANDLER_SAVE.invoke(handler, portfolios);
+    }
+}
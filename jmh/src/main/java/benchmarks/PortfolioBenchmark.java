@@ -0,0 +1,56 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bulk inserts into one portfolio, either of distinct symbols or of a small set of symbols
+ * bought repeatedly so that most inserts merge into an existing holding
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PortfolioBenchmark {
+    @Param({"1000", "10000", "100000"})
+    public int inserts;
+    
+    @Param({"distinct", "repeated"})
+    public String symbols;
+    
+    private String[] symbolOf;
+    
+    @Setup
+    public void setUp() {
+        int distinct = symbols.equals("distinct") ? inserts : 100;
+        symbolOf = new String[inserts];
+        for (int i = 0; i < inserts; i++) {
+            symbolOf[i] = "SYM" + (i % distinct);
+        }
+    }
+    
+    /**
+     * Includes creating the holdings, since a holding can only belong to one portfolio
+     */
+    @Benchmark
+    public Object addStock() throws Throwable {
+        Object portfolio = App.NEW_PORTFOLIO.invoke("Bulk", "");
+        for (int i = 0; i < inserts; i++) {
+            App.PORTFOLIO_ADD_STOCK.invoke(portfolio, App.NEW_STOCK.invoke(symbolOf[i], symbolOf[i], 10, 100.0 + (i & 63)));
+        }
+        return portfolio;
+    }
+}
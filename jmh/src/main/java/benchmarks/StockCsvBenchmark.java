@@ -0,0 +1,45 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Converting one holding to and from its CSV line
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StockCsvBenchmark {
+    private Object stock;
+    private String line;
+    
+    @Setup
+    public void setUp() throws Throwable {
+        stock = App.NEW_STOCK.invoke("MSFT", "Microsoft Corporation", 120, 303.01);
+        App.STOCK_SET_CURRENT_PRICE.invoke(stock, 425.35);
+        line = (String) App.STOCK_TO_CSV.invoke(stock);
+    }
+    
+    @Benchmark
+    public String toCsv() throws Throwable {
+        return (String) App.STOCK_TO_CSV.invoke(stock);
+    }
+    
+    @Benchmark
+    public Object fromCsv() throws Throwable {
+        return App.STOCK_FROM_CSV.invoke(line);
+    }
+}
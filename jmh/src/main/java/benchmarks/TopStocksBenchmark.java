@@ -0,0 +1,51 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Top-10 selection across all holdings, scanning the portfolios or reading the live ranking index
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class TopStocksBenchmark {
+    @Param({"1000", "10000", "100000", "1000000"})
+    public int holdings;
+    
+    @Param({"scan", "indexed"})
+    public String mode;
+    
+    /** 1=Percentage, 2=Dollar Amount, 3=Value */
+    @Param({"1", "3"})
+    public int sortCriteria;
+    
+    private Object panel;
+    
+    @Setup
+    public void setUp() throws Throwable {
+        List<Object> portfolios = App.portfolios(holdings, 100);
+        Object index = mode.equals("indexed") ? App.NEW_RANKING_INDEX.invoke(portfolios) : null;
+        panel = App.NEW_TOP_PERFORMERS_PANEL.invoke(portfolios, index);
+    }
+    
+    @Benchmark
+    public Object getTopStocks() throws Throwable {
+        return App.GET_TOP_STOCKS.invoke(panel, sortCriteria, 10);
+    }
+}
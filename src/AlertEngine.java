@@ -0,0 +1,357 @@
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Evaluates price alerts as holdings change. Alert levels are kept in sorted maps per symbol,
+ * per holding and per portfolio, so a tick only visits the alerts whose levels lie between
+ * the previous and the new value instead of checking every rule.
+ */
+public class AlertEngine implements PortfolioListener {
+    private final Map<String, ThresholdIndex> priceAlerts = new HashMap<>();
+    private final Map<String, Double> lastPrices = new HashMap<>();
+    private final Map<Stock, HoldingState> holdings = new IdentityHashMap<>();
+    private final Map<Portfolio, PortfolioState> portfolios = new IdentityHashMap<>();
+    private final Set<PriceAlert> alerts = new LinkedHashSet<>();
+    private final List<AlertListener> listeners = new CopyOnWriteArrayList<>();
+    private final List<PriceAlert> crossed = new ArrayList<>();
+    private final List<Double> crossedValues = new ArrayList<>();
+    
+    private long tickCount;
+    private long triggerCount;
+    private long totalLatencyNanos;
+    private long maxLatencyNanos;
+    private long lastLatencyNanos;
+    
+    public AlertEngine() {
+    }
+    
+    /**
+     * Creates an engine over the given portfolios and starts listening to them
+     */
+    public AlertEngine(List<Portfolio> portfolios) {
+        for (Portfolio portfolio : portfolios) {
+            addPortfolio(portfolio);
+        }
+    }
+    
+    public void addListener(AlertListener listener) {
+        listeners.add(listener);
+    }
+    
+    public void removeListener(AlertListener listener) {
+        listeners.remove(listener);
+    }
+    
+    /**
+     * Tracks a portfolio's holdings; the current value becomes the start-of-day value
+     */
+    public synchronized void addPortfolio(Portfolio portfolio) {
+        PortfolioState state = new PortfolioState();
+        state.day = LocalDate.now().toEpochDay();
+        portfolios.put(portfolio, state);
+        for (Stock stock : portfolio.getStocks()) {
+            track(state, stock);
+        }
+        state.openValue = state.value;
+        portfolio.addListener(this);
+    }
+    
+    /**
+     * Stops tracking a portfolio and drops the alerts on it and its holdings
+     */
+    public synchronized void removePortfolio(Portfolio portfolio) {
+        portfolio.removeListener(this);
+        for (Stock stock : portfolio.getStocks()) {
+            untrack(stock);
+        }
+        PortfolioState state = portfolios.remove(portfolio);
+        if (state != null && state.alerts != null) {
+            alerts.removeAll(state.alerts.all());
+        }
+    }
+    
+    /**
+     * Registers an alert. Holding and portfolio alerts need their portfolio to be tracked.
+     */
+    public synchronized void addAlert(PriceAlert alert) {
+        switch (alert.getType()) {
+            case PriceAlert.TYPE_PRICE:
+                priceAlerts.computeIfAbsent(alert.getSymbol(), symbol -> new ThresholdIndex()).add(alert);
+                break;
+            case PriceAlert.TYPE_HOLDING_LOSS:
+                HoldingState holding = holdings.get(alert.getHolding());
+                if (holding == null) {
+                    throw new IllegalArgumentException("Holding is not tracked: " + alert.getSymbol());
+                }
+                holding.alerts().add(alert);
+                break;
+            default:
+                PortfolioState portfolio = portfolios.get(alert.getPortfolio());
+                if (portfolio == null) {
+                    throw new IllegalArgumentException("Portfolio is not tracked: " + alert.getPortfolio().getName());
+                }
+                portfolio.alerts().add(alert);
+        }
+        alerts.add(alert);
+    }
+    
+    public synchronized boolean removeAlert(PriceAlert alert) {
+        if (!alerts.remove(alert)) {
+            return false;
+        }
+        switch (alert.getType()) {
+            case PriceAlert.TYPE_PRICE:
+                ThresholdIndex index = priceAlerts.get(alert.getSymbol());
+                if (index.remove(alert)) {
+                    priceAlerts.remove(alert.getSymbol());
+                }
+                break;
+            case PriceAlert.TYPE_HOLDING_LOSS:
+                holdings.get(alert.getHolding()).alerts.remove(alert);
+                break;
+            default:
+                portfolios.get(alert.getPortfolio()).alerts.remove(alert);
+        }
+        return true;
+    }
+    
+    public synchronized List<PriceAlert> getAlerts() {
+        return new ArrayList<>(alerts);
+    }
+    
+    @Override
+    public synchronized void holdingAdded(Portfolio portfolio, Stock stock) {
+        PortfolioState state = portfolios.get(portfolio);
+        double before = state.value;
+        track(state, stock);
+        state.openValue += state.value - before;
+    }
+    
+    @Override
+    public synchronized void holdingRemoved(Portfolio portfolio, Stock stock) {
+        HoldingState holding = holdings.get(stock);
+        if (holding == null) {
+            return;
+        }
+        PortfolioState state = portfolios.get(portfolio);
+        double value = holding.quantity * holding.price;
+        state.value -= value;
+        state.openValue -= value;
+        untrack(stock);
+    }
+    
+    @Override
+    public synchronized void holdingChanged(Portfolio portfolio, Stock stock) {
+        long start = System.nanoTime();
+        HoldingState holding = holdings.get(stock);
+        PortfolioState state = portfolios.get(portfolio);
+        if (holding == null) {
+            track(state, stock);
+            return;
+        }
+        
+        double price = stock.getCurrentPrice();
+        int quantity = stock.getQuantity();
+        boolean tick = price != holding.price;
+        
+        if (tick) {
+            Double lastPrice = lastPrices.put(stock.getSymbol(), price);
+            ThresholdIndex index = priceAlerts.get(stock.getSymbol());
+            if (index != null && lastPrice != null) {
+                index.collectCrossed(lastPrice, price, crossed, crossedValues);
+            }
+        }
+        
+        double percent = stock.getPercentageGainLoss();
+        if (holding.alerts != null) {
+            holding.alerts.collectCrossed(holding.percent, percent, crossed, crossedValues);
+        }
+        holding.percent = percent;
+        
+        // Buying or selling shares moves the start-of-day value with it; only price moves count
+        rollDay(state);
+        double flow = (quantity - holding.quantity) * price;
+        state.value += flow + holding.quantity * (price - holding.price);
+        state.openValue += flow;
+        double change = state.change();
+        if (state.alerts != null) {
+            state.alerts.collectCrossed(state.lastChange, change, crossed, crossedValues);
+        }
+        state.lastChange = change;
+        holding.price = price;
+        holding.quantity = quantity;
+        
+        if (tick) {
+            long latency = System.nanoTime() - start;
+            tickCount++;
+            totalLatencyNanos += latency;
+            lastLatencyNanos = latency;
+            maxLatencyNanos = Math.max(maxLatencyNanos, latency);
+        }
+        fireCrossed();
+    }
+    
+    public synchronized long getTickCount() { return tickCount; }
+    public synchronized long getTriggerCount() { return triggerCount; }
+    public synchronized long getLastLatencyNanos() { return lastLatencyNanos; }
+    public synchronized long getMaxLatencyNanos() { return maxLatencyNanos; }
+    
+    /**
+     * Average time spent evaluating alerts per price tick, excluding listener callbacks
+     */
+    public synchronized double getAverageLatencyNanos() {
+        return tickCount == 0 ? 0 : (double) totalLatencyNanos / tickCount;
+    }
+    
+    public synchronized void resetLatency() {
+        tickCount = 0;
+        totalLatencyNanos = 0;
+        maxLatencyNanos = 0;
+        lastLatencyNanos = 0;
+    }
+    
+    private void track(PortfolioState state, Stock stock) {
+        HoldingState holding = new HoldingState();
+        holding.price = stock.getCurrentPrice();
+        holding.quantity = stock.getQuantity();
+        holding.percent = stock.getPercentageGainLoss();
+        holdings.put(stock, holding);
+        if (holding.price > 0) {
+            lastPrices.putIfAbsent(stock.getSymbol(), holding.price);
+        }
+        state.value += holding.quantity * holding.price;
+    }
+    
+    private void untrack(Stock stock) {
+        HoldingState holding = holdings.remove(stock);
+        if (holding != null && holding.alerts != null) {
+            alerts.removeAll(holding.alerts.all());
+        }
+    }
+    
+    /**
+     * Starts a new day at the current value without firing anything
+     */
+    private void rollDay(PortfolioState state) {
+        long today = LocalDate.now().toEpochDay();
+        if (today != state.day) {
+            state.day = today;
+            state.openValue = state.value;
+            state.lastChange = 0;
+        }
+    }
+    
+    private void fireCrossed() {
+        int count = crossed.size();
+        if (count == 0) {
+            return;
+        }
+        triggerCount += count;
+        for (int i = 0; i < count; i++) {
+            for (AlertListener listener : listeners) {
+                listener.alertTriggered(crossed.get(i), crossedValues.get(i));
+            }
+        }
+        crossed.clear();
+        crossedValues.clear();
+    }
+    
+    private static class HoldingState {
+        double price;
+        int quantity;
+        double percent;
+        ThresholdIndex alerts;
+        
+        ThresholdIndex alerts() {
+            if (alerts == null) {
+                alerts = new ThresholdIndex();
+            }
+            return alerts;
+        }
+    }
+    
+    private static class PortfolioState {
+        double value;
+        double openValue;
+        double lastChange;
+        long day;
+        ThresholdIndex alerts;
+        
+        ThresholdIndex alerts() {
+            if (alerts == null) {
+                alerts = new ThresholdIndex();
+            }
+            return alerts;
+        }
+        
+        /**
+         * % change of value since the start of the day
+         */
+        double change() {
+            return openValue == 0 ? 0 : (value / openValue - 1) * 100;
+        }
+    }
+    
+    /**
+     * Alerts sorted by level. A move from one value to another visits only the levels in between.
+     */
+    private static class ThresholdIndex {
+        private final TreeMap<Double, List<PriceAlert>> levels = new TreeMap<>();
+        
+        void add(PriceAlert alert) {
+            levels.computeIfAbsent(alert.getLevel(), level -> new ArrayList<>(1)).add(alert);
+        }
+        
+        /**
+         * @return true if the index is now empty
+         */
+        boolean remove(PriceAlert alert) {
+            List<PriceAlert> atLevel = levels.get(alert.getLevel());
+            if (atLevel != null && atLevel.remove(alert) && atLevel.isEmpty()) {
+                levels.remove(alert.getLevel());
+            }
+            return levels.isEmpty();
+        }
+        
+        List<PriceAlert> all() {
+            List<PriceAlert> all = new ArrayList<>();
+            for (List<PriceAlert> atLevel : levels.values()) {
+                all.addAll(atLevel);
+            }
+            return all;
+        }
+        
+        /**
+         * Collects alerts whose level lies in (from, to] when rising or [to, from) when falling
+         */
+        void collectCrossed(double from, double to, List<PriceAlert> out, List<Double> values) {
+            if (to > from) {
+                for (List<PriceAlert> atLevel : levels.subMap(from, false, to, true).values()) {
+                    for (PriceAlert alert : atLevel) {
+                        if (alert.getDirection() != PriceAlert.FALLING) {
+                            out.add(alert);
+                            values.add(to);
+                        }
+                    }
+                }
+            } else if (to < from) {
+                for (List<PriceAlert> atLevel : levels.subMap(to, true, from, false).values()) {
+                    for (PriceAlert alert : atLevel) {
+                        if (alert.getDirection() != PriceAlert.RISING) {
+                            out.add(alert);
+                            values.add(to);
+                        }
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,10 @@
+/**
+ * Receives notifications when a price alert fires
+ */
+public interface AlertListener {
+    /**
+     * Called when a tick crosses the alert's level
+     * @param value Price for price alerts, otherwise the % change that crossed the level
+     */
+    void alertTriggered(PriceAlert alert, double value);
+}
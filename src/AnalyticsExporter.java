@@ -0,0 +1,143 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.ZoneId;
+import java.util.List;
+
+/**
+ * Exports portfolios for analytics tools as Parquet files in one directory:
+ * <ul>
+ * <li>holdings.parquet: one row per holding with its cost, value and gain</li>
+ * <li>valuations.parquet: one row per portfolio with its totals</li>
+ * <li>price_history.parquet: every recorded price, ordered by symbol and time</li>
+ * </ul>
+ * Unlike portfolio_data.csv, names and descriptions are exported as they are, with no escaping.
+ * The history is streamed from the PriceHistoryStore in blocks, so exports of any size run in
+ * the memory of one row group.
+ */
+public class AnalyticsExporter {
+    public static final String HOLDINGS_FILE = "holdings.parquet";
+    public static final String VALUATIONS_FILE = "valuations.parquet";
+    public static final String PRICE_HISTORY_FILE = "price_history.parquet";
+    
+    private static final int HISTORY_BLOCK = 4096;
+    private static final LatencyHistogram EXPORT_LATENCY = Metrics.latency("export.analytics");
+    
+    private final List<Portfolio> portfolios;
+    private final PriceHistoryStore priceHistory;
+    
+    /**
+     * @param priceHistory Store to export the price history from, or null to export only holdings and valuations
+     */
+    public AnalyticsExporter(List<Portfolio> portfolios, PriceHistoryStore priceHistory) {
+        this.portfolios = portfolios;
+        this.priceHistory = priceHistory;
+    }
+    
+    /**
+     * Writes every export file into the directory, creating it if needed
+     * @return Rows written per file, in the order holdings, valuations, price history
+     */
+    public long[] exportAll(Path directory) throws IOException {
+        long start = System.nanoTime();
+        Files.createDirectories(directory);
+        long[] rows = new long[3];
+        rows[0] = exportHoldings(directory.resolve(HOLDINGS_FILE));
+        rows[1] = exportValuations(directory.resolve(VALUATIONS_FILE));
+        if (priceHistory != null) {
+            rows[2] = exportPriceHistory(directory.resolve(PRICE_HISTORY_FILE));
+        }
+        EXPORT_LATENCY.recordSince(start);
+        return rows;
+    }
+    
+    public long exportHoldings(Path file) throws IOException {
+        try (ParquetWriter writer = new ParquetWriter(file)
+                .addColumn("portfolio", ParquetWriter.TYPE_STRING)
+                .addColumn("symbol", ParquetWriter.TYPE_STRING)
+                .addColumn("name", ParquetWriter.TYPE_STRING)
+                .addColumn("quantity", ParquetWriter.TYPE_INT)
+                .addColumn("purchase_price", ParquetWriter.TYPE_DOUBLE)
+                .addColumn("current_price", ParquetWriter.TYPE_DOUBLE)
+                .addColumn("cost_basis", ParquetWriter.TYPE_DOUBLE)
+                .addColumn("market_value", ParquetWriter.TYPE_DOUBLE)
+                .addColumn("gain_loss", ParquetWriter.TYPE_DOUBLE)
+                .addColumn("gain_loss_percent", ParquetWriter.TYPE_DOUBLE)
+                .addColumn("last_updated", ParquetWriter.TYPE_TIMESTAMP)) {
+            for (Portfolio portfolio : portfolios) {
+                for (Stock stock : portfolio.getStocks()) {
+                    writer.writeString(portfolio.getName())
+                            .writeString(stock.getSymbol())
+                            .writeString(stock.getName() != null ? stock.getName() : "")
+                            .writeInt(stock.getQuantity())
+                            .writeDouble(stock.getPurchasePrice())
+                            .writeDouble(stock.getCurrentPrice())
+                            .writeDouble(stock.getCostBasis())
+                            .writeDouble(stock.getCurrentValue())
+                            .writeDouble(stock.getGainLoss())
+                            .writeDouble(stock.getPercentageGainLoss())
+                            .writeLong(stock.getLastUpdatedMillis())
+                            .endRow();
+                }
+            }
+            writer.finish();
+            return writer.getRowCount();
+        }
+    }
+    
+    public long exportValuations(Path file) throws IOException {
+        long now = System.currentTimeMillis();
+        try (ParquetWriter writer = new ParquetWriter(file)
+                .addColumn("portfolio", ParquetWriter.TYPE_STRING)
+                .addColumn("description", ParquetWriter.TYPE_STRING)
+                .addColumn("holdings", ParquetWriter.TYPE_INT)
+                .addColumn("total_cost", ParquetWriter.TYPE_DOUBLE)
+                .addColumn("total_value", ParquetWriter.TYPE_DOUBLE)
+                .addColumn("gain_loss", ParquetWriter.TYPE_DOUBLE)
+                .addColumn("gain_loss_percent", ParquetWriter.TYPE_DOUBLE)
+                .addColumn("created_at", ParquetWriter.TYPE_TIMESTAMP)
+                .addColumn("valued_at", ParquetWriter.TYPE_TIMESTAMP)) {
+            for (Portfolio portfolio : portfolios) {
+                double cost = portfolio.getTotalCost();
+                double value = portfolio.getTotalValue();
+                writer.writeString(portfolio.getName())
+                        .writeString(portfolio.getDescription() != null ? portfolio.getDescription() : "")
+                        .writeInt(portfolio.getStocks().size())
+                        .writeDouble(cost)
+                        .writeDouble(value)
+                        .writeDouble(value - cost)
+                        .writeDouble(cost == 0 ? 0 : (value - cost) / cost * 100)
+                        .writeLong(portfolio.getCreatedAt().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli())
+                        .writeLong(now)
+                        .endRow();
+            }
+            writer.finish();
+            return writer.getRowCount();
+        }
+    }
+    
+    /**
+     * Streams each symbol's recorded prices into the file, oldest first
+     */
+    public long exportPriceHistory(Path file) throws IOException {
+        long[] timestamps = new long[HISTORY_BLOCK];
+        double[] prices = new double[HISTORY_BLOCK];
+        try (ParquetWriter writer = new ParquetWriter(file)
+                .addColumn("symbol", ParquetWriter.TYPE_STRING)
+                .addColumn("timestamp", ParquetWriter.TYPE_TIMESTAMP)
+                .addColumn("price", ParquetWriter.TYPE_DOUBLE)) {
+            for (String symbol : priceHistory.getSymbols()) {
+                long index = 0;
+                int count;
+                while ((count = priceHistory.read(symbol, index, timestamps, prices, HISTORY_BLOCK)) > 0) {
+                    for (int i = 0; i < count; i++) {
+                        writer.writeString(symbol).writeLong(timestamps[i]).writeDouble(prices[i]).endRow();
+                    }
+                    index += count;
+                }
+            }
+            writer.finish();
+            return writer.getRowCount();
+        }
+    }
+}
@@ -0,0 +1,33 @@
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight Recorder event covering one HTTP request to the quote API
+ */
+@Name("stockportfolio.ApiRequest")
+@Label("API Request")
+@Category({"Stock Portfolio", "API"})
+@Description("One HTTP request to Alpha Vantage")
+@StackTrace(false)
+public class ApiRequestEvent extends Event {
+    @Label("Function")
+    String function;
+    
+    @Label("Symbol")
+    String symbol;
+    
+    @Label("Response Code")
+    int responseCode;
+    
+    @Label("Response Size")
+    @DataAmount
+    long responseBytes;
+    
+    @Label("Error")
+    String error;
+}
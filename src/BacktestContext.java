@@ -0,0 +1,141 @@
+/**
+ * State of one backtest run as seen by a strategy: latest prices, cash and the simulated
+ * portfolio. Prices and equity are kept in primitive arrays and updated in O(1) per tick.
+ */
+public class BacktestContext {
+    private final String[] symbols;
+    private final double[] prices;
+    private final Stock[] positions;
+    private final Portfolio portfolio;
+    private double cash;
+    private double holdingsValue;
+    private double tradedNotional;
+    private int trades;
+    private long timestamp;
+    private int lastSymbol = -1;
+    
+    BacktestContext(String name, String[] symbols, double initialCash) {
+        this.symbols = symbols.clone();
+        this.prices = new double[symbols.length];
+        this.positions = new Stock[symbols.length];
+        this.portfolio = new Portfolio(name, "Backtest");
+        this.cash = initialCash;
+    }
+    
+    /**
+     * Applies one tick; only the held position of that symbol is revalued
+     */
+    void update(int symbol, long timestamp, double price) {
+        Stock position = positions[symbol];
+        if (position != null) {
+            holdingsValue += position.getQuantity() * (price - prices[symbol]);
+            position.setCurrentPrice(price);
+        }
+        prices[symbol] = price;
+        this.timestamp = timestamp;
+        this.lastSymbol = symbol;
+    }
+    
+    public int getSymbolCount() { return symbols.length; }
+    public String getSymbol(int symbol) { return symbols[symbol]; }
+    public long getTimestamp() { return timestamp; }
+    
+    /**
+     * Symbol of the tick that triggered the current callback
+     */
+    public int getLastSymbol() { return lastSymbol; }
+    
+    /**
+     * Latest price of a symbol, or 0 if it has not traded yet
+     */
+    public double getPrice(int symbol) { return prices[symbol]; }
+    
+    public boolean hasPrice(int symbol) { return prices[symbol] > 0; }
+    
+    public int getQuantity(int symbol) {
+        return positions[symbol] == null ? 0 : positions[symbol].getQuantity();
+    }
+    
+    public double getCash() { return cash; }
+    public double getEquity() { return cash + holdingsValue; }
+    public int getTradeCount() { return trades; }
+    public double getTradedNotional() { return tradedNotional; }
+    
+    /**
+     * The simulated holdings as a regular portfolio
+     */
+    public Portfolio getPortfolio() { return portfolio; }
+    
+    /**
+     * Buys whole shares at the latest price
+     * @return false if the symbol has no price yet or cash is insufficient
+     */
+    public boolean buy(int symbol, int quantity) {
+        double price = prices[symbol];
+        double cost = quantity * price;
+        if (quantity <= 0 || price <= 0 || cost > cash) {
+            return false;
+        }
+        
+        if (positions[symbol] == null) {
+            Stock stock = new Stock(symbols[symbol], symbols[symbol], quantity, price);
+            portfolio.addStock(stock);
+            positions[symbol] = stock;
+        } else {
+            portfolio.addStock(new Stock(symbols[symbol], symbols[symbol], quantity, price));
+        }
+        
+        cash -= cost;
+        holdingsValue += cost;
+        tradedNotional += cost;
+        trades++;
+        return true;
+    }
+    
+    /**
+     * Sells whole shares at the latest price
+     * @return false if fewer shares are held
+     */
+    public boolean sell(int symbol, int quantity) {
+        Stock position = positions[symbol];
+        if (quantity <= 0 || position == null || position.getQuantity() < quantity) {
+            return false;
+        }
+        
+        double proceeds = quantity * prices[symbol];
+        if (position.getQuantity() == quantity) {
+            portfolio.removeStock(position);
+            positions[symbol] = null;
+        } else {
+            position.setQuantity(position.getQuantity() - quantity);
+        }
+        
+        cash += proceeds;
+        holdingsValue -= proceeds;
+        tradedNotional += proceeds;
+        trades++;
+        return true;
+    }
+    
+    /**
+     * Trades whole shares toward target weights of current equity, selling first to free cash.
+     * Symbols without a price are skipped.
+     */
+    public void rebalance(double[] targetWeights) {
+        double equity = getEquity();
+        for (int pass = 0; pass < 2; pass++) {
+            for (int i = 0; i < symbols.length; i++) {
+                if (!hasPrice(i)) {
+                    continue;
+                }
+                int target = (int) Math.floor(equity * targetWeights[i] / prices[i]);
+                int delta = target - getQuantity(i);
+                if (pass == 0 && delta < 0) {
+                    sell(i, -delta);
+                } else if (pass == 1 && delta > 0) {
+                    buy(i, Math.min(delta, (int) Math.floor(cash / prices[i])));
+                }
+            }
+        }
+    }
+}
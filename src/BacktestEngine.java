@@ -0,0 +1,117 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Replays a price feed through trading strategies in a single streaming pass. Per tick the
+ * engine only updates primitive state, so memory is bounded by the number of symbols and the
+ * sampled equity curve. Independent runs share nothing and can execute in parallel.
+ */
+public class BacktestEngine {
+    /**
+     * Opens a fresh feed positioned at the start of the backtest period
+     */
+    public interface FeedFactory {
+        PriceFeed open() throws IOException;
+    }
+    
+    private final String[] symbols;
+    private final FeedFactory feeds;
+    private final double initialCash;
+    private final long sampleIntervalMillis;
+    
+    /**
+     * @param symbols Symbols in the order used by the feed's symbol indexes
+     * @param feeds Source of one feed per run
+     * @param initialCash Starting cash of each run
+     * @param sampleIntervalMillis Spacing of the recorded equity curve, e.g. one day
+     */
+    public BacktestEngine(String[] symbols, FeedFactory feeds, double initialCash, long sampleIntervalMillis) {
+        if (sampleIntervalMillis <= 0) {
+            throw new IllegalArgumentException("Sample interval must be positive");
+        }
+        this.symbols = symbols.clone();
+        this.feeds = feeds;
+        this.initialCash = initialCash;
+        this.sampleIntervalMillis = sampleIntervalMillis;
+    }
+    
+    /**
+     * Creates an engine replaying recorded history between two timestamps
+     */
+    public static BacktestEngine overHistory(PriceHistoryStore store, String[] symbols, long from, long to,
+                                             double initialCash, long sampleIntervalMillis) {
+        return new BacktestEngine(symbols, () -> new HistoryPriceFeed(store, symbols, from, to),
+                initialCash, sampleIntervalMillis);
+    }
+    
+    /**
+     * Runs every strategy against its own feed on the common fork/join pool
+     * @return Results in the order of the strategies
+     */
+    public List<BacktestResult> runAll(List<TradingStrategy> strategies) {
+        return strategies.parallelStream()
+                .map(strategy -> {
+                    try {
+                        return run(strategy);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                })
+                .collect(Collectors.toList());
+    }
+    
+    public BacktestResult run(TradingStrategy strategy) throws IOException {
+        long start = System.nanoTime();
+        PriceFeed feed = feeds.open();
+        BacktestContext context = new BacktestContext(strategy.getName(), symbols, initialCash);
+        strategy.onStart(context);
+        
+        long[] sampleTimes = new long[64];
+        double[] equityCurve = new double[64];
+        double[] drawdownCurve = new double[64];
+        int samples = 0;
+        long nextSample = Long.MIN_VALUE;
+        double peak = initialCash;
+        double maxDrawdown = 0;
+        double equitySum = 0;
+        long ticks = 0;
+        
+        while (feed.next()) {
+            context.update(feed.symbolIndex(), feed.timestamp(), feed.price());
+            strategy.onTick(context);
+            ticks++;
+            
+            double equity = context.getEquity();
+            if (equity > peak) {
+                peak = equity;
+            }
+            double drawdown = peak > 0 ? (peak - equity) / peak : 0;
+            if (drawdown > maxDrawdown) {
+                maxDrawdown = drawdown;
+            }
+            
+            long timestamp = feed.timestamp();
+            if (timestamp >= nextSample) {
+                if (samples == sampleTimes.length) {
+                    sampleTimes = Arrays.copyOf(sampleTimes, samples * 2);
+                    equityCurve = Arrays.copyOf(equityCurve, samples * 2);
+                    drawdownCurve = Arrays.copyOf(drawdownCurve, samples * 2);
+                }
+                sampleTimes[samples] = timestamp;
+                equityCurve[samples] = equity;
+                drawdownCurve[samples] = drawdown;
+                samples++;
+                equitySum += equity;
+                nextSample = Math.floorDiv(timestamp, sampleIntervalMillis) * sampleIntervalMillis + sampleIntervalMillis;
+            }
+        }
+        
+        double averageEquity = samples == 0 ? initialCash : equitySum / samples;
+        double turnover = averageEquity == 0 ? 0 : context.getTradedNotional() / averageEquity;
+        return new BacktestResult(strategy.getName(), initialCash, sampleTimes, equityCurve, drawdownCurve, samples,
+                context.getEquity(), maxDrawdown, turnover, context.getTradeCount(), ticks, System.nanoTime() - start);
+    }
+}
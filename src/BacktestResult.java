@@ -0,0 +1,67 @@
+/**
+ * Outcome of one backtest run: sampled equity and drawdown curves plus summary figures
+ */
+public class BacktestResult {
+    private final String strategyName;
+    private final double initialCash;
+    private final long[] sampleTimes;
+    private final double[] equityCurve;
+    private final double[] drawdownCurve;
+    private final int samples;
+    private final double finalEquity;
+    private final double maxDrawdown;
+    private final double turnover;
+    private final int trades;
+    private final long ticks;
+    private final long elapsedNanos;
+    
+    BacktestResult(String strategyName, double initialCash, long[] sampleTimes, double[] equityCurve,
+                   double[] drawdownCurve, int samples, double finalEquity, double maxDrawdown,
+                   double turnover, int trades, long ticks, long elapsedNanos) {
+        this.strategyName = strategyName;
+        this.initialCash = initialCash;
+        this.sampleTimes = sampleTimes;
+        this.equityCurve = equityCurve;
+        this.drawdownCurve = drawdownCurve;
+        this.samples = samples;
+        this.finalEquity = finalEquity;
+        this.maxDrawdown = maxDrawdown;
+        this.turnover = turnover;
+        this.trades = trades;
+        this.ticks = ticks;
+        this.elapsedNanos = elapsedNanos;
+    }
+    
+    public String getStrategyName() { return strategyName; }
+    public double getInitialCash() { return initialCash; }
+    public double getFinalEquity() { return finalEquity; }
+    
+    public double getTotalReturn() {
+        return initialCash == 0 ? 0 : finalEquity / initialCash - 1;
+    }
+    
+    /**
+     * Largest peak-to-trough decline of equity, as a fraction of the peak
+     */
+    public double getMaxDrawdown() { return maxDrawdown; }
+    
+    /**
+     * Traded notional divided by average equity
+     */
+    public double getTurnover() { return turnover; }
+    
+    public int getTrades() { return trades; }
+    public long getTicks() { return ticks; }
+    public double getElapsedMillis() { return elapsedNanos / 1_000_000.0; }
+    
+    public int getSampleCount() { return samples; }
+    public long getSampleTime(int index) { return sampleTimes[index]; }
+    public double getEquity(int index) { return equityCurve[index]; }
+    public double getDrawdown(int index) { return drawdownCurve[index]; }
+    
+    @Override
+    public String toString() {
+        return String.format("%s: return=%.2f%% maxDrawdown=%.2f%% turnover=%.2f trades=%d ticks=%d (%.1f ms)",
+                strategyName, getTotalReturn() * 100, maxDrawdown * 100, turnover, trades, ticks, getElapsedMillis());
+    }
+}
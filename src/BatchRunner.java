@@ -0,0 +1,388 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Executes portfolio commands from a script without prompts, one command per line:
+ * <pre>
+ * create "Tech Heavy Portfolio" "Growth stocks"
+ * add "Tech Heavy Portfolio" AAPL 150 174.99 "Apple Inc."
+ * remove "Tech Heavy Portfolio" AAPL [quantity]
+ * import "Tech Heavy Portfolio" statement.csv ["symbol=Ticker,quantity=Shares,cost=Cost Basis"]
+ * refresh ["Tech Heavy Portfolio"]
+ * report ["Tech Heavy Portfolio"]
+ * export [directory]
+ * save
+ * </pre>
+ * Blank lines and lines starting with # are ignored. Changes are written to storage once at
+ * the end (or at an explicit save), and refreshes are deferred until prices are next needed so
+ * that consecutive refreshes fetch each symbol once, concurrently. Results, errors and a final
+ * summary are printed as one JSON object per line. An import reads a broker's CSV export with
+ * StatementImporter into the named portfolio (or the portfolios named by its mapped portfolio
+ * column) and queues its symbols for refresh like any other change. An export writes the
+ * holdings, valuations and price history as Parquet files with AnalyticsExporter.
+ */
+public class BatchRunner {
+    private static final int QUOTE_THREADS = 8;
+    private static final LatencyHistogram REPORT_LATENCY = Metrics.latency("report.batch");
+    
+    private final List<Portfolio> portfolios;
+    private final Map<String, Portfolio> portfoliosByName = new HashMap<>();
+    private final PortfolioStore store;
+    private final StockApiService stockAPI;
+    private final PriceHistoryStore priceHistory;
+    private final PrintStream out;
+    private final Set<String> pendingRefresh = new LinkedHashSet<>();
+    
+    private int commands;
+    private int errors;
+    private int created;
+    private int added;
+    private int removed;
+    
+    /**
+     * @param priceHistory Store that refreshed quotes are recorded in, or null
+     */
+    public BatchRunner(List<Portfolio> portfolios, PortfolioStore store, StockApiService stockAPI,
+                       PriceHistoryStore priceHistory, PrintStream out) {
+        this.portfolios = portfolios;
+        this.store = store;
+        this.stockAPI = stockAPI;
+        this.priceHistory = priceHistory;
+        this.out = out;
+        for (Portfolio portfolio : portfolios) {
+            portfoliosByName.put(portfolio.getName(), portfolio);
+        }
+    }
+    
+    /**
+     * Runs every command in the input, then refreshes and saves whatever is still pending
+     * @return Number of commands that failed
+     */
+    public int run(BufferedReader input) throws IOException {
+        long start = System.nanoTime();
+        String line;
+        int lineNumber = 0;
+        while ((line = input.readLine()) != null) {
+            lineNumber++;
+            String trimmed = line.trim();
+            if (trimmed.isEmpty() || trimmed.startsWith("#")) {
+                continue;
+            }
+            commands++;
+            List<String> tokens = tokenize(trimmed);
+            String command = tokens.get(0).toLowerCase(Locale.ROOT);
+            try {
+                execute(command, tokens);
+            } catch (IllegalArgumentException e) {
+                errors++;
+                out.println("{\"line\":" + lineNumber + ",\"command\":" + Json.string(command) +
+                        ",\"status\":\"error\",\"message\":" + Json.string(e.getMessage()) + "}");
+            }
+        }
+        
+        refreshPending();
+        save();
+        out.println("{\"command\":\"summary\",\"commands\":" + commands + ",\"errors\":" + errors +
+                ",\"created\":" + created + ",\"added\":" + added + ",\"removed\":" + removed +
+                ",\"elapsedMs\":" + millis(start) + "}");
+        return errors;
+    }
+    
+    private void execute(String command, List<String> tokens) throws IOException {
+        switch (command) {
+            case "create": {
+                String name = argument(tokens, 1, "portfolio name");
+                if (portfoliosByName.containsKey(name)) {
+                    throw new IllegalArgumentException("Portfolio already exists: " + name);
+                }
+                Portfolio portfolio = new Portfolio(name, tokens.size() > 2 ? tokens.get(2) : "");
+                portfolios.add(portfolio);
+                portfoliosByName.put(name, portfolio);
+                created++;
+                break;
+            }
+            case "add": {
+                Portfolio portfolio = portfolio(argument(tokens, 1, "portfolio name"));
+                String symbol = argument(tokens, 2, "symbol").toUpperCase(Locale.ROOT);
+                int quantity = parseInt(argument(tokens, 3, "quantity"));
+                double price = parseDouble(argument(tokens, 4, "price"));
+                if (quantity <= 0 || price <= 0) {
+                    throw new IllegalArgumentException("Quantity and price must be positive");
+                }
+                String name = tokens.size() > 5 ? tokens.get(5) : symbol;
+                portfolio.addStock(new Stock(symbol, name, quantity, price));
+                added++;
+                break;
+            }
+            case "remove": {
+                Portfolio portfolio = portfolio(argument(tokens, 1, "portfolio name"));
+                String symbol = argument(tokens, 2, "symbol").toUpperCase(Locale.ROOT);
+                Stock stock = portfolio.findStock(symbol);
+                if (stock == null) {
+                    throw new IllegalArgumentException(symbol + " is not in " + portfolio.getName());
+                }
+                int quantity = tokens.size() > 3 ? parseInt(tokens.get(3)) : stock.getQuantity();
+                if (quantity <= 0 || quantity > stock.getQuantity()) {
+                    throw new IllegalArgumentException("Invalid quantity: " + quantity);
+                }
+                if (quantity == stock.getQuantity()) {
+                    portfolio.removeStock(stock);
+                } else {
+                    stock.setQuantity(stock.getQuantity() - quantity);
+                }
+                removed++;
+                break;
+            }
+            case "import": {
+                String name = argument(tokens, 1, "portfolio name");
+                Path file = Paths.get(argument(tokens, 2, "statement file"));
+                StatementImporter importer = new StatementImporter(portfolios, null)
+                        .mapping(StatementImporter.Mapping.parse(tokens.size() > 3 ? tokens.get(3) : null));
+                StatementImporter.Result result;
+                try {
+                    result = importer.importFile(file, name);
+                } catch (IOException e) {
+                    // A missing or unreadable statement fails this command, not the rest of the script
+                    throw new IllegalArgumentException("Cannot read " + file + ": " + e.getMessage());
+                }
+                for (Portfolio portfolio : portfolios) {
+                    portfoliosByName.putIfAbsent(portfolio.getName(), portfolio);
+                }
+                pendingRefresh.addAll(result.getSymbols());
+                created += result.getCreatedPortfolios();
+                added += result.getImported();
+                StringBuilder json = new StringBuilder("{\"command\":\"import\",\"file\":").append(Json.string(file.toString()))
+                        .append(",\"rows\":").append(result.getRows())
+                        .append(",\"imported\":").append(result.getImported())
+                        .append(",\"rejected\":").append(result.getRejected())
+                        .append(",\"skipped\":").append(result.getIgnored())
+                        .append(",\"oversold\":").append(result.getOversold())
+                        .append(",\"symbols\":").append(result.getSymbols().size())
+                        .append(",\"elapsedMs\":").append(result.getElapsedMillis())
+                        .append(",\"errors\":[");
+                for (int i = 0; i < result.getErrors().size(); i++) {
+                    json.append(i > 0 ? "," : "").append(Json.string(result.getErrors().get(i)));
+                }
+                out.println(json.append("]}"));
+                break;
+            }
+            case "refresh":
+                for (Portfolio portfolio : selected(tokens)) {
+                    for (Stock stock : portfolio.getStocks()) {
+                        pendingRefresh.add(stock.getSymbol());
+                    }
+                }
+                break;
+            case "report":
+                refreshPending();
+                report(tokens);
+                break;
+            case "export": {
+                refreshPending();
+                long start = System.nanoTime();
+                Path directory = Paths.get(tokens.size() > 1 ? tokens.get(1) : "export");
+                long[] rows = new AnalyticsExporter(portfolios, priceHistory).exportAll(directory);
+                out.println("{\"command\":\"export\",\"directory\":" + Json.string(directory.toString()) +
+                        ",\"holdings\":" + rows[0] + ",\"portfolios\":" + rows[1] + ",\"prices\":" + rows[2] +
+                        ",\"elapsedMs\":" + millis(start) + "}");
+                break;
+            }
+            case "save":
+                refreshPending();
+                save();
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown command: " + command);
+        }
+    }
+    
+    /**
+     * Fetches all deferred quotes in parallel and applies each to every holding of its symbol
+     */
+    private void refreshPending() {
+        if (pendingRefresh.isEmpty()) {
+            return;
+        }
+        long start = System.nanoTime();
+        List<String> symbols = new ArrayList<>(pendingRefresh);
+        pendingRefresh.clear();
+        
+        Map<String, Future<Stock>> quotes = new LinkedHashMap<>();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(QUOTE_THREADS, symbols.size()));
+        try {
+            for (String symbol : symbols) {
+                quotes.put(symbol, executor.submit(() -> stockAPI.getStockQuote(symbol)));
+            }
+            
+            Map<String, List<Stock>> holdings = new HashMap<>();
+            for (Portfolio portfolio : portfolios) {
+                for (Stock stock : portfolio.getStocks()) {
+                    if (quotes.containsKey(stock.getSymbol())) {
+                        holdings.computeIfAbsent(stock.getSymbol(), s -> new ArrayList<>()).add(stock);
+                    }
+                }
+            }
+            
+            int updated = 0;
+            int failed = 0;
+            for (Map.Entry<String, Future<Stock>> entry : quotes.entrySet()) {
+                Stock quote = entry.getValue().get();
+                if (quote == null) {
+                    failed++;
+                    continue;
+                }
+                updated++;
+                for (Stock stock : holdings.getOrDefault(entry.getKey(), new ArrayList<>())) {
+                    stock.setCurrentPrice(quote.getCurrentPrice());
+                }
+                if (priceHistory != null) {
+                    priceHistory.record(entry.getKey(), System.currentTimeMillis(), quote.getCurrentPrice());
+                }
+            }
+            out.println("{\"command\":\"refresh\",\"symbols\":" + symbols.size() + ",\"updated\":" + updated +
+                    ",\"failed\":" + failed + ",\"elapsedMs\":" + millis(start) + "}");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            refreshFailed("interrupted");
+        } catch (ExecutionException | IOException e) {
+            refreshFailed(e.getMessage());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+    
+    private void refreshFailed(String message) {
+        errors++;
+        out.println("{\"command\":\"refresh\",\"status\":\"error\",\"message\":" + Json.string(String.valueOf(message)) + "}");
+    }
+    
+    private void report(List<String> tokens) {
+        long start = System.nanoTime();
+        List<Portfolio> selected = selected(tokens);
+        for (Portfolio portfolio : selected) {
+            PortfolioStats stats = PortfolioAnalytics.computeStats(portfolio.getStocks());
+            out.println("{\"command\":\"report\",\"portfolio\":" + Json.string(portfolio.getName()) +
+                    ",\"holdings\":" + stats.getHoldingCount() +
+                    ",\"cost\":" + Json.number(stats.getTotalCost()) +
+                    ",\"value\":" + Json.number(stats.getTotalValue()) +
+                    ",\"gainLoss\":" + Json.number(stats.getTotalGainLoss()) +
+                    ",\"gainLossPercent\":" + Json.number(stats.getPercentageGainLoss()) + "}");
+            if (tokens.size() > 1) {
+                for (Stock stock : portfolio.getStocks()) {
+                    out.println("{\"command\":\"holding\",\"portfolio\":" + Json.string(portfolio.getName()) +
+                            ",\"symbol\":" + Json.string(stock.getSymbol()) +
+                            ",\"quantity\":" + stock.getQuantity() +
+                            ",\"purchasePrice\":" + Json.number(stock.getPurchasePrice()) +
+                            ",\"currentPrice\":" + Json.number(stock.getCurrentPrice()) +
+                            ",\"value\":" + Json.number(stock.getCurrentValue()) +
+                            ",\"gainLossPercent\":" + Json.number(stock.getPercentageGainLoss()) + "}");
+                }
+            }
+        }
+        REPORT_LATENCY.recordSince(start);
+    }
+    
+    private void save() throws IOException {
+        long start = System.nanoTime();
+        int written = store.savePortfolios(portfolios);
+        if (written > 0) {
+            out.println("{\"command\":\"save\",\"portfolios\":" + written + ",\"elapsedMs\":" + millis(start) + "}");
+        }
+    }
+    
+    /**
+     * The named portfolio, or all portfolios when no name is given
+     */
+    private List<Portfolio> selected(List<String> tokens) {
+        if (tokens.size() > 1) {
+            List<Portfolio> selected = new ArrayList<>();
+            selected.add(portfolio(tokens.get(1)));
+            return selected;
+        }
+        return portfolios;
+    }
+    
+    private Portfolio portfolio(String name) {
+        Portfolio portfolio = portfoliosByName.get(name);
+        if (portfolio == null) {
+            throw new IllegalArgumentException("No such portfolio: " + name);
+        }
+        return portfolio;
+    }
+    
+    private static String argument(List<String> tokens, int index, String description) {
+        if (index >= tokens.size()) {
+            throw new IllegalArgumentException("Missing " + description);
+        }
+        return tokens.get(index);
+    }
+    
+    private static int parseInt(String value) {
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Not a whole number: " + value);
+        }
+    }
+    
+    private static double parseDouble(String value) {
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Not a number: " + value);
+        }
+    }
+    
+    /**
+     * Splits on whitespace; double quotes group words and \" escapes a quote
+     */
+    static List<String> tokenize(String line) {
+        List<String> tokens = new ArrayList<>();
+        StringBuilder token = new StringBuilder();
+        boolean quoted = false;
+        boolean inToken = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c == '\\' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                token.append('"');
+                inToken = true;
+                i++;
+            } else if (c == '"') {
+                quoted = !quoted;
+                inToken = true;
+            } else if (Character.isWhitespace(c) && !quoted) {
+                if (inToken) {
+                    tokens.add(token.toString());
+                    token.setLength(0);
+                    inToken = false;
+                }
+            } else {
+                token.append(c);
+                inToken = true;
+            }
+        }
+        if (inToken) {
+            tokens.add(token.toString());
+        }
+        return tokens;
+    }
+    
+    private static long millis(long startNanos) {
+        return (System.nanoTime() - startNanos) / 1_000_000;
+    }
+}
@@ -0,0 +1,21 @@
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A monotonically increasing count that many threads can bump without contending
+ */
+public class Counter implements CounterMBean {
+    private final LongAdder count = new LongAdder();
+    
+    public void increment() {
+        count.increment();
+    }
+    
+    public void add(long amount) {
+        count.add(amount);
+    }
+    
+    @Override
+    public long getCount() {
+        return count.sum();
+    }
+}
@@ -0,0 +1,6 @@
+/**
+ * JMX view of a Counter
+ */
+public interface CounterMBean {
+    long getCount();
+}
@@ -0,0 +1,149 @@
+/**
+ * Running means and covariances of a fixed set of return series. A new observation updates the
+ * co-moments in O(d^2) (Welford's method), so the matrix never has to be recomputed from scratch.
+ * Batch construction works on primitive columns with unrolled dot products that the JIT can keep
+ * in registers and vectorize.
+ */
+public class CovarianceAccumulator {
+    private final int dimension;
+    private final double[] means;
+    private final double[] comoments; // Packed lower triangle, row i starts at i * (i + 1) / 2
+    private long count;
+    
+    public CovarianceAccumulator(int dimension) {
+        this.dimension = dimension;
+        this.means = new double[dimension];
+        this.comoments = new double[dimension * (dimension + 1) / 2];
+    }
+    
+    /**
+     * Builds an accumulator from whole columns, one column of returns per series
+     * @param columns columns[i][t] is the return of series i at time t
+     * @param length Number of observations to use from each column
+     */
+    public static CovarianceAccumulator fromColumns(double[][] columns, int length) {
+        int dimension = columns.length;
+        CovarianceAccumulator accumulator = new CovarianceAccumulator(dimension);
+        accumulator.count = length;
+        if (length == 0) {
+            return accumulator;
+        }
+        
+        // Center each column once so every covariance is a plain dot product
+        double[][] centered = new double[dimension][];
+        for (int i = 0; i < dimension; i++) {
+            double mean = sum(columns[i], length) / length;
+            accumulator.means[i] = mean;
+            double[] column = new double[length];
+            for (int t = 0; t < length; t++) {
+                column[t] = columns[i][t] - mean;
+            }
+            centered[i] = column;
+        }
+        
+        for (int i = 0; i < dimension; i++) {
+            int row = i * (i + 1) / 2;
+            for (int j = 0; j <= i; j++) {
+                accumulator.comoments[row + j] = dot(centered[i], centered[j], length);
+            }
+        }
+        return accumulator;
+    }
+    
+    /**
+     * Adds one observation with a value for every series
+     */
+    public void add(double[] observation) {
+        if (observation.length != dimension) {
+            throw new IllegalArgumentException("Expected " + dimension + " values");
+        }
+        
+        count++;
+        double[] deltas = new double[dimension];
+        for (int i = 0; i < dimension; i++) {
+            deltas[i] = observation[i] - means[i];
+            means[i] += deltas[i] / count;
+        }
+        for (int i = 0; i < dimension; i++) {
+            int row = i * (i + 1) / 2;
+            double after = observation[i] - means[i];
+            for (int j = 0; j <= i; j++) {
+                comoments[row + j] += after * deltas[j];
+            }
+        }
+    }
+    
+    public int getDimension() { return dimension; }
+    public long getCount() { return count; }
+    public double getMean(int i) { return means[i]; }
+    
+    /**
+     * Sample covariance of series i and j
+     */
+    public double getCovariance(int i, int j) {
+        if (count < 2) {
+            return 0;
+        }
+        int row = Math.max(i, j);
+        int col = Math.min(i, j);
+        return comoments[row * (row + 1) / 2 + col] / (count - 1);
+    }
+    
+    public double getVolatility(int i) {
+        return Math.sqrt(getCovariance(i, i));
+    }
+    
+    public double[][] getCovarianceMatrix() {
+        double[][] matrix = new double[dimension][dimension];
+        for (int i = 0; i < dimension; i++) {
+            for (int j = 0; j <= i; j++) {
+                matrix[i][j] = getCovariance(i, j);
+                matrix[j][i] = matrix[i][j];
+            }
+        }
+        return matrix;
+    }
+    
+    public double[][] getCorrelationMatrix() {
+        double[][] matrix = new double[dimension][dimension];
+        for (int i = 0; i < dimension; i++) {
+            double volI = getVolatility(i);
+            for (int j = 0; j <= i; j++) {
+                double volJ = getVolatility(j);
+                double correlation = i == j ? 1.0 : (volI == 0 || volJ == 0 ? 0 : getCovariance(i, j) / (volI * volJ));
+                matrix[i][j] = correlation;
+                matrix[j][i] = correlation;
+            }
+        }
+        return matrix;
+    }
+    
+    private static double sum(double[] values, int length) {
+        double total = 0;
+        for (int t = 0; t < length; t++) {
+            total += values[t];
+        }
+        return total;
+    }
+    
+    /**
+     * Dot product with four independent accumulators to break the floating-point dependency chain
+     */
+    static double dot(double[] a, double[] b, int length) {
+        double s0 = 0;
+        double s1 = 0;
+        double s2 = 0;
+        double s3 = 0;
+        int t = 0;
+        for (; t + 3 < length; t += 4) {
+            s0 += a[t] * b[t];
+            s1 += a[t + 1] * b[t + 1];
+            s2 += a[t + 2] * b[t + 2];
+            s3 += a[t + 3] * b[t + 3];
+        }
+        for (; t < length; t++) {
+            s0 += a[t] * b[t];
+        }
+        return (s0 + s1) + (s2 + s3);
+    }
+}
@@ -0,0 +1,227 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Inverted index from symbol to every holding of that symbol across portfolios, with the total
+ * quantity, cost and value per symbol kept up to date as holdings change. A quote for a symbol
+ * can be fanned out to exactly the holdings that need it.
+ */
+public class ExposureIndex implements PortfolioListener {
+    private final Map<String, SymbolEntry> bySymbol = new HashMap<>();
+    private final Map<Stock, Contribution> contributions = new IdentityHashMap<>();
+    
+    public ExposureIndex() {
+    }
+    
+    /**
+     * Creates an index over the given portfolios and starts listening to them
+     */
+    public ExposureIndex(List<Portfolio> portfolios) {
+        for (Portfolio portfolio : portfolios) {
+            addPortfolio(portfolio);
+        }
+    }
+    
+    public synchronized void addPortfolio(Portfolio portfolio) {
+        for (Stock stock : portfolio.getStocks()) {
+            insert(stock);
+        }
+        portfolio.addListener(this);
+    }
+    
+    public synchronized void removePortfolio(Portfolio portfolio) {
+        portfolio.removeListener(this);
+        for (Stock stock : portfolio.getStocks()) {
+            remove(stock);
+        }
+    }
+    
+    @Override
+    public synchronized void holdingAdded(Portfolio portfolio, Stock stock) {
+        insert(stock);
+    }
+    
+    @Override
+    public synchronized void holdingRemoved(Portfolio portfolio, Stock stock) {
+        remove(stock);
+    }
+    
+    @Override
+    public synchronized void holdingChanged(Portfolio portfolio, Stock stock) {
+        Contribution contribution = contributions.get(stock);
+        if (contribution == null) {
+            insert(stock);
+            return;
+        }
+        SymbolEntry entry = contribution.entry;
+        entry.quantity += stock.getQuantity() - contribution.quantity;
+        entry.cost += stock.getCostBasis() - contribution.cost;
+        entry.value += stock.getCurrentValue() - contribution.value;
+        contribution.capture(stock);
+    }
+    
+    /**
+     * Sets the price of every holding of a symbol
+     * @return Number of holdings updated
+     */
+    public int applyPrice(String symbol, double price) {
+        List<Stock> targets;
+        synchronized (this) {
+            SymbolEntry entry = bySymbol.get(symbol.toUpperCase());
+            if (entry == null) {
+                return 0;
+            }
+            targets = new ArrayList<>(entry.holdings);
+        }
+        // Outside the lock: each update notifies the holding's portfolio listeners, including this index
+        for (Stock stock : targets) {
+            stock.setCurrentPrice(price);
+        }
+        return targets.size();
+    }
+    
+    /**
+     * Aggregated exposure to a symbol, or null if no portfolio holds it
+     */
+    public synchronized Exposure getExposure(String symbol) {
+        SymbolEntry entry = bySymbol.get(symbol.toUpperCase());
+        return entry == null ? null : entry.snapshot();
+    }
+    
+    /**
+     * All holdings of a symbol across portfolios
+     */
+    public synchronized List<Stock> getHoldings(String symbol) {
+        SymbolEntry entry = bySymbol.get(symbol.toUpperCase());
+        return entry == null ? new ArrayList<>() : new ArrayList<>(entry.holdings);
+    }
+    
+    public synchronized List<String> getSymbols() {
+        return new ArrayList<>(bySymbol.keySet());
+    }
+    
+    /**
+     * Exposures to every held symbol, largest current value first
+     */
+    public synchronized List<Exposure> getExposures() {
+        List<Exposure> exposures = new ArrayList<>(bySymbol.size());
+        for (SymbolEntry entry : bySymbol.values()) {
+            exposures.add(entry.snapshot());
+        }
+        exposures.sort((a, b) -> Double.compare(b.getTotalValue(), a.getTotalValue()));
+        return exposures;
+    }
+    
+    private void insert(Stock stock) {
+        if (contributions.containsKey(stock)) {
+            return;
+        }
+        String symbol = stock.getSymbol().toUpperCase();
+        SymbolEntry entry = bySymbol.get(symbol);
+        if (entry == null) {
+            entry = new SymbolEntry(symbol);
+            bySymbol.put(symbol, entry);
+        }
+        Contribution contribution = new Contribution(entry);
+        contribution.capture(stock);
+        contributions.put(stock, contribution);
+        entry.holdings.add(stock);
+        entry.quantity += contribution.quantity;
+        entry.cost += contribution.cost;
+        entry.value += contribution.value;
+    }
+    
+    private void remove(Stock stock) {
+        Contribution contribution = contributions.remove(stock);
+        if (contribution == null) {
+            return;
+        }
+        SymbolEntry entry = contribution.entry;
+        for (int i = 0; i < entry.holdings.size(); i++) {
+            if (entry.holdings.get(i) == stock) {
+                entry.holdings.remove(i);
+                break;
+            }
+        }
+        if (entry.holdings.isEmpty()) {
+            bySymbol.remove(entry.symbol);
+            return;
+        }
+        entry.quantity -= contribution.quantity;
+        entry.cost -= contribution.cost;
+        entry.value -= contribution.value;
+    }
+    
+    /**
+     * What one holding currently adds to its symbol's totals
+     */
+    private static class Contribution {
+        final SymbolEntry entry;
+        long quantity;
+        double cost;
+        double value;
+        
+        Contribution(SymbolEntry entry) {
+            this.entry = entry;
+        }
+        
+        void capture(Stock stock) {
+            quantity = stock.getQuantity();
+            cost = stock.getCostBasis();
+            value = stock.getCurrentValue();
+        }
+    }
+    
+    private static class SymbolEntry {
+        final String symbol;
+        final List<Stock> holdings = new ArrayList<>();
+        long quantity;
+        double cost;
+        double value;
+        
+        SymbolEntry(String symbol) {
+            this.symbol = symbol;
+        }
+        
+        Exposure snapshot() {
+            List<Portfolio> portfolios = new ArrayList<>(holdings.size());
+            for (Stock stock : holdings) {
+                portfolios.add(stock.getPortfolio());
+            }
+            return new Exposure(symbol, holdings.size(), portfolios, quantity, cost, value);
+        }
+    }
+    
+    /**
+     * Totals for one symbol at the time it was requested
+     */
+    public static class Exposure {
+        private final String symbol;
+        private final int holdingCount;
+        private final List<Portfolio> portfolios;
+        private final long totalQuantity;
+        private final double totalCost;
+        private final double totalValue;
+        
+        public Exposure(String symbol, int holdingCount, List<Portfolio> portfolios,
+                        long totalQuantity, double totalCost, double totalValue) {
+            this.symbol = symbol;
+            this.holdingCount = holdingCount;
+            this.portfolios = portfolios;
+            this.totalQuantity = totalQuantity;
+            this.totalCost = totalCost;
+            this.totalValue = totalValue;
+        }
+        
+        public String getSymbol() { return symbol; }
+        public int getHoldingCount() { return holdingCount; }
+        public List<Portfolio> getPortfolios() { return portfolios; }
+        public long getTotalQuantity() { return totalQuantity; }
+        public double getTotalCost() { return totalCost; }
+        public double getTotalValue() { return totalValue; }
+        public double getTotalGainLoss() { return totalValue - totalCost; }
+    }
+}
@@ -1,4 +1,8 @@
 import java.io.*;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -6,6 +10,11 @@ import java.util.List;
  * Handles file I/O operations for portfolio data persistence
  */
 public class FileHandler {
+    private static final LatencyHistogram LOAD_LATENCY = Metrics.latency("csv.load");
+    private static final Counter LOAD_BYTES = Metrics.counter("csv.load.bytes");
+    private static final LatencyHistogram SAVE_LATENCY = Metrics.latency("csv.save");
+    private static final Counter SAVE_BYTES = Metrics.counter("csv.save.bytes");
+    
     private final String filePath;
     
     public FileHandler(String filePath) {
@@ -24,48 +33,77 @@ public class FileHandler {
             return portfolios;
         }
         
+        long start = System.nanoTime();
+        PortfolioLoadEvent event = new PortfolioLoadEvent();
+        event.begin();
         try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
-            String line;
-            Portfolio currentPortfolio = null;
+            portfolios = readPortfolios(reader);
+        }
+        long bytes = file.length();
+        LOAD_LATENCY.recordSince(start);
+        LOAD_BYTES.add(bytes);
+        event.end();
+        if (event.shouldCommit()) {
+            event.storage = "csv";
+            event.path = filePath;
+            event.portfolios = portfolios.size();
+            event.holdings = countHoldings(portfolios);
+            event.bytes = bytes;
+            event.commit();
+        }
+        
+        // Freshly loaded portfolios match what is on disk
+        for (Portfolio portfolio : portfolios) {
+            portfolio.markClean();
+        }
+        return portfolios;
+    }
+    
+    /**
+     * Parses portfolios in CSV format, separated by "---" lines
+     */
+    public static List<Portfolio> readPortfolios(BufferedReader reader) throws IOException {
+        List<Portfolio> portfolios = new ArrayList<>();
+        String line;
+        Portfolio currentPortfolio = null;
+        
+        while ((line = reader.readLine()) != null) {
+            if (line.trim().isEmpty()) {
+                continue; // Skip empty lines
+            }
             
-            while ((line = reader.readLine()) != null) {
-                if (line.trim().isEmpty()) {
-                    continue; // Skip empty lines
-                }
-                
-                // Section separator
-                if (line.equals("---")) {
-                    if (currentPortfolio != null) {
-                        portfolios.add(currentPortfolio);
-                    }
-                    currentPortfolio = null;
-                    continue;
-                }
-                
-                // If we don't have a current portfolio, this line is a portfolio header
-                if (currentPortfolio == null) {
-                    String[] portfolioData = line.split(",", 2);
-                    String name = portfolioData[0];
-                    String description = portfolioData.length > 1 ? portfolioData[1].replace(";", ",") : "";
-                    
-                    currentPortfolio = new Portfolio(name, description);
-                } else {
-                    // This is a stock line
-                    try {
-                        Stock stock = Stock.fromCsv(line);
-                        currentPortfolio.addStock(stock);
-                    } catch (IllegalArgumentException e) {
-                        System.err.println("Error parsing stock data: " + e.getMessage());
-                    }
+            // Section separator
+            if (line.equals("---")) {
+                if (currentPortfolio != null) {
+                    portfolios.add(currentPortfolio);
                 }
+                currentPortfolio = null;
+                continue;
             }
             
-            // Add the last portfolio if there is one
-            if (currentPortfolio != null) {
-                portfolios.add(currentPortfolio);
+            // If we don't have a current portfolio, this line is a portfolio header
+            if (currentPortfolio == null) {
+                String[] portfolioData = line.split(",", 2);
+                String name = portfolioData[0];
+                String description = portfolioData.length > 1 ? portfolioData[1].replace(";", ",") : "";
+                
+                currentPortfolio = new Portfolio(name, description);
+            } else {
+                // This is a stock line
+                try {
+                    Stock stock = Stock.fromCsv(line);
+                    currentPortfolio.addStock(stock);
+                } catch (IllegalArgumentException e) {
+                    System.err.println("Error parsing stock data: " + e.getMessage());
+                }
             }
         }
         
+        // Add the last portfolio if there is one
+        if (currentPortfolio != null) {
+            portfolios.add(currentPortfolio);
+        }
+        
         return portfolios;
     }
     
@@ -73,18 +111,65 @@ public class FileHandler {
      * Saves portfolios to a CSV file
      */
     public void savePortfolios(List<Portfolio> portfolios) throws IOException {
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter(filePath))) {
-            for (int i = 0; i < portfolios.size(); i++) {
-                Portfolio portfolio = portfolios.get(i);
-                
-                // Write portfolio data
-                writer.write(portfolio.toCsv());
-                
-                // Add a separator between portfolios
-                if (i < portfolios.size() - 1) {
-                    writer.write("---\n");
-                }
+        Path target = new File(filePath).toPath();
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        long start = System.nanoTime();
+        PortfolioSaveEvent event = new PortfolioSaveEvent();
+        event.begin();
+        try (BufferedWriter writer = Files.newBufferedWriter(temp)) {
+            writePortfolios(writer, portfolios);
+        }
+        long bytes = Files.size(temp);
+        SAVE_BYTES.add(bytes);
+        replaceAtomically(temp, target);
+        SAVE_LATENCY.recordSince(start);
+        event.end();
+        if (event.shouldCommit()) {
+            event.storage = "csv";
+            event.path = filePath;
+            event.portfolios = portfolios.size();
+            event.holdings = countHoldings(portfolios);
+            event.bytes = bytes;
+            event.commit();
+        }
+        for (Portfolio portfolio : portfolios) {
+            portfolio.markClean();
+        }
+    }
+    
+    /**
+     * Writes portfolios in CSV format, separated by "---" lines
+     */
+    public static void writePortfolios(Writer writer, List<Portfolio> portfolios) throws IOException {
+        for (int i = 0; i < portfolios.size(); i++) {
+            Portfolio portfolio = portfolios.get(i);
+            
+            // Write portfolio data
+            writer.write(portfolio.toCsv());
+            
+            // Add a separator between portfolios
+            if (i < portfolios.size() - 1) {
+                writer.write("---\n");
             }
         }
     }
+    
+    static int countHoldings(List<Portfolio> portfolios) {
+        int holdings = 0;
+        for (Portfolio portfolio : portfolios) {
+            holdings += portfolio.getStocks().size();
+        }
+        return holdings;
+    }
+    
+    /**
+     * Moves a fully written temp file over the target so readers never see a partial file
+     */
+    public static void replaceAtomically(Path temp, Path target) throws IOException {
+        try {
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
 }
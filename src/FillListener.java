@@ -0,0 +1,11 @@
+/**
+ * Receives notifications when orders in a MatchingEngine trade
+ */
+public interface FillListener {
+    /**
+     * Called once for each side of every trade, after the order's fill was recorded
+     * @param quantity Shares traded in this fill
+     * @param price Price of this fill, which is the resting order's price
+     */
+    void orderFilled(Order order, int quantity, double price);
+}
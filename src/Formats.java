@@ -0,0 +1,106 @@
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Locale;
+
+/**
+ * Currency and percentage formatting for console output. Unlike a shared DecimalFormat these
+ * methods keep no state, so they can be called from any thread, and the append variants write
+ * straight into a caller's buffer without creating intermediate strings.
+ */
+public final class Formats {
+    private Formats() {
+    }
+    
+    /**
+     * Formats like "$#,##0.00", e.g. $1,234.50 or -$12.00
+     */
+    public static String currency(double value) {
+        return appendCurrency(new StringBuilder(16), value).toString();
+    }
+    
+    /**
+     * Formats a fraction like "0.00%", e.g. 0.1234 as 12.34%
+     */
+    public static String percent(double fraction) {
+        return appendPercent(new StringBuilder(12), fraction).toString();
+    }
+    
+    public static StringBuilder appendCurrency(StringBuilder out, double value) {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            return out.append(value);
+        }
+        double cents = roundScaled(value, 2);
+        if (cents >= 1e17) {
+            // Beyond exact long arithmetic; rare enough to take the slow path
+            return out.append(value < 0 ? "-$" : "$").append(String.format(Locale.ROOT, "%,.2f", Math.abs(value)));
+        }
+        long whole = (long) cents;
+        if (isNegative(value)) {
+            out.append('-');
+        }
+        out.append('$');
+        appendGrouped(out, whole / 100);
+        return appendHundredths(out, whole % 100);
+    }
+    
+    public static StringBuilder appendPercent(StringBuilder out, double fraction) {
+        if (Double.isNaN(fraction) || Double.isInfinite(fraction)) {
+            return out.append(fraction);
+        }
+        double hundredths = roundScaled(fraction, 4);
+        if (hundredths >= 1e17) {
+            return out.append(String.format(Locale.ROOT, "%.2f%%", fraction * 100));
+        }
+        long whole = (long) hundredths;
+        if (isNegative(fraction)) {
+            out.append('-');
+        }
+        out.append(whole / 100);
+        return appendHundredths(out, whole % 100).append('%');
+    }
+    
+    /**
+     * Rounds |value| * 10^digits half-even. Near a tie the scaled double may have been rounded
+     * the wrong way, so the exact binary value decides, as in DecimalFormat.
+     */
+    private static double roundScaled(double value, int digits) {
+        double scaled = Math.abs(value) * (digits == 2 ? 100 : 10_000);
+        double rounded = Math.rint(scaled);
+        if (Math.abs(scaled - rounded) > 0.499) {
+            return new BigDecimal(Math.abs(value)).movePointRight(digits).setScale(0, RoundingMode.HALF_EVEN).doubleValue();
+        }
+        return rounded;
+    }
+    
+    /**
+     * Keeps the sign of values that round to zero, and of -0.0, as DecimalFormat does
+     */
+    private static boolean isNegative(double value) {
+        return Double.doubleToRawLongBits(value) < 0;
+    }
+    
+    private static void appendGrouped(StringBuilder out, long value) {
+        if (value < 1000) {
+            out.append(value);
+            return;
+        }
+        appendGrouped(out, value / 1000);
+        long group = value % 1000;
+        out.append(',');
+        if (group < 100) {
+            out.append('0');
+        }
+        if (group < 10) {
+            out.append('0');
+        }
+        out.append(group);
+    }
+    
+    private static StringBuilder appendHundredths(StringBuilder out, long hundredths) {
+        out.append('.');
+        if (hundredths < 10) {
+            out.append('0');
+        }
+        return out.append(hundredths);
+    }
+}
@@ -0,0 +1,159 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * Replays recorded prices of several symbols from a PriceHistoryStore in timestamp order.
+ * Each symbol is read through a fixed-size block buffer and the symbols are merged with a
+ * small heap, so memory stays constant per symbol no matter how long the history is.
+ */
+public class HistoryPriceFeed implements PriceFeed {
+    private static final int BLOCK_SIZE = 4096;
+    
+    private final PriceHistoryStore store;
+    private final String[] symbols;
+    private final long to;
+    private final long[][] timestamps;
+    private final double[][] prices;
+    private final long[] nextIndex;
+    private final int[] position;
+    private final int[] length;
+    private final int[] heap;
+    private int heapSize;
+    
+    private int currentSymbol = -1;
+    private long currentTimestamp;
+    private double currentPrice;
+    
+    /**
+     * Replays observations with from <= timestamp < to
+     */
+    public HistoryPriceFeed(PriceHistoryStore store, String[] symbols, long from, long to) throws IOException {
+        this.store = store;
+        this.symbols = symbols.clone();
+        this.to = to;
+        int n = symbols.length;
+        this.timestamps = new long[n][BLOCK_SIZE];
+        this.prices = new double[n][BLOCK_SIZE];
+        this.nextIndex = new long[n];
+        this.position = new int[n];
+        this.length = new int[n];
+        this.heap = new int[n];
+        
+        for (int i = 0; i < n; i++) {
+            nextIndex[i] = store.indexOf(symbols[i], from);
+            if (fill(i)) {
+                heap[heapSize] = i;
+                siftUp(heapSize++);
+            }
+        }
+    }
+    
+    public String[] getSymbols() {
+        return symbols.clone();
+    }
+    
+    @Override
+    public boolean next() {
+        if (heapSize == 0) {
+            return false;
+        }
+        
+        int symbol = heap[0];
+        currentSymbol = symbol;
+        currentTimestamp = timestamps[symbol][position[symbol]];
+        currentPrice = prices[symbol][position[symbol]];
+        position[symbol]++;
+        
+        if (position[symbol] < length[symbol] || fill(symbol)) {
+            siftDown(0);
+        } else {
+            heap[0] = heap[--heapSize];
+            siftDown(0);
+        }
+        return true;
+    }
+    
+    @Override
+    public int symbolIndex() {
+        return currentSymbol;
+    }
+    
+    @Override
+    public long timestamp() {
+        return currentTimestamp;
+    }
+    
+    @Override
+    public double price() {
+        return currentPrice;
+    }
+    
+    /**
+     * Loads the next block of a symbol
+     * @return false if the symbol has no more observations before the end time
+     */
+    private boolean fill(int symbol) {
+        int read;
+        try {
+            read = store.read(symbols[symbol], nextIndex[symbol], timestamps[symbol], prices[symbol], BLOCK_SIZE);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        nextIndex[symbol] += read;
+        position[symbol] = 0;
+        
+        // Cut the block at the end of the requested range
+        int valid = 0;
+        while (valid < read && timestamps[symbol][valid] < to) {
+            valid++;
+        }
+        length[symbol] = valid;
+        return valid > 0;
+    }
+    
+    private long head(int symbol) {
+        return timestamps[symbol][position[symbol]];
+    }
+    
+    /**
+     * Earlier timestamps first; ties go to the symbol listed first
+     */
+    private boolean before(int a, int b) {
+        long ta = head(a);
+        long tb = head(b);
+        return ta < tb || (ta == tb && a < b);
+    }
+    
+    private void siftUp(int index) {
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (!before(heap[index], heap[parent])) {
+                break;
+            }
+            int tmp = heap[index];
+            heap[index] = heap[parent];
+            heap[parent] = tmp;
+            index = parent;
+        }
+    }
+    
+    private void siftDown(int index) {
+        while (true) {
+            int left = 2 * index + 1;
+            if (left >= heapSize) {
+                break;
+            }
+            int smallest = left;
+            if (left + 1 < heapSize && before(heap[left + 1], heap[left])) {
+                smallest = left + 1;
+            }
+            if (!before(heap[smallest], heap[index])) {
+                break;
+            }
+            int tmp = heap[index];
+            heap[index] = heap[smallest];
+            heap[smallest] = tmp;
+            index = smallest;
+        }
+    }
+}
@@ -0,0 +1,33 @@
+import java.io.IOException;
+
+/**
+ * Records every tick from market data in the price history
+ */
+public class HistoryTickHandler implements TickHandler {
+    private final MarketDataBus bus;
+    private final PriceHistoryStore priceHistory;
+    private boolean failedInBatch;
+    
+    public HistoryTickHandler(MarketDataBus bus, PriceHistoryStore priceHistory) {
+        this.bus = bus;
+        this.priceHistory = priceHistory;
+    }
+    
+    @Override
+    public void onTick(int symbolId, double price, long timestamp) {
+        try {
+            priceHistory.record(bus.getSymbol(symbolId), timestamp, price);
+        } catch (IOException e) {
+            // Once per batch, so a full disk does not flood the console
+            if (!failedInBatch) {
+                failedInBatch = true;
+                System.out.println("Error recording price history: " + e.getMessage());
+            }
+        }
+    }
+    
+    @Override
+    public void onEndOfBatch() {
+        failedInBatch = false;
+    }
+}
@@ -0,0 +1,344 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * A filter over holdings: a conjunction of conditions on numeric attributes (price, purchase,
+ * quantity, cost, value, gain, gainpct) and categorical ones (symbol, portfolio, tag), with an
+ * optional sort order and limit. Queries are built in code or parsed from text such as
+ * <pre>tag = tech and gainpct < -20 and value > 10k order by value desc limit 10</pre>
+ */
+public class HoldingQuery {
+    public static final String[] NUMERIC_ATTRIBUTES = {"price", "purchase", "quantity", "cost", "value", "gain", "gainpct"};
+    public static final String[] CATEGORICAL_ATTRIBUTES = {"symbol", "portfolio", "tag"};
+    
+    static final int EQUAL = 1;
+    static final int NOT_EQUAL = 2;
+    static final int LESS = 3;
+    static final int LESS_OR_EQUAL = 4;
+    static final int GREATER = 5;
+    static final int GREATER_OR_EQUAL = 6;
+    static final int IN = 7;
+    
+    private final List<Condition> conditions = new ArrayList<>();
+    private String orderBy;
+    private boolean descending;
+    private int limit = Integer.MAX_VALUE;
+    
+    /**
+     * Adds a condition on a numeric attribute
+     * @param operator One of =, !=, <, <=, >, >=
+     */
+    public HoldingQuery where(String attribute, String operator, double value) {
+        int numeric = numericAttribute(attribute);
+        if (numeric < 0) {
+            throw new IllegalArgumentException("Not a numeric attribute: " + attribute);
+        }
+        conditions.add(new Condition(attribute.toLowerCase(Locale.ROOT), numeric, operator(operator), value, null));
+        return this;
+    }
+    
+    /**
+     * Adds an equality or inequality condition on a categorical attribute (case-insensitive)
+     * @param operator = or !=
+     */
+    public HoldingQuery where(String attribute, String operator, String value) {
+        String name = categorical(attribute);
+        int code = operator(operator);
+        if (code != EQUAL && code != NOT_EQUAL) {
+            throw new IllegalArgumentException("Only = and != apply to " + attribute);
+        }
+        conditions.add(new Condition(name, -1, code, 0, Arrays.asList(normalize(value))));
+        return this;
+    }
+    
+    /**
+     * Adds a condition matching any of the given values of a categorical attribute
+     */
+    public HoldingQuery whereIn(String attribute, String... values) {
+        List<String> normalized = new ArrayList<>();
+        for (String value : values) {
+            normalized.add(normalize(value));
+        }
+        conditions.add(new Condition(categorical(attribute), -1, IN, 0, normalized));
+        return this;
+    }
+    
+    /**
+     * Sorts results by a numeric attribute or by symbol
+     */
+    public HoldingQuery orderBy(String attribute, boolean descending) {
+        String name = attribute.toLowerCase(Locale.ROOT);
+        if (numericAttribute(name) < 0 && !name.equals("symbol")) {
+            throw new IllegalArgumentException("Cannot order by " + attribute);
+        }
+        this.orderBy = name;
+        this.descending = descending;
+        return this;
+    }
+    
+    public HoldingQuery limit(int limit) {
+        if (limit < 0) {
+            throw new IllegalArgumentException("Limit must not be negative");
+        }
+        this.limit = limit;
+        return this;
+    }
+    
+    public List<Condition> getConditions() { return conditions; }
+    public String getOrderBy() { return orderBy; }
+    public boolean isDescending() { return descending; }
+    public int getLimit() { return limit; }
+    
+    /**
+     * Parses a query of the form
+     * <pre>[cond {and cond}] [order by attr [asc|desc]] [limit n]</pre>
+     * where a condition is "attr op value" or "attr in (v1, v2, ...)". Numbers may carry a
+     * leading $, a trailing % or a k/m suffix; text values may be quoted.
+     */
+    public static HoldingQuery parse(String text) {
+        List<String> tokens = tokenize(text);
+        HoldingQuery query = new HoldingQuery();
+        int pos = 0;
+        
+        while (pos < tokens.size() && !isKeyword(tokens.get(pos), "order") && !isKeyword(tokens.get(pos), "limit")) {
+            if (!query.conditions.isEmpty()) {
+                expectKeyword(tokens, pos++, "and");
+            }
+            String attribute = token(tokens, pos++);
+            String operator = token(tokens, pos++);
+            if (isKeyword(operator, "in")) {
+                expect(tokens, pos++, "(");
+                List<String> values = new ArrayList<>();
+                while (true) {
+                    values.add(unquote(token(tokens, pos++)));
+                    String next = token(tokens, pos++);
+                    if (next.equals(")")) break;
+                    if (!next.equals(",")) throw new IllegalArgumentException("Expected , or ) but found " + next);
+                }
+                query.whereIn(attribute, values.toArray(new String[0]));
+            } else if (numericAttribute(attribute) >= 0) {
+                query.where(attribute, operator, parseNumber(token(tokens, pos++)));
+            } else {
+                query.where(attribute, operator, unquote(token(tokens, pos++)));
+            }
+        }
+        
+        if (pos < tokens.size() && isKeyword(tokens.get(pos), "order")) {
+            pos++;
+            expectKeyword(tokens, pos++, "by");
+            String attribute = token(tokens, pos++);
+            boolean descending = false;
+            if (pos < tokens.size() && (isKeyword(tokens.get(pos), "asc") || isKeyword(tokens.get(pos), "desc"))) {
+                descending = isKeyword(tokens.get(pos++), "desc");
+            }
+            query.orderBy(attribute, descending);
+        }
+        if (pos < tokens.size() && isKeyword(tokens.get(pos), "limit")) {
+            pos++;
+            query.limit((int) parseNumber(token(tokens, pos++)));
+        }
+        if (pos < tokens.size()) {
+            throw new IllegalArgumentException("Unexpected " + tokens.get(pos));
+        }
+        return query;
+    }
+    
+    /**
+     * Position of a numeric attribute in NUMERIC_ATTRIBUTES, or -1
+     */
+    static int numericAttribute(String attribute) {
+        String name = attribute.toLowerCase(Locale.ROOT);
+        for (int i = 0; i < NUMERIC_ATTRIBUTES.length; i++) {
+            if (NUMERIC_ATTRIBUTES[i].equals(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+    
+    /**
+     * Categorical values are matched in lower case
+     */
+    static String normalize(String value) {
+        return value.trim().toLowerCase(Locale.ROOT);
+    }
+    
+    private static String categorical(String attribute) {
+        String name = attribute.toLowerCase(Locale.ROOT);
+        if (!Arrays.asList(CATEGORICAL_ATTRIBUTES).contains(name)) {
+            throw new IllegalArgumentException("Unknown attribute: " + attribute);
+        }
+        return name;
+    }
+    
+    private static int operator(String operator) {
+        switch (operator) {
+            case "=":
+            case "==":
+                return EQUAL;
+            case "!=":
+            case "<>":
+                return NOT_EQUAL;
+            case "<":
+                return LESS;
+            case "<=":
+                return LESS_OR_EQUAL;
+            case ">":
+                return GREATER;
+            case ">=":
+                return GREATER_OR_EQUAL;
+            default:
+                throw new IllegalArgumentException("Unknown operator: " + operator);
+        }
+    }
+    
+    private static double parseNumber(String token) {
+        String number = token.replace("$", "").replace(",", "").replace("%", "");
+        double scale = 1;
+        if (number.endsWith("k") || number.endsWith("K")) {
+            scale = 1_000;
+            number = number.substring(0, number.length() - 1);
+        } else if (number.endsWith("m") || number.endsWith("M")) {
+            scale = 1_000_000;
+            number = number.substring(0, number.length() - 1);
+        }
+        try {
+            return Double.parseDouble(number) * scale;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Not a number: " + token);
+        }
+    }
+    
+    private static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        int i = 0;
+        while (i < text.length()) {
+            char c = text.charAt(i);
+            if (Character.isWhitespace(c)) {
+                i++;
+            } else if (c == '\'' || c == '"') {
+                int end = text.indexOf(c, i + 1);
+                if (end < 0) {
+                    throw new IllegalArgumentException("Unterminated string");
+                }
+                tokens.add(text.substring(i, end + 1));
+                i = end + 1;
+            } else if (c == '(' || c == ')' || c == ',') {
+                tokens.add(String.valueOf(c));
+                i++;
+            } else if (c == '<' || c == '>' || c == '=' || c == '!') {
+                int end = i + 1;
+                if (end < text.length() && (text.charAt(end) == '=' || (c == '<' && text.charAt(end) == '>'))) {
+                    end++;
+                }
+                tokens.add(text.substring(i, end));
+                i = end;
+            } else {
+                int end = i;
+                while (end < text.length() && !Character.isWhitespace(text.charAt(end))
+                        && "()<>=!,'\"".indexOf(text.charAt(end)) < 0) {
+                    end++;
+                }
+                tokens.add(text.substring(i, end));
+                i = end;
+            }
+        }
+        return tokens;
+    }
+    
+    private static String token(List<String> tokens, int pos) {
+        if (pos >= tokens.size()) {
+            throw new IllegalArgumentException("Unexpected end of query");
+        }
+        return tokens.get(pos);
+    }
+    
+    private static boolean isKeyword(String token, String keyword) {
+        return token.equalsIgnoreCase(keyword);
+    }
+    
+    private static void expectKeyword(List<String> tokens, int pos, String keyword) {
+        String token = token(tokens, pos);
+        if (!isKeyword(token, keyword)) {
+            throw new IllegalArgumentException("Expected " + keyword + " but found " + token);
+        }
+    }
+    
+    private static void expect(List<String> tokens, int pos, String symbol) {
+        String token = token(tokens, pos);
+        if (!token.equals(symbol)) {
+            throw new IllegalArgumentException("Expected " + symbol + " but found " + token);
+        }
+    }
+    
+    private static String unquote(String token) {
+        if (token.length() >= 2 && (token.charAt(0) == '\'' || token.charAt(0) == '"')) {
+            return token.substring(1, token.length() - 1);
+        }
+        return token;
+    }
+    
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder();
+        for (Condition condition : conditions) {
+            if (text.length() > 0) {
+                text.append(" and ");
+            }
+            text.append(condition);
+        }
+        if (orderBy != null) {
+            text.append(text.length() > 0 ? " " : "").append("order by ").append(orderBy).append(descending ? " desc" : " asc");
+        }
+        if (limit != Integer.MAX_VALUE) {
+            text.append(text.length() > 0 ? " " : "").append("limit ").append(limit);
+        }
+        return text.toString();
+    }
+    
+    /**
+     * One condition; numeric conditions carry a number, categorical ones a list of values
+     */
+    public static class Condition {
+        private static final String[] OPERATORS = {"", "=", "!=", "<", "<=", ">", ">=", "in"};
+        
+        final String attribute;
+        final int numericAttribute;
+        final int operator;
+        final double number;
+        final List<String> values;
+        
+        Condition(String attribute, int numericAttribute, int operator, double number, List<String> values) {
+            this.attribute = attribute;
+            this.numericAttribute = numericAttribute;
+            this.operator = operator;
+            this.number = number;
+            this.values = values;
+        }
+        
+        boolean isNumeric() {
+            return numericAttribute >= 0;
+        }
+        
+        boolean matches(double value) {
+            switch (operator) {
+                case EQUAL: return value == number;
+                case NOT_EQUAL: return value != number;
+                case LESS: return value < number;
+                case LESS_OR_EQUAL: return value <= number;
+                case GREATER: return value > number;
+                default: return value >= number;
+            }
+        }
+        
+        @Override
+        public String toString() {
+            if (!isNumeric()) {
+                return attribute + " " + OPERATORS[operator] + " " + (operator == IN ? values.toString() : values.get(0));
+            }
+            return attribute + " " + OPERATORS[operator] + " " + number;
+        }
+    }
+}
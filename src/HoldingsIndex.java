@@ -0,0 +1,432 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+
+/**
+ * Attribute indexes over every holding for answering HoldingQuery filters. Each holding gets a
+ * row number; categorical attributes (symbol, portfolio, tag) map each value to a sorted list of
+ * its rows and numeric attributes are kept in sorted sets. A value's row list costs four bytes
+ * per row holding it, so memory grows with the number of holdings rather than with values times
+ * rows. Categorical conditions are resolved by turning the lists into a bitmap of candidates,
+ * numeric ranges through the sorted sets when the range holds fewer rows than the remaining
+ * candidates, and only what is left is checked row by row.
+ * Portfolio tags are the words of the portfolio name, e.g. "tech" for "Tech Heavy Portfolio".
+ */
+public class HoldingsIndex implements PortfolioListener {
+    private static final int NUMERIC = HoldingQuery.NUMERIC_ATTRIBUTES.length;
+    private static final int SYMBOL = 0;
+    private static final int PORTFOLIO = 1;
+    private static final int TAG = 2;
+    
+    private final Map<Stock, Integer> rows = new IdentityHashMap<>();
+    private Stock[] stocks = new Stock[64];
+    private Portfolio[] owners = new Portfolio[64];
+    private String[] indexedSymbols = new String[64]; // Categorical values each row is filed under
+    private String[] indexedOwnerNames = new String[64];
+    private Key[][] keys = new Key[NUMERIC][64];
+    private final BitSet live = new BitSet();
+    private final BitSet free = new BitSet();
+    private int rowLimit;
+    
+    private final List<Map<String, Postings>> postings = new ArrayList<>();
+    private final List<TreeSet<Key>> sorted = new ArrayList<>();
+    private final Map<Portfolio, String> indexedNames = new IdentityHashMap<>();
+    private String lastPlan = "";
+    
+    public HoldingsIndex() {
+        for (int i = 0; i < HoldingQuery.CATEGORICAL_ATTRIBUTES.length; i++) {
+            postings.add(new HashMap<>());
+        }
+        for (int i = 0; i < NUMERIC; i++) {
+            sorted.add(new TreeSet<>());
+        }
+    }
+    
+    /**
+     * Creates an index over the given portfolios and starts listening to them
+     */
+    public HoldingsIndex(List<Portfolio> portfolios) {
+        this();
+        for (Portfolio portfolio : portfolios) {
+            addPortfolio(portfolio);
+        }
+    }
+    
+    public synchronized void addPortfolio(Portfolio portfolio) {
+        indexedNames.put(portfolio, portfolio.getName());
+        for (Stock stock : portfolio.getStocks()) {
+            insert(portfolio, stock);
+        }
+        portfolio.addListener(this);
+    }
+    
+    public synchronized void removePortfolio(Portfolio portfolio) {
+        portfolio.removeListener(this);
+        for (Stock stock : portfolio.getStocks()) {
+            remove(stock);
+        }
+        indexedNames.remove(portfolio);
+    }
+    
+    @Override
+    public synchronized void holdingAdded(Portfolio portfolio, Stock stock) {
+        insert(portfolio, stock);
+    }
+    
+    @Override
+    public synchronized void holdingRemoved(Portfolio portfolio, Stock stock) {
+        remove(stock);
+    }
+    
+    @Override
+    public synchronized void holdingChanged(Portfolio portfolio, Stock stock) {
+        Integer row = rows.get(stock);
+        if (row == null) {
+            insert(portfolio, stock);
+            return;
+        }
+        for (int attribute = 0; attribute < NUMERIC; attribute++) {
+            double value = numericValue(stock, attribute);
+            Key key = keys[attribute][row];
+            if (Double.compare(value, key.value) != 0) {
+                TreeSet<Key> index = sorted.get(attribute);
+                index.remove(key);
+                key.value = value;
+                index.add(key);
+            }
+        }
+    }
+    
+    public synchronized int size() {
+        return rows.size();
+    }
+    
+    /**
+     * How the last query was answered, one line per condition
+     */
+    public synchronized String getLastPlan() {
+        return lastPlan;
+    }
+    
+    /**
+     * Runs a query and returns the matching holdings
+     */
+    public synchronized List<TopPerformersPanel.StockWithPortfolio> execute(HoldingQuery query) {
+        reindexRenamedPortfolios();
+        StringBuilder plan = new StringBuilder();
+        BitSet candidates = (BitSet) live.clone();
+        
+        // Categorical conditions first: the rows of each value, then one bitmap operation
+        List<HoldingQuery.Condition> numeric = new ArrayList<>();
+        for (HoldingQuery.Condition condition : query.getConditions()) {
+            if (condition.isNumeric()) {
+                numeric.add(condition);
+                continue;
+            }
+            Map<String, Postings> byValue = postings.get(categoricalAttribute(condition.attribute));
+            BitSet matches = new BitSet();
+            for (String value : condition.values) {
+                Postings rowsOfValue = byValue.get(value);
+                if (rowsOfValue != null) {
+                    rowsOfValue.setAll(matches);
+                }
+            }
+            if (condition.operator == HoldingQuery.NOT_EQUAL) {
+                candidates.andNot(matches);
+            } else {
+                candidates.and(matches);
+            }
+            plan.append(condition).append(": bitmap, ").append(candidates.cardinality()).append(" rows\n");
+        }
+        
+        // Numeric ranges through the sorted index while the range is smaller than the candidates
+        List<HoldingQuery.Condition> residual = new ArrayList<>();
+        for (HoldingQuery.Condition condition : numeric) {
+            BitSet matches = condition.operator == HoldingQuery.NOT_EQUAL ? null
+                    : rangeScan(condition, candidates.cardinality());
+            if (matches == null) {
+                residual.add(condition);
+            } else {
+                candidates.and(matches);
+                plan.append(condition).append(": index range, ").append(candidates.cardinality()).append(" rows\n");
+            }
+        }
+        
+        // Whatever could not use an index is checked on the surviving rows only
+        if (!residual.isEmpty()) {
+            int checked = candidates.cardinality();
+            for (int row = candidates.nextSetBit(0); row >= 0; row = candidates.nextSetBit(row + 1)) {
+                for (HoldingQuery.Condition condition : residual) {
+                    if (!condition.matches(keys[condition.numericAttribute][row].value)) {
+                        candidates.clear(row);
+                        break;
+                    }
+                }
+            }
+            for (HoldingQuery.Condition condition : residual) {
+                plan.append(condition).append(": filter ").append(checked).append(" rows\n");
+            }
+        }
+        if (query.getConditions().isEmpty()) {
+            plan.append("all ").append(candidates.cardinality()).append(" rows\n");
+        }
+        
+        List<Integer> matched = new ArrayList<>(candidates.cardinality());
+        for (int row = candidates.nextSetBit(0); row >= 0; row = candidates.nextSetBit(row + 1)) {
+            matched.add(row);
+        }
+        if (query.getOrderBy() != null) {
+            Comparator<Integer> order;
+            int attribute = HoldingQuery.numericAttribute(query.getOrderBy());
+            if (attribute >= 0) {
+                order = Comparator.comparingDouble(row -> keys[attribute][row].value);
+            } else {
+                order = Comparator.comparing(row -> stocks[row].getSymbol());
+            }
+            matched.sort(query.isDescending() ? order.reversed() : order);
+        }
+        
+        int count = Math.min(matched.size(), query.getLimit());
+        List<TopPerformersPanel.StockWithPortfolio> result = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int row = matched.get(i);
+            result.add(new TopPerformersPanel.StockWithPortfolio(stocks[row], owners[row].getName()));
+        }
+        lastPlan = plan.toString();
+        return result;
+    }
+    
+    /**
+     * Rows within a numeric condition's range, or null if the range holds more than maxRows
+     */
+    private BitSet rangeScan(HoldingQuery.Condition condition, int maxRows) {
+        TreeSet<Key> index = sorted.get(condition.numericAttribute);
+        Key low = new Key(condition.number, -1);
+        Key high = new Key(condition.number, Integer.MAX_VALUE);
+        NavigableSet<Key> range;
+        switch (condition.operator) {
+            case HoldingQuery.EQUAL:
+                range = index.subSet(low, true, high, true);
+                break;
+            case HoldingQuery.LESS:
+                range = index.headSet(low, false);
+                break;
+            case HoldingQuery.LESS_OR_EQUAL:
+                range = index.headSet(high, true);
+                break;
+            case HoldingQuery.GREATER:
+                range = index.tailSet(high, false);
+                break;
+            default:
+                range = index.tailSet(low, true);
+        }
+        
+        BitSet matches = new BitSet();
+        int count = 0;
+        for (Key key : range) {
+            if (++count > maxRows) {
+                return null;
+            }
+            matches.set(key.row);
+        }
+        return matches;
+    }
+    
+    private void insert(Portfolio portfolio, Stock stock) {
+        if (rows.containsKey(stock)) {
+            return;
+        }
+        int row = free.isEmpty() ? rowLimit++ : free.nextSetBit(0);
+        free.clear(row);
+        ensureCapacity(row + 1);
+        rows.put(stock, row);
+        stocks[row] = stock;
+        owners[row] = portfolio;
+        live.set(row);
+        
+        for (int attribute = 0; attribute < NUMERIC; attribute++) {
+            Key key = new Key(numericValue(stock, attribute), row);
+            keys[attribute][row] = key;
+            sorted.get(attribute).add(key);
+        }
+        indexedSymbols[row] = stock.getSymbol();
+        indexedOwnerNames[row] = portfolio.getName();
+        postings(SYMBOL, stock.getSymbol()).add(row);
+        postings(PORTFOLIO, portfolio.getName()).add(row);
+        for (String tag : tags(portfolio.getName())) {
+            postings(TAG, tag).add(row);
+        }
+    }
+    
+    private void remove(Stock stock) {
+        Integer boxed = rows.remove(stock);
+        if (boxed == null) {
+            return;
+        }
+        int row = boxed;
+        for (int attribute = 0; attribute < NUMERIC; attribute++) {
+            sorted.get(attribute).remove(keys[attribute][row]);
+            keys[attribute][row] = null;
+        }
+        removeRow(SYMBOL, indexedSymbols[row], row);
+        removeRow(PORTFOLIO, indexedOwnerNames[row], row);
+        for (String tag : tags(indexedOwnerNames[row])) {
+            removeRow(TAG, tag, row);
+        }
+        stocks[row] = null;
+        indexedSymbols[row] = null;
+        indexedOwnerNames[row] = null;
+        owners[row] = null;
+        live.clear(row);
+        free.set(row);
+    }
+    
+    /**
+     * Portfolio names can change without notifying listeners; re-file the holdings of any
+     * portfolio whose name differs from the one it was indexed under
+     */
+    private void reindexRenamedPortfolios() {
+        for (Map.Entry<Portfolio, String> entry : indexedNames.entrySet()) {
+            Portfolio portfolio = entry.getKey();
+            if (portfolio.getName().equals(entry.getValue())) {
+                continue;
+            }
+            for (Stock stock : portfolio.getStocks()) {
+                remove(stock);
+                insert(portfolio, stock);
+            }
+            entry.setValue(portfolio.getName());
+        }
+    }
+    
+    private Postings postings(int attribute, String value) {
+        return postings.get(attribute).computeIfAbsent(HoldingQuery.normalize(value), v -> new Postings());
+    }
+    
+    private void removeRow(int attribute, String value, int row) {
+        Map<String, Postings> byValue = postings.get(attribute);
+        String normalized = HoldingQuery.normalize(value);
+        Postings rowsOfValue = byValue.get(normalized);
+        if (rowsOfValue != null) {
+            rowsOfValue.remove(row);
+            if (rowsOfValue.size == 0) {
+                byValue.remove(normalized);
+            }
+        }
+    }
+    
+    private void ensureCapacity(int capacity) {
+        if (capacity <= stocks.length) {
+            return;
+        }
+        int size = Math.max(capacity, stocks.length * 2);
+        stocks = Arrays.copyOf(stocks, size);
+        owners = Arrays.copyOf(owners, size);
+        indexedSymbols = Arrays.copyOf(indexedSymbols, size);
+        indexedOwnerNames = Arrays.copyOf(indexedOwnerNames, size);
+        for (int attribute = 0; attribute < NUMERIC; attribute++) {
+            keys[attribute] = Arrays.copyOf(keys[attribute], size);
+        }
+    }
+    
+    private static int categoricalAttribute(String attribute) {
+        return Arrays.asList(HoldingQuery.CATEGORICAL_ATTRIBUTES).indexOf(attribute);
+    }
+    
+    /**
+     * Value of a holding for an attribute, in the order of HoldingQuery.NUMERIC_ATTRIBUTES
+     */
+    private static double numericValue(Stock stock, int attribute) {
+        switch (attribute) {
+            case 0: return stock.getCurrentPrice();
+            case 1: return stock.getPurchasePrice();
+            case 2: return stock.getQuantity();
+            case 3: return stock.getCostBasis();
+            case 4: return stock.getCurrentValue();
+            case 5: return stock.getGainLoss();
+            default: return stock.getPercentageGainLoss();
+        }
+    }
+    
+    /**
+     * Words of a portfolio name other than "portfolio", lower case
+     */
+    static List<String> tags(String portfolioName) {
+        List<String> tags = new ArrayList<>();
+        for (String word : portfolioName.toLowerCase(Locale.ROOT).split("[^a-z0-9-]+")) {
+            if (!word.isEmpty() && !word.equals("portfolio") && !tags.contains(word)) {
+                tags.add(word);
+            }
+        }
+        return tags;
+    }
+    
+    /**
+     * Rows holding one categorical value, in ascending order. New rows usually have the highest
+     * number and are appended; reused rows and removals shift the rows after them.
+     */
+    private static final class Postings {
+        private int[] rows = new int[4];
+        private int size;
+        
+        void add(int row) {
+            int index = size == 0 || rows[size - 1] < row ? size : Arrays.binarySearch(rows, 0, size, row);
+            if (index >= 0 && index < size) {
+                return; // Already listed
+            }
+            index = index < 0 ? -index - 1 : index;
+            if (size == rows.length) {
+                rows = Arrays.copyOf(rows, size * 2);
+            }
+            System.arraycopy(rows, index, rows, index + 1, size - index);
+            rows[index] = row;
+            size++;
+        }
+        
+        void remove(int row) {
+            int index = Arrays.binarySearch(rows, 0, size, row);
+            if (index < 0) {
+                return;
+            }
+            System.arraycopy(rows, index + 1, rows, index, size - index - 1);
+            size--;
+            if (rows.length > 16 && size < rows.length / 4) {
+                rows = Arrays.copyOf(rows, rows.length / 2);
+            }
+        }
+        
+        void setAll(BitSet bits) {
+            for (int i = 0; i < size; i++) {
+                bits.set(rows[i]);
+            }
+        }
+    }
+    
+    /**
+     * Position of a row in a sorted numeric index; the value is updated in place while the key
+     * is out of the set
+     */
+    private static final class Key implements Comparable<Key> {
+        private double value;
+        private final int row;
+        
+        Key(double value, int row) {
+            this.value = value;
+            this.row = row;
+        }
+        
+        @Override
+        public int compareTo(Key other) {
+            int cmp = Double.compare(value, other.value);
+            return cmp != 0 ? cmp : Integer.compare(row, other.row);
+        }
+    }
+}
@@ -0,0 +1,57 @@
+import java.util.Arrays;
+
+/**
+ * Values holdings from market data. Within a batch only the last price of each symbol matters,
+ * so ticks are coalesced into a per-symbol slot and each symbol that moved is applied once at the
+ * end of the batch through the ExposureIndex. The holdings' portfolio listeners, such as the
+ * rankings and the alert engine, then see one change per holding per batch however many ticks
+ * arrived for it.
+ */
+public class HoldingsTickHandler implements TickHandler {
+    private final MarketDataBus bus;
+    private final ExposureIndex exposureIndex;
+    private double[] latestPrices = new double[64];
+    private boolean[] moved = new boolean[64];
+    private int[] movedSymbols = new int[64];
+    private int movedCount;
+    private long appliedCount;
+    
+    public HoldingsTickHandler(MarketDataBus bus, ExposureIndex exposureIndex) {
+        this.bus = bus;
+        this.exposureIndex = exposureIndex;
+    }
+    
+    @Override
+    public void onTick(int symbolId, double price, long timestamp) {
+        if (symbolId >= moved.length) {
+            // Grows with the symbol universe, not per tick
+            int length = Math.max(symbolId + 1, moved.length * 2);
+            latestPrices = Arrays.copyOf(latestPrices, length);
+            moved = Arrays.copyOf(moved, length);
+            movedSymbols = Arrays.copyOf(movedSymbols, length);
+        }
+        if (!moved[symbolId]) {
+            moved[symbolId] = true;
+            movedSymbols[movedCount++] = symbolId;
+        }
+        latestPrices[symbolId] = price;
+    }
+    
+    @Override
+    public void onEndOfBatch() {
+        for (int i = 0; i < movedCount; i++) {
+            int symbolId = movedSymbols[i];
+            moved[symbolId] = false;
+            exposureIndex.applyPrice(bus.getSymbol(symbolId), latestPrices[symbolId]);
+        }
+        appliedCount += movedCount;
+        movedCount = 0;
+    }
+    
+    /**
+     * Symbol prices applied to holdings so far, after coalescing
+     */
+    public long getAppliedCount() {
+        return appliedCount;
+    }
+}
@@ -0,0 +1,157 @@
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Records non-negative values such as latencies in nanoseconds or sizes in bytes into
+ * log-linear buckets, in the manner of HdrHistogram: values below 128 get a bucket each and
+ * every power of two above that is split into 64 buckets, so any recorded value is reported
+ * within 1.6% using a fixed 30 KB of counts. Recording is a few atomic increments with no
+ * locks or allocation; percentiles are computed from the counts when asked for.
+ */
+public class LatencyHistogram implements LatencyHistogramMBean {
+    private static final int SUB_BUCKET_BITS = 7;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int HALF_SUB_BUCKETS = SUB_BUCKETS / 2;
+    private static final int BUCKETS = SUB_BUCKETS + (Long.SIZE - SUB_BUCKET_BITS) * HALF_SUB_BUCKETS;
+    
+    private final String unit;
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+    
+    /**
+     * @param unit Unit of the recorded values, for display ("ns", "bytes", ...)
+     */
+    public LatencyHistogram(String unit) {
+        this.unit = unit;
+    }
+    
+    /**
+     * Records one value; negative values are recorded as zero
+     */
+    public void record(long value) {
+        long v = Math.max(0, value);
+        counts.incrementAndGet(bucketOf(v));
+        count.increment();
+        sum.add(v);
+        long current = max.get();
+        while (v > current && !max.compareAndSet(current, v)) {
+            current = max.get();
+        }
+    }
+    
+    /**
+     * Records the nanoseconds elapsed since a System.nanoTime() reading
+     */
+    public void recordSince(long startNanos) {
+        record(System.nanoTime() - startNanos);
+    }
+    
+    /**
+     * Value at or below which the given fraction of recorded values fall, as the midpoint of
+     * the bucket holding it; 0 if nothing was recorded
+     * @param percentile Percentile between 0 and 100
+     */
+    public long getValueAtPercentile(double percentile) {
+        long total = 0;
+        long[] snapshot = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = counts.get(i);
+            total += snapshot[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(Math.min(100, Math.max(0, percentile)) / 100 * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return Math.min(max.get(), lowestValueOf(i) + (highestValueOf(i) - lowestValueOf(i)) / 2);
+            }
+        }
+        return max.get();
+    }
+    
+    @Override
+    public String getUnit() { return unit; }
+    
+    @Override
+    public long getCount() { return count.sum(); }
+    
+    @Override
+    public double getMean() {
+        long n = count.sum();
+        return n == 0 ? 0 : (double) sum.sum() / n;
+    }
+    
+    @Override
+    public long getMax() { return max.get(); }
+    
+    @Override
+    public long get50thPercentile() { return getValueAtPercentile(50); }
+    
+    @Override
+    public long get90thPercentile() { return getValueAtPercentile(90); }
+    
+    @Override
+    public long get99thPercentile() { return getValueAtPercentile(99); }
+    
+    @Override
+    public long get999thPercentile() { return getValueAtPercentile(99.9); }
+    
+    /**
+     * Clears all recorded values. Values recorded concurrently may be partly kept.
+     */
+    @Override
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts.set(i, 0);
+        }
+        count.reset();
+        sum.reset();
+        max.set(0);
+    }
+    
+    static int bucketOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int shift = (63 - Long.numberOfLeadingZeros(value)) - (SUB_BUCKET_BITS - 1);
+        int mantissa = (int) (value >>> shift); // In [64, 128)
+        return SUB_BUCKETS + (shift - 1) * HALF_SUB_BUCKETS + (mantissa - HALF_SUB_BUCKETS);
+    }
+    
+    static long lowestValueOf(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int k = bucket - SUB_BUCKETS;
+        int shift = k / HALF_SUB_BUCKETS + 1;
+        long mantissa = k % HALF_SUB_BUCKETS + HALF_SUB_BUCKETS;
+        return mantissa << shift;
+    }
+    
+    static long highestValueOf(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        return lowestValueOf(bucket) + (1L << ((bucket - SUB_BUCKETS) / HALF_SUB_BUCKETS + 1)) - 1;
+    }
+    
+    /**
+     * One-line summary; nanosecond histograms are shown in milliseconds
+     */
+    @Override
+    public String toString() {
+        boolean nanos = unit.equals("ns");
+        double scale = nanos ? 1e6 : 1;
+        String shownUnit = nanos ? "ms" : unit;
+        return String.format(Locale.ROOT, "count=%d mean=%.3f p50=%.3f p90=%.3f p99=%.3f p99.9=%.3f max=%.3f %s",
+                getCount(), getMean() / scale, get50thPercentile() / scale, get90thPercentile() / scale,
+                get99thPercentile() / scale, get999thPercentile() / scale, getMax() / scale, shownUnit);
+    }
+}
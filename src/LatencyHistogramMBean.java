@@ -0,0 +1,14 @@
+/**
+ * JMX view of a LatencyHistogram; values are in the histogram's unit
+ */
+public interface LatencyHistogramMBean {
+    String getUnit();
+    long getCount();
+    double getMean();
+    long getMax();
+    long get50thPercentile();
+    long get90thPercentile();
+    long get99thPercentile();
+    long get999thPercentile();
+    void reset();
+}
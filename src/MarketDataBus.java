@@ -0,0 +1,394 @@
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Fans price ticks out from one producer to several consumers through a preallocated ring.
+ * A tick is a symbol id, a price and a timestamp, held in three parallel primitive arrays, so
+ * publishing and consuming allocate nothing. Each consumer runs its TickHandler on its own
+ * thread and takes everything published since its last batch at once, so a slow consumer
+ * catches up in larger batches rather than falling further behind. When the slowest consumer is
+ * a whole ring behind, publish waits for it. An idle consumer spins, then yields, then parks for
+ * doubling intervals; publish wakes parked consumers, so a quiet bus costs next to no CPU.
+ * <p>
+ * Only one thread may publish at a time. Consumers are added before start() and ticks are
+ * published after it; close() lets the consumers finish the ticks already published and stops
+ * their threads.
+ */
+public class MarketDataBus implements AutoCloseable {
+    public static final int DEFAULT_CAPACITY = 1 << 16;
+    
+    private static final int SPIN_TRIES = 100;
+    private static final int YIELD_TRIES = 200;
+    private static final long MIN_PARK_NANOS = 50_000;
+    private static final long MAX_WAIT_PARK_NANOS = 1_000_000; // Waiting on busy consumers, which do not wake us
+    private static final long MAX_IDLE_PARK_NANOS = 10_000_000; // Bounds the delay of a wake-up lost to a race
+    private static final int MAX_PARK_DOUBLINGS = 10;
+    private static final Counter BACK_PRESSURE_WAITS = Metrics.counter("marketdata.backpressure");
+    
+    private final int capacity;
+    private final int mask;
+    private final int maxBatch;
+    private final int[] symbolIds;
+    private final double[] prices;
+    private final long[] timestamps;
+    private final Sequence cursor = new Sequence();
+    private final List<Consumer> consumers = new ArrayList<>();
+    private final Map<String, Integer> ids = new ConcurrentHashMap<>();
+    private volatile String[] symbols = new String[0];
+    private volatile boolean running;
+    private volatile Sequence[] gating = new Sequence[0];
+    private final AtomicInteger parkedConsumers = new AtomicInteger();
+    
+    // Producer state, only touched by the publishing thread
+    private long published = -1;
+    private long cachedGatingSequence = -1;
+    
+    public MarketDataBus() {
+        this(DEFAULT_CAPACITY);
+    }
+    
+    /**
+     * @param capacity Ticks the ring holds, rounded up to a power of two
+     */
+    public MarketDataBus(int capacity) {
+        if (capacity <= 0 || capacity > 1 << 30) {
+            throw new IllegalArgumentException("Capacity must be between 1 and 2^30");
+        }
+        int size = 1;
+        while (size < capacity) {
+            size <<= 1;
+        }
+        this.capacity = size;
+        this.mask = size - 1;
+        this.maxBatch = Math.max(1, size / 4);
+        this.symbolIds = new int[size];
+        this.prices = new double[size];
+        this.timestamps = new long[size];
+    }
+    
+    /**
+     * Adds a consumer that will receive every tick published after start()
+     * @param name Names the consumer's thread and its batch size histogram
+     */
+    public synchronized Consumer addConsumer(String name, TickHandler handler) {
+        if (running) {
+            throw new IllegalStateException("Consumers must be added before the bus is started");
+        }
+        Consumer consumer = new Consumer(name, handler);
+        consumers.add(consumer);
+        return consumer;
+    }
+    
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        Sequence[] sequences = new Sequence[consumers.size()];
+        for (int i = 0; i < sequences.length; i++) {
+            sequences[i] = consumers.get(i).sequence;
+        }
+        gating = sequences;
+        running = true;
+        for (Consumer consumer : consumers) {
+            consumer.thread.start();
+        }
+    }
+    
+    /**
+     * Id of a symbol, registering it on first use. Ids are dense from 0, so handlers can keep
+     * per-symbol state in arrays.
+     */
+    public int symbolId(String symbol) {
+        Integer id = ids.get(symbol);
+        if (id != null) {
+            return id;
+        }
+        return register(symbol.toUpperCase());
+    }
+    
+    private synchronized int register(String symbol) {
+        Integer id = ids.get(symbol);
+        if (id == null) {
+            String[] grown = Arrays.copyOf(symbols, symbols.length + 1);
+            grown[symbols.length] = symbol;
+            id = symbols.length;
+            symbols = grown;
+            ids.put(symbol, id);
+        }
+        return id;
+    }
+    
+    public String getSymbol(int symbolId) {
+        return symbols[symbolId];
+    }
+    
+    public int getSymbolCount() {
+        return symbols.length;
+    }
+    
+    public long publish(String symbol, double price, long timestamp) {
+        return publish(symbolId(symbol), price, timestamp);
+    }
+    
+    /**
+     * Appends a tick, waiting while the slowest consumer is a full ring behind
+     * @return Sequence of the tick, for awaitProcessed
+     */
+    public long publish(int symbolId, double price, long timestamp) {
+        long next = published + 1;
+        long wrapPoint = next - capacity;
+        if (wrapPoint > cachedGatingSequence) {
+            long minimum = minimumSequence(published);
+            if (wrapPoint > minimum) {
+                BACK_PRESSURE_WAITS.increment();
+                int idle = 0;
+                while (wrapPoint > (minimum = minimumSequence(published))) {
+                    idle = idle(idle, MAX_WAIT_PARK_NANOS);
+                }
+            }
+            cachedGatingSequence = minimum;
+        }
+        int slot = (int) next & mask;
+        symbolIds[slot] = symbolId;
+        prices[slot] = price;
+        timestamps[slot] = timestamp;
+        published = next;
+        cursor.setRelease(next);
+        if (parkedConsumers.get() > 0) {
+            wakeConsumers();
+        }
+        return next;
+    }
+    
+    private void wakeConsumers() {
+        for (Consumer consumer : consumers) {
+            if (consumer.parked) {
+                LockSupport.unpark(consumer.thread);
+            }
+        }
+    }
+    
+    /**
+     * Waits until every consumer has handled the tick with the given sequence and all before it
+     */
+    public void awaitProcessed(long sequence) {
+        int idle = 0;
+        while (minimumSequence(sequence) < sequence) {
+            idle = idle(idle, MAX_WAIT_PARK_NANOS);
+        }
+    }
+    
+    /**
+     * Waits until every consumer has handled everything published so far
+     */
+    public void drain() {
+        awaitProcessed(cursor.getAcquire());
+    }
+    
+    /**
+     * Stops the consumers once they have handled every tick already published
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (!running) {
+                return;
+            }
+            running = false;
+        }
+        for (Consumer consumer : consumers) {
+            LockSupport.unpark(consumer.thread);
+        }
+        for (Consumer consumer : consumers) {
+            boolean interrupted = false;
+            while (consumer.thread.isAlive()) {
+                try {
+                    consumer.thread.join();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+    
+    public int getCapacity() { return capacity; }
+    public long getPublishedCount() { return cursor.getAcquire() + 1; }
+    
+    public synchronized List<Consumer> getConsumers() {
+        return new ArrayList<>(consumers);
+    }
+    
+    /**
+     * Lowest sequence handled by any consumer, or the default when there are none
+     */
+    private long minimumSequence(long defaultSequence) {
+        long minimum = defaultSequence;
+        for (Sequence sequence : gating) {
+            minimum = Math.min(minimum, sequence.getAcquire());
+        }
+        return minimum;
+    }
+    
+    /**
+     * Backs off progressively: spins first, then yields, then parks for twice as long each time
+     * up to the given limit
+     * @return The next try count
+     */
+    private static int idle(int tries, long maxParkNanos) {
+        if (tries < SPIN_TRIES) {
+            Thread.onSpinWait();
+        } else if (tries < YIELD_TRIES) {
+            Thread.yield();
+        } else {
+            LockSupport.parkNanos(parkNanos(tries, maxParkNanos));
+            return Math.min(tries + 1, YIELD_TRIES + MAX_PARK_DOUBLINGS);
+        }
+        return tries + 1;
+    }
+    
+    private static long parkNanos(int tries, long maxParkNanos) {
+        return Math.min(maxParkNanos, MIN_PARK_NANOS << (tries - YIELD_TRIES));
+    }
+    
+    /**
+     * One handler with its thread and the sequence of the last tick it handled
+     */
+    public final class Consumer {
+        private final String name;
+        private final TickHandler handler;
+        private final Sequence sequence = new Sequence();
+        private final Thread thread;
+        private final LatencyHistogram batchSizes;
+        private volatile boolean parked;
+        private volatile long batchCount;
+        private volatile long errorCount;
+        
+        Consumer(String name, TickHandler handler) {
+            this.name = name;
+            this.handler = handler;
+            this.batchSizes = Metrics.histogram("marketdata." + name + ".batch", "ticks");
+            this.thread = new Thread(this::run, "marketdata-" + name);
+            thread.setDaemon(true);
+        }
+        
+        private void run() {
+            long next = sequence.getAcquire() + 1;
+            int idle = 0;
+            while (true) {
+                long available = cursor.getAcquire();
+                if (available < next) {
+                    if (!running && cursor.getAcquire() < next) {
+                        return;
+                    }
+                    idle = idle < YIELD_TRIES ? idle(idle, MAX_IDLE_PARK_NANOS) : park(next, idle);
+                    continue;
+                }
+                idle = 0;
+                // Bounded batches hand slots back to the producer before the whole backlog is done
+                long end = Math.min(available, next + maxBatch - 1);
+                for (long s = next; s <= end; s++) {
+                    int slot = (int) s & mask;
+                    try {
+                        handler.onTick(symbolIds[slot], prices[slot], timestamps[slot]);
+                    } catch (RuntimeException e) {
+                        fail(e);
+                    }
+                }
+                try {
+                    handler.onEndOfBatch();
+                } catch (RuntimeException e) {
+                    fail(e);
+                }
+                sequence.setRelease(end);
+                batchSizes.record(end - next + 1);
+                batchCount++;
+                next = end + 1;
+            }
+        }
+        
+        /**
+         * Parks until publish or close wakes this consumer, or the backoff interval runs out.
+         * The cursor is checked again after announcing the park, so a tick published meanwhile
+         * is not slept through.
+         */
+        private int park(long next, int tries) {
+            parked = true;
+            parkedConsumers.incrementAndGet();
+            try {
+                if (running && cursor.getAcquire() < next) {
+                    LockSupport.parkNanos(this, parkNanos(tries, MAX_IDLE_PARK_NANOS));
+                }
+            } finally {
+                parkedConsumers.decrementAndGet();
+                parked = false;
+            }
+            return Math.min(tries + 1, YIELD_TRIES + MAX_PARK_DOUBLINGS);
+        }
+        
+        private void fail(RuntimeException e) {
+            if (errorCount++ == 0) {
+                System.err.println("Market data consumer " + name + " failed: " + e);
+            }
+        }
+        
+        public String getName() { return name; }
+        public long getProcessedCount() { return sequence.getAcquire() + 1; }
+        public long getBatchCount() { return batchCount; }
+        public long getErrorCount() { return errorCount; }
+        
+        /**
+         * Ticks published but not yet handled
+         */
+        public long getLag() {
+            return cursor.getAcquire() - sequence.getAcquire();
+        }
+    }
+    
+    /**
+     * A sequence counter padded on both sides so that the producer's cursor and each consumer's
+     * position sit on separate cache lines and do not slow each other down
+     */
+    static final class Sequence extends SequenceValue {
+        long p9, p10, p11, p12, p13, p14, p15;
+        
+        private static final VarHandle VALUE;
+        
+        static {
+            try {
+                VALUE = MethodHandles.lookup().findVarHandle(SequenceValue.class, "value", long.class);
+            } catch (ReflectiveOperationException e) {
+                throw new ExceptionInInitializerError(e);
+            }
+        }
+        
+        Sequence() {
+            value = -1;
+        }
+        
+        long getAcquire() {
+            return (long) VALUE.getAcquire(this);
+        }
+        
+        void setRelease(long newValue) {
+            VALUE.setRelease(this, newValue);
+        }
+    }
+    
+    static class SequencePadding {
+        long p1, p2, p3, p4, p5, p6, p7;
+    }
+    
+    static class SequenceValue extends SequencePadding {
+        volatile long value;
+    }
+}
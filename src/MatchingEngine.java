@@ -0,0 +1,170 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Simulated exchange with one OrderBook per symbol. Orders from a portfolio trade against the
+ * liquidity in the book, and each fill is applied to the portfolio as a trade: buys add shares at
+ * the fill price, averaging into an existing holding, and sells reduce the holding. Books can be
+ * seeded with outside liquidity around a quoted price, so large orders walk the book and pay the
+ * slippage they would in a thin market.
+ */
+public class MatchingEngine {
+    public static final double DEFAULT_TICK_SIZE = 0.01;
+    // Seeded levels are this fraction of the price apart, e.g. 5 cents apart at $100
+    private static final double SEED_LEVEL_SPACING = 0.0005;
+    
+    private final double tickSize;
+    private final Map<String, OrderBook> books = new HashMap<>();
+    private final List<Order> portfolioOrders = new ArrayList<>(); // Open orders that trade for a portfolio
+    private final List<FillListener> listeners = new CopyOnWriteArrayList<>();
+    private final FillListener applyFills = this::applyFill;
+    private long nextOrderId = 1;
+    
+    public MatchingEngine() {
+        this(DEFAULT_TICK_SIZE);
+    }
+    
+    public MatchingEngine(double tickSize) {
+        if (!(tickSize > 0)) {
+            throw new IllegalArgumentException("Tick size must be positive");
+        }
+        this.tickSize = tickSize;
+    }
+    
+    public void addListener(FillListener listener) {
+        listeners.add(listener);
+    }
+    
+    public void removeListener(FillListener listener) {
+        listeners.remove(listener);
+    }
+    
+    /**
+     * Assigns the order an id and matches it. Listeners are notified of every fill before this
+     * returns, on the calling thread.
+     * @throws IllegalArgumentException If a portfolio sells more shares than it holds beyond its other open sell orders
+     */
+    public synchronized Order submit(Order order) {
+        if (order.getId() != 0) {
+            throw new IllegalArgumentException("Order " + order.getId() + " was already submitted");
+        }
+        Portfolio portfolio = order.getPortfolio();
+        if (portfolio != null && !order.isBuy()) {
+            int available = availableToSell(portfolio, order.getSymbol());
+            if (order.getQuantity() > available) {
+                throw new IllegalArgumentException("Only " + available + " shares of " + order.getSymbol() + " available to sell");
+            }
+        }
+        order.setId(nextOrderId++);
+        getBook(order.getSymbol()).submit(order, applyFills);
+        if (portfolio != null && order.isOpen()) {
+            portfolioOrders.add(order);
+        }
+        return order;
+    }
+    
+    public synchronized boolean cancel(Order order) {
+        OrderBook book = books.get(order.getSymbol());
+        if (book == null || !book.cancel(order)) {
+            return false;
+        }
+        portfolioOrders.remove(order);
+        return true;
+    }
+    
+    /**
+     * Gets the book of a symbol, creating an empty one on first use
+     */
+    public synchronized OrderBook getBook(String symbol) {
+        return books.computeIfAbsent(symbol.toUpperCase(), s -> new OrderBook(s, tickSize));
+    }
+    
+    public synchronized boolean hasBook(String symbol) {
+        return books.containsKey(symbol.toUpperCase());
+    }
+    
+    /**
+     * Gets the resting and stop orders of a portfolio, oldest first
+     */
+    public synchronized List<Order> getOpenOrders(Portfolio portfolio) {
+        List<Order> result = new ArrayList<>();
+        for (Iterator<Order> it = portfolioOrders.iterator(); it.hasNext(); ) {
+            Order order = it.next();
+            if (!order.isOpen()) {
+                it.remove();
+            } else if (order.getPortfolio() == portfolio) {
+                result.add(order);
+            }
+        }
+        return result;
+    }
+    
+    /**
+     * Places outside liquidity on both sides of a price: levels that get deeper away from the
+     * price, starting one tick either side of it
+     * @param quantityPerLevel Shares at the innermost level; each level further out holds that many more
+     * @return Number of orders placed
+     */
+    public synchronized int seedLiquidity(String symbol, double price, int levels, int quantityPerLevel) {
+        if (!(price > 0) || levels <= 0 || quantityPerLevel <= 0) {
+            throw new IllegalArgumentException("Price, levels and quantity must be positive");
+        }
+        long spacing = Math.max(1, Math.round(price * SEED_LEVEL_SPACING / tickSize));
+        long mid = Math.round(price / tickSize);
+        int placed = 0;
+        for (int i = 0; i < levels; i++) {
+            int quantity = quantityPerLevel * (i + 1);
+            long bidTicks = mid - 1 - i * spacing;
+            if (bidTicks > 0) {
+                submit(Order.limit(symbol, Order.BUY, quantity, bidTicks * tickSize, null));
+                placed++;
+            }
+            submit(Order.limit(symbol, Order.SELL, quantity, (mid + 1 + i * spacing) * tickSize, null));
+            placed++;
+        }
+        return placed;
+    }
+    
+    private int availableToSell(Portfolio portfolio, String symbol) {
+        Stock holding = portfolio.findStock(symbol);
+        int available = holding != null ? holding.getQuantity() : 0;
+        for (Iterator<Order> it = portfolioOrders.iterator(); it.hasNext(); ) {
+            Order open = it.next();
+            if (!open.isOpen()) {
+                it.remove();
+            } else if (open.getPortfolio() == portfolio && !open.isBuy() && open.getSymbol().equals(symbol)) {
+                available -= open.getRemaining();
+            }
+        }
+        return Math.max(0, available);
+    }
+    
+    /**
+     * Books a fill as a trade in the order's portfolio, then notifies listeners
+     */
+    private void applyFill(Order order, int quantity, double price) {
+        Portfolio portfolio = order.getPortfolio();
+        if (portfolio != null) {
+            Stock holding = portfolio.findStock(order.getSymbol());
+            if (order.isBuy()) {
+                String name = holding != null ? holding.getName() : order.getSymbol();
+                portfolio.addStock(new Stock(order.getSymbol(), name, quantity, price));
+            } else if (holding != null) {
+                // The holding may have been reduced by hand since the order was placed
+                int left = holding.getQuantity() - quantity;
+                if (left > 0) {
+                    holding.setQuantity(left);
+                } else {
+                    portfolio.removeStock(holding);
+                }
+            }
+        }
+        for (FillListener listener : listeners) {
+            listener.orderFilled(order, quantity, price);
+        }
+    }
+}
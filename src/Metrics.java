@@ -0,0 +1,130 @@
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Process-wide registry of named histograms and counters. Each metric is registered as an
+ * MBean under the "stockportfolio" domain when first created, so it can be watched with
+ * JConsole or any JMX client, and all metrics can be dumped periodically to a log file.
+ * Callers keep the returned metric in a static field so recording skips the lookup.
+ */
+public final class Metrics {
+    private static final String DOMAIN = "stockportfolio";
+    
+    private static final ConcurrentMap<String, LatencyHistogram> histograms = new ConcurrentHashMap<>();
+    private static final ConcurrentMap<String, Counter> counters = new ConcurrentHashMap<>();
+    private static ScheduledExecutorService logger;
+    private static Path logFile;
+    private static boolean shutdownHookAdded;
+    
+    private Metrics() {
+    }
+    
+    /**
+     * Gets or creates a histogram of nanosecond latencies
+     */
+    public static LatencyHistogram latency(String name) {
+        return histogram(name, "ns");
+    }
+    
+    /**
+     * Gets or creates a histogram of values in the given unit
+     */
+    public static LatencyHistogram histogram(String name, String unit) {
+        return histograms.computeIfAbsent(name, n -> register("Histogram", n, new LatencyHistogram(unit)));
+    }
+    
+    /**
+     * Gets or creates a counter
+     */
+    public static Counter counter(String name) {
+        return counters.computeIfAbsent(name, n -> register("Counter", n, new Counter()));
+    }
+    
+    /**
+     * Writes every metric that has recorded something, one per line, sorted by name
+     */
+    public static void dump(PrintStream out) {
+        out.println("# Metrics at " + LocalDateTime.now());
+        for (Map.Entry<String, LatencyHistogram> entry : new TreeMap<>(histograms).entrySet()) {
+            if (entry.getValue().getCount() > 0) {
+                out.println(entry.getKey() + " " + entry.getValue());
+            }
+        }
+        for (Map.Entry<String, Counter> entry : new TreeMap<>(counters).entrySet()) {
+            if (entry.getValue().getCount() > 0) {
+                out.println(entry.getKey() + " count=" + entry.getValue().getCount());
+            }
+        }
+    }
+    
+    /**
+     * Appends a dump to the file every period from a background thread, replacing any earlier
+     * schedule, and once more when the JVM exits
+     */
+    public static synchronized void startLogging(Path file, long periodSeconds) {
+        stopLogging();
+        logFile = file;
+        if (!shutdownHookAdded) {
+            Runtime.getRuntime().addShutdownHook(new Thread(Metrics::stopLogging, "metrics-final-dump"));
+            shutdownHookAdded = true;
+        }
+        logger = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "metrics-logger");
+            thread.setDaemon(true);
+            return thread;
+        });
+        logger.scheduleAtFixedRate(() -> appendDump(file), periodSeconds, periodSeconds, TimeUnit.SECONDS);
+    }
+    
+    /**
+     * Stops periodic logging after writing a final dump
+     */
+    public static synchronized void stopLogging() {
+        if (logger != null) {
+            logger.shutdownNow();
+            logger = null;
+            appendDump(logFile);
+        }
+    }
+    
+    /**
+     * Appends one dump to the file
+     */
+    public static void appendDump(Path file) {
+        try (PrintStream out = new PrintStream(Files.newOutputStream(file, StandardOpenOption.CREATE,
+                StandardOpenOption.APPEND), false, StandardCharsets.UTF_8.name())) {
+            dump(out);
+        } catch (IOException e) {
+            System.err.println("Error writing metrics: " + e.getMessage());
+        }
+    }
+    
+    private static <T> T register(String type, String name, T metric) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName objectName = new ObjectName(DOMAIN + ":type=" + type + ",name=" + ObjectName.quote(name));
+            if (!server.isRegistered(objectName)) {
+                server.registerMBean(metric, objectName);
+            }
+        } catch (JMException | SecurityException e) {
+            System.err.println("Metric " + name + " not exposed over JMX: " + e.getMessage());
+        }
+        return metric;
+    }
+}
@@ -0,0 +1,334 @@
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Monte Carlo simulation of future portfolio values. Each holding follows a geometric Brownian
+ * motion and the daily shocks are correlated through the Cholesky factor of the correlation
+ * matrix. Paths are simulated in fixed-size chunks on a fork/join pool; every chunk gets its own
+ * SplittableRandom stream split from the seed in chunk order, so results are reproducible no
+ * matter how many workers run them.
+ */
+public class MonteCarloSimulator {
+    public static final double DEFAULT_ANNUAL_DRIFT = 0.07;
+    public static final double DEFAULT_ANNUAL_VOLATILITY = 0.30;
+    public static final double DEFAULT_CORRELATION = 0.3;
+    public static final int TRADING_DAYS_PER_YEAR = 252;
+    
+    private static final int CHUNK_SIZE = 1024;
+    
+    private final String[] symbols;
+    private final int[] quantities;
+    private final double[] startPrices;
+    private final double[] drifts;
+    private final double[] volatilities;
+    private final double[][] cholesky;
+    private final ForkJoinPool pool;
+    
+    /**
+     * @param portfolio Portfolio whose current holdings are simulated
+     * @param drifts Annual expected return of each holding, in portfolio order
+     * @param volatilities Annual volatility of each holding, in portfolio order
+     * @param correlation Correlation matrix of the holdings' returns
+     * @param pool Pool the paths are simulated on
+     */
+    public MonteCarloSimulator(Portfolio portfolio, double[] drifts, double[] volatilities,
+                               double[][] correlation, ForkJoinPool pool) {
+        List<Stock> stocks = portfolio.getStocks();
+        int n = stocks.size();
+        if (drifts.length != n || volatilities.length != n || correlation.length != n) {
+            throw new IllegalArgumentException("Expected parameters for " + n + " holdings");
+        }
+        
+        this.symbols = new String[n];
+        this.quantities = new int[n];
+        this.startPrices = new double[n];
+        for (int i = 0; i < n; i++) {
+            Stock stock = stocks.get(i);
+            symbols[i] = stock.getSymbol();
+            quantities[i] = stock.getQuantity();
+            startPrices[i] = stock.getCurrentPrice();
+        }
+        this.drifts = drifts.clone();
+        this.volatilities = volatilities.clone();
+        this.cholesky = choleskyDecompose(correlation);
+        this.pool = pool;
+    }
+    
+    /**
+     * Creates a simulator that gives every holding the same drift, volatility and pairwise correlation
+     */
+    public static MonteCarloSimulator withUniformParameters(Portfolio portfolio, double annualDrift,
+                                                            double annualVolatility, double correlation) {
+        int n = portfolio.getStocks().size();
+        double[] drifts = new double[n];
+        double[] volatilities = new double[n];
+        double[][] matrix = new double[n][n];
+        for (int i = 0; i < n; i++) {
+            drifts[i] = annualDrift;
+            volatilities[i] = annualVolatility;
+            for (int j = 0; j < n; j++) {
+                matrix[i][j] = i == j ? 1.0 : correlation;
+            }
+        }
+        return new MonteCarloSimulator(portfolio, drifts, volatilities, matrix, ForkJoinPool.commonPool());
+    }
+    
+    /**
+     * Creates a simulator with each holding's drift, volatility and correlations estimated from
+     * its recorded returns
+     * @param periodsPerYear Number of the metrics' return periods in a year, e.g. 252 for daily returns
+     * @throws IllegalArgumentException If the metrics are for other holdings or their correlation
+     *                                  matrix is singular, as when holdings always moved together
+     */
+    public static MonteCarloSimulator fromRiskMetrics(Portfolio portfolio, RiskMetrics risk, int periodsPerYear) {
+        int n = portfolio.getStocks().size();
+        if (risk.getSymbols().length != n) {
+            throw new IllegalArgumentException("Expected risk metrics for " + n + " holdings");
+        }
+        double[] drifts = new double[n];
+        double[] volatilities = new double[n];
+        for (int i = 0; i < n; i++) {
+            drifts[i] = risk.getMeanReturn(i) * periodsPerYear;
+            volatilities[i] = risk.getAnnualizedVolatility(i, periodsPerYear);
+        }
+        return new MonteCarloSimulator(portfolio, drifts, volatilities, risk.getCorrelationMatrix(), ForkJoinPool.commonPool());
+    }
+    
+    public String[] getSymbols() {
+        return symbols.clone();
+    }
+    
+    /**
+     * Current value of the simulated holdings
+     */
+    public double getInitialValue() {
+        double value = 0;
+        for (int i = 0; i < symbols.length; i++) {
+            value += quantities[i] * startPrices[i];
+        }
+        return value;
+    }
+    
+    /**
+     * Simulates the portfolio value after the given number of trading days
+     * @param paths Number of independent price paths
+     * @param days Horizon in trading days
+     * @param seed Seed; the same seed always gives the same result
+     */
+    public SimulationResult simulate(int paths, int days, long seed) {
+        if (paths <= 0 || days <= 0) {
+            throw new IllegalArgumentException("Paths and days must be positive");
+        }
+        
+        long start = System.nanoTime();
+        double[] terminalValues = new double[paths];
+        
+        // Split one stream per chunk up front so the streams do not depend on scheduling
+        SplittableRandom root = new SplittableRandom(seed);
+        int chunks = (paths + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        SplittableRandom[] streams = new SplittableRandom[chunks];
+        for (int c = 0; c < chunks; c++) {
+            streams[c] = root.split();
+        }
+        
+        pool.invoke(new PathTask(terminalValues, streams, 0, chunks, days));
+        long elapsed = System.nanoTime() - start;
+        
+        return new SimulationResult(getInitialValue(), terminalValues, days, elapsed);
+    }
+    
+    /**
+     * Simulates the chunks [fromChunk, toChunk), splitting in half until one chunk remains
+     */
+    private final class PathTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        
+        private final double[] terminalValues;
+        private final SplittableRandom[] streams;
+        private final int fromChunk;
+        private final int toChunk;
+        private final int days;
+        
+        PathTask(double[] terminalValues, SplittableRandom[] streams, int fromChunk, int toChunk, int days) {
+            this.terminalValues = terminalValues;
+            this.streams = streams;
+            this.fromChunk = fromChunk;
+            this.toChunk = toChunk;
+            this.days = days;
+        }
+        
+        @Override
+        protected void compute() {
+            if (toChunk - fromChunk > 1) {
+                int middle = (fromChunk + toChunk) >>> 1;
+                invokeAll(new PathTask(terminalValues, streams, fromChunk, middle, days),
+                        new PathTask(terminalValues, streams, middle, toChunk, days));
+                return;
+            }
+            
+            int n = symbols.length;
+            double dt = 1.0 / TRADING_DAYS_PER_YEAR;
+            double[] driftTerms = new double[n];
+            double[] shockScales = new double[n];
+            for (int i = 0; i < n; i++) {
+                driftTerms[i] = (drifts[i] - 0.5 * volatilities[i] * volatilities[i]) * dt;
+                shockScales[i] = volatilities[i] * Math.sqrt(dt);
+            }
+            
+            SplittableRandom random = streams[fromChunk];
+            GaussianSource gaussian = new GaussianSource(random);
+            double[] logPrices = new double[n];
+            double[] independent = new double[n];
+            int firstPath = fromChunk * CHUNK_SIZE;
+            int lastPath = Math.min(terminalValues.length, firstPath + CHUNK_SIZE);
+            
+            for (int path = firstPath; path < lastPath; path++) {
+                for (int i = 0; i < n; i++) {
+                    logPrices[i] = 0;
+                }
+                for (int day = 0; day < days; day++) {
+                    for (int i = 0; i < n; i++) {
+                        independent[i] = gaussian.next();
+                    }
+                    for (int i = 0; i < n; i++) {
+                        double[] row = cholesky[i];
+                        double shock = 0;
+                        for (int j = 0; j <= i; j++) {
+                            shock += row[j] * independent[j];
+                        }
+                        logPrices[i] += driftTerms[i] + shockScales[i] * shock;
+                    }
+                }
+                
+                double value = 0;
+                for (int i = 0; i < n; i++) {
+                    value += quantities[i] * startPrices[i] * Math.exp(logPrices[i]);
+                }
+                terminalValues[path] = value;
+            }
+        }
+    }
+    
+    /**
+     * Standard normal draws using the Marsaglia polar method, caching the second value of each pair
+     */
+    private static final class GaussianSource {
+        private final SplittableRandom random;
+        private double spare;
+        private boolean hasSpare;
+        
+        GaussianSource(SplittableRandom random) {
+            this.random = random;
+        }
+        
+        double next() {
+            if (hasSpare) {
+                hasSpare = false;
+                return spare;
+            }
+            double u;
+            double v;
+            double s;
+            do {
+                u = random.nextDouble() * 2 - 1;
+                v = random.nextDouble() * 2 - 1;
+                s = u * u + v * v;
+            } while (s >= 1 || s == 0);
+            double factor = Math.sqrt(-2 * Math.log(s) / s);
+            spare = v * factor;
+            hasSpare = true;
+            return u * factor;
+        }
+    }
+    
+    /**
+     * Lower-triangular L with L * L^T equal to the given symmetric positive-definite matrix
+     */
+    static double[][] choleskyDecompose(double[][] matrix) {
+        int n = matrix.length;
+        double[][] lower = new double[n][n];
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j <= i; j++) {
+                double sum = matrix[i][j];
+                for (int k = 0; k < j; k++) {
+                    sum -= lower[i][k] * lower[j][k];
+                }
+                if (i == j) {
+                    if (sum <= 0) {
+                        throw new IllegalArgumentException("Correlation matrix is not positive definite");
+                    }
+                    lower[i][i] = Math.sqrt(sum);
+                } else {
+                    lower[i][j] = sum / lower[j][j];
+                }
+            }
+        }
+        return lower;
+    }
+    
+    /**
+     * Distribution of simulated terminal portfolio values
+     */
+    public static class SimulationResult {
+        private final double initialValue;
+        private final double[] sortedValues;
+        private final int days;
+        private final long elapsedNanos;
+        private final double mean;
+        private final double probabilityOfLoss;
+        
+        SimulationResult(double initialValue, double[] terminalValues, int days, long elapsedNanos) {
+            this.initialValue = initialValue;
+            this.days = days;
+            this.elapsedNanos = elapsedNanos;
+            this.sortedValues = terminalValues;
+            Arrays.sort(sortedValues);
+            
+            double sum = 0;
+            int losses = 0;
+            for (double value : sortedValues) {
+                sum += value;
+                if (value < initialValue) {
+                    losses++;
+                }
+            }
+            this.mean = sum / sortedValues.length;
+            this.probabilityOfLoss = (double) losses / sortedValues.length;
+        }
+        
+        public double getInitialValue() { return initialValue; }
+        public int getPaths() { return sortedValues.length; }
+        public int getDays() { return days; }
+        public double getMean() { return mean; }
+        public double getMin() { return sortedValues[0]; }
+        public double getMax() { return sortedValues[sortedValues.length - 1]; }
+        
+        /**
+         * Fraction of paths ending below the initial value
+         */
+        public double getProbabilityOfLoss() { return probabilityOfLoss; }
+        
+        /**
+         * Terminal value at the given percentile (0-100), nearest-rank
+         */
+        public double getPercentile(double percentile) {
+            int rank = (int) Math.ceil(percentile / 100.0 * sortedValues.length);
+            return sortedValues[Math.max(0, Math.min(sortedValues.length - 1, rank - 1))];
+        }
+        
+        /**
+         * Sorted terminal values, lowest first
+         */
+        public double[] getTerminalValues() { return sortedValues.clone(); }
+        
+        public double getElapsedMillis() { return elapsedNanos / 1_000_000.0; }
+        
+        public double getPathsPerSecond() {
+            return elapsedNanos == 0 ? 0 : sortedValues.length * 1_000_000_000.0 / elapsedNanos;
+        }
+    
+    }
+}
@@ -0,0 +1,32 @@
+/**
+ * Open/high/low/close summary of the prices observed in one time interval
+ */
+public class OhlcBar {
+    private final long startTime;
+    private final double open;
+    private final double high;
+    private final double low;
+    private final double close;
+    private final int count;
+    
+    public OhlcBar(long startTime, double open, double high, double low, double close, int count) {
+        this.startTime = startTime;
+        this.open = open;
+        this.high = high;
+        this.low = low;
+        this.close = close;
+        this.count = count;
+    }
+    
+    public long getStartTime() { return startTime; }
+    public double getOpen() { return open; }
+    public double getHigh() { return high; }
+    public double getLow() { return low; }
+    public double getClose() { return close; }
+    public int getCount() { return count; }
+    
+    @Override
+    public String toString() {
+        return String.format("%d O=%.2f H=%.2f L=%.2f C=%.2f n=%d", startTime, open, high, low, close, count);
+    }
+}
@@ -0,0 +1,141 @@
+/**
+ * An order for a MatchingEngine. Market orders take whatever liquidity there is and cancel the
+ * rest, limit orders trade at their price or better and rest in the book until filled, and stop
+ * orders wait until a trade reaches their stop price and then execute as market orders.
+ * Orders without a portfolio act as outside liquidity.
+ */
+public class Order {
+    public static final int BUY = 1;
+    public static final int SELL = 2;
+    
+    public static final int TYPE_MARKET = 1;
+    public static final int TYPE_LIMIT = 2;
+    public static final int TYPE_STOP = 3;
+    
+    public static final int STATUS_NEW = 1;
+    public static final int STATUS_PARTIALLY_FILLED = 2;
+    public static final int STATUS_FILLED = 3;
+    public static final int STATUS_CANCELLED = 4;
+    
+    private final String symbol;
+    private final int side;
+    private final int type;
+    private final int quantity;
+    private final double price;
+    private final Portfolio portfolio;
+    private long id;
+    private int remaining;
+    private int status = STATUS_NEW;
+    private double filledNotional;
+    private boolean triggered;
+    
+    // Position in the book: the price level's queue, linked through the orders themselves
+    long priceTicks;
+    Order previous;
+    Order next;
+    boolean resting;
+    
+    /**
+     * @param price Limit price for limit orders, stop price for stop orders, ignored for market orders
+     * @param portfolio Receives the fills as trades, or null for outside liquidity
+     */
+    public Order(String symbol, int side, int type, int quantity, double price, Portfolio portfolio) {
+        if (side != BUY && side != SELL) {
+            throw new IllegalArgumentException("Unknown side: " + side);
+        }
+        if (type != TYPE_MARKET && type != TYPE_LIMIT && type != TYPE_STOP) {
+            throw new IllegalArgumentException("Unknown order type: " + type);
+        }
+        if (quantity <= 0) {
+            throw new IllegalArgumentException("Quantity must be positive");
+        }
+        if (type != TYPE_MARKET && !(price > 0)) {
+            throw new IllegalArgumentException("Limit and stop orders need a positive price");
+        }
+        this.symbol = symbol.toUpperCase();
+        this.side = side;
+        this.type = type;
+        this.quantity = quantity;
+        this.price = price;
+        this.portfolio = portfolio;
+        this.remaining = quantity;
+    }
+    
+    public static Order market(String symbol, int side, int quantity, Portfolio portfolio) {
+        return new Order(symbol, side, TYPE_MARKET, quantity, 0, portfolio);
+    }
+    
+    public static Order limit(String symbol, int side, int quantity, double price, Portfolio portfolio) {
+        return new Order(symbol, side, TYPE_LIMIT, quantity, price, portfolio);
+    }
+    
+    public static Order stop(String symbol, int side, int quantity, double stopPrice, Portfolio portfolio) {
+        return new Order(symbol, side, TYPE_STOP, quantity, stopPrice, portfolio);
+    }
+    
+    /**
+     * Records a fill of part of the remaining quantity
+     */
+    void fill(int fillQuantity, double fillPrice) {
+        remaining -= fillQuantity;
+        filledNotional += fillQuantity * fillPrice;
+        status = remaining == 0 ? STATUS_FILLED : STATUS_PARTIALLY_FILLED;
+    }
+    
+    void cancel() {
+        status = STATUS_CANCELLED;
+    }
+    
+    void setId(long id) { this.id = id; }
+    void trigger() { this.triggered = true; }
+    
+    public long getId() { return id; }
+    public String getSymbol() { return symbol; }
+    public int getSide() { return side; }
+    public int getType() { return type; }
+    public int getQuantity() { return quantity; }
+    public double getPrice() { return price; }
+    public Portfolio getPortfolio() { return portfolio; }
+    public int getRemaining() { return remaining; }
+    public int getFilledQuantity() { return quantity - remaining; }
+    public int getStatus() { return status; }
+    
+    /**
+     * Whether a stop order's stop price has been reached, turning it into a market order
+     */
+    public boolean isTriggered() { return triggered; }
+    
+    public boolean isBuy() { return side == BUY; }
+    
+    /**
+     * Whether the order can still trade, either resting in the book or waiting for its stop
+     */
+    public boolean isOpen() {
+        return status == STATUS_NEW || status == STATUS_PARTIALLY_FILLED;
+    }
+    
+    /**
+     * Volume-weighted price of the fills so far, or 0 before the first fill
+     */
+    public double getAverageFillPrice() {
+        int filled = getFilledQuantity();
+        return filled == 0 ? 0 : filledNotional / filled;
+    }
+    
+    public String getDescription() {
+        String text = (isBuy() ? "Buy " : "Sell ") + quantity + " " + symbol;
+        switch (type) {
+            case TYPE_LIMIT:
+                return text + " limit " + Formats.currency(price);
+            case TYPE_STOP:
+                return text + " stop " + Formats.currency(price);
+            default:
+                return text + " at market";
+        }
+    }
+    
+    @Override
+    public String toString() {
+        return "#" + id + " " + getDescription() + " (" + getFilledQuantity() + " filled)";
+    }
+}
@@ -0,0 +1,350 @@
+import java.util.Comparator;
+import java.util.PriorityQueue;
+
+/**
+ * Limit order book for one symbol with price-time priority. Prices are whole ticks, and each
+ * side keeps its price levels in an array indexed by tick, so finding the level of an order is
+ * a subtraction and each level is a FIFO queue linked through the orders themselves. Matching,
+ * adding and cancelling therefore cost O(1) per level and per order touched; only moving the best
+ * price past empty levels scans, and it stops at the next level that holds orders.
+ * <p>
+ * Stop orders wait in a queue ordered by stop price and are triggered by the last trade price.
+ * A book is used through its MatchingEngine, which serializes access to it.
+ */
+public class OrderBook {
+    private static final int INITIAL_LEVELS = 1024;
+    private static final int MAX_LEVELS = 1 << 26;
+    
+    private final String symbol;
+    private final double tickSize;
+    private final Ladder bids = new Ladder(true);
+    private final Ladder asks = new Ladder(false);
+    // Buy stops trigger as the price rises to them and sell stops as it falls
+    private final PriorityQueue<Order> buyStops = new PriorityQueue<>(
+            Comparator.comparingLong((Order order) -> order.priceTicks).thenComparingLong(Order::getId));
+    private final PriorityQueue<Order> sellStops = new PriorityQueue<>(
+            Comparator.comparingLong((Order order) -> -order.priceTicks).thenComparingLong(Order::getId));
+    private long lastTradeTicks = -1;
+    private long tradeCount;
+    private long volume;
+    
+    public OrderBook(String symbol, double tickSize) {
+        if (!(tickSize > 0)) {
+            throw new IllegalArgumentException("Tick size must be positive");
+        }
+        this.symbol = symbol.toUpperCase();
+        this.tickSize = tickSize;
+    }
+    
+    /**
+     * Matches an order against the other side, then rests what is left of a limit order,
+     * cancels what is left of a market order and queues a stop order whose price has not been
+     * reached. Any stops the trades reach are executed before returning.
+     */
+    void submit(Order order, FillListener listener) {
+        if (order.getType() == Order.TYPE_LIMIT) {
+            order.priceTicks = limitTicks(order);
+        } else if (order.getType() == Order.TYPE_STOP) {
+            order.priceTicks = Math.max(1, Math.round(order.getPrice() / tickSize));
+            if (!stopReached(order)) {
+                (order.isBuy() ? buyStops : sellStops).add(order);
+                return;
+            }
+            order.trigger();
+        }
+        execute(order, listener);
+        triggerStops(listener);
+    }
+    
+    /**
+     * Removes an open order from the book or the stop queue
+     * @return false if the order had already filled or been cancelled
+     */
+    boolean cancel(Order order) {
+        if (!order.isOpen()) {
+            return false;
+        }
+        if (order.resting) {
+            (order.isBuy() ? bids : asks).remove(order);
+        } else if (!(order.isBuy() ? buyStops : sellStops).remove(order)) {
+            return false;
+        }
+        order.cancel();
+        return true;
+    }
+    
+    private void execute(Order order, FillListener listener) {
+        match(order, listener);
+        if (order.getRemaining() > 0) {
+            if (order.getType() == Order.TYPE_LIMIT) {
+                (order.isBuy() ? bids : asks).add(order);
+            } else {
+                // Market orders and triggered stops do not wait for liquidity
+                order.cancel();
+            }
+        }
+    }
+    
+    /**
+     * Trades an order against the best levels of the other side while they are within its limit
+     */
+    private void match(Order order, FillListener listener) {
+        Ladder other = order.isBuy() ? asks : bids;
+        boolean limited = order.getType() == Order.TYPE_LIMIT;
+        while (order.getRemaining() > 0 && other.best >= 0) {
+            Level level = other.levels[other.best];
+            if (limited && (order.isBuy() ? level.ticks > order.priceTicks : level.ticks < order.priceTicks)) {
+                break;
+            }
+            double price = toPrice(level.ticks);
+            while (order.getRemaining() > 0 && level.head != null) {
+                Order resting = level.head;
+                int quantity = Math.min(order.getRemaining(), resting.getRemaining());
+                resting.fill(quantity, price);
+                order.fill(quantity, price);
+                level.quantity -= quantity;
+                if (resting.getRemaining() == 0) {
+                    level.unlink(resting);
+                    other.orderCount--;
+                }
+                lastTradeTicks = level.ticks;
+                tradeCount++;
+                volume += quantity;
+                listener.orderFilled(resting, quantity, price);
+                listener.orderFilled(order, quantity, price);
+            }
+            if (level.head == null) {
+                other.advance();
+            }
+        }
+    }
+    
+    /**
+     * Executes queued stops reached by the last trade price, including any reached by their own trades
+     */
+    private void triggerStops(FillListener listener) {
+        while (true) {
+            Order stop;
+            if (!buyStops.isEmpty() && stopReached(buyStops.peek())) {
+                stop = buyStops.poll();
+            } else if (!sellStops.isEmpty() && stopReached(sellStops.peek())) {
+                stop = sellStops.poll();
+            } else {
+                return;
+            }
+            stop.trigger();
+            execute(stop, listener);
+        }
+    }
+    
+    private boolean stopReached(Order stop) {
+        if (lastTradeTicks < 0) {
+            return false;
+        }
+        return stop.isBuy() ? lastTradeTicks >= stop.priceTicks : lastTradeTicks <= stop.priceTicks;
+    }
+    
+    /**
+     * A limit price in ticks, rounded off the grid in the direction that keeps within the limit
+     */
+    private long limitTicks(Order order) {
+        double exact = order.getPrice() / tickSize;
+        long nearest = Math.round(exact);
+        if (Math.abs(exact - nearest) < 1e-6) {
+            return Math.max(1, nearest);
+        }
+        return Math.max(1, order.isBuy() ? (long) Math.floor(exact) : (long) Math.ceil(exact));
+    }
+    
+    private double toPrice(long ticks) {
+        return Math.round(ticks * tickSize * 1e8) / 1e8;
+    }
+    
+    public String getSymbol() { return symbol; }
+    public double getTickSize() { return tickSize; }
+    public long getTradeCount() { return tradeCount; }
+    public long getVolume() { return volume; }
+    
+    /**
+     * Highest bid, or NaN when there are no bids
+     */
+    public double getBestBid() {
+        return bids.best >= 0 ? toPrice(bids.levels[bids.best].ticks) : Double.NaN;
+    }
+    
+    /**
+     * Lowest ask, or NaN when there are no asks
+     */
+    public double getBestAsk() {
+        return asks.best >= 0 ? toPrice(asks.levels[asks.best].ticks) : Double.NaN;
+    }
+    
+    /**
+     * Price of the last trade, or NaN before the first one
+     */
+    public double getLastPrice() {
+        return lastTradeTicks >= 0 ? toPrice(lastTradeTicks) : Double.NaN;
+    }
+    
+    public int getRestingOrderCount() {
+        return bids.orderCount + asks.orderCount;
+    }
+    
+    public int getStopOrderCount() {
+        return buyStops.size() + sellStops.size();
+    }
+    
+    /**
+     * Copies the best levels of one side, best first, into caller-owned arrays
+     * @param side Order.BUY for bids or Order.SELL for asks
+     * @return Number of levels copied
+     */
+    public int getDepth(int side, double[] prices, long[] quantities) {
+        Ladder ladder = side == Order.BUY ? bids : asks;
+        int count = 0;
+        int step = ladder.isBid ? -1 : 1;
+        for (int i = ladder.best; i >= 0 && i < ladder.levels.length && count < prices.length; i += step) {
+            Level level = ladder.levels[i];
+            if (level != null && level.head != null) {
+                prices[count] = toPrice(level.ticks);
+                quantities[count] = level.quantity;
+                count++;
+            }
+        }
+        return count;
+    }
+    
+    /**
+     * One price level: resting orders in arrival order and their total remaining quantity
+     */
+    private static final class Level {
+        final long ticks;
+        Order head;
+        Order tail;
+        long quantity;
+        
+        Level(long ticks) {
+            this.ticks = ticks;
+        }
+        
+        void append(Order order) {
+            order.previous = tail;
+            order.next = null;
+            if (tail == null) {
+                head = order;
+            } else {
+                tail.next = order;
+            }
+            tail = order;
+            quantity += order.getRemaining();
+            order.resting = true;
+        }
+        
+        void unlink(Order order) {
+            if (order.previous == null) {
+                head = order.next;
+            } else {
+                order.previous.next = order.next;
+            }
+            if (order.next == null) {
+                tail = order.previous;
+            } else {
+                order.next.previous = order.previous;
+            }
+            order.previous = null;
+            order.next = null;
+            order.resting = false;
+        }
+    }
+    
+    /**
+     * The levels of one side in an array indexed by tick - base, grown as prices arrive outside
+     * it. Levels are created on first use and kept, so a price that trades again reuses its level.
+     */
+    private static final class Ladder {
+        final boolean isBid;
+        Level[] levels = new Level[0];
+        long base;
+        int best = -1;
+        int orderCount;
+        
+        Ladder(boolean isBid) {
+            this.isBid = isBid;
+        }
+        
+        void add(Order order) {
+            int index = indexOf(order.priceTicks);
+            Level level = levels[index];
+            if (level == null) {
+                level = new Level(order.priceTicks);
+                levels[index] = level;
+            }
+            level.append(order);
+            orderCount++;
+            if (best < 0 || (isBid ? index > best : index < best)) {
+                best = index;
+            }
+        }
+        
+        void remove(Order order) {
+            int index = (int) (order.priceTicks - base);
+            Level level = levels[index];
+            level.quantity -= order.getRemaining();
+            level.unlink(order);
+            orderCount--;
+            if (index == best && level.head == null) {
+                advance();
+            }
+        }
+        
+        /**
+         * Moves the best index away from the spread to the next level holding orders
+         */
+        void advance() {
+            if (orderCount == 0) {
+                best = -1;
+                return;
+            }
+            int step = isBid ? -1 : 1;
+            int i = best;
+            while (levels[i] == null || levels[i].head == null) {
+                i += step;
+            }
+            best = i;
+        }
+        
+        /**
+         * Index of a price, growing the array to cover it
+         */
+        private int indexOf(long ticks) {
+            if (levels.length == 0) {
+                base = Math.max(1, ticks - INITIAL_LEVELS / 2);
+                levels = new Level[INITIAL_LEVELS];
+            }
+            if (ticks >= base && ticks - base < levels.length) {
+                return (int) (ticks - base);
+            }
+            long low = Math.min(base, ticks);
+            long high = Math.max(base + levels.length - 1, ticks);
+            long length = levels.length;
+            while (length < high - low + 1) {
+                length *= 2;
+            }
+            length = Math.max(length, (long) levels.length * 2);
+            if (length > MAX_LEVELS) {
+                throw new IllegalArgumentException("Price is too far from the rest of the book");
+            }
+            // Leave the new room on the side the price arrived from
+            long newBase = ticks < base ? Math.max(1, high - length + 1) : low;
+            Level[] grown = new Level[(int) length];
+            int shift = (int) (base - newBase);
+            System.arraycopy(levels, 0, grown, shift, levels.length);
+            levels = grown;
+            base = newBase;
+            if (best >= 0) {
+                best += shift;
+            }
+            return (int) (ticks - base);
+        }
+    }
+}
@@ -0,0 +1,731 @@
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes a table as an Apache Parquet file, so it can be read by analytics tools such as
+ * pandas, Spark or DuckDB, without a Parquet library. Rows are buffered column by column and
+ * written out as a row group every rowGroupSize rows, so memory is bounded by one row group
+ * whatever the size of the table. Each column chunk is a single GZIP-compressed data page with
+ * min/max statistics. Integer and timestamp columns are delta-encoded (DELTA_BINARY_PACKED), so
+ * steadily increasing values such as timestamps take a few bits each before compression; strings
+ * and doubles are plain-encoded. The footer is Thrift compact-encoded as the format requires.
+ * All columns are required (not nullable).
+ * <p>
+ * Usage: declare the columns, then write each row's values in column order and end the row:
+ * <pre>
+ * try (ParquetWriter writer = new ParquetWriter(path)
+ *         .addColumn("symbol", ParquetWriter.TYPE_STRING)
+ *         .addColumn("price", ParquetWriter.TYPE_DOUBLE)) {
+ *     writer.writeString("AAPL").writeDouble(174.99).endRow();
+ *     writer.finish();
+ * }
+ * </pre>
+ * The file is written next to its destination and moved into place by finish(). Closing a
+ * writer that was not finished, as when a row fails partway, deletes the temporary file and
+ * leaves any previous file at the destination as it was.
+ */
+public class ParquetWriter implements Closeable {
+    public static final int TYPE_STRING = 1;
+    public static final int TYPE_INT = 2;
+    public static final int TYPE_LONG = 3;
+    public static final int TYPE_DOUBLE = 4;
+    public static final int TYPE_TIMESTAMP = 5; // Epoch milliseconds, UTC
+    
+    public static final int DEFAULT_ROW_GROUP_SIZE = 1 << 17;
+    
+    private static final byte[] MAGIC = {'P', 'A', 'R', '1'};
+    private static final String CREATED_BY = "stock-portfolio-simulator";
+    
+    // Values of the Parquet format's enums
+    private static final int PHYSICAL_INT32 = 1;
+    private static final int PHYSICAL_INT64 = 2;
+    private static final int PHYSICAL_DOUBLE = 5;
+    private static final int PHYSICAL_BYTE_ARRAY = 6;
+    private static final int CONVERTED_UTF8 = 0;
+    private static final int CONVERTED_TIMESTAMP_MILLIS = 9;
+    private static final int REPETITION_REQUIRED = 0;
+    private static final int ENCODING_PLAIN = 0;
+    private static final int ENCODING_RLE = 3;
+    private static final int ENCODING_DELTA_BINARY_PACKED = 5;
+    private static final int DELTA_BLOCK_SIZE = 128;
+    private static final int DELTA_MINIBLOCKS = 4; // Per block, each with its own bit width
+    private static final int CODEC_GZIP = 2;
+    private static final int PAGE_DATA = 0;
+    // Most of the saving comes from the columnar layout and delta encoding; deflating at the
+    // default level made exports of mostly-random prices three times slower for 10% smaller files
+    private static final int COMPRESSION_LEVEL = Deflater.BEST_SPEED;
+    
+    private final Path path;
+    private final Path temporary;
+    private final int rowGroupSize;
+    private final List<Column> columns = new ArrayList<>();
+    private final List<RowGroup> rowGroups = new ArrayList<>();
+    private final Buffer encoded = new Buffer(1 << 12);
+    private final Buffer compressed = new Buffer(1 << 16);
+    private final Buffer header = new Buffer(256);
+    private OutputStream out;
+    private long position;
+    private int nextColumn;
+    private int groupRows;
+    private long totalRows;
+    private boolean closed;
+    
+    public ParquetWriter(Path path) {
+        this(path, DEFAULT_ROW_GROUP_SIZE);
+    }
+    
+    /**
+     * @param rowGroupSize Rows buffered before they are compressed and written as a row group
+     */
+    public ParquetWriter(Path path, int rowGroupSize) {
+        if (rowGroupSize <= 0) {
+            throw new IllegalArgumentException("Row group size must be positive");
+        }
+        this.path = path;
+        this.temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        this.rowGroupSize = rowGroupSize;
+    }
+    
+    /**
+     * Declares the next column; all columns are declared before the first row
+     */
+    public ParquetWriter addColumn(String name, int type) {
+        if (out != null) {
+            throw new IllegalStateException("Columns must be declared before the first row");
+        }
+        if (type < TYPE_STRING || type > TYPE_TIMESTAMP) {
+            throw new IllegalArgumentException("Unknown column type: " + type);
+        }
+        columns.add(new Column(name, type));
+        return this;
+    }
+    
+    public ParquetWriter writeString(String value) throws IOException {
+        Column column = next(TYPE_STRING);
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        column.values.putInt(bytes.length);
+        column.values.put(bytes, 0, bytes.length);
+        if (column.minBytes == null || Arrays.compareUnsigned(bytes, column.minBytes) < 0) {
+            column.minBytes = bytes;
+        }
+        if (column.maxBytes == null || Arrays.compareUnsigned(bytes, column.maxBytes) > 0) {
+            column.maxBytes = bytes;
+        }
+        return this;
+    }
+    
+    public ParquetWriter writeInt(int value) throws IOException {
+        Column column = next(TYPE_INT);
+        column.addLong(value);
+        return this;
+    }
+    
+    /**
+     * Writes a TYPE_LONG value, or a TYPE_TIMESTAMP value in epoch milliseconds
+     */
+    public ParquetWriter writeLong(long value) throws IOException {
+        Column column = next(TYPE_LONG);
+        column.addLong(value);
+        return this;
+    }
+    
+    public ParquetWriter writeDouble(double value) throws IOException {
+        Column column = next(TYPE_DOUBLE);
+        column.values.putLong(Double.doubleToRawLongBits(value));
+        if (Double.isNaN(value)) {
+            column.hasNaN = true;
+        } else {
+            column.minDouble = Math.min(column.minDouble, value);
+            column.maxDouble = Math.max(column.maxDouble, value);
+        }
+        column.count++;
+        return this;
+    }
+    
+    /**
+     * Completes the row, writing a row group once enough rows are buffered
+     * @throws IllegalStateException If the row is missing values
+     */
+    public void endRow() throws IOException {
+        if (nextColumn != columns.size()) {
+            throw new IllegalStateException("Row has " + nextColumn + " of " + columns.size() + " values");
+        }
+        nextColumn = 0;
+        groupRows++;
+        totalRows++;
+        if (groupRows == rowGroupSize) {
+            flushRowGroup();
+        }
+    }
+    
+    public long getRowCount() {
+        return totalRows;
+    }
+    
+    /**
+     * Writes the last row group and the footer, then moves the file into place
+     * @throws IllegalStateException If the last row is incomplete; the file is discarded
+     */
+    public void finish() throws IOException {
+        if (closed) {
+            throw new IllegalStateException("Writer is closed");
+        }
+        closed = true;
+        boolean complete = false;
+        try {
+            if (nextColumn != 0) {
+                throw new IllegalStateException("The last row is incomplete");
+            }
+            if (columns.isEmpty()) {
+                throw new IllegalStateException("No columns declared");
+            }
+            open();
+            if (groupRows > 0) {
+                flushRowGroup();
+            }
+            Buffer footer = new Buffer(1024);
+            writeFileMetadata(new Thrift(footer));
+            out.write(footer.bytes, 0, footer.size);
+            Buffer trailer = new Buffer(8);
+            trailer.putInt(footer.size);
+            trailer.put(MAGIC, 0, MAGIC.length);
+            out.write(trailer.bytes, 0, trailer.size);
+            out.close();
+            Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            complete = true;
+        } finally {
+            if (!complete) {
+                discard();
+            }
+        }
+    }
+    
+    /**
+     * Discards the file unless finish() completed it
+     */
+    @Override
+    public void close() throws IOException {
+        if (!closed) {
+            closed = true;
+            discard();
+        }
+    }
+    
+    private void discard() throws IOException {
+        try {
+            if (out != null) {
+                out.close();
+            }
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+    
+    private Column next(int type) throws IOException {
+        if (closed) {
+            throw new IllegalStateException("Writer is closed");
+        }
+        if (columns.isEmpty()) {
+            throw new IllegalStateException("No columns declared");
+        }
+        open();
+        if (nextColumn == columns.size()) {
+            throw new IllegalStateException("Row already has all " + columns.size() + " values; call endRow()");
+        }
+        Column column = columns.get(nextColumn);
+        boolean timestamp = type == TYPE_LONG && column.type == TYPE_TIMESTAMP;
+        if (column.type != type && !timestamp) {
+            throw new IllegalArgumentException("Column " + column.name + " is not of type " + type);
+        }
+        nextColumn++;
+        return column;
+    }
+    
+    private void open() throws IOException {
+        if (out == null) {
+            out = new BufferedOutputStream(Files.newOutputStream(temporary), 1 << 16);
+            out.write(MAGIC);
+            position = MAGIC.length;
+        }
+    }
+    
+    /**
+     * Compresses each column's buffered values into one data page and writes them as a row group
+     */
+    private void flushRowGroup() throws IOException {
+        RowGroup group = new RowGroup(groupRows, position, columns.size());
+        for (int i = 0; i < columns.size(); i++) {
+            Column column = columns.get(i);
+            Buffer page = column.values;
+            if (column.isInteger()) {
+                encoded.size = 0;
+                encodeDeltas(column.longs, groupRows, column.type == TYPE_INT, encoded);
+                page = encoded;
+            }
+            compressed.size = 0;
+            try (GZIPOutputStream gzip = new FastGzipOutputStream(compressed)) {
+                gzip.write(page.bytes, 0, page.size);
+            }
+            header.size = 0;
+            Thrift thrift = new Thrift(header);
+            thrift.beginStruct();
+            thrift.i32(1, PAGE_DATA);
+            thrift.i32(2, page.size);
+            thrift.i32(3, compressed.size);
+            thrift.beginStruct(5); // DataPageHeader
+            thrift.i32(1, groupRows);
+            thrift.i32(2, column.encoding());
+            thrift.i32(3, ENCODING_RLE);
+            thrift.i32(4, ENCODING_RLE);
+            thrift.endStruct();
+            thrift.endStruct();
+            
+            ChunkInfo chunk = new ChunkInfo();
+            chunk.offset = position;
+            chunk.uncompressedSize = header.size + page.size;
+            chunk.compressedSize = header.size + compressed.size;
+            chunk.min = column.minStatistic();
+            chunk.max = column.maxStatistic();
+            out.write(header.bytes, 0, header.size);
+            out.write(compressed.bytes, 0, compressed.size);
+            position += chunk.compressedSize;
+            group.chunks[i] = chunk;
+            column.reset();
+        }
+        rowGroups.add(group);
+        groupRows = 0;
+    }
+    
+    /**
+     * Writes values in the DELTA_BINARY_PACKED encoding: a header with the first value, then
+     * blocks of 128 deltas, each stored as its block's minimum delta and four miniblocks of 32
+     * bit-packed offsets from that minimum, each miniblock as wide as its largest offset needs.
+     * INT32 columns take their deltas in 32-bit arithmetic, as readers of the format expect.
+     */
+    static void encodeDeltas(long[] values, int count, boolean int32, Buffer out) {
+        int miniblockSize = DELTA_BLOCK_SIZE / DELTA_MINIBLOCKS;
+        writeVarint(out, DELTA_BLOCK_SIZE);
+        writeVarint(out, DELTA_MINIBLOCKS);
+        writeVarint(out, count);
+        writeVarint(out, Thrift.zigzag(count > 0 ? values[0] : 0));
+        long[] deltas = new long[DELTA_BLOCK_SIZE];
+        int[] widths = new int[DELTA_MINIBLOCKS];
+        for (int first = 1; first < count; first += DELTA_BLOCK_SIZE) {
+            int n = Math.min(DELTA_BLOCK_SIZE, count - first);
+            long min = Long.MAX_VALUE;
+            for (int j = 0; j < n; j++) {
+                long delta = values[first + j] - values[first + j - 1];
+                deltas[j] = int32 ? (int) delta : delta;
+                min = Math.min(min, deltas[j]);
+            }
+            writeVarint(out, Thrift.zigzag(min));
+            for (int m = 0; m < DELTA_MINIBLOCKS; m++) {
+                long bits = 0;
+                for (int j = m * miniblockSize; j < Math.min(n, (m + 1) * miniblockSize); j++) {
+                    deltas[j] = int32 ? (deltas[j] - min) & 0xFFFFFFFFL : deltas[j] - min;
+                    bits |= deltas[j];
+                }
+                widths[m] = 64 - Long.numberOfLeadingZeros(bits);
+                out.write(widths[m]);
+            }
+            // Miniblocks past the last value are left out; the last one is padded with zeros
+            for (int m = 0; m * miniblockSize < n; m++) {
+                int width = widths[m];
+                long pending = 0;
+                int pendingBits = 0;
+                for (int j = m * miniblockSize; j < (m + 1) * miniblockSize && width > 0; j++) {
+                    long value = j < n ? deltas[j] : 0;
+                    pending |= value << pendingBits;
+                    int total = pendingBits + width;
+                    if (total >= 64) {
+                        out.putLong(pending);
+                        pending = pendingBits == 0 ? 0 : value >>> (64 - pendingBits);
+                        total -= 64;
+                    }
+                    while (total >= 8) {
+                        out.write((int) pending);
+                        pending >>>= 8;
+                        total -= 8;
+                    }
+                    pendingBits = total;
+                }
+            }
+        }
+    }
+    
+    private static void writeVarint(Buffer out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+    
+    private void writeFileMetadata(Thrift thrift) {
+        thrift.beginStruct();
+        thrift.i32(1, 1); // Format version
+        thrift.beginList(2, Thrift.STRUCT, columns.size() + 1);
+        thrift.beginStruct();
+        thrift.string(4, "schema");
+        thrift.i32(5, columns.size());
+        thrift.endStruct();
+        for (Column column : columns) {
+            thrift.beginStruct();
+            thrift.i32(1, column.physicalType());
+            thrift.i32(3, REPETITION_REQUIRED);
+            thrift.string(4, column.name);
+            if (column.type == TYPE_STRING) {
+                thrift.i32(6, CONVERTED_UTF8);
+            } else if (column.type == TYPE_TIMESTAMP) {
+                thrift.i32(6, CONVERTED_TIMESTAMP_MILLIS);
+            }
+            thrift.endStruct();
+        }
+        thrift.i64(3, totalRows);
+        thrift.beginList(4, Thrift.STRUCT, rowGroups.size());
+        for (RowGroup group : rowGroups) {
+            long uncompressed = 0;
+            long compressedTotal = 0;
+            thrift.beginStruct();
+            thrift.beginList(1, Thrift.STRUCT, columns.size());
+            for (int i = 0; i < columns.size(); i++) {
+                Column column = columns.get(i);
+                ChunkInfo chunk = group.chunks[i];
+                uncompressed += chunk.uncompressedSize;
+                compressedTotal += chunk.compressedSize;
+                thrift.beginStruct(); // ColumnChunk
+                thrift.i64(2, chunk.offset);
+                thrift.beginStruct(3); // ColumnMetaData
+                thrift.i32(1, column.physicalType());
+                thrift.beginList(2, Thrift.I32, 1);
+                thrift.listI32(column.encoding());
+                thrift.beginList(3, Thrift.BINARY, 1);
+                thrift.listString(column.name);
+                thrift.i32(4, CODEC_GZIP);
+                thrift.i64(5, group.rows);
+                thrift.i64(6, chunk.uncompressedSize);
+                thrift.i64(7, chunk.compressedSize);
+                thrift.i64(9, chunk.offset);
+                thrift.beginStruct(12); // Statistics
+                thrift.i64(3, 0); // Null count
+                if (chunk.min != null) {
+                    thrift.binary(5, chunk.max);
+                    thrift.binary(6, chunk.min);
+                }
+                thrift.endStruct();
+                thrift.endStruct();
+                thrift.endStruct();
+            }
+            thrift.i64(2, uncompressed);
+            thrift.i64(3, group.rows);
+            thrift.i64(5, group.offset);
+            thrift.i64(6, compressedTotal);
+            thrift.endStruct();
+        }
+        thrift.string(6, CREATED_BY);
+        // Statistics are only trusted by readers when each column declares the order they follow
+        thrift.beginList(7, Thrift.STRUCT, columns.size());
+        for (int i = 0; i < columns.size(); i++) {
+            thrift.beginStruct();
+            thrift.beginStruct(1); // TypeDefinedOrder
+            thrift.endStruct();
+            thrift.endStruct();
+        }
+        thrift.endStruct();
+    }
+    
+    /**
+     * A declared column and the plain-encoded values buffered for the current row group
+     */
+    private static final class Column {
+        final String name;
+        final int type;
+        final Buffer values = new Buffer(1 << 12); // Plain-encoded strings and doubles
+        long[] longs = new long[1 << 10]; // Integers and timestamps, delta-encoded when written
+        int count;
+        long minLong;
+        long maxLong;
+        double minDouble;
+        double maxDouble;
+        boolean hasNaN;
+        byte[] minBytes;
+        byte[] maxBytes;
+        
+        Column(String name, int type) {
+            this.name = name;
+            this.type = type;
+            reset();
+        }
+        
+        void addLong(long value) {
+            if (count == longs.length) {
+                longs = Arrays.copyOf(longs, longs.length * 2);
+            }
+            longs[count++] = value;
+            minLong = Math.min(minLong, value);
+            maxLong = Math.max(maxLong, value);
+        }
+        
+        boolean isInteger() {
+            return type == TYPE_INT || type == TYPE_LONG || type == TYPE_TIMESTAMP;
+        }
+        
+        int encoding() {
+            return isInteger() ? ENCODING_DELTA_BINARY_PACKED : ENCODING_PLAIN;
+        }
+        
+        void reset() {
+            values.size = 0;
+            count = 0;
+            minLong = Long.MAX_VALUE;
+            maxLong = Long.MIN_VALUE;
+            minDouble = Double.POSITIVE_INFINITY;
+            maxDouble = Double.NEGATIVE_INFINITY;
+            hasNaN = false;
+            minBytes = null;
+            maxBytes = null;
+        }
+        
+        int physicalType() {
+            switch (type) {
+                case TYPE_STRING: return PHYSICAL_BYTE_ARRAY;
+                case TYPE_INT: return PHYSICAL_INT32;
+                case TYPE_DOUBLE: return PHYSICAL_DOUBLE;
+                default: return PHYSICAL_INT64;
+            }
+        }
+        
+        /**
+         * Minimum of the row group, plain-encoded, or null when there is none to report
+         */
+        byte[] minStatistic() {
+            // The format asks for a zero minimum as -0.0 and a zero maximum as +0.0
+            return statistic(minLong, minDouble == 0 ? -0.0 : minDouble, minBytes);
+        }
+        
+        byte[] maxStatistic() {
+            return statistic(maxLong, maxDouble == 0 ? 0.0 : maxDouble, maxBytes);
+        }
+        
+        private byte[] statistic(long longValue, double doubleValue, byte[] bytesValue) {
+            Buffer buffer = new Buffer(8);
+            switch (type) {
+                case TYPE_STRING:
+                    return bytesValue;
+                case TYPE_INT:
+                    if (count == 0) {
+                        return null;
+                    }
+                    buffer.putInt((int) longValue);
+                    break;
+                case TYPE_DOUBLE:
+                    // With a NaN in the group no range covers every value
+                    if (hasNaN || count == 0) {
+                        return null;
+                    }
+                    buffer.putLong(Double.doubleToLongBits(doubleValue));
+                    break;
+                default:
+                    if (count == 0) {
+                        return null;
+                    }
+                    buffer.putLong(longValue);
+            }
+            return Arrays.copyOf(buffer.bytes, buffer.size);
+        }
+    }
+    
+    private static final class RowGroup {
+        final int rows;
+        final long offset;
+        final ChunkInfo[] chunks;
+        
+        RowGroup(int rows, long offset, int columnCount) {
+            this.rows = rows;
+            this.offset = offset;
+            this.chunks = new ChunkInfo[columnCount];
+        }
+    }
+    
+    /**
+     * Where a column chunk was written and the statistics recorded for it in the footer
+     */
+    private static final class ChunkInfo {
+        long offset;
+        long uncompressedSize;
+        long compressedSize;
+        byte[] min;
+        byte[] max;
+    }
+    
+    /**
+     * GZIP stream at COMPRESSION_LEVEL, which GZIPOutputStream does not take as an argument
+     */
+    private static final class FastGzipOutputStream extends GZIPOutputStream {
+        FastGzipOutputStream(OutputStream out) throws IOException {
+            super(out, 1 << 16);
+            def.setLevel(COMPRESSION_LEVEL);
+        }
+    }
+    
+    /**
+     * Growable little-endian byte buffer, also usable as the target of a compressing stream
+     */
+    private static final class Buffer extends OutputStream {
+        byte[] bytes;
+        int size;
+        
+        Buffer(int capacity) {
+            bytes = new byte[capacity];
+        }
+        
+        @Override
+        public void write(int b) {
+            ensure(1);
+            bytes[size++] = (byte) b;
+        }
+        
+        @Override
+        public void write(byte[] source, int offset, int length) {
+            put(source, offset, length);
+        }
+        
+        void put(byte[] source, int offset, int length) {
+            ensure(length);
+            System.arraycopy(source, offset, bytes, size, length);
+            size += length;
+        }
+        
+        void putInt(int value) {
+            ensure(4);
+            for (int i = 0; i < 4; i++) {
+                bytes[size++] = (byte) (value >>> (8 * i));
+            }
+        }
+        
+        void putLong(long value) {
+            ensure(8);
+            for (int i = 0; i < 8; i++) {
+                bytes[size++] = (byte) (value >>> (8 * i));
+            }
+        }
+        
+        private void ensure(int extra) {
+            if (size + extra > bytes.length) {
+                long capacity = Math.max((long) bytes.length * 2, (long) size + extra);
+                if (capacity > Integer.MAX_VALUE - 8) {
+                    throw new IllegalStateException("Column chunk exceeds 2 GB; use a smaller row group size");
+                }
+                bytes = Arrays.copyOf(bytes, (int) capacity);
+            }
+        }
+    }
+    
+    /**
+     * Encoder for the Thrift compact protocol, which Parquet uses for page headers and the
+     * footer: field headers carry the delta from the previous field id, and integers are
+     * zigzag varints
+     */
+    private static final class Thrift {
+        static final int I32 = 5;
+        static final int I64 = 6;
+        static final int BINARY = 8;
+        static final int LIST = 9;
+        static final int STRUCT = 12;
+        
+        private final Buffer buffer;
+        private final int[] lastFieldIds = new int[16]; // One per open struct
+        private int depth = -1;
+        
+        Thrift(Buffer buffer) {
+            this.buffer = buffer;
+        }
+        
+        /**
+         * Starts a struct that is the message itself or an element of a list
+         */
+        void beginStruct() {
+            lastFieldIds[++depth] = 0;
+        }
+        
+        void beginStruct(int fieldId) {
+            fieldHeader(fieldId, STRUCT);
+            beginStruct();
+        }
+        
+        void endStruct() {
+            buffer.write(0);
+            depth--;
+        }
+        
+        void i32(int fieldId, int value) {
+            fieldHeader(fieldId, I32);
+            varint(zigzag(value));
+        }
+        
+        void i64(int fieldId, long value) {
+            fieldHeader(fieldId, I64);
+            varint(zigzag(value));
+        }
+        
+        void binary(int fieldId, byte[] value) {
+            fieldHeader(fieldId, BINARY);
+            varint(value.length);
+            buffer.put(value, 0, value.length);
+        }
+        
+        void string(int fieldId, String value) {
+            binary(fieldId, value.getBytes(StandardCharsets.UTF_8));
+        }
+        
+        void beginList(int fieldId, int elementType, int size) {
+            fieldHeader(fieldId, LIST);
+            if (size < 15) {
+                buffer.write((size << 4) | elementType);
+            } else {
+                buffer.write(0xF0 | elementType);
+                varint(size);
+            }
+        }
+        
+        void listI32(int value) {
+            varint(zigzag(value));
+        }
+        
+        void listString(String value) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            varint(bytes.length);
+            buffer.put(bytes, 0, bytes.length);
+        }
+        
+        private void fieldHeader(int fieldId, int type) {
+            int delta = fieldId - lastFieldIds[depth];
+            if (delta > 0 && delta <= 15) {
+                buffer.write((delta << 4) | type);
+            } else {
+                buffer.write(type);
+                varint(zigzag(fieldId));
+            }
+            lastFieldIds[depth] = fieldId;
+        }
+        
+        private void varint(long value) {
+            writeVarint(buffer, value);
+        }
+        
+        private static long zigzag(long value) {
+            return (value << 1) ^ (value >> 63);
+        }
+    }
+}
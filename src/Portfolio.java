@@ -1,7 +1,10 @@
 import java.io.Serializable;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * Represents a stock portfolio with a collection of stocks
@@ -12,6 +15,10 @@ public class Portfolio implements Serializable {
     private LocalDateTime createdAt;
     private LocalDateTime lastUpdated;
     private List<Stock> stocks;
+    private transient boolean dirty = true; // True until the portfolio has been written to storage
+    private transient List<PortfolioListener> listeners;
+    private transient long modificationCount; // Bumped on every change so derived metrics can tell when they are stale
+    private transient Map<String, Stock> stocksBySymbol; // Built on first lookup so bulk inserts avoid a linear scan
     
     public Portfolio(String name, String description) {
         this.name = name;
@@ -23,32 +30,61 @@ public class Portfolio implements Serializable {
     
     public void addStock(Stock stock) {
         // Check if stock already exists
-        for (int i = 0; i < stocks.size(); i++) {
-            Stock existingStock = stocks.get(i);
-            if (existingStock.getSymbol().equals(stock.getSymbol())) {
-                // Update existing stock
-                int newQuantity = existingStock.getQuantity() + stock.getQuantity();
-                double newAvgPrice = (existingStock.getQuantity() * existingStock.getPurchasePrice() +
-                                   stock.getQuantity() * stock.getPurchasePrice()) / newQuantity;
-                
-                existingStock.setQuantity(newQuantity);
-                existingStock.setPurchasePrice(newAvgPrice);
-                this.lastUpdated = LocalDateTime.now();
-                return;
-            }
+        Stock existingStock = findStock(stock.getSymbol());
+        if (existingStock != null) {
+            // Update existing stock
+            int newQuantity = existingStock.getQuantity() + stock.getQuantity();
+            double newAvgPrice = (existingStock.getQuantity() * existingStock.getPurchasePrice() +
+                               stock.getQuantity() * stock.getPurchasePrice()) / newQuantity;
+            
+            existingStock.setQuantity(newQuantity);
+            existingStock.setPurchasePrice(newAvgPrice);
+            touch();
+            return;
         }
         
         // Add new stock
         stocks.add(stock);
-        this.lastUpdated = LocalDateTime.now();
+        stocksBySymbol.put(stock.getSymbol(), stock);
+        stock.setPortfolio(this);
+        touch();
+        if (listeners != null) {
+            for (PortfolioListener listener : listeners) {
+                listener.holdingAdded(this, stock);
+            }
+        }
     }
     
     public boolean removeStock(Stock stock) {
-        boolean removed = stocks.remove(stock);
-        if (removed) {
-            this.lastUpdated = LocalDateTime.now();
+        int index = stocks.indexOf(stock);
+        if (index < 0) {
+            return false;
+        }
+        Stock removed = stocks.remove(index);
+        if (stocksBySymbol != null) {
+            stocksBySymbol.remove(removed.getSymbol(), removed);
+        }
+        removed.setPortfolio(null);
+        touch();
+        if (listeners != null) {
+            for (PortfolioListener listener : listeners) {
+                listener.holdingRemoved(this, removed);
+            }
         }
-        return removed;
+        return true;
+    }
+    
+    /**
+     * Gets the holding of a symbol, or null if the portfolio does not hold it
+     */
+    public Stock findStock(String symbol) {
+        if (stocksBySymbol == null) {
+            stocksBySymbol = new HashMap<>();
+            for (Stock stock : stocks) {
+                stocksBySymbol.putIfAbsent(stock.getSymbol(), stock);
+            }
+        }
+        return stocksBySymbol.get(symbol);
     }
     
     public double getTotalValue() {
@@ -75,19 +111,66 @@ public class Portfolio implements Serializable {
     public String getName() { return name; }
     public void setName(String name) { 
         this.name = name; 
-        this.lastUpdated = LocalDateTime.now();
+        touch();
     }
     
     public String getDescription() { return description; }
     public void setDescription(String description) { 
         this.description = description; 
-        this.lastUpdated = LocalDateTime.now();
+        touch();
     }
     
     public LocalDateTime getCreatedAt() { return createdAt; }
     public LocalDateTime getLastUpdated() { return lastUpdated; }
     public List<Stock> getStocks() { return stocks; }
     
+    /**
+     * Whether the portfolio changed since it was last written to storage
+     */
+    public boolean isDirty() { return dirty; }
+    public void markDirty() { this.dirty = true; }
+    public void markClean() { this.dirty = false; }
+    
+    /**
+     * Counter that changes whenever the portfolio or one of its holdings changes
+     */
+    public long getModificationCount() { return modificationCount; }
+    
+    public void addListener(PortfolioListener listener) {
+        if (listeners == null) {
+            listeners = new CopyOnWriteArrayList<>();
+        }
+        listeners.add(listener);
+    }
+    
+    public void removeListener(PortfolioListener listener) {
+        if (listeners != null) {
+            listeners.remove(listener);
+        }
+    }
+    
+    /**
+     * Called by a holding of this portfolio after one of its fields changed
+     */
+    void stockChanged(Stock stock) {
+        this.dirty = true;
+        this.modificationCount++;
+        if (listeners != null) {
+            for (PortfolioListener listener : listeners) {
+                listener.holdingChanged(this, stock);
+            }
+        }
+    }
+    
+    /**
+     * Records a structural change to the portfolio
+     */
+    private void touch() {
+        this.lastUpdated = LocalDateTime.now();
+        this.dirty = true;
+        this.modificationCount++;
+    }
+    
     public String toCsv() {
         StringBuilder builder = new StringBuilder();
         builder.append(String.format("%s,%s\n", name, description.replace(",", ";")));
@@ -0,0 +1,174 @@
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Single entry point for portfolio metrics shared by the console and any other front end.
+ * Per-portfolio stats are computed in one pass over the holdings and cached until the
+ * portfolio changes, so each metric is computed once no matter how many consumers ask.
+ */
+public class PortfolioAnalytics {
+    private final List<Portfolio> portfolios;
+    private final RankingIndex rankingIndex;
+    private final Map<Portfolio, CachedStats> cache = new IdentityHashMap<>();
+    private int recomputations; // Cache misses so far, reported in valuation events
+    
+    public PortfolioAnalytics(List<Portfolio> portfolios) {
+        this(portfolios, null);
+    }
+    
+    /**
+     * @param portfolios Portfolios to analyze
+     * @param rankingIndex Live index used for top-N queries, or null to select from the portfolios
+     */
+    public PortfolioAnalytics(List<Portfolio> portfolios, RankingIndex rankingIndex) {
+        this.portfolios = portfolios;
+        this.rankingIndex = rankingIndex;
+    }
+    
+    public List<Portfolio> getPortfolios() {
+        return portfolios;
+    }
+    
+    /**
+     * Gets the stats of one portfolio, recomputing them only if it changed since last asked
+     */
+    public synchronized PortfolioStats getStats(Portfolio portfolio) {
+        ValuationEvent event = new ValuationEvent();
+        event.begin();
+        int before = recomputations;
+        PortfolioStats stats = cachedStats(portfolio);
+        event.end();
+        if (event.shouldCommit()) {
+            event.portfolio = portfolio.getName();
+            event.holdings = stats.getHoldingCount();
+            event.recomputed = recomputations - before;
+            event.commit();
+        }
+        return stats;
+    }
+    
+    private PortfolioStats cachedStats(Portfolio portfolio) {
+        long modificationCount = portfolio.getModificationCount();
+        CachedStats cached = cache.get(portfolio);
+        if (cached == null || cached.modificationCount != modificationCount) {
+            cached = new CachedStats(modificationCount, computeStats(portfolio.getStocks()));
+            cache.put(portfolio, cached);
+            recomputations++;
+        }
+        return cached.stats;
+    }
+    
+    /**
+     * Gets stats across all portfolios, combined from the per-portfolio stats
+     */
+    public synchronized PortfolioStats getOverallStats() {
+        ValuationEvent event = new ValuationEvent();
+        event.begin();
+        int before = recomputations;
+        int holdingCount = 0;
+        double totalCost = 0;
+        double totalValue = 0;
+        Stock best = null;
+        Stock worst = null;
+        double bestPercentage = 0;
+        double worstPercentage = 0;
+        
+        for (Portfolio portfolio : portfolios) {
+            PortfolioStats stats = cachedStats(portfolio);
+            holdingCount += stats.getHoldingCount();
+            totalCost += stats.getTotalCost();
+            totalValue += stats.getTotalValue();
+            if (stats.getBestStock() != null && (best == null || stats.getBestPercentage() > bestPercentage)) {
+                best = stats.getBestStock();
+                bestPercentage = stats.getBestPercentage();
+            }
+            if (stats.getWorstStock() != null && (worst == null || stats.getWorstPercentage() < worstPercentage)) {
+                worst = stats.getWorstStock();
+                worstPercentage = stats.getWorstPercentage();
+            }
+        }
+        
+        // Forget portfolios that are no longer part of the list
+        if (cache.size() > portfolios.size()) {
+            Map<Portfolio, CachedStats> current = new IdentityHashMap<>();
+            for (Portfolio portfolio : portfolios) {
+                current.put(portfolio, cache.get(portfolio));
+            }
+            cache.clear();
+            cache.putAll(current);
+        }
+        
+        event.end();
+        if (event.shouldCommit()) {
+            event.portfolio = "*";
+            event.holdings = holdingCount;
+            event.recomputed = recomputations - before;
+            event.commit();
+        }
+        return new PortfolioStats(holdingCount, totalCost, totalValue, best, bestPercentage, worst, worstPercentage);
+    }
+    
+    /**
+     * Gets the top holdings across all portfolios, best first
+     * @param sortCriteria The criteria to sort by (1=Percentage, 2=Dollar Amount, 3=Value)
+     * @param numStocks Number of top stocks to return
+     */
+    public List<TopPerformersPanel.StockWithPortfolio> getTopStocks(int sortCriteria, int numStocks) {
+        RankingEvent event = new RankingEvent();
+        event.begin();
+        List<TopPerformersPanel.StockWithPortfolio> top = rankingIndex != null
+                ? rankingIndex.getTopStocks(sortCriteria, numStocks)
+                : TopNSelector.select(portfolios, sortCriteria, numStocks);
+        event.end();
+        if (event.shouldCommit()) {
+            event.sortCriteria = sortCriteria;
+            event.requested = numStocks;
+            event.returned = top.size();
+            event.indexed = rankingIndex != null;
+            event.commit();
+        }
+        return top;
+    }
+    
+    /**
+     * Computes totals and best/worst holdings in a single pass. On ties the earlier holding wins.
+     */
+    public static PortfolioStats computeStats(List<Stock> stocks) {
+        double totalCost = 0;
+        double totalValue = 0;
+        Stock best = null;
+        Stock worst = null;
+        double bestPercentage = 0;
+        double worstPercentage = 0;
+        
+        for (Stock stock : stocks) {
+            double cost = stock.getCostBasis();
+            double value = stock.getCurrentValue();
+            double percentage = cost == 0 ? 0 : ((value - cost) / cost) * 100;
+            totalCost += cost;
+            totalValue += value;
+            
+            if (best == null || percentage > bestPercentage) {
+                best = stock;
+                bestPercentage = percentage;
+            }
+            if (worst == null || percentage < worstPercentage) {
+                worst = stock;
+                worstPercentage = percentage;
+            }
+        }
+        
+        return new PortfolioStats(stocks.size(), totalCost, totalValue, best, bestPercentage, worst, worstPercentage);
+    }
+    
+    private static final class CachedStats {
+        private final long modificationCount;
+        private final PortfolioStats stats;
+        
+        CachedStats(long modificationCount, PortfolioStats stats) {
+            this.modificationCount = modificationCount;
+            this.stats = stats;
+        }
+    }
+}
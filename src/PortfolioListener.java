@@ -0,0 +1,19 @@
+/**
+ * Receives notifications when the holdings of a portfolio change
+ */
+public interface PortfolioListener {
+    /**
+     * Called after a new holding was added to the portfolio
+     */
+    void holdingAdded(Portfolio portfolio, Stock stock);
+    
+    /**
+     * Called after a holding was removed from the portfolio
+     */
+    void holdingRemoved(Portfolio portfolio, Stock stock);
+    
+    /**
+     * Called after the quantity, purchase price, current price or name of a holding changed
+     */
+    void holdingChanged(Portfolio portfolio, Stock stock);
+}
@@ -0,0 +1,32 @@
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight Recorder event covering loading portfolios from the CSV file or the shard store
+ */
+@Name("stockportfolio.PortfolioLoad")
+@Label("Portfolio Load")
+@Category({"Stock Portfolio", "Storage"})
+@Description("Reading portfolios from storage")
+public class PortfolioLoadEvent extends Event {
+    @Label("Storage")
+    @Description("csv for the single data file, shards for the per-portfolio store")
+    String storage;
+    
+    @Label("Path")
+    String path;
+    
+    @Label("Portfolios")
+    int portfolios;
+    
+    @Label("Holdings")
+    int holdings;
+    
+    @Label("Bytes Read")
+    @DataAmount
+    long bytes;
+}
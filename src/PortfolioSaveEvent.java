@@ -0,0 +1,32 @@
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight Recorder event covering saving portfolios to the CSV file or the shard store
+ */
+@Name("stockportfolio.PortfolioSave")
+@Label("Portfolio Save")
+@Category({"Stock Portfolio", "Storage"})
+@Description("Writing portfolios to storage")
+public class PortfolioSaveEvent extends Event {
+    @Label("Storage")
+    @Description("csv for the single data file, shards for the per-portfolio store")
+    String storage;
+    
+    @Label("Path")
+    String path;
+    
+    @Label("Portfolios Written")
+    int portfolios;
+    
+    @Label("Holdings Written")
+    int holdings;
+    
+    @Label("Bytes Written")
+    @DataAmount
+    long bytes;
+}
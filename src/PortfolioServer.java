@@ -0,0 +1,593 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.lang.reflect.Method;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+
+/**
+ * Serves the portfolio model over HTTP as JSON:
+ * <pre>
+ * GET    /portfolios                              names and totals of all portfolios
+ * POST   /portfolios                              {"name": ..., "description": ...}
+ * GET    /portfolios/{name}                       holdings of one portfolio
+ * GET    /portfolios/{name}/valuation             totals and best/worst holding
+ * POST   /portfolios/{name}/holdings              {"symbol": ..., "quantity": ..., "price": ..., "name": ...}
+ * DELETE /portfolios/{name}/holdings/{symbol}     whole holding, or ?quantity=n shares of it
+ * GET    /top?by=percentage|dollar|value&amp;n=10      best holdings across all portfolios
+ * </pre>
+ * The server either serves one set of portfolios or, given a TenantStore, the portfolios of
+ * many accounts. In the latter case every request names its account, either with a path
+ * prefix, as in /accounts/{id}/portfolios, or with an X-Account-Id header.
+ * <p>
+ * Each request runs on its own virtual thread when the JVM supports them (Java 21+) and on a
+ * bounded pool otherwise. Reads share a read lock on the model (or the account) and writes take
+ * the write lock, so a response never sees a half-applied change. Changes are saved by a
+ * background flusher rather than on the request path.
+ */
+public class PortfolioServer {
+    private static final int FALLBACK_THREADS = 256;
+    private static final int BACKLOG = 4096;
+    private static final long FLUSH_INTERVAL_MS = 1000;
+    private static final String ACCOUNT_HEADER = "X-Account-Id";
+    
+    private final Account single; // The served portfolios, or null when serving accounts
+    private final TenantStore tenants;
+    private final PortfolioStore store;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final AtomicBoolean changed = new AtomicBoolean();
+    private final Object flushLock = new Object(); // One save at a time, so an older snapshot never overwrites a newer one
+    
+    private HttpServer server;
+    private ExecutorService executor;
+    private ScheduledExecutorService flusher;
+    
+    /**
+     * @param analytics Analytics over the served portfolios
+     * @param rankingIndex Index that created portfolios are added to, or null
+     * @param store Storage that changes are flushed to, or null to keep them in memory
+     */
+    public PortfolioServer(PortfolioAnalytics analytics, RankingIndex rankingIndex, PortfolioStore store) {
+        this.single = new Account(analytics.getPortfolios(), analytics, rankingIndex);
+        this.tenants = null;
+        this.store = store;
+    }
+    
+    /**
+     * Serves the portfolios of every account in the store; the flusher saves changed accounts
+     * and the store evicts idle ones
+     */
+    public PortfolioServer(TenantStore tenants) {
+        this.single = null;
+        this.tenants = tenants;
+        this.store = null;
+    }
+    
+    /**
+     * Starts listening; port 0 picks a free port
+     */
+    public synchronized void start(int port) throws IOException {
+        if (server != null) {
+            throw new IllegalStateException("Server already started");
+        }
+        // Headers and body are written separately, so without TCP_NODELAY every response
+        // waits on the client's delayed ACK (~40 ms). Read once, when the first server is created.
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+        executor = newRequestExecutor();
+        server = HttpServer.create(new InetSocketAddress(port), BACKLOG);
+        server.setExecutor(executor);
+        server.createContext("/portfolios", this::handle);
+        server.createContext("/top", this::handle);
+        if (tenants != null) {
+            server.createContext("/accounts", this::handle);
+        }
+        server.start();
+        
+        if (store != null || tenants != null) {
+            flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "portfolio-flusher");
+                thread.setDaemon(true);
+                return thread;
+            });
+            flusher.scheduleWithFixedDelay(this::flush, FLUSH_INTERVAL_MS, FLUSH_INTERVAL_MS, TimeUnit.MILLISECONDS);
+        }
+    }
+    
+    public synchronized int getPort() {
+        return server.getAddress().getPort();
+    }
+    
+    /**
+     * Stops accepting requests, waits briefly for those in flight and saves pending changes
+     */
+    public synchronized void stop() {
+        if (server == null) {
+            return;
+        }
+        server.stop(1);
+        executor.shutdown();
+        try {
+            executor.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (flusher != null) {
+            flusher.shutdown();
+            try {
+                flusher.awaitTermination(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            flusher = null;
+        }
+        flush();
+        server = null;
+        executor = null;
+    }
+    
+    /**
+     * Writes changed portfolios to storage if anything was modified since the last flush
+     */
+    public void flush() {
+        if (tenants != null) {
+            synchronized (flushLock) {
+                try {
+                    tenants.flush();
+                } catch (IOException e) {
+                    System.err.println("Error saving accounts: " + e.getMessage());
+                }
+            }
+            return;
+        }
+        if (store == null) {
+            return;
+        }
+        synchronized (flushLock) {
+            if (!changed.getAndSet(false)) {
+                return;
+            }
+            lock.readLock().lock();
+            try {
+                store.savePortfolios(single.portfolios);
+            } catch (IOException e) {
+                changed.set(true);
+                System.err.println("Error saving portfolios: " + e.getMessage());
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+    }
+    
+    /**
+     * One virtual thread per task where available, otherwise a fixed pool of platform threads
+     */
+    static ExecutorService newRequestExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newFixedThreadPool(FALLBACK_THREADS);
+        }
+    }
+    
+    private void handle(HttpExchange exchange) throws IOException {
+        int status;
+        String body;
+        try {
+            String method = exchange.getRequestMethod();
+            List<String> path = segments(exchange.getRequestURI().getRawPath());
+            Map<String, String> query = parameters(exchange.getRequestURI().getRawQuery());
+            String account = null;
+            if (tenants != null) {
+                account = exchange.getRequestHeaders().getFirst(ACCOUNT_HEADER);
+                if (path.size() >= 2 && path.get(0).equals("accounts")) {
+                    account = path.get(1);
+                    path = path.subList(2, path.size());
+                }
+                if (account == null || account.isEmpty()) {
+                    throw new IllegalArgumentException("No account given: use /accounts/{id}/... or the " +
+                            ACCOUNT_HEADER + " header");
+                }
+            }
+            
+            if (path.size() == 1 && path.get(0).equals("top")) {
+                requireMethod(method, "GET");
+                body = top(account, query);
+                status = 200;
+            } else if (path.isEmpty() || !path.get(0).equals("portfolios")) {
+                throw new NotFoundException("No such resource: " + exchange.getRequestURI().getPath());
+            } else if (path.size() == 1) {
+                if (method.equals("POST")) {
+                    body = createPortfolio(account, Json.parseObject(readBody(exchange)));
+                    status = 201;
+                } else {
+                    requireMethod(method, "GET");
+                    body = listPortfolios(account);
+                    status = 200;
+                }
+            } else if (path.size() == 2) {
+                requireMethod(method, "GET");
+                body = portfolioDetails(account, path.get(1));
+                status = 200;
+            } else if (path.size() == 3 && path.get(2).equals("valuation")) {
+                requireMethod(method, "GET");
+                body = valuation(account, path.get(1));
+                status = 200;
+            } else if (path.size() == 3 && path.get(2).equals("holdings")) {
+                requireMethod(method, "POST");
+                body = addHolding(account, path.get(1), Json.parseObject(readBody(exchange)));
+                status = 201;
+            } else if (path.size() == 4 && path.get(2).equals("holdings")) {
+                requireMethod(method, "DELETE");
+                body = removeHolding(account, path.get(1), path.get(3), query.get("quantity"));
+                status = 200;
+            } else {
+                throw new NotFoundException("No such resource: " + exchange.getRequestURI().getPath());
+            }
+        } catch (NotFoundException e) {
+            status = 404;
+            body = error(e.getMessage());
+        } catch (MethodNotAllowedException e) {
+            status = 405;
+            body = error(e.getMessage());
+        } catch (IllegalArgumentException e) {
+            status = 400;
+            body = error(e.getMessage());
+        } catch (RuntimeException e) {
+            status = 500;
+            body = error(String.valueOf(e));
+        } catch (IOException e) {
+            status = 500;
+            body = error("Could not load the account: " + e.getMessage());
+        }
+        
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+    
+    private String listPortfolios(String accountId) throws IOException {
+        return read(accountId, account -> {
+            StringBuilder json = new StringBuilder("[");
+            for (Portfolio portfolio : account.portfolios) {
+                if (json.length() > 1) {
+                    json.append(',');
+                }
+                PortfolioStats stats = account.analytics.getStats(portfolio);
+                json.append("{\"name\":").append(Json.string(portfolio.getName()))
+                        .append(",\"description\":").append(Json.string(portfolio.getDescription()))
+                        .append(",\"holdings\":").append(stats.getHoldingCount())
+                        .append(",\"cost\":").append(Json.number(stats.getTotalCost()))
+                        .append(",\"value\":").append(Json.number(stats.getTotalValue()))
+                        .append('}');
+            }
+            return json.append(']').toString();
+        });
+    }
+    
+    private String portfolioDetails(String accountId, String name) throws IOException {
+        return read(accountId, account -> {
+            Portfolio portfolio = account.portfolio(name);
+            StringBuilder json = new StringBuilder();
+            json.append("{\"name\":").append(Json.string(portfolio.getName()))
+                    .append(",\"description\":").append(Json.string(portfolio.getDescription()))
+                    .append(",\"holdings\":[");
+            boolean first = true;
+            for (Stock stock : portfolio.getStocks()) {
+                if (!first) {
+                    json.append(',');
+                }
+                first = false;
+                appendHolding(json, stock);
+            }
+            return json.append("]}").toString();
+        });
+    }
+    
+    private String valuation(String accountId, String name) throws IOException {
+        return read(accountId, account -> {
+            Portfolio portfolio = account.portfolio(name);
+            PortfolioStats stats = account.analytics.getStats(portfolio);
+            StringBuilder json = new StringBuilder();
+            json.append("{\"name\":").append(Json.string(portfolio.getName()))
+                    .append(",\"holdings\":").append(stats.getHoldingCount())
+                    .append(",\"cost\":").append(Json.number(stats.getTotalCost()))
+                    .append(",\"value\":").append(Json.number(stats.getTotalValue()))
+                    .append(",\"gainLoss\":").append(Json.number(stats.getTotalGainLoss()))
+                    .append(",\"gainLossPercent\":").append(Json.number(stats.getPercentageGainLoss()));
+            if (stats.getBestStock() != null) {
+                json.append(",\"best\":{\"symbol\":").append(Json.string(stats.getBestStock().getSymbol()))
+                        .append(",\"gainLossPercent\":").append(Json.number(stats.getBestPercentage())).append('}')
+                        .append(",\"worst\":{\"symbol\":").append(Json.string(stats.getWorstStock().getSymbol()))
+                        .append(",\"gainLossPercent\":").append(Json.number(stats.getWorstPercentage())).append('}');
+            }
+            return json.append('}').toString();
+        });
+    }
+    
+    private String top(String accountId, Map<String, String> query) throws IOException {
+        int criteria = criteria(query.getOrDefault("by", "percentage"));
+        int n = parseInt(query.getOrDefault("n", "10"), "n");
+        if (n <= 0) {
+            throw new IllegalArgumentException("n must be positive");
+        }
+        return read(accountId, account -> {
+            StringBuilder json = new StringBuilder("[");
+            for (TopPerformersPanel.StockWithPortfolio entry : account.analytics.getTopStocks(criteria, n)) {
+                if (json.length() > 1) {
+                    json.append(',');
+                }
+                json.append("{\"portfolio\":").append(Json.string(entry.getPortfolioName())).append(',');
+                appendHoldingFields(json, entry.getStock());
+                json.append('}');
+            }
+            return json.append(']').toString();
+        });
+    }
+    
+    private String createPortfolio(String accountId, Map<String, Object> request) throws IOException {
+        String name = requiredString(request, "name").trim();
+        if (name.isEmpty()) {
+            throw new IllegalArgumentException("Portfolio name must not be empty");
+        }
+        Object description = request.get("description");
+        return write(accountId, account -> {
+            if (account.portfoliosByName.containsKey(name)) {
+                throw new IllegalArgumentException("Portfolio already exists: " + name);
+            }
+            Portfolio portfolio = new Portfolio(name, description == null ? "" : description.toString());
+            account.portfolios.add(portfolio);
+            account.portfoliosByName.put(name, portfolio);
+            if (account.rankingIndex != null) {
+                account.rankingIndex.addPortfolio(portfolio);
+            }
+            return "{\"name\":" + Json.string(name) + ",\"description\":" + Json.string(portfolio.getDescription()) + "}";
+        });
+    }
+    
+    private String addHolding(String accountId, String portfolioName, Map<String, Object> request) throws IOException {
+        String symbol = requiredString(request, "symbol").trim().toUpperCase(Locale.ROOT);
+        double quantity = requiredNumber(request, "quantity");
+        double price = requiredNumber(request, "price");
+        if (symbol.isEmpty() || quantity <= 0 || quantity != Math.floor(quantity) || quantity > Integer.MAX_VALUE || price <= 0) {
+            throw new IllegalArgumentException("Symbol, a positive whole quantity and a positive price are required");
+        }
+        Object name = request.get("name");
+        return write(accountId, account -> {
+            Portfolio portfolio = account.portfolio(portfolioName);
+            portfolio.addStock(new Stock(symbol, name == null ? symbol : name.toString(), (int) quantity, price));
+            StringBuilder json = new StringBuilder();
+            appendHolding(json, portfolio.findStock(symbol));
+            return json.toString();
+        });
+    }
+    
+    private String removeHolding(String accountId, String portfolioName, String symbol, String quantityParameter)
+            throws IOException {
+        String normalized = symbol.toUpperCase(Locale.ROOT);
+        return write(accountId, account -> {
+            Portfolio portfolio = account.portfolio(portfolioName);
+            Stock stock = portfolio.findStock(normalized);
+            if (stock == null) {
+                throw new NotFoundException(normalized + " is not in " + portfolio.getName());
+            }
+            int quantity = quantityParameter == null ? stock.getQuantity() : parseInt(quantityParameter, "quantity");
+            if (quantity <= 0 || quantity > stock.getQuantity()) {
+                throw new IllegalArgumentException("Invalid quantity: " + quantity);
+            }
+            if (quantity == stock.getQuantity()) {
+                portfolio.removeStock(stock);
+            } else {
+                stock.setQuantity(stock.getQuantity() - quantity);
+            }
+            return "{\"symbol\":" + Json.string(normalized) + ",\"removed\":" + quantity +
+                    ",\"remaining\":" + (stock.getPortfolio() == null ? 0 : stock.getQuantity()) + "}";
+        });
+    }
+    
+    /**
+     * Runs a read-only handler on the served portfolios, or on the account's when serving accounts
+     */
+    private String read(String accountId, Function<Account, String> handler) throws IOException {
+        if (tenants != null) {
+            return tenants.read(accountId, portfolios -> handler.apply(new Account(portfolios, null, null)));
+        }
+        lock.readLock().lock();
+        try {
+            return handler.apply(single);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    /**
+     * Runs a handler that changes portfolios; a handler that throws is taken to have changed nothing
+     */
+    private String write(String accountId, Function<Account, String> handler) throws IOException {
+        if (tenants != null) {
+            return tenants.write(accountId, portfolios -> handler.apply(new Account(portfolios, null, null)));
+        }
+        lock.writeLock().lock();
+        try {
+            String body = handler.apply(single);
+            changed.set(true);
+            return body;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    private static void appendHolding(StringBuilder json, Stock stock) {
+        json.append('{');
+        appendHoldingFields(json, stock);
+        json.append('}');
+    }
+    
+    private static void appendHoldingFields(StringBuilder json, Stock stock) {
+        json.append("\"symbol\":").append(Json.string(stock.getSymbol()))
+                .append(",\"name\":").append(Json.string(stock.getName()))
+                .append(",\"quantity\":").append(stock.getQuantity())
+                .append(",\"purchasePrice\":").append(Json.number(stock.getPurchasePrice()))
+                .append(",\"currentPrice\":").append(Json.number(stock.getCurrentPrice()))
+                .append(",\"value\":").append(Json.number(stock.getCurrentValue()))
+                .append(",\"gainLossPercent\":").append(Json.number(stock.getPercentageGainLoss()));
+    }
+    
+    private static int criteria(String name) {
+        switch (name.toLowerCase(Locale.ROOT)) {
+            case "percentage": return 1;
+            case "dollar": return 2;
+            case "value": return 3;
+            default: throw new IllegalArgumentException("Unknown ranking: " + name);
+        }
+    }
+    
+    private static void requireMethod(String method, String allowed) {
+        if (!method.equals(allowed)) {
+            throw new MethodNotAllowedException(method + " is not supported here; use " + allowed);
+        }
+    }
+    
+    private static String requiredString(Map<String, Object> request, String key) {
+        Object value = request.get(key);
+        if (!(value instanceof String)) {
+            throw new IllegalArgumentException("Missing string field: " + key);
+        }
+        return (String) value;
+    }
+    
+    private static double requiredNumber(Map<String, Object> request, String key) {
+        Object value = request.get(key);
+        if (!(value instanceof Double)) {
+            throw new IllegalArgumentException("Missing numeric field: " + key);
+        }
+        return (Double) value;
+    }
+    
+    private static int parseInt(String value, String description) {
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Not a whole number for " + description + ": " + value);
+        }
+    }
+    
+    private static String readBody(HttpExchange exchange) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        try (InputStream in = exchange.getRequestBody()) {
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                body.write(buffer, 0, read);
+            }
+        }
+        return new String(body.toByteArray(), StandardCharsets.UTF_8);
+    }
+    
+    private static List<String> segments(String rawPath) {
+        List<String> segments = new ArrayList<>();
+        for (String segment : rawPath.split("/")) {
+            if (!segment.isEmpty()) {
+                segments.add(decode(segment));
+            }
+        }
+        return segments;
+    }
+    
+    private static Map<String, String> parameters(String rawQuery) {
+        Map<String, String> parameters = new HashMap<>();
+        if (rawQuery == null) {
+            return parameters;
+        }
+        for (String pair : rawQuery.split("&")) {
+            int equals = pair.indexOf('=');
+            if (equals > 0) {
+                parameters.put(decode(pair.substring(0, equals)), decode(pair.substring(equals + 1)));
+            }
+        }
+        return parameters;
+    }
+    
+    private static String decode(String value) {
+        try {
+            return URLDecoder.decode(value.replace("+", "%2B"), "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+    
+    private static String error(String message) {
+        return "{\"error\":" + Json.string(message) + "}";
+    }
+    
+    /**
+     * Portfolios served together with the analytics and lookups the handlers use over them. An
+     * account of a TenantStore gets a fresh one per request, with analytics computed on demand.
+     */
+    private static class Account {
+        final List<Portfolio> portfolios;
+        final Map<String, Portfolio> portfoliosByName = new HashMap<>();
+        final PortfolioAnalytics analytics;
+        final RankingIndex rankingIndex;
+        
+        /**
+         * @param analytics Analytics over the portfolios, or null to compute them on demand
+         * @param rankingIndex Index that created portfolios are added to, or null
+         */
+        Account(List<Portfolio> portfolios, PortfolioAnalytics analytics, RankingIndex rankingIndex) {
+            this.portfolios = portfolios;
+            this.analytics = analytics != null ? analytics : new PortfolioAnalytics(portfolios);
+            this.rankingIndex = rankingIndex;
+            for (Portfolio portfolio : portfolios) {
+                portfoliosByName.put(portfolio.getName(), portfolio);
+            }
+        }
+        
+        Portfolio portfolio(String name) {
+            Portfolio portfolio = portfoliosByName.get(name);
+            if (portfolio == null) {
+                throw new NotFoundException("No such portfolio: " + name);
+            }
+            return portfolio;
+        }
+    }
+    
+    private static class NotFoundException extends IllegalArgumentException {
+        private static final long serialVersionUID = 1L;
+        
+        NotFoundException(String message) {
+            super(message);
+        }
+    }
+    
+    private static class MethodNotAllowedException extends IllegalArgumentException {
+        private static final long serialVersionUID = 1L;
+        
+        MethodNotAllowedException(String message) {
+            super(message);
+        }
+    }
+}
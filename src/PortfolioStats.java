@@ -0,0 +1,47 @@
+/**
+ * Metrics of one portfolio (or of all portfolios combined) computed in a single pass over its holdings
+ */
+public class PortfolioStats {
+    private final int holdingCount;
+    private final double totalCost;
+    private final double totalValue;
+    private final Stock bestStock;
+    private final Stock worstStock;
+    private final double bestPercentage;
+    private final double worstPercentage;
+    
+    public PortfolioStats(int holdingCount, double totalCost, double totalValue,
+                          Stock bestStock, double bestPercentage, Stock worstStock, double worstPercentage) {
+        this.holdingCount = holdingCount;
+        this.totalCost = totalCost;
+        this.totalValue = totalValue;
+        this.bestStock = bestStock;
+        this.bestPercentage = bestPercentage;
+        this.worstStock = worstStock;
+        this.worstPercentage = worstPercentage;
+    }
+    
+    public int getHoldingCount() { return holdingCount; }
+    public double getTotalCost() { return totalCost; }
+    public double getTotalValue() { return totalValue; }
+    
+    public double getTotalGainLoss() {
+        return totalValue - totalCost;
+    }
+    
+    public double getPercentageGainLoss() {
+        return totalCost > 0 ? (getTotalGainLoss() / totalCost) * 100 : 0;
+    }
+    
+    /**
+     * Holding with the highest percentage gain, or null if there are no holdings
+     */
+    public Stock getBestStock() { return bestStock; }
+    public double getBestPercentage() { return bestPercentage; }
+    
+    /**
+     * Holding with the lowest percentage gain, or null if there are no holdings
+     */
+    public Stock getWorstStock() { return worstStock; }
+    public double getWorstPercentage() { return worstPercentage; }
+}
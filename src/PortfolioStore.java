@@ -0,0 +1,229 @@
+import java.io.BufferedReader;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Stores each portfolio in its own CSV shard file plus a manifest listing the shards in order.
+ * Only portfolios that changed since the last save are rewritten, each one through a temp file
+ * and an atomic rename, so a failed write never damages another portfolio.
+ */
+public class PortfolioStore {
+    private static final String MANIFEST_FILE = "manifest.csv";
+    private static final String SHARD_PREFIX = "portfolio-";
+    private static final String SHARD_SUFFIX = ".csv";
+    
+    private static final LatencyHistogram LOAD_LATENCY = Metrics.latency("store.load");
+    private static final Counter LOAD_BYTES = Metrics.counter("store.load.bytes");
+    private static final LatencyHistogram SAVE_LATENCY = Metrics.latency("store.save");
+    private static final Counter SAVE_BYTES = Metrics.counter("store.save.bytes");
+    private static final Counter SAVE_SHARDS = Metrics.counter("store.save.shards");
+    
+    private final Path directory;
+    private final Map<Portfolio, String> shardFiles = new IdentityHashMap<>();
+    private List<String> manifest = new ArrayList<>();
+    private int nextShardId = 1;
+    
+    public PortfolioStore(String directoryPath) {
+        this.directory = Paths.get(directoryPath);
+    }
+    
+    /**
+     * Whether the store has been written before
+     */
+    public boolean exists() {
+        return Files.exists(directory.resolve(MANIFEST_FILE));
+    }
+    
+    /**
+     * Loads all portfolios listed in the manifest
+     */
+    public List<Portfolio> loadPortfolios() throws IOException {
+        List<Portfolio> portfolios = new ArrayList<>();
+        shardFiles.clear();
+        manifest = new ArrayList<>();
+        
+        if (!exists()) {
+            return portfolios;
+        }
+        
+        long start = System.nanoTime();
+        PortfolioLoadEvent event = new PortfolioLoadEvent();
+        event.begin();
+        long bytes = 0;
+        for (String line : Files.readAllLines(directory.resolve(MANIFEST_FILE), StandardCharsets.UTF_8)) {
+            String shardFile = line.trim();
+            if (shardFile.isEmpty()) {
+                continue;
+            }
+            
+            Path shardPath = directory.resolve(shardFile);
+            if (!Files.exists(shardPath)) {
+                System.err.println("Missing portfolio shard: " + shardFile);
+                continue;
+            }
+            
+            bytes += Files.size(shardPath);
+            List<Portfolio> loaded;
+            try (BufferedReader reader = Files.newBufferedReader(shardPath, StandardCharsets.UTF_8)) {
+                loaded = FileHandler.readPortfolios(reader);
+            }
+            if (loaded.isEmpty()) {
+                System.err.println("Empty portfolio shard: " + shardFile);
+                continue;
+            }
+            
+            Portfolio portfolio = loaded.get(0);
+            portfolio.markClean();
+            portfolios.add(portfolio);
+            shardFiles.put(portfolio, shardFile);
+            manifest.add(shardFile);
+            nextShardId = Math.max(nextShardId, parseShardId(shardFile) + 1);
+        }
+        
+        LOAD_LATENCY.recordSince(start);
+        LOAD_BYTES.add(bytes);
+        event.end();
+        if (event.shouldCommit()) {
+            event.storage = "shards";
+            event.path = directory.toString();
+            event.portfolios = portfolios.size();
+            event.holdings = FileHandler.countHoldings(portfolios);
+            event.bytes = bytes;
+            event.commit();
+        }
+        return portfolios;
+    }
+    
+    /**
+     * Writes new and dirty portfolios to their shards, then updates the manifest if the set
+     * or order of portfolios changed. Portfolios that failed to save stay dirty and are
+     * retried on the next call.
+     * @return Number of portfolio shards written
+     */
+    public int savePortfolios(List<Portfolio> portfolios) throws IOException {
+        long start = System.nanoTime();
+        PortfolioSaveEvent event = new PortfolioSaveEvent();
+        event.begin();
+        event.storage = "shards";
+        event.path = directory.toString();
+        try {
+            int written = saveChanged(portfolios, event);
+            SAVE_SHARDS.add(written);
+            return written;
+        } finally {
+            SAVE_LATENCY.recordSince(start);
+            SAVE_BYTES.add(event.bytes);
+            event.commit();
+        }
+    }
+    
+    /**
+     * @param event Event that the written portfolios, holdings and bytes are added to
+     */
+    private int saveChanged(List<Portfolio> portfolios, PortfolioSaveEvent event) throws IOException {
+        Files.createDirectories(directory);
+        
+        List<String> order = new ArrayList<>();
+        Map<Portfolio, String> kept = new IdentityHashMap<>();
+        IOException failure = null;
+        int written = 0;
+        
+        for (Portfolio portfolio : portfolios) {
+            String shardFile = shardFiles.get(portfolio);
+            boolean isNew = shardFile == null;
+            if (isNew) {
+                shardFile = allocateShardFile();
+            }
+            
+            if (isNew || portfolio.isDirty()) {
+                try {
+                    event.bytes += writeAtomically(directory.resolve(shardFile), portfolio.toCsv());
+                    portfolio.markClean();
+                    written++;
+                    event.portfolios++;
+                    event.holdings += portfolio.getStocks().size();
+                } catch (IOException e) {
+                    if (failure == null) {
+                        failure = e;
+                    }
+                    if (isNew) {
+                        continue; // Not listed until its shard exists
+                    }
+                }
+            }
+            
+            kept.put(portfolio, shardFile);
+            order.add(shardFile);
+        }
+        
+        if (!order.equals(manifest)) {
+            StringBuilder builder = new StringBuilder();
+            for (String shardFile : order) {
+                builder.append(shardFile).append("\n");
+            }
+            event.bytes += writeAtomically(directory.resolve(MANIFEST_FILE), builder.toString());
+            
+            // Shards of removed portfolios are only deleted once the manifest no longer lists them
+            for (String shardFile : manifest) {
+                if (!order.contains(shardFile)) {
+                    Files.deleteIfExists(directory.resolve(shardFile));
+                }
+            }
+            manifest = order;
+        }
+        
+        shardFiles.clear();
+        shardFiles.putAll(kept);
+        
+        if (failure != null) {
+            throw failure;
+        }
+        return written;
+    }
+    
+    /**
+     * Writes content to a temp file, syncs it, and renames it over the target
+     * @return Number of bytes written
+     */
+    private long writeAtomically(Path target, String content) throws IOException {
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+        try (FileOutputStream out = new FileOutputStream(temp.toFile())) {
+            out.write(bytes);
+            out.getFD().sync();
+        }
+        FileHandler.replaceAtomically(temp, target);
+        return bytes.length;
+    }
+    
+    /**
+     * Picks a shard file name that is not used by any portfolio
+     */
+    private String allocateShardFile() {
+        String shardFile;
+        do {
+            shardFile = SHARD_PREFIX + nextShardId++ + SHARD_SUFFIX;
+        } while (Files.exists(directory.resolve(shardFile)));
+        return shardFile;
+    }
+    
+    private static int parseShardId(String shardFile) {
+        if (!shardFile.startsWith(SHARD_PREFIX) || !shardFile.endsWith(SHARD_SUFFIX)) {
+            return 0;
+        }
+        try {
+            return Integer.parseInt(shardFile.substring(SHARD_PREFIX.length(),
+                    shardFile.length() - SHARD_SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+}
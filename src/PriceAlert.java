@@ -0,0 +1,89 @@
+/**
+ * A price alert rule: a symbol crossing a price, a holding losing a percentage of its cost,
+ * or a portfolio dropping a percentage of its value since the start of the day
+ */
+public class PriceAlert {
+    public static final int TYPE_PRICE = 1;
+    public static final int TYPE_HOLDING_LOSS = 2;
+    public static final int TYPE_PORTFOLIO_DROP = 3;
+    
+    public static final int RISING = 1;
+    public static final int FALLING = 2;
+    public static final int EITHER = 3;
+    
+    private final int type;
+    private final String symbol;
+    private final Stock holding;
+    private final Portfolio portfolio;
+    private final double level;
+    private final int direction;
+    
+    private PriceAlert(int type, String symbol, Stock holding, Portfolio portfolio, double level, int direction) {
+        this.type = type;
+        this.symbol = symbol;
+        this.holding = holding;
+        this.portfolio = portfolio;
+        this.level = level;
+        this.direction = direction;
+    }
+    
+    /**
+     * Fires when the symbol's price moves through the given price
+     * @param direction RISING, FALLING or EITHER
+     */
+    public static PriceAlert priceCrosses(String symbol, double price, int direction) {
+        if (direction < RISING || direction > EITHER) {
+            throw new IllegalArgumentException("Invalid direction: " + direction);
+        }
+        return new PriceAlert(TYPE_PRICE, symbol.toUpperCase(), null, null, price, direction);
+    }
+    
+    /**
+     * Fires when the holding's loss from its purchase price reaches the given percentage
+     * @param lossPercent e.g. 10 for a 10% loss
+     */
+    public static PriceAlert holdingLoss(Stock holding, double lossPercent) {
+        if (holding.getPortfolio() == null) {
+            throw new IllegalArgumentException("Holding is not in a portfolio: " + holding.getSymbol());
+        }
+        return new PriceAlert(TYPE_HOLDING_LOSS, holding.getSymbol(), holding, holding.getPortfolio(),
+                -lossPercent, FALLING);
+    }
+    
+    /**
+     * Fires when the portfolio's value falls the given percentage below its value at the start
+     * of the day. Holdings added or removed during the day do not count as a drop.
+     * @param dropPercent e.g. 5 for a 5% drop
+     */
+    public static PriceAlert portfolioDrop(Portfolio portfolio, double dropPercent) {
+        return new PriceAlert(TYPE_PORTFOLIO_DROP, null, null, portfolio, -dropPercent, FALLING);
+    }
+    
+    public int getType() { return type; }
+    public String getSymbol() { return symbol; }
+    public Stock getHolding() { return holding; }
+    public Portfolio getPortfolio() { return portfolio; }
+    public int getDirection() { return direction; }
+    
+    /**
+     * Price for price alerts, otherwise the (negative) % change at which the alert fires
+     */
+    public double getLevel() { return level; }
+    
+    public String getDescription() {
+        switch (type) {
+            case TYPE_PRICE:
+                String verb = direction == RISING ? "rises above" : direction == FALLING ? "falls below" : "crosses";
+                return String.format("%s %s $%.2f", symbol, verb, level);
+            case TYPE_HOLDING_LOSS:
+                return String.format("%s in %s loses %.2f%% from cost", symbol, portfolio.getName(), -level);
+            default:
+                return String.format("%s drops %.2f%% intraday", portfolio.getName(), -level);
+        }
+    }
+    
+    @Override
+    public String toString() {
+        return getDescription();
+    }
+}
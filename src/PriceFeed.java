@@ -0,0 +1,20 @@
+/**
+ * A time-ordered stream of price ticks over a fixed list of symbols. Implementations reuse
+ * their buffers, so reading a tick does not allocate.
+ */
+public interface PriceFeed {
+    /**
+     * Advances to the next tick
+     * @return false when the feed is exhausted
+     */
+    boolean next();
+    
+    /**
+     * Index of the current tick's symbol in the feed's symbol list
+     */
+    int symbolIndex();
+    
+    long timestamp();
+    
+    double price();
+}
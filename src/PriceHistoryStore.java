@@ -0,0 +1,480 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Append-only price history per symbol, stored in memory-mapped columnar segment files.
+ * Each segment holds a fixed number of observations with all timestamps in one column and
+ * all prices in another, so range scans are bulk copies of contiguous memory.
+ * <p>
+ * Symbols are stored in directories named after them with characters unsafe in file names
+ * replaced, so symbols that differ only in such characters or in case share one history. A
+ * directory whose name is not the symbol itself keeps the symbol it was first recorded under in
+ * a symbol file, which is the name getSymbols and the returned series report.
+ * <p>
+ * With a retention window, segments whose newest observation falls outside it are deleted by
+ * applyRetention and whenever a symbol starts a new segment. Positions used by indexOf and read
+ * count from the oldest retained observation, so they shift down when segments are dropped.
+ */
+public class PriceHistoryStore implements Closeable {
+    public static final int DEFAULT_SEGMENT_CAPACITY = 1 << 16;
+    
+    private static final int MAGIC = 0x50485331; // "PHS1"
+    private static final int HEADER_SIZE = 16;
+    private static final String SEGMENT_PREFIX = "seg-";
+    private static final String SEGMENT_SUFFIX = ".dat";
+    private static final String SYMBOL_FILE = "symbol.txt";
+    
+    private final Path directory;
+    private final int segmentCapacity;
+    private final long retentionMillis;
+    private final Map<String, SymbolHistory> histories = new ConcurrentHashMap<>(); // By directory name
+    
+    public PriceHistoryStore(String directoryPath) throws IOException {
+        this(directoryPath, DEFAULT_SEGMENT_CAPACITY);
+    }
+    
+    public PriceHistoryStore(String directoryPath, int segmentCapacity) throws IOException {
+        this(directoryPath, segmentCapacity, 0);
+    }
+    
+    /**
+     * @param retentionMillis Age beyond which observations may be dropped; 0 keeps everything
+     */
+    public PriceHistoryStore(String directoryPath, int segmentCapacity, long retentionMillis) throws IOException {
+        if (segmentCapacity <= 0) {
+            throw new IllegalArgumentException("Segment capacity must be positive");
+        }
+        if (retentionMillis < 0) {
+            throw new IllegalArgumentException("Retention must not be negative");
+        }
+        this.directory = Paths.get(directoryPath);
+        this.segmentCapacity = segmentCapacity;
+        this.retentionMillis = retentionMillis;
+        Files.createDirectories(directory);
+    }
+    
+    /**
+     * Records the current price of a stock at the current time
+     */
+    public void record(Stock stock) throws IOException {
+        record(stock.getSymbol(), System.currentTimeMillis(), stock.getCurrentPrice());
+    }
+    
+    /**
+     * Appends one observation. Timestamps older than the last recorded one for the symbol
+     * are moved up to it so each series stays sorted.
+     */
+    public void record(String symbol, long timestamp, double price) throws IOException {
+        getHistory(symbol).append(timestamp, price);
+    }
+    
+    /**
+     * Returns all observations with from <= timestamp < to
+     */
+    public PriceSeries query(String symbol, long from, long to) throws IOException {
+        SymbolHistory history = findHistory(symbol);
+        if (history == null) {
+            return new PriceSeries(symbol, new long[0], new double[0], 0);
+        }
+        return history.query(from, to);
+    }
+    
+    /**
+     * Position of the first observation at or after the timestamp, counted from the oldest
+     * retained observation of the symbol
+     */
+    public long indexOf(String symbol, long timestamp) throws IOException {
+        SymbolHistory history = findHistory(symbol);
+        return history == null ? 0 : history.indexOf(timestamp);
+    }
+    
+    /**
+     * Copies up to max observations starting at a position into caller-owned buffers, so
+     * sequential readers can stream a series in fixed-size blocks without allocating. Positions
+     * count from the oldest retained observation: a reader paging through a series while
+     * retention drops segments skips as many observations as were dropped.
+     * @return Number of observations copied, 0 at the end of the series
+     */
+    public int read(String symbol, long index, long[] timestamps, double[] prices, int max) throws IOException {
+        SymbolHistory history = findHistory(symbol);
+        return history == null ? 0 : history.read(index, timestamps, prices, max);
+    }
+    
+    /**
+     * Aggregates observations with from <= timestamp < to into bars of the given interval.
+     * Bars are aligned to multiples of the interval and empty intervals are skipped.
+     */
+    public List<OhlcBar> downsample(String symbol, long from, long to, long intervalMillis) throws IOException {
+        if (intervalMillis <= 0) {
+            throw new IllegalArgumentException("Interval must be positive");
+        }
+        
+        PriceSeries series = query(symbol, from, to);
+        List<OhlcBar> bars = new ArrayList<>();
+        long[] timestamps = series.getTimestamps();
+        double[] prices = series.getPrices();
+        
+        int i = 0;
+        while (i < series.size()) {
+            long barStart = Math.floorDiv(timestamps[i], intervalMillis) * intervalMillis;
+            long barEnd = barStart + intervalMillis;
+            double open = prices[i];
+            double high = open;
+            double low = open;
+            double close = open;
+            int count = 0;
+            
+            while (i < series.size() && timestamps[i] < barEnd) {
+                double price = prices[i];
+                if (price > high) high = price;
+                if (price < low) low = price;
+                close = price;
+                count++;
+                i++;
+            }
+            bars.add(new OhlcBar(barStart, open, high, low, close, count));
+        }
+        return bars;
+    }
+    
+    /**
+     * Drops whole segments older than the retention window
+     * @return Number of segments deleted; 0 when the store keeps everything
+     */
+    public int applyRetention() throws IOException {
+        return retentionMillis > 0 ? applyRetention(System.currentTimeMillis() - retentionMillis) : 0;
+    }
+    
+    /**
+     * Drops whole segments whose newest observation is older than the cutoff
+     * @return Number of segments deleted
+     */
+    public int applyRetention(long cutoffTimestamp) throws IOException {
+        int dropped = 0;
+        for (String directoryName : getDirectoryNames()) {
+            dropped += getHistory(directoryName, directoryName).dropBefore(cutoffTimestamp);
+        }
+        return dropped;
+    }
+    
+    /**
+     * Symbols with recorded history, including ones written by earlier runs, as they were
+     * first recorded
+     */
+    public Set<String> getSymbols() throws IOException {
+        Set<String> symbols = new TreeSet<>();
+        for (String directoryName : getDirectoryNames()) {
+            SymbolHistory history = histories.get(directoryName);
+            symbols.add(history != null ? history.symbol : readSymbol(directory.resolve(directoryName), directoryName));
+        }
+        return symbols;
+    }
+    
+    private Set<String> getDirectoryNames() throws IOException {
+        Set<String> names = new TreeSet<>(histories.keySet());
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+            for (Path path : stream) {
+                if (Files.isDirectory(path)) {
+                    names.add(path.getFileName().toString());
+                }
+            }
+        }
+        return names;
+    }
+    
+    /**
+     * Flushes all mapped segments to disk
+     */
+    @Override
+    public void close() {
+        for (SymbolHistory history : histories.values()) {
+            history.force();
+        }
+    }
+    
+    private SymbolHistory findHistory(String symbol) throws IOException {
+        String directoryName = toDirectoryName(symbol);
+        SymbolHistory history = histories.get(directoryName);
+        if (history == null && Files.isDirectory(directory.resolve(directoryName))) {
+            history = getHistory(directoryName, symbol);
+        }
+        return history;
+    }
+    
+    private SymbolHistory getHistory(String symbol) throws IOException {
+        return getHistory(toDirectoryName(symbol), symbol);
+    }
+    
+    /**
+     * @param symbol Symbol to name the history after if its directory does not say already
+     */
+    private SymbolHistory getHistory(String directoryName, String symbol) throws IOException {
+        SymbolHistory history = histories.get(directoryName);
+        if (history == null) {
+            synchronized (histories) {
+                history = histories.get(directoryName);
+                if (history == null) {
+                    history = new SymbolHistory(symbol.toUpperCase(), directory.resolve(directoryName));
+                    histories.put(directoryName, history);
+                }
+            }
+        }
+        return history;
+    }
+    
+    private static String toDirectoryName(String symbol) {
+        return symbol.toUpperCase().replaceAll("[^A-Z0-9._-]", "_");
+    }
+    
+    /**
+     * Symbol recorded in a history directory, or the default for directories written before
+     * symbols were recorded
+     */
+    private static String readSymbol(Path directory, String defaultSymbol) throws IOException {
+        Path file = directory.resolve(SYMBOL_FILE);
+        if (!Files.isRegularFile(file)) {
+            return defaultSymbol;
+        }
+        String symbol = new String(Files.readAllBytes(file), StandardCharsets.UTF_8).trim();
+        return symbol.isEmpty() ? defaultSymbol : symbol;
+    }
+    
+    /**
+     * The ordered segments of one symbol. Appends and reads are serialized per symbol.
+     */
+    private final class SymbolHistory {
+        private final String symbol;
+        private final Path directory;
+        private final List<Segment> segments = new ArrayList<>();
+        private int nextSegmentId = 1;
+        
+        SymbolHistory(String symbol, Path directory) throws IOException {
+            Files.createDirectories(directory);
+            Path symbolFile = directory.resolve(SYMBOL_FILE);
+            if (Files.isRegularFile(symbolFile)) {
+                symbol = readSymbol(directory, symbol);
+            } else if (!symbol.equals(directory.getFileName().toString())) {
+                Files.write(symbolFile, symbol.getBytes(StandardCharsets.UTF_8));
+            }
+            this.symbol = symbol;
+            this.directory = directory;
+            
+            List<Path> paths = new ArrayList<>();
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+                for (Path path : stream) {
+                    paths.add(path);
+                }
+            }
+            Collections.sort(paths, (a, b) -> Integer.compare(segmentId(a), segmentId(b)));
+            for (Path path : paths) {
+                Segment segment = Segment.open(path);
+                if (segment.count > 0) {
+                    segments.add(segment);
+                }
+                nextSegmentId = Math.max(nextSegmentId, segmentId(path) + 1);
+            }
+        }
+        
+        synchronized void append(long timestamp, double price) throws IOException {
+            Segment tail = segments.isEmpty() ? null : segments.get(segments.size() - 1);
+            if (tail != null && timestamp < tail.lastTimestamp()) {
+                timestamp = tail.lastTimestamp();
+            }
+            if (tail == null || tail.isFull()) {
+                if (retentionMillis > 0) {
+                    dropBefore(System.currentTimeMillis() - retentionMillis);
+                }
+                Path path = directory.resolve(SEGMENT_PREFIX + nextSegmentId++ + SEGMENT_SUFFIX);
+                tail = Segment.create(path, segmentCapacity);
+                segments.add(tail);
+            }
+            tail.append(timestamp, price);
+        }
+        
+        synchronized PriceSeries query(long from, long to) {
+            int total = 0;
+            for (Segment segment : segments) {
+                if (segment.overlaps(from, to)) {
+                    total += segment.lowerBound(to) - segment.lowerBound(from);
+                }
+            }
+            
+            long[] timestamps = new long[total];
+            double[] prices = new double[total];
+            int offset = 0;
+            for (Segment segment : segments) {
+                if (segment.overlaps(from, to)) {
+                    int start = segment.lowerBound(from);
+                    int end = segment.lowerBound(to);
+                    segment.read(start, end, timestamps, prices, offset);
+                    offset += end - start;
+                }
+            }
+            return new PriceSeries(symbol, timestamps, prices, total);
+        }
+        
+        synchronized long indexOf(long timestamp) {
+            long index = 0;
+            for (Segment segment : segments) {
+                if (segment.lastTimestamp() >= timestamp) {
+                    return index + segment.lowerBound(timestamp);
+                }
+                index += segment.count;
+            }
+            return index;
+        }
+        
+        synchronized int read(long index, long[] timestamps, double[] prices, int max) {
+            int copied = 0;
+            long segmentStart = 0;
+            for (Segment segment : segments) {
+                if (copied == max) {
+                    break;
+                }
+                long segmentEnd = segmentStart + segment.count;
+                if (index + copied < segmentEnd) {
+                    int start = (int) (index + copied - segmentStart);
+                    int end = (int) Math.min(segment.count, start + (long) (max - copied));
+                    segment.read(start, end, timestamps, prices, copied);
+                    copied += end - start;
+                }
+                segmentStart = segmentEnd;
+            }
+            return copied;
+        }
+        
+        synchronized int dropBefore(long cutoffTimestamp) throws IOException {
+            int dropped = 0;
+            // Keep the tail segment so appends continue in order
+            while (segments.size() > 1 && segments.get(0).lastTimestamp() < cutoffTimestamp) {
+                Files.deleteIfExists(segments.remove(0).path);
+                dropped++;
+            }
+            return dropped;
+        }
+        
+        synchronized void force() {
+            for (Segment segment : segments) {
+                segment.buffer.force();
+            }
+        }
+        
+        private int segmentId(Path path) {
+            String name = path.getFileName().toString();
+            try {
+                return Integer.parseInt(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+            } catch (NumberFormatException e) {
+                return 0;
+            }
+        }
+    }
+    
+    /**
+     * One memory-mapped segment file: a header, a timestamp column and a price column.
+     * The count in the header is written after the values, so a crash never exposes
+     * a half-written observation.
+     */
+    private static final class Segment {
+        private final Path path;
+        private final MappedByteBuffer buffer;
+        private final int capacity;
+        private final int priceOffset;
+        private int count;
+        
+        private Segment(Path path, MappedByteBuffer buffer, int capacity, int count) {
+            this.path = path;
+            this.buffer = buffer;
+            this.capacity = capacity;
+            this.priceOffset = HEADER_SIZE + capacity * 8;
+            this.count = count;
+        }
+        
+        static Segment create(Path path, int capacity) throws IOException {
+            MappedByteBuffer buffer = map(path, HEADER_SIZE + (long) capacity * 16);
+            buffer.putInt(0, MAGIC);
+            buffer.putInt(4, capacity);
+            buffer.putInt(8, 0);
+            return new Segment(path, buffer, capacity, 0);
+        }
+        
+        static Segment open(Path path) throws IOException {
+            MappedByteBuffer buffer = map(path, Files.size(path));
+            if (buffer.getInt(0) != MAGIC) {
+                throw new IOException("Not a price history segment: " + path);
+            }
+            return new Segment(path, buffer, buffer.getInt(4), buffer.getInt(8));
+        }
+        
+        private static MappedByteBuffer map(Path path, long size) throws IOException {
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                return channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            }
+        }
+        
+        boolean isFull() {
+            return count >= capacity;
+        }
+        
+        void append(long timestamp, double price) {
+            buffer.putLong(HEADER_SIZE + count * 8, timestamp);
+            buffer.putDouble(priceOffset + count * 8, price);
+            count++;
+            buffer.putInt(8, count);
+        }
+        
+        long timestampAt(int index) {
+            return buffer.getLong(HEADER_SIZE + index * 8);
+        }
+        
+        long lastTimestamp() {
+            return timestampAt(count - 1);
+        }
+        
+        boolean overlaps(long from, long to) {
+            return count > 0 && timestampAt(0) < to && lastTimestamp() >= from;
+        }
+        
+        /**
+         * Index of the first observation with timestamp >= value
+         */
+        int lowerBound(long value) {
+            int low = 0;
+            int high = count;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (timestampAt(mid) < value) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+        
+        void read(int start, int end, long[] timestamps, double[] prices, int offset) {
+            int length = end - start;
+            ByteBuffer view = buffer.duplicate();
+            view.position(HEADER_SIZE + start * 8);
+            view.slice().asLongBuffer().get(timestamps, offset, length);
+            view.position(priceOffset + start * 8);
+            view.slice().asDoubleBuffer().get(prices, offset, length);
+        }
+    }
+}
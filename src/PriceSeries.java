@@ -0,0 +1,33 @@
+/**
+ * A run of price observations for one symbol held in primitive columns
+ */
+public class PriceSeries {
+    private final String symbol;
+    private final long[] timestamps;
+    private final double[] prices;
+    private final int size;
+    
+    public PriceSeries(String symbol, long[] timestamps, double[] prices, int size) {
+        this.symbol = symbol;
+        this.timestamps = timestamps;
+        this.prices = prices;
+        this.size = size;
+    }
+    
+    public String getSymbol() { return symbol; }
+    public int size() { return size; }
+    public boolean isEmpty() { return size == 0; }
+    
+    /**
+     * Observation times in epoch milliseconds; only the first size() entries are valid
+     */
+    public long[] getTimestamps() { return timestamps; }
+    
+    /**
+     * Observed prices; only the first size() entries are valid
+     */
+    public double[] getPrices() { return prices; }
+    
+    public long getTimestamp(int index) { return timestamps[index]; }
+    public double getPrice(int index) { return prices[index]; }
+}
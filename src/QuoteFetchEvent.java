@@ -0,0 +1,24 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight Recorder event covering one StockApiService.getStockQuote call, including the
+ * company-name lookup and any fallback to offline data
+ */
+@Name("stockportfolio.QuoteFetch")
+@Label("Quote Fetch")
+@Category({"Stock Portfolio", "API"})
+@Description("Fetching a quote for one symbol")
+@StackTrace(false)
+public class QuoteFetchEvent extends Event {
+    @Label("Symbol")
+    String symbol;
+    
+    @Label("Outcome")
+    @Description("success, fallback (no quote in the response) or error")
+    String outcome;
+}
@@ -0,0 +1,30 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight Recorder event covering a top-N holdings query
+ */
+@Name("stockportfolio.Ranking")
+@Label("Top Holdings Ranking")
+@Category({"Stock Portfolio", "Analytics"})
+@Description("Selecting the best holdings across all portfolios")
+@StackTrace(false)
+public class RankingEvent extends Event {
+    @Label("Sort Criteria")
+    @Description("1=Percentage, 2=Dollar Amount, 3=Value")
+    int sortCriteria;
+    
+    @Label("Requested")
+    int requested;
+    
+    @Label("Returned")
+    int returned;
+    
+    @Label("Indexed")
+    @Description("Whether the live ranking index answered instead of a scan")
+    boolean indexed;
+}
@@ -0,0 +1,296 @@
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Continuously maintained ranking of all holdings by % gain, $ gain and current value.
+ * The index listens to its portfolios and re-positions a holding whenever it changes, so
+ * "top k" is answered in O(log n + k) and "rank of holding X" in O(log n) without rescanning.
+ */
+public class RankingIndex implements PortfolioListener {
+    private static final int CRITERIA = 3;
+    
+    private final Map<Stock, Entry> entries = new IdentityHashMap<>();
+    private final OrderStatisticTree[] trees = new OrderStatisticTree[CRITERIA];
+    private long nextId;
+    
+    public RankingIndex() {
+        for (int i = 0; i < CRITERIA; i++) {
+            trees[i] = new OrderStatisticTree();
+        }
+    }
+    
+    /**
+     * Creates an index over the given portfolios and starts listening to them
+     */
+    public RankingIndex(List<Portfolio> portfolios) {
+        this();
+        for (Portfolio portfolio : portfolios) {
+            addPortfolio(portfolio);
+        }
+    }
+    
+    /**
+     * Indexes every holding of a portfolio and tracks its future changes
+     */
+    public synchronized void addPortfolio(Portfolio portfolio) {
+        for (Stock stock : portfolio.getStocks()) {
+            insert(portfolio, stock);
+        }
+        portfolio.addListener(this);
+    }
+    
+    /**
+     * Drops a portfolio's holdings from the index and stops tracking it
+     */
+    public synchronized void removePortfolio(Portfolio portfolio) {
+        portfolio.removeListener(this);
+        for (Stock stock : portfolio.getStocks()) {
+            remove(stock);
+        }
+    }
+    
+    @Override
+    public synchronized void holdingAdded(Portfolio portfolio, Stock stock) {
+        insert(portfolio, stock);
+    }
+    
+    @Override
+    public synchronized void holdingRemoved(Portfolio portfolio, Stock stock) {
+        remove(stock);
+    }
+    
+    @Override
+    public synchronized void holdingChanged(Portfolio portfolio, Stock stock) {
+        Entry entry = entries.get(stock);
+        if (entry == null) {
+            insert(portfolio, stock);
+            return;
+        }
+        
+        for (int i = 0; i < CRITERIA; i++) {
+            double key = TopNSelector.sortKey(stock, i + 1);
+            if (Double.compare(key, entry.keys[i]) != 0) {
+                trees[i].remove(entry.keys[i], entry.id);
+                entry.keys[i] = key;
+                trees[i].insert(key, entry);
+            }
+        }
+    }
+    
+    /**
+     * Gets the top holdings, best first
+     * @param sortCriteria The criteria to sort by (1=Percentage, 2=Dollar Amount, 3=Value)
+     * @param numStocks Number of top stocks to return
+     */
+    public synchronized List<TopPerformersPanel.StockWithPortfolio> getTopStocks(int sortCriteria, int numStocks) {
+        List<TopPerformersPanel.StockWithPortfolio> result = new ArrayList<>();
+        for (Entry entry : trees[treeIndex(sortCriteria)].first(numStocks)) {
+            result.add(new TopPerformersPanel.StockWithPortfolio(entry.stock, entry.portfolio.getName()));
+        }
+        return result;
+    }
+    
+    /**
+     * Gets the 1-based rank of a holding, or -1 if it is not indexed
+     * @param sortCriteria The criteria to rank by (1=Percentage, 2=Dollar Amount, 3=Value)
+     */
+    public synchronized int getRank(Stock stock, int sortCriteria) {
+        Entry entry = entries.get(stock);
+        if (entry == null) {
+            return -1;
+        }
+        int index = treeIndex(sortCriteria);
+        return trees[index].rank(entry.keys[index], entry.id);
+    }
+    
+    public synchronized int size() {
+        return entries.size();
+    }
+    
+    private void insert(Portfolio portfolio, Stock stock) {
+        if (entries.containsKey(stock)) {
+            return;
+        }
+        Entry entry = new Entry(nextId++, stock, portfolio);
+        entries.put(stock, entry);
+        for (int i = 0; i < CRITERIA; i++) {
+            entry.keys[i] = TopNSelector.sortKey(stock, i + 1);
+            trees[i].insert(entry.keys[i], entry);
+        }
+    }
+    
+    private void remove(Stock stock) {
+        Entry entry = entries.remove(stock);
+        if (entry != null) {
+            for (int i = 0; i < CRITERIA; i++) {
+                trees[i].remove(entry.keys[i], entry.id);
+            }
+        }
+    }
+    
+    private static int treeIndex(int sortCriteria) {
+        switch (sortCriteria) {
+            case TopNSelector.SORT_DOLLAR:
+                return 1;
+            case TopNSelector.SORT_VALUE:
+                return 2;
+            default:
+                return 0;
+        }
+    }
+    
+    /**
+     * An indexed holding with the keys it is currently filed under
+     */
+    private static final class Entry {
+        private final long id;
+        private final Stock stock;
+        private final Portfolio portfolio;
+        private final double[] keys = new double[CRITERIA];
+        
+        Entry(long id, Stock stock, Portfolio portfolio) {
+            this.id = id;
+            this.stock = stock;
+            this.portfolio = portfolio;
+        }
+    }
+    
+    /**
+     * Treap ordered by descending key, then by insertion id, with subtree sizes for rank queries
+     */
+    private static final class OrderStatisticTree {
+        private final Random random = new Random(42);
+        private Node root;
+        
+        void insert(double key, Entry entry) {
+            Node node = new Node(key, entry, random.nextInt());
+            Node[] parts = split(root, key, entry.id);
+            root = merge(merge(parts[0], node), parts[1]);
+        }
+        
+        void remove(double key, long id) {
+            root = remove(root, key, id);
+        }
+        
+        int rank(double key, long id) {
+            int rank = 0;
+            Node node = root;
+            while (node != null) {
+                int cmp = compare(key, id, node);
+                if (cmp < 0) {
+                    node = node.left;
+                } else {
+                    rank += size(node.left) + 1;
+                    if (cmp == 0) {
+                        return rank;
+                    }
+                    node = node.right;
+                }
+            }
+            return -1;
+        }
+        
+        List<Entry> first(int count) {
+            List<Entry> result = new ArrayList<>(Math.max(0, Math.min(count, size(root))));
+            Deque<Node> stack = new ArrayDeque<>();
+            Node node = root;
+            while (result.size() < count && (node != null || !stack.isEmpty())) {
+                while (node != null) {
+                    stack.push(node);
+                    node = node.left;
+                }
+                node = stack.pop();
+                result.add(node.entry);
+                node = node.right;
+            }
+            return result;
+        }
+        
+        private Node remove(Node node, double key, long id) {
+            if (node == null) {
+                return null;
+            }
+            int cmp = compare(key, id, node);
+            if (cmp == 0) {
+                return merge(node.left, node.right);
+            }
+            if (cmp < 0) {
+                node.left = remove(node.left, key, id);
+            } else {
+                node.right = remove(node.right, key, id);
+            }
+            update(node);
+            return node;
+        }
+        
+        /**
+         * Splits into nodes ordered before (key, id) and the rest
+         */
+        private Node[] split(Node node, double key, long id) {
+            if (node == null) {
+                return new Node[2];
+            }
+            if (compare(key, id, node) > 0) {
+                Node[] parts = split(node.right, key, id);
+                node.right = parts[0];
+                update(node);
+                parts[0] = node;
+                return parts;
+            }
+            Node[] parts = split(node.left, key, id);
+            node.left = parts[1];
+            update(node);
+            parts[1] = node;
+            return parts;
+        }
+        
+        private Node merge(Node left, Node right) {
+            if (left == null) return right;
+            if (right == null) return left;
+            if (left.priority > right.priority) {
+                left.right = merge(left.right, right);
+                update(left);
+                return left;
+            }
+            right.left = merge(left, right.left);
+            update(right);
+            return right;
+        }
+        
+        /**
+         * Higher keys come first; equal keys are ordered by insertion id
+         */
+        private static int compare(double key, long id, Node node) {
+            int cmp = Double.compare(node.key, key);
+            return cmp != 0 ? cmp : Long.compare(id, node.entry.id);
+        }
+        
+        private static int size(Node node) {
+            return node == null ? 0 : node.size;
+        }
+        
+        private static void update(Node node) {
+            node.size = 1 + size(node.left) + size(node.right);
+        }
+    }
+    
+    private static final class Node {
+        private final double key;
+        private final Entry entry;
+        private final int priority;
+        private int size = 1;
+        private Node left;
+        private Node right;
+        
+        Node(double key, Entry entry, int priority) {
+            this.key = key;
+            this.entry = entry;
+            this.priority = priority;
+        }
+    }
+}
@@ -0,0 +1,396 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+/**
+ * Computes the trades, in whole shares, that bring a portfolio to target weights. Targets are
+ * either given directly or found by a long-only mean-variance optimization with a maximum
+ * position size. The optimizer keeps its last solution per symbol and starts from it on the
+ * next call, so re-optimizing after a small change in the inputs takes fewer iterations; a
+ * large change gains little, as RebalanceBenchmark shows. Rounding to whole shares never trades
+ * a holding by itself: holdings within a share of their target are left as they are, and shares
+ * left over from rounding only go to holdings traded anyway.
+ */
+public class RebalanceOptimizer {
+    private static final int MAX_ITERATIONS = 500;
+    private static final double CONVERGENCE = 1e-9;
+    private static final int PARALLEL_THRESHOLD = 256; // Holdings above which gradient rows are computed in parallel
+    private static final double WEIGHT_SUM_SLACK = 1e-9; // Leeway for target weights that add up to 1 in decimal
+    
+    private final double maxPositionWeight;
+    private final double tolerance;
+    private final Map<String, Double> lastSolution = new HashMap<>();
+    private double[] eigenvector;
+    private int lastIterations;
+    
+    /**
+     * @param maxPositionWeight Largest allowed weight of a single holding, e.g. 0.25
+     * @param tolerance Holdings whose weight is within this distance of the target are not traded
+     */
+    public RebalanceOptimizer(double maxPositionWeight, double tolerance) {
+        if (maxPositionWeight <= 0 || maxPositionWeight > 1) {
+            throw new IllegalArgumentException("Max position weight must be in (0, 1]");
+        }
+        this.maxPositionWeight = maxPositionWeight;
+        this.tolerance = tolerance;
+    }
+    
+    public double getMaxPositionWeight() { return maxPositionWeight; }
+    public int getLastIterationCount() { return lastIterations; }
+    
+    /**
+     * Plans trades toward explicit target weights. Holdings missing from the map get weight 0,
+     * and whatever the weights leave unallocated stays in cash.
+     * @param cash Cash available in addition to the holdings' value
+     * @throws IllegalArgumentException If a weight is negative, the weights add up to more than 1
+     *                                  or a symbol is not held in the portfolio
+     */
+    public Plan planForTargets(Portfolio portfolio, Map<String, Double> targetWeights, double cash) {
+        double sum = 0;
+        for (Map.Entry<String, Double> entry : targetWeights.entrySet()) {
+            // A mistyped symbol would otherwise leave its weight in cash and sell the holding it meant
+            if (portfolio.findStock(entry.getKey()) == null) {
+                throw new IllegalArgumentException("Not held in the portfolio: " + entry.getKey());
+            }
+            double weight = entry.getValue();
+            if (!(weight >= 0)) {
+                throw new IllegalArgumentException("Short positions are not allowed: " + entry.getKey());
+            }
+            sum += weight;
+        }
+        if (sum > 1 + WEIGHT_SUM_SLACK) {
+            throw new IllegalArgumentException(String.format("Target weights add up to %.4f, more than 1", sum));
+        }
+        
+        List<Stock> stocks = portfolio.getStocks();
+        double[] weights = new double[stocks.size()];
+        for (int i = 0; i < stocks.size(); i++) {
+            Double weight = targetWeights.get(stocks.get(i).getSymbol());
+            weights[i] = weight == null ? 0 : weight;
+        }
+        return plan(stocks, weights, cash);
+    }
+    
+    /**
+     * Finds target weights maximizing expected return minus riskAversion/2 times variance,
+     * fully invested, long-only and capped at the max position weight, then plans the trades
+     * @param expectedReturns Expected return of each holding, in portfolio order
+     * @param covariance Covariance matrix of the holdings' returns
+     */
+    public Plan planMeanVariance(Portfolio portfolio, double[] expectedReturns, double[][] covariance,
+                                 double riskAversion, double cash) {
+        List<Stock> stocks = portfolio.getStocks();
+        String[] symbols = new String[stocks.size()];
+        for (int i = 0; i < symbols.length; i++) {
+            symbols[i] = stocks.get(i).getSymbol();
+        }
+        double[] weights = optimize(symbols, expectedReturns, covariance, riskAversion);
+        return plan(stocks, weights, cash);
+    }
+    
+    /**
+     * Projected gradient descent on the capped simplex, warm-started from the previous solution
+     */
+    public double[] optimize(String[] symbols, double[] expectedReturns, double[][] covariance, double riskAversion) {
+        int n = symbols.length;
+        if (expectedReturns.length != n || covariance.length != n) {
+            throw new IllegalArgumentException("Expected parameters for " + n + " holdings");
+        }
+        if (n == 0) {
+            return new double[0];
+        }
+        if (n * maxPositionWeight < 1 - 1e-12) {
+            throw new IllegalArgumentException("Max position weight too small to be fully invested");
+        }
+        
+        double[] weights = new double[n];
+        for (int i = 0; i < n; i++) {
+            Double previous = lastSolution.get(symbols[i]);
+            weights[i] = previous == null ? 1.0 / n : previous;
+        }
+        projectOntoCappedSimplex(weights, weights);
+        
+        double step = 1.0 / Math.max(1e-12, riskAversion * largestEigenvalue(covariance));
+        
+        // Accelerated (FISTA) projected gradient steps
+        double[] previous = weights.clone();
+        double[] point = weights.clone();
+        double[] candidate = new double[n];
+        double momentum = 1;
+        int iteration = 0;
+        while (iteration++ < MAX_ITERATIONS) {
+            double[] from = point;
+            double[] to = candidate;
+            IntStream rows = IntStream.range(0, n);
+            if (n >= PARALLEL_THRESHOLD) {
+                rows = rows.parallel();
+            }
+            rows.forEach(i -> {
+                double gradient = -expectedReturns[i] + riskAversion * CovarianceAccumulator.dot(covariance[i], from, n);
+                to[i] = from[i] - step * gradient;
+            });
+            projectOntoCappedSimplex(candidate, candidate);
+            
+            // Restart the momentum when it points uphill (O'Donoghue and Candes)
+            double uphill = 0;
+            double change = 0;
+            for (int i = 0; i < n; i++) {
+                uphill += (point[i] - candidate[i]) * (candidate[i] - previous[i]);
+                change = Math.max(change, Math.abs(candidate[i] - previous[i]));
+            }
+            if (uphill > 0) {
+                momentum = 1;
+            }
+            double nextMomentum = (1 + Math.sqrt(1 + 4 * momentum * momentum)) / 2;
+            double extrapolation = (momentum - 1) / nextMomentum;
+            for (int i = 0; i < n; i++) {
+                point[i] = candidate[i] + extrapolation * (candidate[i] - previous[i]);
+            }
+            double[] swap = previous;
+            previous = candidate;
+            candidate = swap;
+            momentum = nextMomentum;
+            if (change < CONVERGENCE) {
+                break;
+            }
+        }
+        weights = previous;
+        lastIterations = Math.min(iteration, MAX_ITERATIONS);
+        
+        lastSolution.clear();
+        for (int i = 0; i < n; i++) {
+            lastSolution.put(symbols[i], weights[i]);
+        }
+        return weights;
+    }
+    
+    /**
+     * Largest eigenvalue of the covariance matrix by power iteration, warm-started from the
+     * previous eigenvector
+     */
+    private double largestEigenvalue(double[][] covariance) {
+        int n = covariance.length;
+        double[] vector = eigenvector != null && eigenvector.length == n ? eigenvector : new double[n];
+        if (vector != eigenvector) {
+            Arrays.fill(vector, 1 / Math.sqrt(n));
+        }
+        
+        double[] product = new double[n];
+        double eigenvalue = 0;
+        for (int iteration = 0; iteration < 50; iteration++) {
+            double norm = 0;
+            for (int i = 0; i < n; i++) {
+                product[i] = CovarianceAccumulator.dot(covariance[i], vector, n);
+                norm += product[i] * product[i];
+            }
+            norm = Math.sqrt(norm);
+            if (norm == 0) {
+                return 0;
+            }
+            for (int i = 0; i < n; i++) {
+                product[i] /= norm;
+            }
+            double[] swap = vector;
+            vector = product;
+            product = swap;
+            if (Math.abs(norm - eigenvalue) <= 1e-6 * norm) {
+                eigenvalue = norm;
+                break;
+            }
+            eigenvalue = norm;
+        }
+        eigenvector = vector;
+        // Power iteration approaches from below, so leave some headroom for the step size
+        return eigenvalue * 1.05;
+    }
+    
+    /**
+     * Euclidean projection onto {0 <= w_i <= cap, sum w_i = 1}, found by bisecting the shift tau
+     * in w_i = clamp(v_i - tau, 0, cap)
+     */
+    private void projectOntoCappedSimplex(double[] values, double[] out) {
+        double low = Double.POSITIVE_INFINITY;
+        double high = Double.NEGATIVE_INFINITY;
+        for (double value : values) {
+            low = Math.min(low, value);
+            high = Math.max(high, value);
+        }
+        low -= maxPositionWeight;
+        
+        for (int iteration = 0; iteration < 100; iteration++) {
+            double tau = (low + high) / 2;
+            double sum = 0;
+            for (double value : values) {
+                sum += Math.max(0, Math.min(maxPositionWeight, value - tau));
+            }
+            if (sum > 1) {
+                low = tau;
+            } else {
+                high = tau;
+            }
+            if (high - low < 1e-15) {
+                break;
+            }
+        }
+        
+        double tau = (low + high) / 2;
+        for (int i = 0; i < values.length; i++) {
+            out[i] = Math.max(0, Math.min(maxPositionWeight, values[i] - tau));
+        }
+    }
+    
+    /**
+     * Rounds target weights to whole shares and keeps only the holdings that change. Holdings
+     * within the tolerance, or holding the target rounded up, keep their shares unless the plan
+     * needs their cash. Shares left over from rounding down go to the traded holdings with the
+     * largest fractional remainder.
+     */
+    private Plan plan(List<Stock> stocks, double[] weights, double cash) {
+        int n = stocks.size();
+        double totalValue = cash;
+        for (Stock stock : stocks) {
+            totalValue += stock.getCurrentValue();
+        }
+        
+        int[] targets = new int[n];
+        double[] remainders = new double[n];
+        double[] overweight = new double[n];
+        double remainingCash = totalValue;
+        for (int i = 0; i < n; i++) {
+            Stock stock = stocks.get(i);
+            double price = stock.getCurrentPrice();
+            double exact = price > 0 ? weights[i] * totalValue / price : stock.getQuantity();
+            double currentWeight = totalValue > 0 ? stock.getCurrentValue() / totalValue : 0;
+            boolean roundedUp = weights[i] > 0 && stock.getQuantity() > exact && stock.getQuantity() - exact < 1;
+            if (price <= 0 || roundedUp || Math.abs(currentWeight - weights[i]) <= tolerance) {
+                targets[i] = stock.getQuantity();
+                remainders[i] = -1;
+                overweight[i] = (targets[i] - Math.floor(exact)) * price;
+            } else {
+                targets[i] = (int) Math.floor(exact);
+                remainders[i] = exact - targets[i];
+            }
+            remainingCash -= targets[i] * price;
+        }
+        
+        // Holdings left alone can add up to more than the cash available;
+        // trade the most overweight of them until the plan is funded
+        if (remainingCash < 0) {
+            Integer[] byOverweight = new Integer[n];
+            for (int i = 0; i < n; i++) {
+                byOverweight[i] = i;
+            }
+            Arrays.sort(byOverweight, (a, b) -> Double.compare(overweight[b], overweight[a]));
+            for (int index : byOverweight) {
+                if (remainingCash >= 0 || overweight[index] <= 0) {
+                    break;
+                }
+                double price = stocks.get(index).getCurrentPrice();
+                double exact = weights[index] * totalValue / price;
+                targets[index] = (int) Math.floor(exact);
+                remainders[index] = exact - targets[index];
+                remainingCash += overweight[index];
+            }
+        }
+        
+        // Spend what rounding left behind, largest remainders first, without starting new trades
+        Integer[] order = new Integer[n];
+        for (int i = 0; i < n; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Double.compare(remainders[b], remainders[a]));
+        for (int index : order) {
+            if (remainders[index] <= 0) {
+                break;
+            }
+            Stock stock = stocks.get(index);
+            double price = stock.getCurrentPrice();
+            if (targets[index] != stock.getQuantity() && price <= remainingCash) {
+                targets[index]++;
+                remainingCash -= price;
+            }
+        }
+        
+        List<Trade> trades = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            Stock stock = stocks.get(i);
+            int delta = targets[i] - stock.getQuantity();
+            if (delta != 0) {
+                trades.add(new Trade(stock.getSymbol(), delta, stock.getCurrentPrice()));
+            }
+        }
+        return new Plan(trades, remainingCash);
+    }
+    
+    /**
+     * A whole-share order; positive quantities buy, negative quantities sell
+     */
+    public static class Trade {
+        private final String symbol;
+        private final int quantity;
+        private final double price;
+        
+        public Trade(String symbol, int quantity, double price) {
+            this.symbol = symbol;
+            this.quantity = quantity;
+            this.price = price;
+        }
+        
+        public String getSymbol() { return symbol; }
+        public int getQuantity() { return quantity; }
+        public double getPrice() { return price; }
+        public double getNotional() { return Math.abs(quantity) * price; }
+        
+        @Override
+        public String toString() {
+            return String.format("%s %d %s @ %.2f", quantity > 0 ? "BUY" : "SELL", Math.abs(quantity), symbol, price);
+        }
+    }
+    
+    /**
+     * Trades that reach the target and the cash that remains afterwards
+     */
+    public static class Plan {
+        private final List<Trade> trades;
+        private final double remainingCash;
+        
+        public Plan(List<Trade> trades, double remainingCash) {
+            this.trades = trades;
+            this.remainingCash = remainingCash;
+        }
+        
+        public List<Trade> getTrades() { return trades; }
+        public double getRemainingCash() { return remainingCash; }
+        
+        /**
+         * Applies the trades to the portfolio at the planned prices
+         */
+        public void apply(Portfolio portfolio) {
+            for (Trade trade : trades) {
+                Stock holding = null;
+                for (Stock stock : portfolio.getStocks()) {
+                    if (stock.getSymbol().equals(trade.getSymbol())) {
+                        holding = stock;
+                        break;
+                    }
+                }
+                
+                if (trade.getQuantity() > 0) {
+                    String name = holding != null ? holding.getName() : trade.getSymbol();
+                    Stock bought = new Stock(trade.getSymbol(), name, trade.getQuantity(), trade.getPrice());
+                    portfolio.addStock(bought);
+                } else if (holding != null) {
+                    int remaining = holding.getQuantity() + trade.getQuantity();
+                    if (remaining <= 0) {
+                        portfolio.removeStock(holding);
+                    } else {
+                        holding.setQuantity(remaining);
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,55 @@
+/**
+ * Holds fixed target weights and rebalances whenever any holding drifts too far from its
+ * target. With an infinite threshold it buys once and holds.
+ */
+public class RebalancingStrategy implements TradingStrategy {
+    private final double[] targetWeights;
+    private final double driftThreshold;
+    private final long checkIntervalMillis;
+    private long nextCheck = Long.MIN_VALUE;
+    private boolean invested;
+    
+    /**
+     * @param targetWeights Target fraction of equity per symbol, in feed order
+     * @param driftThreshold Absolute weight deviation that triggers a rebalance, e.g. 0.05
+     * @param checkIntervalMillis Minimum time between drift checks
+     */
+    public RebalancingStrategy(double[] targetWeights, double driftThreshold, long checkIntervalMillis) {
+        this.targetWeights = targetWeights.clone();
+        this.driftThreshold = driftThreshold;
+        this.checkIntervalMillis = checkIntervalMillis;
+    }
+    
+    @Override
+    public void onTick(BacktestContext context) {
+        if (context.getTimestamp() < nextCheck) {
+            return;
+        }
+        nextCheck = context.getTimestamp() + checkIntervalMillis;
+        
+        if (!invested) {
+            for (int i = 0; i < targetWeights.length; i++) {
+                if (!context.hasPrice(i)) {
+                    return; // Wait until every symbol has traded once
+                }
+            }
+            context.rebalance(targetWeights);
+            invested = true;
+            return;
+        }
+        
+        double equity = context.getEquity();
+        for (int i = 0; i < targetWeights.length; i++) {
+            double weight = context.getQuantity(i) * context.getPrice(i) / equity;
+            if (Math.abs(weight - targetWeights[i]) > driftThreshold) {
+                context.rebalance(targetWeights);
+                return;
+            }
+        }
+    }
+    
+    @Override
+    public String getName() {
+        return String.format("Rebalance(threshold=%.3f)", driftThreshold);
+    }
+}
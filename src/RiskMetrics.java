@@ -0,0 +1,326 @@
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Risk figures for a set of holdings computed from aligned per-period returns: per-holding
+ * volatility, covariance and correlation matrices, and historical and parametric VaR/CVaR.
+ * Returns are kept as primitive columns and new periods can be added one at a time without
+ * recomputing the covariance matrix: metrics built from a price history remember the last
+ * interval they used, and update() adds the intervals completed since.
+ */
+public class RiskMetrics {
+    public static final long DAY_MILLIS = 24L * 60 * 60 * 1000;
+    
+    private final String[] symbols;
+    private final double[] weights;
+    private double portfolioValue;
+    private final CovarianceAccumulator covariance;
+    private double[][] returnColumns; // returnColumns[i][t], with room for more periods
+    private int returnCount;
+    
+    // Where the returns taken from a price history end, for update()
+    private long historyFrom;
+    private long intervalMillis;
+    private long lastInterval;
+    private double[] lastCloses; // Close of each holding in the last interval, or null before the first
+    
+    /**
+     * @param symbols Symbol of each holding
+     * @param holdingValues Current value of each holding, used as weights
+     * @param returnColumns returnColumns[i][t] is the simple return of holding i in period t
+     * @param length Number of periods to use from each column
+     */
+    public RiskMetrics(String[] symbols, double[] holdingValues, double[][] returnColumns, int length) {
+        this.symbols = symbols.clone();
+        this.weights = new double[symbols.length];
+        setHoldingValues(holdingValues);
+        
+        this.covariance = CovarianceAccumulator.fromColumns(returnColumns, length);
+        this.returnColumns = new double[symbols.length][];
+        for (int i = 0; i < symbols.length; i++) {
+            this.returnColumns[i] = Arrays.copyOf(returnColumns[i], Math.max(16, length));
+        }
+        this.returnCount = length;
+    }
+    
+    /**
+     * Builds risk metrics for a portfolio from its recorded price history. Prices are sampled at
+     * the close of each interval and only intervals in which every holding traded are used.
+     * @param to End of the history to use; a multiple of the interval keeps a partial last
+     *           interval out, so that update() can continue from it exactly
+     */
+    public static RiskMetrics fromHistory(Portfolio portfolio, PriceHistoryStore history,
+                                          long from, long to, long intervalMillis) throws IOException {
+        List<Stock> stocks = portfolio.getStocks();
+        int n = stocks.size();
+        String[] symbols = new String[n];
+        double[] values = new double[n];
+        for (int i = 0; i < n; i++) {
+            symbols[i] = stocks.get(i).getSymbol();
+            values[i] = stocks.get(i).getCurrentValue();
+        }
+        List<Map<Long, Double>> closes = new ArrayList<>();
+        TreeSet<Long> common = closes(symbols, history, from, to, intervalMillis, closes);
+        
+        Long[] intervals = common.toArray(new Long[0]);
+        int length = Math.max(0, intervals.length - 1);
+        double[][] returns = new double[n][length];
+        for (int i = 0; i < n; i++) {
+            Map<Long, Double> byInterval = closes.get(i);
+            for (int t = 0; t < length; t++) {
+                double previous = byInterval.get(intervals[t]);
+                double current = byInterval.get(intervals[t + 1]);
+                returns[i][t] = previous == 0 ? 0 : current / previous - 1;
+            }
+        }
+        RiskMetrics metrics = new RiskMetrics(symbols, values, returns, length);
+        metrics.historyFrom = from;
+        metrics.intervalMillis = intervalMillis;
+        if (intervals.length > 0) {
+            metrics.lastInterval = intervals[intervals.length - 1];
+            metrics.lastCloses = new double[n];
+            for (int i = 0; i < n; i++) {
+                metrics.lastCloses[i] = closes.get(i).get(metrics.lastInterval);
+            }
+        }
+        return metrics;
+    }
+    
+    /**
+     * Adds the returns of the intervals recorded since the metrics were built from the history
+     * or last updated, one observation at a time
+     * @param to End of the history to use, as for fromHistory
+     * @return Number of periods added
+     * @throws IllegalStateException If the metrics were not built by fromHistory
+     */
+    public int update(PriceHistoryStore history, long to) throws IOException {
+        if (intervalMillis == 0) {
+            throw new IllegalStateException("Risk metrics were not built from a price history");
+        }
+        long from = lastCloses == null ? historyFrom : lastInterval + intervalMillis;
+        List<Map<Long, Double>> closes = new ArrayList<>();
+        TreeSet<Long> common = closes(symbols, history, from, to, intervalMillis, closes);
+        
+        int added = 0;
+        double[] returns = new double[symbols.length];
+        for (long interval : common) {
+            if (lastCloses == null) {
+                lastCloses = new double[symbols.length];
+            } else {
+                for (int i = 0; i < symbols.length; i++) {
+                    double current = closes.get(i).get(interval);
+                    returns[i] = lastCloses[i] == 0 ? 0 : current / lastCloses[i] - 1;
+                }
+                addObservation(returns);
+                added++;
+            }
+            for (int i = 0; i < symbols.length; i++) {
+                lastCloses[i] = closes.get(i).get(interval);
+            }
+            lastInterval = interval;
+        }
+        return added;
+    }
+    
+    /**
+     * Collects each symbol's interval closes
+     * @return Intervals in which every symbol traded, in order
+     */
+    private static TreeSet<Long> closes(String[] symbols, PriceHistoryStore history, long from, long to,
+                                        long intervalMillis, List<Map<Long, Double>> closes) throws IOException {
+        TreeSet<Long> common = null;
+        for (String symbol : symbols) {
+            Map<Long, Double> byInterval = new HashMap<>();
+            for (OhlcBar bar : history.downsample(symbol, from, to, intervalMillis)) {
+                byInterval.put(bar.getStartTime(), bar.getClose());
+            }
+            closes.add(byInterval);
+            if (common == null) {
+                common = new TreeSet<>(byInterval.keySet());
+            } else {
+                common.retainAll(byInterval.keySet());
+            }
+        }
+        return common == null ? new TreeSet<>() : common;
+    }
+    
+    /**
+     * Adds the returns of one new period, in holding order
+     */
+    public void addObservation(double[] returns) {
+        covariance.add(returns);
+        if (returnColumns.length > 0 && returnCount == returnColumns[0].length) {
+            for (int i = 0; i < returnColumns.length; i++) {
+                returnColumns[i] = Arrays.copyOf(returnColumns[i], returnCount * 2);
+            }
+        }
+        for (int i = 0; i < returns.length; i++) {
+            returnColumns[i][returnCount] = returns[i];
+        }
+        returnCount++;
+    }
+    
+    /**
+     * Reweights the holdings by their current values; the returns and covariances are kept
+     */
+    public void setHoldingValues(double[] holdingValues) {
+        double total = 0;
+        for (double value : holdingValues) {
+            total += value;
+        }
+        portfolioValue = total;
+        for (int i = 0; i < weights.length; i++) {
+            weights[i] = total == 0 ? 0 : holdingValues[i] / total;
+        }
+    }
+    
+    public String[] getSymbols() { return symbols.clone(); }
+    public int getObservationCount() { return returnCount; }
+    public double getPortfolioValue() { return portfolioValue; }
+    
+    /**
+     * Mean return of one holding per period
+     */
+    public double getMeanReturn(int holding) {
+        return covariance.getMean(holding);
+    }
+    
+    /**
+     * Volatility of one holding per period
+     */
+    public double getVolatility(int holding) {
+        return covariance.getVolatility(holding);
+    }
+    
+    /**
+     * Volatility of one holding scaled to a year
+     */
+    public double getAnnualizedVolatility(int holding, int periodsPerYear) {
+        return getVolatility(holding) * Math.sqrt(periodsPerYear);
+    }
+    
+    public double[][] getCovarianceMatrix() { return covariance.getCovarianceMatrix(); }
+    public double[][] getCorrelationMatrix() { return covariance.getCorrelationMatrix(); }
+    
+    /**
+     * Volatility of the value-weighted portfolio per period, sqrt(w' * Cov * w)
+     */
+    public double getPortfolioVolatility() {
+        double variance = 0;
+        for (int i = 0; i < weights.length; i++) {
+            for (int j = 0; j < weights.length; j++) {
+                variance += weights[i] * weights[j] * covariance.getCovariance(i, j);
+            }
+        }
+        return Math.sqrt(Math.max(0, variance));
+    }
+    
+    /**
+     * Loss over one period that was not exceeded in the given fraction of past periods
+     * @param confidence e.g. 0.95
+     * @return Loss in dollars (positive means a loss)
+     */
+    public double getHistoricalVaR(double confidence) {
+        if (returnCount == 0) return 0;
+        double[] losses = sortedLosses();
+        return losses[tailStart(losses.length, confidence)];
+    }
+    
+    /**
+     * Average loss in the periods at or beyond the historical VaR
+     */
+    public double getHistoricalCVaR(double confidence) {
+        if (returnCount == 0) return 0;
+        double[] losses = sortedLosses();
+        int start = tailStart(losses.length, confidence);
+        double sum = 0;
+        for (int t = start; t < losses.length; t++) {
+            sum += losses[t];
+        }
+        return sum / (losses.length - start);
+    }
+    
+    /**
+     * VaR assuming normally distributed portfolio returns
+     */
+    public double getParametricVaR(double confidence) {
+        double z = inverseNormalCdf(confidence);
+        return (z * getPortfolioVolatility() - getMeanPortfolioReturn()) * portfolioValue;
+    }
+    
+    /**
+     * CVaR (expected shortfall) assuming normally distributed portfolio returns
+     */
+    public double getParametricCVaR(double confidence) {
+        double z = inverseNormalCdf(confidence);
+        double density = Math.exp(-0.5 * z * z) / Math.sqrt(2 * Math.PI);
+        return (getPortfolioVolatility() * density / (1 - confidence) - getMeanPortfolioReturn()) * portfolioValue;
+    }
+    
+    private double getMeanPortfolioReturn() {
+        double mean = 0;
+        for (int i = 0; i < weights.length; i++) {
+            mean += weights[i] * covariance.getMean(i);
+        }
+        return mean;
+    }
+    
+    private double[] sortedLosses() {
+        double[] losses = new double[returnCount];
+        for (int i = 0; i < weights.length; i++) {
+            double weight = weights[i];
+            double[] column = returnColumns[i];
+            for (int t = 0; t < returnCount; t++) {
+                losses[t] += weight * column[t];
+            }
+        }
+        for (int t = 0; t < returnCount; t++) {
+            losses[t] = -losses[t] * portfolioValue;
+        }
+        Arrays.sort(losses);
+        return losses;
+    }
+    
+    private static int tailStart(int length, double confidence) {
+        int index = (int) Math.ceil(confidence * length) - 1;
+        return Math.max(0, Math.min(length - 1, index));
+    }
+    
+    /**
+     * Inverse of the standard normal CDF (Acklam's rational approximation, relative error below 1.2e-9)
+     */
+    static double inverseNormalCdf(double p) {
+        if (p <= 0 || p >= 1) {
+            throw new IllegalArgumentException("Probability must be between 0 and 1");
+        }
+        double[] a = {-3.969683028665376e+01, 2.209460984245205e+02, -2.759285104469687e+02,
+                1.383577518672690e+02, -3.066479806614716e+01, 2.506628277459239e+00};
+        double[] b = {-5.447609879822406e+01, 1.615858368580409e+02, -1.556989798598866e+02,
+                6.680131188771972e+01, -1.328068155288572e+01};
+        double[] c = {-7.784894002430293e-03, -3.223964580411365e-01, -2.400758277161838e+00,
+                -2.549732539343734e+00, 4.374664141464968e+00, 2.938163982698783e+00};
+        double[] d = {7.784695709041462e-03, 3.224671290700398e-01, 2.445134137142996e+00,
+                3.754408661907416e+00};
+        double low = 0.02425;
+        
+        if (p < low) {
+            double q = Math.sqrt(-2 * Math.log(p));
+            return (((((c[0] * q + c[1]) * q + c[2]) * q + c[3]) * q + c[4]) * q + c[5]) /
+                    ((((d[0] * q + d[1]) * q + d[2]) * q + d[3]) * q + 1);
+        }
+        if (p > 1 - low) {
+            double q = Math.sqrt(-2 * Math.log(1 - p));
+            return -(((((c[0] * q + c[1]) * q + c[2]) * q + c[3]) * q + c[4]) * q + c[5]) /
+                    ((((d[0] * q + d[1]) * q + d[2]) * q + d[3]) * q + 1);
+        }
+        double q = p - 0.5;
+        double r = q * q;
+        return (((((a[0] * r + a[1]) * r + a[2]) * r + a[3]) * r + a[4]) * r + a[5]) * q /
+                (((((b[0] * r + b[1]) * r + b[2]) * r + b[3]) * r + b[4]) * r + 1);
+    }
+}
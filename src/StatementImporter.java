@@ -0,0 +1,641 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Imports positions or trades from a broker's CSV export into portfolios. The file is read as
+ * a stream, each row is validated and normalized, and rows are merged into the portfolios a
+ * batch at a time: rows for the same portfolio and symbol within a batch are combined first, so
+ * each holding changes once per batch however many lots or trades it has. Quotes and company
+ * names are then fetched once per distinct symbol, concurrently. Memory is bounded by the batch
+ * and the number of distinct holdings, not by the length of the file.
+ * <p>
+ * A row with a positive quantity buys (for a positions export, the position at its cost) and a
+ * negative one sells, unless a side column says which. Rows whose side is blank or neither a
+ * buy nor a sell, such as dividends, are skipped without needing a quantity. Within a batch a holding's buys are applied before its
+ * sells, so a statement's order only matters across batches. Nothing is saved; callers persist
+ * the portfolios once the import returns.
+ */
+public class StatementImporter {
+    public static final int DEFAULT_BATCH_SIZE = 10_000;
+    
+    private static final int QUOTE_THREADS = 8;
+    private static final int MAX_REPORTED_ERRORS = 20;
+    private static final int MAX_PREAMBLE_ROWS = 50; // Rows above the header, such as account details
+    private static final LatencyHistogram IMPORT_LATENCY = Metrics.latency("import.statement");
+    private static final Counter IMPORT_ROWS = Metrics.counter("import.rows");
+    private static final Counter IMPORT_REJECTED = Metrics.counter("import.rejected");
+    
+    private final List<Portfolio> portfolios;
+    private final Map<String, Portfolio> portfoliosByName = new HashMap<>();
+    private final StockApiService stockAPI;
+    private Mapping mapping = new Mapping();
+    private int batchSize = DEFAULT_BATCH_SIZE;
+    
+    /**
+     * @param portfolios Portfolios to merge into; portfolios named by the statement but missing are added
+     * @param stockAPI Service to fetch quotes and names for imported symbols from, or null to skip quotes
+     */
+    public StatementImporter(List<Portfolio> portfolios, StockApiService stockAPI) {
+        this.portfolios = portfolios;
+        this.stockAPI = stockAPI;
+        for (Portfolio portfolio : portfolios) {
+            portfoliosByName.put(portfolio.getName(), portfolio);
+        }
+    }
+    
+    public StatementImporter mapping(Mapping mapping) {
+        this.mapping = mapping;
+        return this;
+    }
+    
+    public StatementImporter batchSize(int batchSize) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("Batch size must be positive");
+        }
+        this.batchSize = batchSize;
+        return this;
+    }
+    
+    /**
+     * @param defaultPortfolio Portfolio for rows without a portfolio column, created if missing
+     * @throws IllegalArgumentException If no header row with the mapped columns is found
+     */
+    public Result importFile(Path file, String defaultPortfolio) throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            return importStatement(reader, defaultPortfolio);
+        }
+    }
+    
+    public Result importStatement(Reader reader, String defaultPortfolio) throws IOException {
+        long start = System.nanoTime();
+        Result result = new Result();
+        CsvReader csv = new CsvReader(reader, mapping.delimiter);
+        Columns columns = findHeader(csv);
+        
+        Map<String, Lot> batch = new LinkedHashMap<>();
+        Set<String> symbols = new LinkedHashSet<>();
+        int batchRows = 0;
+        List<String> fields;
+        while ((fields = csv.next()) != null) {
+            if (isBlank(fields)) {
+                continue;
+            }
+            result.rows++;
+            try {
+                Lot row = normalize(fields, columns, defaultPortfolio, csv.getLineNumber());
+                if (row == null) {
+                    result.ignored++;
+                    continue;
+                }
+                Lot lot = batch.get(row.key());
+                if (lot == null) {
+                    batch.put(row.key(), row);
+                } else {
+                    lot.combine(row);
+                }
+                symbols.add(row.symbol);
+                result.imported++;
+            } catch (IllegalArgumentException e) {
+                result.reject("line " + csv.getLineNumber() + ": " + e.getMessage());
+            }
+            if (++batchRows == batchSize) {
+                merge(batch, result);
+                batch.clear();
+                batchRows = 0;
+            }
+        }
+        merge(batch, result);
+        result.symbols = symbols;
+        
+        if (stockAPI != null && !symbols.isEmpty()) {
+            resolveQuotes(symbols, result);
+        }
+        IMPORT_ROWS.add(result.rows);
+        IMPORT_REJECTED.add(result.rejected);
+        IMPORT_LATENCY.recordSince(start);
+        result.elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+        return result;
+    }
+    
+    /**
+     * Skips rows until one names every mapped column
+     */
+    private Columns findHeader(CsvReader csv) throws IOException {
+        List<String> fields;
+        for (int row = 0; row < MAX_PREAMBLE_ROWS && (fields = csv.next()) != null; row++) {
+            Map<String, Integer> byName = new HashMap<>();
+            for (int i = 0; i < fields.size(); i++) {
+                String name = fields.get(i).replace("\uFEFF", "").trim().toLowerCase(Locale.ROOT);
+                byName.putIfAbsent(name, i);
+            }
+            Columns columns = new Columns();
+            columns.symbol = column(byName, mapping.symbol);
+            columns.quantity = column(byName, mapping.quantity);
+            columns.price = mapping.cost == null ? column(byName, mapping.price) : -1;
+            columns.cost = mapping.cost != null ? column(byName, mapping.cost) : -1;
+            columns.name = column(byName, mapping.name);
+            columns.portfolio = column(byName, mapping.portfolio);
+            columns.side = column(byName, mapping.side);
+            boolean complete = columns.symbol >= 0 && columns.quantity >= 0 && (columns.price >= 0 || columns.cost >= 0)
+                    && (mapping.portfolio == null || columns.portfolio >= 0) && (mapping.side == null || columns.side >= 0);
+            if (complete) {
+                return columns;
+            }
+        }
+        throw new IllegalArgumentException("No header row with the columns " + mapping + " in the first " +
+                MAX_PREAMBLE_ROWS + " rows");
+    }
+    
+    private static int column(Map<String, Integer> byName, String name) {
+        if (name == null) {
+            return -1;
+        }
+        Integer index = byName.get(name.trim().toLowerCase(Locale.ROOT));
+        return index != null ? index : -1;
+    }
+    
+    /**
+     * Validates one row and turns it into a lot
+     * @return null if the row is neither a buy nor a sell
+     * @throws IllegalArgumentException If the row is invalid
+     */
+    private Lot normalize(List<String> fields, Columns columns, String defaultPortfolio, int lineNumber) {
+        // Dividend, fee and interest rows usually have no quantity, so the side is checked first
+        Boolean sideBuys = null;
+        if (columns.side >= 0) {
+            // A blank side is neither a buy nor a sell either
+            String side = columns.side < fields.size() ? fields.get(columns.side).trim().toUpperCase(Locale.ROOT) : "";
+            if (side.contains("BUY") || side.contains("BOUGHT")) {
+                sideBuys = true;
+            } else if (side.contains("SELL") || side.contains("SOLD")) {
+                sideBuys = false;
+            } else {
+                return null;
+            }
+        }
+        double quantity = parseNumber(field(fields, columns.quantity, "quantity"), "quantity");
+        boolean buy = sideBuys != null ? sideBuys : quantity > 0;
+        quantity = Math.abs(quantity);
+        if (quantity == 0 || quantity > Integer.MAX_VALUE || quantity != Math.rint(quantity)) {
+            throw new IllegalArgumentException("Quantity must be a non-zero whole number of shares: " + fields.get(columns.quantity));
+        }
+        
+        String symbol = normalizeSymbol(field(fields, columns.symbol, "symbol"));
+        double price = 0;
+        if (buy) {
+            // Sells reduce a holding at its average cost, so only buys need a price
+            if (columns.cost >= 0) {
+                price = Math.abs(parseNumber(field(fields, columns.cost, "cost"), "cost")) / quantity;
+            } else {
+                price = parseNumber(field(fields, columns.price, "price"), "price");
+            }
+            if (!(price > 0) || Double.isInfinite(price)) {
+                throw new IllegalArgumentException("Price must be positive: " + price);
+            }
+        }
+        
+        String portfolio = defaultPortfolio;
+        if (columns.portfolio >= 0) {
+            portfolio = field(fields, columns.portfolio, "portfolio");
+        }
+        if (portfolio == null || portfolio.isEmpty()) {
+            throw new IllegalArgumentException("No portfolio for the row");
+        }
+        String name = columns.name >= 0 && columns.name < fields.size() ? fields.get(columns.name).trim() : "";
+        
+        Lot lot = new Lot(portfolio, symbol, name.isEmpty() ? symbol : name, lineNumber);
+        if (buy) {
+            lot.buyQuantity = (long) quantity;
+            lot.buyCost = quantity * price;
+        } else {
+            lot.sellQuantity = (long) quantity;
+        }
+        return lot;
+    }
+    
+    /**
+     * Applies a batch of combined lots to the portfolios: buys average into the holding and
+     * sells reduce it
+     */
+    private void merge(Map<String, Lot> batch, Result result) {
+        for (Lot lot : batch.values()) {
+            Portfolio portfolio = portfoliosByName.get(lot.portfolio);
+            if (portfolio == null) {
+                portfolio = new Portfolio(lot.portfolio, "Imported from a broker statement");
+                portfolios.add(portfolio);
+                portfoliosByName.put(lot.portfolio, portfolio);
+                result.createdPortfolios++;
+            }
+            if (lot.buyQuantity > 0) {
+                Stock existing = portfolio.findStock(lot.symbol);
+                if (existing != null && existing.getQuantity() + lot.buyQuantity > Integer.MAX_VALUE) {
+                    result.reject("line " + lot.lineNumber + ": " + lot.symbol + " holding would exceed " + Integer.MAX_VALUE + " shares");
+                    continue;
+                }
+                portfolio.addStock(new Stock(lot.symbol, lot.name, (int) lot.buyQuantity, lot.buyCost / lot.buyQuantity));
+            }
+            if (lot.sellQuantity > 0) {
+                Stock holding = portfolio.findStock(lot.symbol);
+                int held = holding != null ? holding.getQuantity() : 0;
+                if (lot.sellQuantity > held) {
+                    result.oversold++;
+                    result.error("line " + lot.lineNumber + ": sells " + (lot.sellQuantity - held) + " more shares of " +
+                            lot.symbol + " than " + lot.portfolio + " holds");
+                }
+                if (holding != null) {
+                    if (lot.sellQuantity >= held) {
+                        portfolio.removeStock(holding);
+                    } else {
+                        holding.setQuantity((int) (held - lot.sellQuantity));
+                    }
+                }
+            }
+        }
+    }
+    
+    /**
+     * Fetches a quote per distinct symbol in parallel and applies its price, and its company name
+     * where the statement had none, to every holding of the symbol
+     */
+    private void resolveQuotes(Set<String> symbols, Result result) {
+        Map<String, Future<Stock>> quotes = new LinkedHashMap<>();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(QUOTE_THREADS, symbols.size()));
+        try {
+            for (String symbol : symbols) {
+                quotes.put(symbol, executor.submit(() -> stockAPI.getStockQuote(symbol)));
+            }
+            Map<String, List<Stock>> holdings = new HashMap<>();
+            for (Portfolio portfolio : portfolios) {
+                for (Stock stock : portfolio.getStocks()) {
+                    if (quotes.containsKey(stock.getSymbol())) {
+                        holdings.computeIfAbsent(stock.getSymbol(), s -> new ArrayList<>()).add(stock);
+                    }
+                }
+            }
+            for (Map.Entry<String, Future<Stock>> entry : quotes.entrySet()) {
+                Stock quote = entry.getValue().get();
+                if (quote == null) {
+                    result.quotesFailed++;
+                    continue;
+                }
+                result.quotesUpdated++;
+                for (Stock stock : holdings.getOrDefault(entry.getKey(), new ArrayList<>())) {
+                    if (stock.getName().equals(stock.getSymbol()) && quote.getName() != null) {
+                        stock.setName(quote.getName());
+                    }
+                    stock.setCurrentPrice(quote.getCurrentPrice());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            result.reject("quotes: interrupted");
+        } catch (ExecutionException e) {
+            result.reject("quotes: " + e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+    
+    private static String field(List<String> fields, int index, String description) {
+        String value = index < fields.size() ? fields.get(index).trim() : "";
+        if (value.isEmpty()) {
+            throw new IllegalArgumentException("Missing " + description);
+        }
+        return value;
+    }
+    
+    private static boolean isBlank(List<String> fields) {
+        for (String field : fields) {
+            if (!field.trim().isEmpty()) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * Upper-cases a ticker and checks it only has letters, digits, '.', '-' and '/'
+     */
+    static String normalizeSymbol(String value) {
+        String symbol = value.trim().toUpperCase(Locale.ROOT);
+        if (symbol.isEmpty() || symbol.length() > 12) {
+            throw new IllegalArgumentException("Invalid symbol: " + value);
+        }
+        for (int i = 0; i < symbol.length(); i++) {
+            char c = symbol.charAt(i);
+            boolean valid = (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || (i > 0 && (c == '.' || c == '-' || c == '/'));
+            if (!valid) {
+                throw new IllegalArgumentException("Invalid symbol: " + value);
+            }
+        }
+        return symbol;
+    }
+    
+    /**
+     * Parses numbers as brokers write them: "$1,234.50", "-12", "(12.00)" for negatives, "+3"
+     */
+    static double parseNumber(String value, String description) {
+        String text = value.trim();
+        boolean negative = false;
+        if (text.startsWith("(") && text.endsWith(")")) {
+            negative = true;
+            text = text.substring(1, text.length() - 1).trim();
+        }
+        StringBuilder digits = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c != ',' && c != '$' && c != ' ') {
+                digits.append(c);
+            }
+        }
+        try {
+            double number = Double.parseDouble(digits.toString());
+            if (Double.isNaN(number) || Double.isInfinite(number)) {
+                throw new NumberFormatException();
+            }
+            return negative ? -number : number;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid " + description + ": " + value);
+        }
+    }
+    
+    /**
+     * Which statement column holds each field. Column names are matched ignoring case; name,
+     * portfolio and side are optional, and cost (the total paid for the row) can be mapped
+     * instead of the price per share.
+     */
+    public static final class Mapping {
+        private String symbol = "Symbol";
+        private String quantity = "Quantity";
+        private String price = "Price";
+        private String cost;
+        private String name = "Description";
+        private String portfolio;
+        private String side;
+        private char delimiter = ',';
+        
+        /**
+         * Parses a mapping such as "symbol=Ticker,quantity=Shares,cost=Cost Basis,portfolio=Account,side=Action";
+         * fields not listed keep their defaults, and delimiter=; or delimiter=tab changes the separator
+         */
+        public static Mapping parse(String spec) {
+            Mapping mapping = new Mapping();
+            if (spec == null || spec.trim().isEmpty()) {
+                return mapping;
+            }
+            for (String part : spec.split(",")) {
+                int equals = part.indexOf('=');
+                if (equals <= 0) {
+                    throw new IllegalArgumentException("Expected field=column: " + part);
+                }
+                String field = part.substring(0, equals).trim().toLowerCase(Locale.ROOT);
+                String column = part.substring(equals + 1).trim();
+                switch (field) {
+                    case "symbol": mapping.symbol(column); break;
+                    case "quantity": mapping.quantity(column); break;
+                    case "price": mapping.price(column); break;
+                    case "cost": mapping.cost(column); break;
+                    case "name": mapping.name(column); break;
+                    case "portfolio": mapping.portfolio(column); break;
+                    case "side": mapping.side(column); break;
+                    case "delimiter":
+                        mapping.delimiter(column.equalsIgnoreCase("tab") ? '\t' : column.charAt(0));
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown field " + field +
+                                "; expected symbol, quantity, price, cost, name, portfolio, side or delimiter");
+                }
+            }
+            return mapping;
+        }
+        
+        public Mapping symbol(String column) { this.symbol = column; return this; }
+        public Mapping quantity(String column) { this.quantity = column; return this; }
+        public Mapping price(String column) { this.price = column; return this; }
+        public Mapping cost(String column) { this.cost = column; return this; }
+        public Mapping name(String column) { this.name = column; return this; }
+        public Mapping portfolio(String column) { this.portfolio = column; return this; }
+        public Mapping side(String column) { this.side = column; return this; }
+        public Mapping delimiter(char delimiter) { this.delimiter = delimiter; return this; }
+        
+        @Override
+        public String toString() {
+            return "symbol=" + symbol + ", quantity=" + quantity + (cost != null ? ", cost=" + cost : ", price=" + price) +
+                    (portfolio != null ? ", portfolio=" + portfolio : "") + (side != null ? ", side=" + side : "");
+        }
+    }
+    
+    /**
+     * Counts from one import
+     */
+    public static final class Result {
+        private final List<String> errors = new ArrayList<>();
+        private long rows;
+        private long imported;
+        private long ignored;
+        private long rejected;
+        private long oversold;
+        private int createdPortfolios;
+        private Set<String> symbols = new LinkedHashSet<>();
+        private int quotesUpdated;
+        private int quotesFailed;
+        private long elapsedMillis;
+        
+        private void reject(String message) {
+            rejected++;
+            error(message);
+        }
+        
+        private void error(String message) {
+            if (errors.size() < MAX_REPORTED_ERRORS) {
+                errors.add(message);
+            }
+        }
+        
+        public long getRows() { return rows; }
+        public long getImported() { return imported; }
+        public long getIgnored() { return ignored; }
+        public long getRejected() { return rejected; }
+        
+        /**
+         * Sells, combined per portfolio and symbol within a batch, of more shares than were held;
+         * the holding is sold out and the rest ignored
+         */
+        public long getOversold() { return oversold; }
+        
+        public int getCreatedPortfolios() { return createdPortfolios; }
+        
+        /**
+         * Distinct symbols the imported rows traded, in order of first appearance
+         */
+        public Set<String> getSymbols() { return symbols; }
+        
+        public int getQuotesUpdated() { return quotesUpdated; }
+        public int getQuotesFailed() { return quotesFailed; }
+        public long getElapsedMillis() { return elapsedMillis; }
+        
+        /**
+         * The first few rejection and oversold messages, each starting with its line number
+         */
+        public List<String> getErrors() { return errors; }
+        
+        @Override
+        public String toString() {
+            return String.format("%,d rows: %,d imported, %,d rejected, %,d skipped, %,d oversold; %,d symbols, %d new portfolios, " +
+                    "%,d quotes (%,d failed) in %,d ms", rows, imported, rejected, ignored, oversold, symbols.size(), createdPortfolios,
+                    quotesUpdated, quotesFailed, elapsedMillis);
+        }
+    }
+    
+    /**
+     * Indexes of the mapped columns in the header, -1 when absent
+     */
+    private static final class Columns {
+        int symbol;
+        int quantity;
+        int price;
+        int cost;
+        int name;
+        int portfolio;
+        int side;
+    }
+    
+    /**
+     * Shares bought and sold of one symbol for one portfolio, combined over rows of a batch
+     */
+    private static final class Lot {
+        final String portfolio;
+        final String symbol;
+        final String name;
+        final int lineNumber;
+        long buyQuantity;
+        double buyCost;
+        long sellQuantity;
+        
+        Lot(String portfolio, String symbol, String name, int lineNumber) {
+            this.portfolio = portfolio;
+            this.symbol = symbol;
+            this.name = name;
+            this.lineNumber = lineNumber;
+        }
+        
+        String key() {
+            return portfolio + '\u0000' + symbol;
+        }
+        
+        void combine(Lot other) {
+            buyQuantity += other.buyQuantity;
+            buyCost += other.buyCost;
+            sellQuantity += other.sellQuantity;
+        }
+    }
+    
+    /**
+     * Reads CSV records one at a time: fields may be quoted, with "" for a quote and line breaks
+     * allowed inside quotes. The returned list is reused for the next record.
+     */
+    static final class CsvReader {
+        private final Reader in;
+        private final char delimiter;
+        private final char[] buffer = new char[1 << 16];
+        private final List<String> fields = new ArrayList<>();
+        private final StringBuilder field = new StringBuilder();
+        private int position;
+        private int limit;
+        private int lineNumber;
+        
+        CsvReader(Reader in, char delimiter) {
+            this.in = in;
+            this.delimiter = delimiter;
+        }
+        
+        /**
+         * Next record, or null at the end of the input
+         */
+        List<String> next() throws IOException {
+            int c = read();
+            if (c < 0) {
+                return null;
+            }
+            lineNumber++;
+            fields.clear();
+            field.setLength(0);
+            boolean quoted = false;
+            while (true) {
+                if (c < 0) {
+                    break;
+                }
+                if (quoted) {
+                    if (c == '"') {
+                        int following = read();
+                        if (following == '"') {
+                            field.append('"');
+                        } else {
+                            quoted = false;
+                            c = following;
+                            continue;
+                        }
+                    } else {
+                        if (c == '\n') {
+                            lineNumber++;
+                        }
+                        field.append((char) c);
+                    }
+                } else if (c == '"' && field.length() == 0) {
+                    quoted = true;
+                } else if (c == delimiter) {
+                    fields.add(field.toString());
+                    field.setLength(0);
+                } else if (c == '\n') {
+                    break;
+                } else if (c == '\r') {
+                    int following = read();
+                    if (following != '\n' && following >= 0) {
+                        position--; // A lone \r ends the record too
+                    }
+                    break;
+                } else {
+                    field.append((char) c);
+                }
+                c = read();
+            }
+            fields.add(field.toString());
+            return fields;
+        }
+        
+        /**
+         * Line of the file the last record ended on
+         */
+        int getLineNumber() {
+            return lineNumber;
+        }
+        
+        private int read() throws IOException {
+            if (position == limit) {
+                limit = in.read(buffer, 0, buffer.length);
+                position = 0;
+                if (limit <= 0) {
+                    limit = 0;
+                    return -1;
+                }
+            }
+            return buffer[position++];
+        }
+    }
+}
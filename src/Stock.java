@@ -1,5 +1,7 @@
 import java.io.Serializable;
+import java.time.Instant;
 import java.time.LocalDateTime;
+import java.time.ZoneId;
 
 /**
  * Represents a stock in a portfolio
@@ -10,7 +12,8 @@ public class Stock implements Serializable {
     private int quantity;
     private double purchasePrice;
     private double currentPrice;
-    private LocalDateTime lastUpdated;
+    private long lastUpdated; // Epoch millis, so price updates do not allocate
+    private transient Portfolio portfolio; // Owning portfolio, notified when this holding changes
     
     public Stock(String symbol, String name, int quantity, double purchasePrice) {
         this.symbol = symbol;
@@ -18,12 +21,12 @@ public class Stock implements Serializable {
         this.quantity = quantity;
         this.purchasePrice = purchasePrice;
         this.currentPrice = purchasePrice; // Default to purchase price until updated
-        this.lastUpdated = LocalDateTime.now();
+        this.lastUpdated = System.currentTimeMillis();
     }
     
     // Default constructor for serialization
     public Stock() {
-        this.lastUpdated = LocalDateTime.now();
+        this.lastUpdated = System.currentTimeMillis();
     }
     
     public double getCurrentValue() {
@@ -48,21 +51,47 @@ public class Stock implements Serializable {
     public void setSymbol(String symbol) { this.symbol = symbol; }
     
     public String getName() { return name; }
-    public void setName(String name) { this.name = name; }
+    public void setName(String name) { 
+        this.name = name; 
+        changed();
+    }
     
     public int getQuantity() { return quantity; }
-    public void setQuantity(int quantity) { this.quantity = quantity; }
+    public void setQuantity(int quantity) { 
+        this.quantity = quantity; 
+        changed();
+    }
     
     public double getPurchasePrice() { return purchasePrice; }
-    public void setPurchasePrice(double purchasePrice) { this.purchasePrice = purchasePrice; }
+    public void setPurchasePrice(double purchasePrice) { 
+        this.purchasePrice = purchasePrice; 
+        changed();
+    }
     
     public double getCurrentPrice() { return currentPrice; }
     public void setCurrentPrice(double currentPrice) {
         this.currentPrice = currentPrice;
-        this.lastUpdated = LocalDateTime.now();
+        this.lastUpdated = System.currentTimeMillis();
+        changed();
+    }
+    
+    public LocalDateTime getLastUpdated() { 
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(lastUpdated), ZoneId.systemDefault()); 
     }
     
-    public LocalDateTime getLastUpdated() { return lastUpdated; }
+    public long getLastUpdatedMillis() { return lastUpdated; }
+    
+    public Portfolio getPortfolio() { return portfolio; }
+    void setPortfolio(Portfolio portfolio) { this.portfolio = portfolio; }
+    
+    /**
+     * Lets the owning portfolio know that this holding changed
+     */
+    private void changed() {
+        if (portfolio != null) {
+            portfolio.stockChanged(this);
+        }
+    }
     
     public String toCsv() {
         return String.format("%s,%s,%d,%.2f,%.2f", 
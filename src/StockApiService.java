@@ -11,17 +11,29 @@ public class StockApiService {
             System.getenv("ALPHA_VANTAGE_API_KEY") : "demo";
     private static final String BASE_URL = "https://www.alphavantage.co/query";
     
+    private static final LatencyHistogram QUOTE_LATENCY = Metrics.latency("api.quote");
+    private static final Counter QUOTE_SUCCESS = Metrics.counter("api.quote.success");
+    private static final Counter QUOTE_FALLBACK = Metrics.counter("api.quote.fallback");
+    private static final Counter QUOTE_ERROR = Metrics.counter("api.quote.error");
+    private static final LatencyHistogram REQUEST_LATENCY = Metrics.latency("api.request");
+    private static final Counter REQUEST_ERROR = Metrics.counter("api.request.error");
+    private static final Counter RESPONSE_CHARS = Metrics.counter("api.response.chars");
+    private static final LatencyHistogram PARSE_LATENCY = Metrics.latency("api.parse");
+    
     public Stock getStockQuote(String symbol) {
+        long start = System.nanoTime();
+        QuoteFetchEvent event = new QuoteFetchEvent();
+        event.begin();
+        event.symbol = symbol;
         try {
-            String endpoint = String.format("%s?function=GLOBAL_QUOTE&symbol=%s&apikey=%s", 
-                    BASE_URL, symbol, API_KEY);
-            
-            String jsonResponse = makeApiRequest(endpoint);
+            String jsonResponse = makeApiRequest("GLOBAL_QUOTE", symbol);
             Map<String, Object> data = parseJsonResponse(jsonResponse);
             
             // Check if we have valid data
             Map<String, Object> quoteData = getNestedMap(data, "Global Quote");
             if (quoteData == null || quoteData.isEmpty()) {
+                QUOTE_FALLBACK.increment(); // Usually the demo key's rate limit
+                event.outcome = "fallback";
                 return getFallbackStockData(symbol);
             }
             
@@ -37,11 +49,18 @@ public class StockApiService {
             stock.setName(companyName);
             stock.setCurrentPrice(price);
             
+            QUOTE_SUCCESS.increment();
+            event.outcome = "success";
             return stock;
             
         } catch (Exception e) {
+            QUOTE_ERROR.increment();
+            event.outcome = "error";
             System.err.println("Error fetching stock data: " + e.getMessage());
             return getFallbackStockData(symbol);
+        } finally {
+            QUOTE_LATENCY.recordSince(start);
+            event.commit();
         }
     }
     
@@ -50,10 +69,7 @@ public class StockApiService {
      */
     private String getCompanyName(String symbol) {
         try {
-            String endpoint = String.format("%s?function=OVERVIEW&symbol=%s&apikey=%s", 
-                    BASE_URL, symbol, API_KEY);
-            
-            String jsonResponse = makeApiRequest(endpoint);
+            String jsonResponse = makeApiRequest("OVERVIEW", symbol);
             Map<String, Object> data = parseJsonResponse(jsonResponse);
             
             if (data.containsKey("Name")) {
@@ -67,13 +83,37 @@ public class StockApiService {
     
     /**
      * Makes HTTP request to API
+     * @param function API function, such as GLOBAL_QUOTE or OVERVIEW
      */
-    private String makeApiRequest(String urlString) throws IOException {
+    private String makeApiRequest(String function, String symbol) throws IOException {
+        long start = System.nanoTime();
+        ApiRequestEvent event = new ApiRequestEvent();
+        event.begin();
+        event.function = function;
+        event.symbol = symbol;
+        try {
+            String response = fetch(String.format("%s?function=%s&symbol=%s&apikey=%s", 
+                    BASE_URL, function, symbol, API_KEY), event);
+            RESPONSE_CHARS.add(response.length());
+            event.responseBytes = response.length();
+            return response;
+        } catch (IOException | RuntimeException e) {
+            REQUEST_ERROR.increment();
+            event.error = e.toString().replaceAll("apikey=[^&\\s]*", "apikey=***"); // Never record the key
+            throw e;
+        } finally {
+            REQUEST_LATENCY.recordSince(start);
+            event.commit();
+        }
+    }
+    
+    private String fetch(String urlString, ApiRequestEvent event) throws IOException {
         URL url = new URL(urlString);
         HttpURLConnection connection = (HttpURLConnection) url.openConnection();
         connection.setRequestMethod("GET");
         
         int responseCode = connection.getResponseCode();
+        event.responseCode = responseCode;
         
         if (responseCode == 200) {
             BufferedReader reader = new BufferedReader(new InputStreamReader(connection.getInputStream()));
@@ -92,9 +132,21 @@ public class StockApiService {
     }
     
     /**
-     * Simple JSON parser for API responses
+     * Parses an API response, recording how long it took
      */
     private Map<String, Object> parseJsonResponse(String json) {
+        long start = System.nanoTime();
+        try {
+            return parseJsonObject(json);
+        } finally {
+            PARSE_LATENCY.recordSince(start);
+        }
+    }
+    
+    /**
+     * Simple JSON parser for API responses
+     */
+    private Map<String, Object> parseJsonObject(String json) {
         Map<String, Object> result = new HashMap<>();
         
         // Basic JSON parsing
@@ -160,7 +212,7 @@ public class StockApiService {
                 // Process value
                 if (value.startsWith("{") && value.endsWith("}")) {
                     // It's an object
-                    result.put(key, parseJsonResponse(value));
+                    result.put(key, parseJsonObject(value));
                 } else if (value.startsWith("\"") && value.endsWith("\"")) {
                     // It's a string
                     result.put(key, value.substring(1, value.length() - 1));
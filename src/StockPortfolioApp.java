@@ -1,47 +1,182 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.IOException;
-import java.text.DecimalFormat;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Random;
 import java.util.Scanner;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Main application launcher for the Stock Portfolio Manager (Console Version)
  */
 public class StockPortfolioApp {
     private static final Scanner scanner = new Scanner(System.in);
-    private static final DecimalFormat CURRENCY_FORMAT = new DecimalFormat("$#,##0.00");
-    private static final DecimalFormat PERCENT_FORMAT = new DecimalFormat("0.00%");
+    // Tables are written through one buffer and flushed per page rather than line by line
+    private static final PrintWriter tableWriter = new PrintWriter(new BufferedWriter(new OutputStreamWriter(System.out), 1 << 16));
+    private static final int PAGE_SIZE = Integer.getInteger("table.pageSize", TableRenderer.DEFAULT_PAGE_SIZE);
+    private static final int WATCH_FRAMES_PER_SECOND = Integer.getInteger("watch.fps", 10);
+    private static final int WATCH_SCREEN_ROWS = Integer.getInteger("watch.rows", 40);
+    private static final int SIMULATED_TICKS_PER_SECOND = Integer.getInteger("watch.ticksPerSecond", 1000);
+    private static final int LIVE_QUOTE_INTERVAL_SECONDS = 12; // Alpha Vantage's free tier allows 5 requests a minute
+    private static final int ORDER_BOOK_LEVELS = 20;
+    private static final int ORDER_BOOK_DEPTH = Integer.getInteger("trade.depth", 100); // Shares at the best simulated level
+    private static final int MARKET_DATA_CAPACITY = Integer.getInteger("marketdata.capacity", MarketDataBus.DEFAULT_CAPACITY);
+    private static final int MIN_SIMULATION_RETURNS = 20; // Daily returns needed to estimate simulation parameters
+    private static final double REBALANCE_TOLERANCE = 0.01; // Holdings this close to their target weight are not traded
+    private static final int DEFAULT_SERVER_PORT = 8080;
+    private static final String ACCOUNTS_DIRECTORY = "accounts";
+    private static final int MAX_RESIDENT_ACCOUNTS = Integer.getInteger("accounts.resident", 1000);
+    private static final long ACCOUNT_IDLE_SECONDS = Long.getLong("accounts.idleSeconds", 300);
+    private static final String DEFAULT_EXPORT_DIRECTORY = "export";
+    private static final long DEFAULT_METRICS_INTERVAL_SECONDS = 60;
+    private static final long HISTORY_RETENTION_DAYS = Long.getLong("history.retentionDays", 0); // 0 keeps all history
+    private static final LatencyHistogram PORTFOLIOS_REPORT_LATENCY = Metrics.latency("report.portfolios");
+    private static final LatencyHistogram DETAILS_REPORT_LATENCY = Metrics.latency("report.details");
+    private static final LatencyHistogram ANALYSIS_REPORT_LATENCY = Metrics.latency("report.analysis");
+    private static final LatencyHistogram TOP_REPORT_LATENCY = Metrics.latency("report.top");
     
     private static List<Portfolio> portfolios;
     private static FileHandler fileHandler;
+    private static PortfolioStore portfolioStore;
     private static StockApiService stockAPI;
+    private static PriceHistoryStore priceHistory;
+    private static RankingIndex rankingIndex;
+    private static PortfolioAnalytics analytics;
+    private static AlertEngine alertEngine;
+    private static ExposureIndex exposureIndex;
+    private static HoldingsIndex holdingsIndex;
+    private static MarketDataBus marketData;
+    private static final MatchingEngine matchingEngine = new MatchingEngine();
+    private static volatile WatchDashboard watchDashboard; // Showing alerts while watch mode owns the screen
+    private static RebalanceOptimizer rebalanceOptimizer; // Kept between rebalances so each solve starts from the last
+    private static final Map<Portfolio, RiskMetrics> riskMetrics = new IdentityHashMap<>(); // Extended day by day
     
     /**
      * Main method - entry point for the application
-     * @param args Command line arguments (not used)
+     * @param args Command line arguments: "--batch [file]" runs commands from a file, or from
+     *             standard input when no file is given, instead of the interactive menu;
+     *             "--server [port]" serves the portfolios over HTTP; "--accounts-server [port]"
+     *             serves the portfolios of every account over HTTP; "--export [directory]"
+     *             writes holdings, valuations and price history as Parquet files for analytics tools.
+     *             -Daccount=&lt;id&gt; works on that account's portfolios instead of the default ones.
      */
     public static void main(String[] args) {
-        System.out.println("Starting Stock Portfolio Manager (Console Version)...");
+        // In batch mode standard output carries machine-readable results only
+        boolean batch = args.length > 0 && args[0].equals("--batch");
+        PrintStream console = batch ? System.err : System.out;
+        console.println("Starting Stock Portfolio Manager (Console Version)...");
         
         // Initialize services
         String projectPath = System.getProperty("user.dir");
         String filePath = projectPath + File.separator + File.separator + "portfolio_data.csv";
-        System.out.println("Using data file: " + filePath); // Debug line to show file location
+        console.println("Using data file: " + filePath); // Debug line to show file location
         fileHandler = new FileHandler(filePath);
+        String account = System.getProperty("account");
+        if (account != null) {
+            // Same layout as the accounts server, so either can work on an account's portfolios
+            portfolioStore = new PortfolioStore(Paths.get(projectPath, ACCOUNTS_DIRECTORY,
+                    TenantStore.directoryName(account)).toString());
+            console.println("Using account: " + account);
+        } else {
+            portfolioStore = new PortfolioStore(projectPath + File.separator + "portfolio_data");
+        }
         stockAPI = new StockApiService();
-
-        // Load existing portfolios
+        // Metrics are always exposed over JMX; -Dmetrics.interval=0 turns off the periodic log
+        long metricsInterval = Long.getLong("metrics.interval", DEFAULT_METRICS_INTERVAL_SECONDS);
+        if (metricsInterval > 0) {
+            Metrics.startLogging(Paths.get(projectPath, "metrics.log"), metricsInterval);
+        }
         try {
-            portfolios = fileHandler.loadPortfolios();
-            System.out.println("Loaded " + portfolios.size() + " portfolios.");
+            priceHistory = new PriceHistoryStore(projectPath + File.separator + "price_history",
+                    PriceHistoryStore.DEFAULT_SEGMENT_CAPACITY, TimeUnit.DAYS.toMillis(HISTORY_RETENTION_DAYS));
         } catch (IOException e) {
-            System.out.println("Error loading portfolios: " + e.getMessage());
+            console.println("Price history disabled: " + e.getMessage());
+        }
+        if (priceHistory != null) {
+            try {
+                int dropped = priceHistory.applyRetention();
+                if (dropped > 0) {
+                    console.println("Dropped " + dropped + " price history segments older than " + HISTORY_RETENTION_DAYS + " days.");
+                }
+            } catch (IOException e) {
+                console.println("Could not apply price history retention: " + e.getMessage());
+            }
+        }
+        
+        if (args.length > 0 && args[0].equals("--accounts-server")) {
+            runAccountsServer(Paths.get(projectPath, ACCOUNTS_DIRECTORY).toString(),
+                    args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_SERVER_PORT);
+            return;
+        }
+        
+        // Load existing portfolios, migrating the single CSV file into per-portfolio shards on first run
+        try {
+            if (account == null && !portfolioStore.exists() && new File(filePath).exists()) {
+                portfolios = fileHandler.loadPortfolios();
+                portfolioStore.savePortfolios(portfolios);
+                console.println("Migrated " + filePath + " to per-portfolio storage.");
+            } else {
+                portfolios = portfolioStore.loadPortfolios();
+            }
+            console.println("Loaded " + portfolios.size() + " portfolios.");
+        } catch (IOException e) {
+            console.println("Error loading portfolios: " + e.getMessage());
             portfolios = new ArrayList<>();
         }
         
+        if (batch) {
+            System.exit(runBatch(args.length > 1 ? args[1] : null));
+        }
+        if (args.length > 0 && args[0].equals("--export")) {
+            System.exit(runExport(args.length > 1 ? args[1] : DEFAULT_EXPORT_DIRECTORY));
+        }
+        rankingIndex = new RankingIndex(portfolios);
+        analytics = new PortfolioAnalytics(portfolios, rankingIndex);
+        if (args.length > 0 && args[0].equals("--server")) {
+            runServer(args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_SERVER_PORT);
+            return;
+        }
+        exposureIndex = new ExposureIndex(portfolios);
+        holdingsIndex = new HoldingsIndex(portfolios);
+        alertEngine = new AlertEngine(portfolios);
+        alertEngine.addListener((alert, value) -> {
+            String text = "*** ALERT: " + alert.getDescription() + 
+                    (alert.getType() == PriceAlert.TYPE_PRICE ? " (now " + Formats.currency(value) + ")" : 
+                            " (now " + String.format("%.2f%%", value) + ")");
+            WatchDashboard dashboard = watchDashboard;
+            if (dashboard != null) {
+                dashboard.showMessage(text);
+            } else {
+                System.out.println("\n" + text);
+            }
+        });
+        
+        // Quotes reach the holdings, and through their listeners the rankings and alerts, on one
+        // consumer of the market data bus and the price history on another
+        marketData = new MarketDataBus(MARKET_DATA_CAPACITY);
+        marketData.addConsumer("holdings", new HoldingsTickHandler(marketData, exposureIndex));
+        if (priceHistory != null) {
+            marketData.addConsumer("history", new HistoryTickHandler(marketData, priceHistory));
+        }
+        marketData.start();
+        
         // Main application loop
         boolean running = true;
         while (running) {
@@ -76,6 +211,27 @@ public class StockPortfolioApp {
                 case 9:
                     showTopPerformers();
                     break;
+                case 10:
+                    simulatePortfolio();
+                    break;
+                case 11:
+                    manageAlerts();
+                    break;
+                case 12:
+                    queryHoldings();
+                    break;
+                case 13:
+                    watchPortfolios();
+                    break;
+                case 14:
+                    tradeStock();
+                    break;
+                case 15:
+                    importStatement();
+                    break;
+                case 16:
+                    rebalancePortfolio();
+                    break;
                 case 0:
                     running = false;
                     System.out.println("Thank you for using Stock Portfolio Manager. Goodbye!");
@@ -85,9 +241,93 @@ public class StockPortfolioApp {
             }
         }
         
+        marketData.close();
+        if (priceHistory != null) {
+            priceHistory.close();
+        }
         scanner.close();
     }
     
+    /**
+     * Runs batch commands from a file, or standard input if the path is null
+     * @return Process exit code: 0 if every command succeeded
+     */
+    private static int runBatch(String path) {
+        BatchRunner runner = new BatchRunner(portfolios, portfolioStore, stockAPI, priceHistory, System.out);
+        try (BufferedReader input = path == null
+                ? new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8))
+                : Files.newBufferedReader(Paths.get(path), StandardCharsets.UTF_8)) {
+            return runner.run(input) == 0 ? 0 : 1;
+        } catch (IOException e) {
+            System.err.println("Batch failed: " + e.getMessage());
+            return 2;
+        } finally {
+            if (priceHistory != null) {
+                priceHistory.close();
+            }
+        }
+    }
+    
+    /**
+     * Exports the portfolios and price history as Parquet files into a directory
+     * @return Process exit code: 0 if the export succeeded
+     */
+    private static int runExport(String directory) {
+        long start = System.nanoTime();
+        try {
+            long[] rows = new AnalyticsExporter(portfolios, priceHistory).exportAll(Paths.get(directory));
+            System.out.printf("Exported %,d holdings, %,d portfolio valuations and %,d prices to %s in %d ms%n",
+                    rows[0], rows[1], rows[2], directory, (System.nanoTime() - start) / 1_000_000);
+            return 0;
+        } catch (IOException e) {
+            System.err.println("Export failed: " + e.getMessage());
+            return 2;
+        } finally {
+            if (priceHistory != null) {
+                priceHistory.close();
+            }
+        }
+    }
+    
+    /**
+     * Serves the portfolios over HTTP until the process is stopped; pending changes are saved on shutdown
+     */
+    private static void runServer(int port) {
+        PortfolioServer server = new PortfolioServer(analytics, rankingIndex, portfolioStore);
+        try {
+            server.start(port);
+        } catch (IOException e) {
+            System.err.println("Could not start server: " + e.getMessage());
+            System.exit(2);
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(server::stop));
+        System.out.println("Serving portfolios on http://localhost:" + server.getPort() + "/portfolios (Ctrl+C to stop)");
+    }
+    
+    /**
+     * Serves the portfolios of every account under a directory over HTTP until the process is
+     * stopped; accounts are loaded on first use and evicted when idle
+     */
+    private static void runAccountsServer(String directory, int port) {
+        TenantStore tenants = new TenantStore(directory, MAX_RESIDENT_ACCOUNTS, ACCOUNT_IDLE_SECONDS * 1000);
+        PortfolioServer server = new PortfolioServer(tenants);
+        try {
+            server.start(port);
+        } catch (IOException e) {
+            System.err.println("Could not start server: " + e.getMessage());
+            System.exit(2);
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            server.stop();
+            try {
+                tenants.close();
+            } catch (IOException e) {
+                System.err.println("Error saving accounts: " + e.getMessage());
+            }
+        }));
+        System.out.println("Serving accounts on http://localhost:" + server.getPort() + "/accounts/{id}/portfolios (Ctrl+C to stop)");
+    }
+    
     /**
      * Displays the main menu options
      */
@@ -102,6 +342,13 @@ public class StockPortfolioApp {
         System.out.println("7. Refresh Stock Prices");
         System.out.println("8. Analyze Portfolio");
         System.out.println("9. View Top Performers");
+        System.out.println("10. Simulate Portfolio");
+        System.out.println("11. Price Alerts");
+        System.out.println("12. Query Holdings");
+        System.out.println("13. Watch Portfolios");
+        System.out.println("14. Trade Stock");
+        System.out.println("15. Import Broker Statement");
+        System.out.println("16. Rebalance Portfolio");
         System.out.println("0. Exit");
         System.out.println("==================================");
     }
@@ -117,25 +364,15 @@ public class StockPortfolioApp {
             return;
         }
         
-        // Print header
-        System.out.printf("%-4s %-20s %-30s %-8s %-15s %-15s\n", 
-                "No.", "Name", "Description", "Stocks", "Total Value", "Gain/Loss");
-        System.out.println("---------------------------------------------------------------------------------");
-        
-        // Print each portfolio
-        for (int i = 0; i < portfolios.size(); i++) {
-            Portfolio portfolio = portfolios.get(i);
-            double totalValue = portfolio.getTotalValue();
-            double gainLoss = portfolio.getTotalGainLoss();
-            
-            System.out.printf("%-4d %-20s %-30s %-8d %-15s %-15s\n", 
-                    i + 1, 
-                    truncateString(portfolio.getName(), 20),
-                    truncateString(portfolio.getDescription(), 30),
-                    portfolio.getStocks().size(),
-                    CURRENCY_FORMAT.format(totalValue),
-                    CURRENCY_FORMAT.format(gainLoss));
-        }
+        long start = System.nanoTime();
+        TableRenderer<Portfolio> table = new TableRenderer<Portfolio>()
+                .rowNumber("No.", 4)
+                .text("Name", 20, Portfolio::getName)
+                .text("Description", 30, Portfolio::getDescription)
+                .integer("Stocks", 8, portfolio -> analytics.getStats(portfolio).getHoldingCount())
+                .currency("Total Value", 15, portfolio -> analytics.getStats(portfolio).getTotalValue())
+                .currency("Gain/Loss", 15, portfolio -> analytics.getStats(portfolio).getTotalGainLoss());
+        showTable(table, portfolios, PORTFOLIOS_REPORT_LATENCY, start);
     }
     
     /**
@@ -150,6 +387,7 @@ public class StockPortfolioApp {
         Portfolio portfolio = selectPortfolio();
         if (portfolio == null) return;
         
+        long start = System.nanoTime();
         System.out.println("\n===== PORTFOLIO DETAILS =====");
         System.out.println("Name: " + portfolio.getName());
         System.out.println("Description: " + portfolio.getDescription());
@@ -163,33 +401,25 @@ public class StockPortfolioApp {
         
         // Print stocks table
         System.out.println("\nStocks:");
-        System.out.printf("%-6s %-20s %-10s %-15s %-15s %-15s %-15s %-10s\n", 
-                "Symbol", "Name", "Quantity", "Purchase Price", "Current Price", "Value", "Gain/Loss", "Gain/Loss %");
-        System.out.println("----------------------------------------------------------------------------------------------------------");
-        
-        for (Stock stock : portfolio.getStocks()) {
-            System.out.printf("%-6s %-20s %-10d %-15s %-15s %-15s %-15s %-10s\n", 
-                    stock.getSymbol(),
-                    truncateString(stock.getName(), 20),
-                    stock.getQuantity(),
-                    CURRENCY_FORMAT.format(stock.getPurchasePrice()),
-                    CURRENCY_FORMAT.format(stock.getCurrentPrice()),
-                    CURRENCY_FORMAT.format(stock.getCurrentValue()),
-                    CURRENCY_FORMAT.format(stock.getGainLoss()),
-                    PERCENT_FORMAT.format(stock.getPercentageGainLoss() / 100));
-        }
+        TableRenderer<Stock> table = new TableRenderer<Stock>()
+                .text("Symbol", 6, Stock::getSymbol)
+                .text("Name", 20, Stock::getName)
+                .integer("Quantity", 10, Stock::getQuantity)
+                .currency("Purchase Price", 15, Stock::getPurchasePrice)
+                .currency("Current Price", 15, Stock::getCurrentPrice)
+                .currency("Value", 15, Stock::getCurrentValue)
+                .currency("Gain/Loss", 15, Stock::getGainLoss)
+                .percent("Gain/Loss %", 10, stock -> stock.getPercentageGainLoss() / 100);
+        showTable(table, portfolio.getStocks(), DETAILS_REPORT_LATENCY, start);
         
         // Print summary
-        double totalCost = portfolio.getTotalCost();
-        double totalValue = portfolio.getTotalValue();
-        double gainLoss = portfolio.getTotalGainLoss();
-        double gainLossPercent = totalCost > 0 ? (gainLoss / totalCost) * 100 : 0;
+        PortfolioStats stats = analytics.getStats(portfolio);
         
         System.out.println("\nSummary:");
-        System.out.println("Total Cost: " + CURRENCY_FORMAT.format(totalCost));
-        System.out.println("Current Value: " + CURRENCY_FORMAT.format(totalValue));
-        System.out.println("Gain/Loss: " + CURRENCY_FORMAT.format(gainLoss) + 
-                " (" + PERCENT_FORMAT.format(gainLossPercent / 100) + ")");
+        System.out.println("Total Cost: " + Formats.currency(stats.getTotalCost()));
+        System.out.println("Current Value: " + Formats.currency(stats.getTotalValue()));
+        System.out.println("Gain/Loss: " + Formats.currency(stats.getTotalGainLoss()) + 
+                " (" + Formats.percent(stats.getPercentageGainLoss() / 100) + ")");
     }
     
     /**
@@ -208,6 +438,10 @@ public class StockPortfolioApp {
         
         Portfolio portfolio = new Portfolio(name, description);
         portfolios.add(portfolio);
+        rankingIndex.addPortfolio(portfolio);
+        exposureIndex.addPortfolio(portfolio);
+        holdingsIndex.addPortfolio(portfolio);
+        alertEngine.addPortfolio(portfolio);
         savePortfolios();
         
         System.out.println("Portfolio '" + name + "' created successfully.");
@@ -273,8 +507,8 @@ public class StockPortfolioApp {
             savePortfolios();
             
             System.out.println("Added " + quantity + " shares of " + symbol + " to " + portfolio.getName());
-            System.out.println("Current price: " + CURRENCY_FORMAT.format(stockInfo.getCurrentPrice()));
-            
+            System.out.println("Current price: " + Formats.currency(stockInfo.getCurrentPrice()));
+        
         } catch (Exception e) {
             System.out.println("Error adding stock: " + e.getMessage());
         }
@@ -350,9 +584,18 @@ public class StockPortfolioApp {
             System.out.println("\nStock Details:");
             System.out.println("Symbol: " + stock.getSymbol());
             System.out.println("Name: " + stock.getName());
-            System.out.println("Current Price: " + CURRENCY_FORMAT.format(stock.getCurrentPrice()));
+            System.out.println("Current Price: " + Formats.currency(stock.getCurrentPrice()));
             System.out.println("Last Updated: " + stock.getLastUpdated());
             
+            ExposureIndex.Exposure exposure = exposureIndex.getExposure(symbol);
+            if (exposure != null) {
+                System.out.println("\nHeld in " + exposure.getHoldingCount() + " portfolio(s): " + 
+                        exposure.getTotalQuantity() + " shares");
+                System.out.println("Total Cost: " + Formats.currency(exposure.getTotalCost()));
+                System.out.println("Current Value: " + Formats.currency(exposure.getTotalValue()));
+                System.out.println("Total Gain/Loss: " + Formats.currency(exposure.getTotalGainLoss()));
+            }
+        
         } catch (Exception e) {
             System.out.println("Error searching for stock: " + e.getMessage());
         }
@@ -383,17 +626,22 @@ public class StockPortfolioApp {
                 Stock updated = stockAPI.getStockQuote(stock.getSymbol());
                 if (updated != null) {
                     double oldPrice = stock.getCurrentPrice();
-                    stock.setCurrentPrice(updated.getCurrentPrice());
-                    System.out.println("Done. " + CURRENCY_FORMAT.format(oldPrice) + " -> " + 
-                            CURRENCY_FORMAT.format(stock.getCurrentPrice()));
+                    applyQuote(stock.getSymbol(), updated);
+                    System.out.println("Done. " + Formats.currency(oldPrice) + " -> " + 
+                            Formats.currency(updated.getCurrentPrice()));
                 } else {
                     System.out.println("Failed to update.");
                 }
             }
             
+            marketData.drain();
             savePortfolios();
             System.out.println("\nStock prices updated successfully.");
-            
+            if (!alertEngine.getAlerts().isEmpty()) {
+                System.out.printf("Alert evaluation: %d ticks, avg %.1f us, max %.1f us\n", alertEngine.getTickCount(), 
+                        alertEngine.getAverageLatencyNanos() / 1000, alertEngine.getMaxLatencyNanos() / 1000.0);
+            }
+        
         } catch (Exception e) {
             System.out.println("Error refreshing prices: " + e.getMessage());
         }
@@ -424,42 +672,38 @@ public class StockPortfolioApp {
             for (Stock stock : portfolio.getStocks()) {
                 Stock updated = stockAPI.getStockQuote(stock.getSymbol());
                 if (updated != null) {
-                    stock.setCurrentPrice(updated.getCurrentPrice());
+                    applyQuote(stock.getSymbol(), updated);
                 }
             }
+            marketData.drain();
             
-            // Calculate metrics
-            double totalValue = portfolio.getTotalValue();
-            double totalCost = portfolio.getTotalCost();
-            double totalGainLoss = totalValue - totalCost;
-            double percentGainLoss = totalCost > 0 ? (totalGainLoss / totalCost) * 100 : 0;
-            
-            // Find best and worst performers
-            Stock bestStock = findBestPerformingStock(portfolio);
-            Stock worstStock = findWorstPerformingStock(portfolio);
+            // Totals and best/worst performers in one pass
+            long start = System.nanoTime();
+            PortfolioStats stats = analytics.getStats(portfolio);
             
             // Display analysis
             System.out.println("\nAnalysis Results:");
-            System.out.println("Total Cost: " + CURRENCY_FORMAT.format(totalCost));
-            System.out.println("Current Value: " + CURRENCY_FORMAT.format(totalValue));
-            System.out.println("Total Gain/Loss: " + CURRENCY_FORMAT.format(totalGainLoss) + 
-                    " (" + PERCENT_FORMAT.format(percentGainLoss / 100) + ")");
+            System.out.println("Total Cost: " + Formats.currency(stats.getTotalCost()));
+            System.out.println("Current Value: " + Formats.currency(stats.getTotalValue()));
+            System.out.println("Total Gain/Loss: " + Formats.currency(stats.getTotalGainLoss()) + 
+                    " (" + Formats.percent(stats.getPercentageGainLoss() / 100) + ")");
             
-            if (bestStock != null) {
-                double bestReturn = bestStock.getPercentageGainLoss();
-                System.out.println("Best Performing Stock: " + bestStock.getSymbol() + " (" + 
-                        PERCENT_FORMAT.format(bestReturn / 100) + ")");
+            if (stats.getBestStock() != null) {
+                System.out.println("Best Performing Stock: " + stats.getBestStock().getSymbol() + " (" + 
+                        Formats.percent(stats.getBestPercentage() / 100) + ")");
             }
             
-            if (worstStock != null) {
-                double worstReturn = worstStock.getPercentageGainLoss();
-                System.out.println("Worst Performing Stock: " + worstStock.getSymbol() + " (" + 
-                        PERCENT_FORMAT.format(worstReturn / 100) + ")");
+            if (stats.getWorstStock() != null) {
+                System.out.println("Worst Performing Stock: " + stats.getWorstStock().getSymbol() + " (" + 
+                        Formats.percent(stats.getWorstPercentage() / 100) + ")");
             }
             
+            printRiskMetrics(portfolio);
+            ANALYSIS_REPORT_LATENCY.recordSince(start);
+            
             // Save updated prices
             savePortfolios();
-            
+        
         } catch (Exception e) {
             System.out.println("Error analyzing portfolio: " + e.getMessage());
         }
@@ -475,36 +719,31 @@ public class StockPortfolioApp {
         }
         
         // Check if there are any stocks
-        boolean hasStocks = false;
-        for (Portfolio p : portfolios) {
-            if (!p.getStocks().isEmpty()) {
-                hasStocks = true;
-                break;
-            }
-        }
-        
-        if (!hasStocks) {
+        if (analytics.getOverallStats().getHoldingCount() == 0) {
             System.out.println("No stocks found in any portfolio. Add stocks first.");
             return;
         }
         
         System.out.println("\n===== TOP PERFORMING STOCKS =====");
-        System.out.println("Updating stock prices...");
         
         try {
-            // Update all stock prices
-            for (Portfolio portfolio : portfolios) {
-                for (Stock stock : portfolio.getStocks()) {
-                    Stock updated = stockAPI.getStockQuote(stock.getSymbol());
+            // Rankings follow price changes as they happen, so a refresh is only needed for fresh quotes
+            String refresh = getStringInput("Refresh all stock prices first? (y/n): ");
+            if (refresh.equalsIgnoreCase("y")) {
+                System.out.println("Updating stock prices...");
+                // One request per distinct symbol, however many portfolios hold it
+                for (String symbol : exposureIndex.getSymbols()) {
+                    Stock updated = stockAPI.getStockQuote(symbol);
                     if (updated != null) {
-                        stock.setCurrentPrice(updated.getCurrentPrice());
+                        applyQuote(symbol, updated);
                     }
                 }
+                marketData.drain();
+                
+                // Save updated prices
+                savePortfolios();
             }
             
-            // Save updated prices
-            savePortfolios();
-            
             // Ask for sort criteria
             System.out.println("\nSort by:");
             System.out.println("1. Gain/Loss %");
@@ -518,88 +757,672 @@ public class StockPortfolioApp {
                 numStocks = 5; // Default
             }
             
-            // Collect all stocks from all portfolios
-            List<StockWithPortfolio> allStocks = new ArrayList<>();
-            for (Portfolio portfolio : portfolios) {
-                for (Stock stock : portfolio.getStocks()) {
-                    allStocks.add(new StockWithPortfolio(stock, portfolio.getName()));
-                }
+            // Display top N stocks
+            int count = Math.min(numStocks, analytics.getOverallStats().getHoldingCount());
+            System.out.println("\nTop " + count + " Performing Stocks:");
+            long start = System.nanoTime();
+            List<TopPerformersPanel.StockWithPortfolio> topStocks = new TopPerformersPanel(analytics).getTopStocks(sortChoice, numStocks);
+            showTable(TopPerformersPanel.newTable(), topStocks, TOP_REPORT_LATENCY, start);
+        
+        } catch (Exception e) {
+            System.out.println("Error analyzing top performers: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * Helper method to get a portfolio's risk metrics over the completed days of its price history.
+     * They are kept per portfolio and extended with the days completed since, so the covariance
+     * matrix is only computed from the whole history again when the holdings change.
+     */
+    private static RiskMetrics dailyRiskMetrics(Portfolio portfolio) throws IOException {
+        List<Stock> stocks = portfolio.getStocks();
+        String[] symbols = new String[stocks.size()];
+        double[] values = new double[stocks.size()];
+        for (int i = 0; i < symbols.length; i++) {
+            symbols[i] = stocks.get(i).getSymbol();
+            values[i] = stocks.get(i).getCurrentValue();
+        }
+        long today = Math.floorDiv(System.currentTimeMillis(), RiskMetrics.DAY_MILLIS) * RiskMetrics.DAY_MILLIS;
+        
+        RiskMetrics risk = riskMetrics.get(portfolio);
+        if (risk == null || !Arrays.equals(risk.getSymbols(), symbols)) {
+            risk = RiskMetrics.fromHistory(portfolio, priceHistory, 0, today, RiskMetrics.DAY_MILLIS);
+            riskMetrics.put(portfolio, risk);
+        } else {
+            risk.update(priceHistory, today);
+            risk.setHoldingValues(values);
+        }
+        return risk;
+    }
+    
+    /**
+     * Prints volatility and VaR/CVaR figures computed from the recorded daily price history
+     */
+    private static void printRiskMetrics(Portfolio portfolio) throws IOException {
+        if (priceHistory == null) {
+            return;
+        }
+        
+        RiskMetrics risk = dailyRiskMetrics(portfolio);
+        if (risk.getObservationCount() < 2) {
+            System.out.println("\nRisk metrics need at least 3 completed days of recorded prices for every holding.");
+            return;
+        }
+        
+        System.out.println("\nRisk (" + risk.getObservationCount() + " daily returns):");
+        String[] symbols = risk.getSymbols();
+        for (int i = 0; i < symbols.length; i++) {
+            System.out.println("  " + symbols[i] + " annualized volatility: " + 
+                    Formats.percent(risk.getAnnualizedVolatility(i, MonteCarloSimulator.TRADING_DAYS_PER_YEAR)));
+        }
+        System.out.println("1-Day 95% VaR (historical): " + Formats.currency(risk.getHistoricalVaR(0.95)) + 
+                ", CVaR: " + Formats.currency(risk.getHistoricalCVaR(0.95)));
+        System.out.println("1-Day 95% VaR (parametric): " + Formats.currency(risk.getParametricVaR(0.95)) + 
+                ", CVaR: " + Formats.currency(risk.getParametricCVaR(0.95)));
+    }
+    
+    /**
+     * Runs a Monte Carlo simulation of a portfolio's future value
+     */
+    private static void simulatePortfolio() {
+        if (portfolios.isEmpty()) {
+            System.out.println("No portfolios found. Create a portfolio first.");
+            return;
+        }
+        
+        Portfolio portfolio = selectPortfolio();
+        if (portfolio == null) return;
+        
+        if (portfolio.getStocks().isEmpty()) {
+            System.out.println("No stocks in this portfolio to simulate.");
+            return;
+        }
+        
+        System.out.println("\n===== PORTFOLIO SIMULATION: " + portfolio.getName().toUpperCase() + " =====");
+        int paths = getIntInput("Number of paths (e.g., 100000): ");
+        int days = getIntInput("Horizon in trading days (e.g., 252): ");
+        if (paths <= 0 || days <= 0) {
+            System.out.println("Paths and days must be positive.");
+            return;
+        }
+        long seed = getIntInput("Random seed: ");
+        
+        try {
+            MonteCarloSimulator simulator = historicalSimulator(portfolio);
+            if (simulator == null) {
+                System.out.println("Falling back to the same parameters for every holding: " +
+                        Formats.percent(MonteCarloSimulator.DEFAULT_ANNUAL_DRIFT) + " annual drift, " +
+                        Formats.percent(MonteCarloSimulator.DEFAULT_ANNUAL_VOLATILITY) + " volatility, " +
+                        MonteCarloSimulator.DEFAULT_CORRELATION + " correlation.");
+                simulator = MonteCarloSimulator.withUniformParameters(portfolio,
+                        MonteCarloSimulator.DEFAULT_ANNUAL_DRIFT,
+                        MonteCarloSimulator.DEFAULT_ANNUAL_VOLATILITY,
+                        MonteCarloSimulator.DEFAULT_CORRELATION);
             }
+            MonteCarloSimulator.SimulationResult result = simulator.simulate(paths, days, seed);
             
-            // Sort stocks based on selected criteria
-            switch (sortChoice) {
-                case 1: // Gain/Loss %
-                    Collections.sort(allStocks, Comparator.comparing(StockWithPortfolio::getPercentageGainLoss).reversed());
+            System.out.println("\nSimulation Results (" + result.getPaths() + " paths, " + days + " days):");
+            System.out.println("Current Value: " + Formats.currency(result.getInitialValue()));
+            System.out.println("Mean Terminal Value: " + Formats.currency(result.getMean()));
+            System.out.println("5th Percentile: " + Formats.currency(result.getPercentile(5)));
+            System.out.println("Median: " + Formats.currency(result.getPercentile(50)));
+            System.out.println("95th Percentile: " + Formats.currency(result.getPercentile(95)));
+            System.out.println("Probability of Loss: " + Formats.percent(result.getProbabilityOfLoss()));
+            System.out.printf("Throughput: %,.0f paths/sec (%.1f ms)\n", 
+                    result.getPathsPerSecond(), result.getElapsedMillis());
+        
+        } catch (Exception e) {
+            System.out.println("Error simulating portfolio: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * Helper method to create a simulator with drifts, volatilities and correlations estimated from
+     * the recorded daily prices
+     * @return The simulator, or null if there is not enough history to estimate them from
+     */
+    private static MonteCarloSimulator historicalSimulator(Portfolio portfolio) throws IOException {
+        if (priceHistory == null) {
+            System.out.println("No price history is recorded to estimate the parameters from.");
+            return null;
+        }
+        RiskMetrics risk = dailyRiskMetrics(portfolio);
+        if (risk.getObservationCount() < MIN_SIMULATION_RETURNS) {
+            System.out.println("Estimating the parameters needs " + MIN_SIMULATION_RETURNS +
+                    " daily returns of every holding; " + risk.getObservationCount() + " are recorded.");
+            return null;
+        }
+        try {
+            MonteCarloSimulator simulator = MonteCarloSimulator.fromRiskMetrics(portfolio, risk,
+                    MonteCarloSimulator.TRADING_DAYS_PER_YEAR);
+            System.out.println("Using drifts, volatilities and correlations from " + risk.getObservationCount() +
+                    " recorded daily returns.");
+            return simulator;
+        } catch (IllegalArgumentException e) {
+            System.out.println("The recorded returns cannot be used: " + e.getMessage() + ".");
+            return null;
+        }
+    }
+    
+    /**
+     * Lists, adds and removes price alerts
+     */
+    private static void manageAlerts() {
+        System.out.println("\n===== PRICE ALERTS =====");
+        List<PriceAlert> alerts = alertEngine.getAlerts();
+        if (alerts.isEmpty()) {
+            System.out.println("No alerts registered.");
+        }
+        for (int i = 0; i < alerts.size(); i++) {
+            System.out.println((i + 1) + ". " + alerts.get(i).getDescription());
+        }
+        
+        System.out.println("\n1. Add Price Alert");
+        System.out.println("2. Add Holding Loss Alert");
+        System.out.println("3. Add Portfolio Drop Alert");
+        System.out.println("4. Remove Alert");
+        System.out.println("0. Back");
+        int choice = getIntInput("Enter your choice: ");
+        
+        try {
+            switch (choice) {
+                case 1: {
+                    String symbol = getStringInput("Enter stock symbol: ");
+                    double price = getDoubleInput("Alert price: ");
+                    System.out.println("1. Rises above  2. Falls below  3. Crosses either way");
+                    int direction = getIntInput("Enter your choice: ");
+                    alertEngine.addAlert(PriceAlert.priceCrosses(symbol, price, direction));
+                    System.out.println("Alert added.");
                     break;
-                case 2: // Gain/Loss $
-                    Collections.sort(allStocks, Comparator.comparing(StockWithPortfolio::getGainLoss).reversed());
+                }
+                case 2: {
+                    Portfolio portfolio = selectPortfolio();
+                    if (portfolio == null) return;
+                    List<Stock> stocks = portfolio.getStocks();
+                    if (stocks.isEmpty()) {
+                        System.out.println("No stocks in this portfolio.");
+                        return;
+                    }
+                    for (int i = 0; i < stocks.size(); i++) {
+                        System.out.println((i + 1) + ". " + stocks.get(i).getSymbol());
+                    }
+                    int stockIndex = getIntInput("Enter the number of the stock: ") - 1;
+                    if (stockIndex < 0 || stockIndex >= stocks.size()) {
+                        System.out.println("Invalid selection.");
+                        return;
+                    }
+                    double loss = getDoubleInput("Alert when loss from cost reaches (%): ");
+                    alertEngine.addAlert(PriceAlert.holdingLoss(stocks.get(stockIndex), loss));
+                    System.out.println("Alert added.");
+                    break;
+                }
+                case 3: {
+                    Portfolio portfolio = selectPortfolio();
+                    if (portfolio == null) return;
+                    double drop = getDoubleInput("Alert when value drops today by (%): ");
+                    alertEngine.addAlert(PriceAlert.portfolioDrop(portfolio, drop));
+                    System.out.println("Alert added.");
                     break;
-                case 3: // Current Value
-                    Collections.sort(allStocks, Comparator.comparing(StockWithPortfolio::getCurrentValue).reversed());
+                }
+                case 4: {
+                    int alertIndex = getIntInput("Enter the number of the alert to remove: ") - 1;
+                    if (alertIndex < 0 || alertIndex >= alerts.size()) {
+                        System.out.println("Invalid selection.");
+                        return;
+                    }
+                    alertEngine.removeAlert(alerts.get(alertIndex));
+                    System.out.println("Alert removed.");
                     break;
+                }
                 default:
-                    Collections.sort(allStocks, Comparator.comparing(StockWithPortfolio::getPercentageGainLoss).reversed());
+                    break;
             }
+        } catch (IllegalArgumentException e) {
+            System.out.println("Error adding alert: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * Filters holdings across all portfolios with a query such as
+     * "tag = tech and gainpct < -20 and value > 10k order by value desc limit 10"
+     */
+    private static void queryHoldings() {
+        System.out.println("\n===== QUERY HOLDINGS =====");
+        System.out.println("Numeric: " + String.join(", ", HoldingQuery.NUMERIC_ATTRIBUTES) + 
+                " (=, !=, <, <=, >, >=)");
+        System.out.println("Text: " + String.join(", ", HoldingQuery.CATEGORICAL_ATTRIBUTES) + 
+                " (=, !=, in (...)); tags are words of the portfolio name");
+        System.out.println("Example: tag = tech and gainpct < -20 and value > 10k order by value desc limit 10");
+        String text = getStringInput("Query: ");
+        
+        try {
+            HoldingQuery query = HoldingQuery.parse(text);
+            long start = System.nanoTime();
+            List<TopPerformersPanel.StockWithPortfolio> results = holdingsIndex.execute(query);
+            double millis = (System.nanoTime() - start) / 1e6;
             
-            // Display top N stocks
-            System.out.println("\nTop " + Math.min(numStocks, allStocks.size()) + " Performing Stocks:");
-            System.out.printf("%-4s %-6s %-20s %-20s %-15s %-15s %-15s %-10s\n", 
-                    "Rank", "Symbol", "Name", "Portfolio", "Purchase", "Current", "Gain/Loss", "Gain/Loss %");
-            System.out.println("----------------------------------------------------------------------------------------------------------");
-            
-            int count = Math.min(numStocks, allStocks.size());
-            for (int i = 0; i < count; i++) {
-                StockWithPortfolio stockInfo = allStocks.get(i);
-                Stock stock = stockInfo.getStock();
-                
-                System.out.printf("%-4d %-6s %-20s %-20s %-15s %-15s %-15s %-10s\n", 
-                        i + 1,
-                        stock.getSymbol(),
-                        truncateString(stock.getName(), 20),
-                        truncateString(stockInfo.getPortfolioName(), 20),
-                        CURRENCY_FORMAT.format(stock.getPurchasePrice()),
-                        CURRENCY_FORMAT.format(stock.getCurrentPrice()),
-                        CURRENCY_FORMAT.format(stock.getGainLoss()),
-                        PERCENT_FORMAT.format(stock.getPercentageGainLoss() / 100));
+            System.out.println();
+            if (results.isEmpty()) {
+                System.out.println("No stocks found.");
+            } else {
+                showTable(TopPerformersPanel.newTable(), results, null, 0);
             }
-            
-        } catch (Exception e) {
-            System.out.println("Error analyzing top performers: " + e.getMessage());
+            System.out.printf("\n%d holding(s) in %.2f ms\n", results.size(), millis);
+            System.out.print(holdingsIndex.getLastPlan());
+        } catch (IllegalArgumentException e) {
+            System.out.println("Invalid query: " + e.getMessage());
         }
     }
     
     /**
-     * Helper method to find the best performing stock in a portfolio
+     * Shows selected portfolios with prices updating in place until Enter is pressed, fed by live
+     * quotes or by simulated ticks
      */
-    private static Stock findBestPerformingStock(Portfolio portfolio) {
-        if (portfolio.getStocks().isEmpty()) {
-            return null;
+    private static void watchPortfolios() {
+        if (portfolios.isEmpty()) {
+            System.out.println("No portfolios found. Create a portfolio first.");
+            return;
+        }
+        
+        System.out.println("\n===== WATCH PORTFOLIOS =====");
+        for (int i = 0; i < portfolios.size(); i++) {
+            System.out.println((i + 1) + ". " + portfolios.get(i).getName());
+        }
+        String selection = getStringInput("Portfolio numbers separated by commas (Enter for all): ");
+        List<Portfolio> watched = new ArrayList<>();
+        if (selection.isEmpty()) {
+            watched.addAll(portfolios);
+        } else {
+            for (String part : selection.split(",")) {
+                int index = parseIntOrZero(part.trim()) - 1;
+                if (index < 0 || index >= portfolios.size()) {
+                    System.out.println("Invalid selection: " + part.trim());
+                    return;
+                }
+                if (!watched.contains(portfolios.get(index))) {
+                    watched.add(portfolios.get(index));
+                }
+            }
+        }
+        
+        Set<String> symbolSet = new LinkedHashSet<>();
+        Map<String, Double> startPrices = new HashMap<>();
+        for (Portfolio portfolio : watched) {
+            for (Stock stock : portfolio.getStocks()) {
+                symbolSet.add(stock.getSymbol());
+                startPrices.putIfAbsent(stock.getSymbol(), stock.getCurrentPrice());
+            }
+        }
+        if (symbolSet.isEmpty()) {
+            System.out.println("No stocks in the selected portfolios.");
+            return;
         }
+        List<String> symbols = new ArrayList<>(symbolSet);
         
-        Stock best = portfolio.getStocks().get(0);
+        System.out.println("\nPrice source:");
+        System.out.println("1. Live quotes (one symbol every " + LIVE_QUOTE_INTERVAL_SECONDS + " seconds)");
+        System.out.println("2. Simulated ticks (on a copy, the portfolios are not changed)");
+        boolean simulated = getIntInput("Enter your choice: ") == 2;
+        
+        ScheduledExecutorService feed = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "watch-feed");
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (simulated) {
+            // A random walk in batches every 10 ms, applied to detached copies of the watched
+            // portfolios so that alerts, indexes and stored data never see the simulated prices
+            List<Portfolio> copies = new ArrayList<>();
+            for (Portfolio portfolio : watched) {
+                copies.add(detachedCopy(portfolio));
+            }
+            watched = copies;
+            ExposureIndex simulatedIndex = new ExposureIndex(copies);
+            Map<String, Double> prices = new HashMap<>(startPrices);
+            Random random = new Random();
+            int ticksPerBatch = Math.max(1, SIMULATED_TICKS_PER_SECOND / 100);
+            feed.scheduleAtFixedRate(() -> {
+                for (int i = 0; i < ticksPerBatch; i++) {
+                    String symbol = symbols.get(random.nextInt(symbols.size()));
+                    double price = Math.max(0.01, prices.get(symbol) * Math.exp(0.002 * random.nextGaussian()));
+                    prices.put(symbol, price);
+                    simulatedIndex.applyPrice(symbol, price);
+                }
+            }, 0, 10, TimeUnit.MILLISECONDS);
+        } else {
+            int[] next = {0};
+            feed.scheduleWithFixedDelay(() -> {
+                String symbol = symbols.get(next[0]++ % symbols.size());
+                Stock quote = stockAPI.getStockQuote(symbol);
+                if (quote != null) {
+                    applyQuote(symbol, quote);
+                }
+            }, 0, LIVE_QUOTE_INTERVAL_SECONDS, TimeUnit.SECONDS);
+        }
+        
+        WatchDashboard dashboard = new WatchDashboard(watched, tableWriter, WATCH_FRAMES_PER_SECOND, WATCH_SCREEN_ROWS);
+        watchDashboard = dashboard;
+        dashboard.start();
+        scanner.nextLine();
+        
+        feed.shutdownNow();
+        try {
+            feed.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            dashboard.stop();
+        } catch (IOException e) {
+            System.out.println("Error drawing dashboard: " + e.getMessage());
+        }
+        watchDashboard = null;
+        
+        if (!simulated) {
+            marketData.drain();
+            savePortfolios();
+        }
+        System.out.printf("%,d price updates shown in %,d frames, writing %,d cells (%,d bytes)\n", 
+                dashboard.getUpdateCount(), dashboard.getFrameCount(), dashboard.getCellsWritten(), dashboard.getBytesWritten());
+    }
+    
+    /**
+     * Copy of a portfolio and its holdings with no listeners, so that changing it affects nothing else
+     */
+    private static Portfolio detachedCopy(Portfolio portfolio) {
+        Portfolio copy = new Portfolio(portfolio.getName(), portfolio.getDescription());
         for (Stock stock : portfolio.getStocks()) {
-            if (stock.getPercentageGainLoss() > best.getPercentageGainLoss()) {
-                best = stock;
+            Stock holding = new Stock(stock.getSymbol(), stock.getName(), stock.getQuantity(), stock.getPurchasePrice());
+            holding.setCurrentPrice(stock.getCurrentPrice());
+            copy.addStock(holding);
+        }
+        return copy;
+    }
+    
+    /**
+     * Buys or sells through the simulated order book of a symbol, which is seeded with liquidity
+     * around the current quote the first time the symbol is traded. Fills are booked in the
+     * portfolio at the prices they traded at; limit and stop orders that do not fill at once stay
+     * open until cancelled here.
+     */
+    private static void tradeStock() {
+        if (portfolios.isEmpty()) {
+            System.out.println("No portfolios found. Create a portfolio first.");
+            return;
+        }
+        
+        Portfolio portfolio = selectPortfolio();
+        if (portfolio == null) return;
+        
+        System.out.println("\n===== TRADE STOCK FOR " + portfolio.getName().toUpperCase() + " =====");
+        List<Order> openOrders = matchingEngine.getOpenOrders(portfolio);
+        if (!openOrders.isEmpty()) {
+            System.out.println("Open orders:");
+            for (int i = 0; i < openOrders.size(); i++) {
+                Order order = openOrders.get(i);
+                System.out.println((i + 1) + ". " + order.getDescription() + " (" + order.getFilledQuantity() + " filled)");
+            }
+            int cancel = getIntInput("Enter the number of an order to cancel (0 to place a new order): ");
+            if (cancel > 0 && cancel <= openOrders.size()) {
+                Order order = openOrders.get(cancel - 1);
+                System.out.println(matchingEngine.cancel(order) ? "Cancelled " + order.getDescription() : "The order is no longer open.");
+                return;
+            }
+        }
+        
+        String symbol = getStringInput("Enter stock symbol (e.g., AAPL): ").toUpperCase();
+        if (symbol.isEmpty()) {
+            System.out.println("Symbol cannot be empty.");
+            return;
+        }
+        Stock quote = stockAPI.getStockQuote(symbol);
+        if (quote == null) {
+            System.out.println("Stock not found.");
+            return;
+        }
+        if (!matchingEngine.hasBook(symbol)) {
+            matchingEngine.seedLiquidity(symbol, quote.getCurrentPrice(), ORDER_BOOK_LEVELS, ORDER_BOOK_DEPTH);
+        }
+        OrderBook book = matchingEngine.getBook(symbol);
+        System.out.println("\nQuote: " + Formats.currency(quote.getCurrentPrice()));
+        printOrderBook(book, 5);
+        
+        System.out.println("\n1. Buy");
+        System.out.println("2. Sell");
+        int side = getIntInput("Enter your choice: ") == 2 ? Order.SELL : Order.BUY;
+        System.out.println("\n1. Market (fill now at the best prices available)");
+        System.out.println("2. Limit (fill at the price or better, the rest waits)");
+        System.out.println("3. Stop (becomes a market order once a trade reaches the price)");
+        int type = getIntInput("Enter your choice: ");
+        if (type < Order.TYPE_MARKET || type > Order.TYPE_STOP) {
+            System.out.println("Invalid choice.");
+            return;
+        }
+        int quantity = getIntInput("Enter quantity: ");
+        if (quantity <= 0) {
+            System.out.println("Quantity must be positive.");
+            return;
+        }
+        double price = 0;
+        if (type != Order.TYPE_MARKET) {
+            price = getDoubleInput(type == Order.TYPE_LIMIT ? "Enter limit price: " : "Enter stop price: ");
+            if (price <= 0) {
+                System.out.println("Price must be positive.");
+                return;
+            }
+        }
+        
+        Order order;
+        try {
+            order = matchingEngine.submit(new Order(symbol, side, type, quantity, price, portfolio));
+        } catch (IllegalArgumentException e) {
+            System.out.println("Order rejected: " + e.getMessage());
+            return;
+        }
+        
+        int filled = order.getFilledQuantity();
+        if (filled > 0) {
+            double average = order.getAverageFillPrice();
+            // Positive slippage is a worse price than the quote
+            double slippage = (average - quote.getCurrentPrice()) / quote.getCurrentPrice() * (order.isBuy() ? 1 : -1);
+            System.out.println("\nFilled " + filled + " of " + quantity + " shares at an average of " + 
+                    Formats.currency(average) + " (slippage " + Formats.percent(slippage) + " against the quote)");
+            Stock holding = portfolio.findStock(symbol);
+            if (holding != null && holding.getName().equals(symbol)) {
+                holding.setName(quote.getName());
             }
+            savePortfolios();
+        }
+        if (order.isOpen()) {
+            System.out.println(order.getType() == Order.TYPE_STOP && !order.isTriggered()
+                    ? "Stop order #" + order.getId() + " is waiting for a trade at " + Formats.currency(price)
+                    : order.getRemaining() + " shares are resting in the book as order #" + order.getId());
+        } else if (order.getRemaining() > 0) {
+            System.out.println("The remaining " + order.getRemaining() + " shares were cancelled for lack of liquidity.");
         }
-        return best;
     }
     
     /**
-     * Helper method to find the worst performing stock in a portfolio
+     * Imports positions or trades from a broker's CSV export. The columns are mapped by name, so
+     * exports from different brokers can be read; portfolios the statement names that do not
+     * exist yet are created, and everything is saved once at the end.
      */
-    private static Stock findWorstPerformingStock(Portfolio portfolio) {
+    private static void importStatement() {
+        System.out.println("\n===== IMPORT BROKER STATEMENT =====");
+        String path = getStringInput("Enter the path of the CSV statement: ");
+        if (path.isEmpty()) {
+            System.out.println("Operation cancelled.");
+            return;
+        }
+        System.out.println("Columns default to symbol=Symbol,quantity=Quantity,price=Price,name=Description.");
+        System.out.println("Map others as e.g. symbol=Ticker,cost=Cost Basis,portfolio=Account,side=Action,delimiter=;");
+        String spec = getStringInput("Enter the column mapping (blank for the defaults): ");
+        String target = getStringInput("Enter the portfolio to import into (a new name creates it): ");
+        if (target.isEmpty()) {
+            System.out.println("Portfolio name cannot be empty.");
+            return;
+        }
+        
+        Set<Portfolio> existing = new LinkedHashSet<>(portfolios);
+        try {
+            StatementImporter importer = new StatementImporter(portfolios, stockAPI)
+                    .mapping(StatementImporter.Mapping.parse(spec));
+            System.out.println("Importing " + path + "...");
+            StatementImporter.Result result = importer.importFile(Paths.get(path), target);
+            for (Portfolio portfolio : portfolios) {
+                if (!existing.contains(portfolio)) {
+                    rankingIndex.addPortfolio(portfolio);
+                    exposureIndex.addPortfolio(portfolio);
+                    holdingsIndex.addPortfolio(portfolio);
+                    alertEngine.addPortfolio(portfolio);
+                }
+            }
+            savePortfolios();
+            System.out.println(result);
+            for (String error : result.getErrors()) {
+                System.out.println("  " + error);
+            }
+            long problems = result.getRejected() + result.getOversold();
+            if (problems > result.getErrors().size()) {
+                System.out.println("  ... and " + (problems - result.getErrors().size()) + " more");
+            }
+        } catch (IllegalArgumentException e) {
+            System.out.println("Cannot import: " + e.getMessage());
+        } catch (IOException e) {
+            System.out.println("Error reading statement: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * Plans the whole-share trades that bring a portfolio to target weights, entered directly or
+     * found by mean-variance optimization over the recorded daily returns, and applies them if
+     * confirmed
+     */
+    private static void rebalancePortfolio() {
+        if (portfolios.isEmpty()) {
+            System.out.println("No portfolios found. Create a portfolio first.");
+            return;
+        }
+        
+        Portfolio portfolio = selectPortfolio();
+        if (portfolio == null) return;
+        
         if (portfolio.getStocks().isEmpty()) {
-            return null;
+            System.out.println("No stocks in this portfolio to rebalance.");
+            return;
         }
         
-        Stock worst = portfolio.getStocks().get(0);
-        for (Stock stock : portfolio.getStocks()) {
-            if (stock.getPercentageGainLoss() < worst.getPercentageGainLoss()) {
-                worst = stock;
+        System.out.println("\n===== REBALANCE PORTFOLIO: " + portfolio.getName().toUpperCase() + " =====");
+        System.out.println("1. Enter target weights");
+        System.out.println("2. Mean-variance weights from recorded daily prices");
+        int choice = getIntInput("Enter your choice: ");
+        
+        try {
+            RebalanceOptimizer.Plan plan;
+            if (choice == 1) {
+                Map<String, Double> targets = new HashMap<>();
+                String spec = getStringInput("Weights as SYMBOL=weight separated by commas (e.g. AAPL=0.6,MSFT=0.4): ");
+                for (String part : spec.split(",")) {
+                    String[] pair = part.split("=");
+                    if (pair.length != 2) {
+                        System.out.println("Invalid weight: " + part.trim());
+                        return;
+                    }
+                    String symbol = pair[0].trim().toUpperCase();
+                    if (portfolio.findStock(symbol) == null) {
+                        System.out.println("Not held in " + portfolio.getName() + ": " + symbol +
+                                " (only held stocks can be rebalanced)");
+                        return;
+                    }
+                    targets.put(symbol, Double.parseDouble(pair[1].trim()));
+                }
+                double cash = getDoubleInput("Cash to add (0 for none): ");
+                plan = rebalanceOptimizer(1).planForTargets(portfolio, targets, cash);
+            } else if (choice == 2) {
+                if (priceHistory == null) {
+                    System.out.println("Mean-variance weights need the price history, which is not available.");
+                    return;
+                }
+                RiskMetrics risk = dailyRiskMetrics(portfolio);
+                if (risk.getObservationCount() < 2) {
+                    System.out.println("Mean-variance weights need at least 3 completed days of recorded prices for every holding.");
+                    return;
+                }
+                double maxWeight = getDoubleInput("Largest weight of a single holding (e.g. 0.25): ");
+                double riskAversion = getDoubleInput("Risk aversion (e.g. 3): ");
+                double cash = getDoubleInput("Cash to add (0 for none): ");
+                double[] expectedReturns = new double[portfolio.getStocks().size()];
+                for (int i = 0; i < expectedReturns.length; i++) {
+                    expectedReturns[i] = risk.getMeanReturn(i);
+                }
+                plan = rebalanceOptimizer(maxWeight).planMeanVariance(portfolio, expectedReturns,
+                        risk.getCovarianceMatrix(), riskAversion, cash);
+            } else {
+                System.out.println("Invalid choice.");
+                return;
+            }
+            
+            if (plan.getTrades().isEmpty()) {
+                System.out.println("\nThe portfolio is already at its target weights.");
+                return;
             }
+            System.out.println("\nPlanned trades:");
+            for (RebalanceOptimizer.Trade trade : plan.getTrades()) {
+                System.out.println("  " + trade + " (" + Formats.currency(trade.getNotional()) + ")");
+            }
+            System.out.println("Cash remaining: " + Formats.currency(plan.getRemainingCash()));
+            if (getStringInput("Apply these trades? (y/n): ").equalsIgnoreCase("y")) {
+                plan.apply(portfolio);
+                savePortfolios();
+                System.out.println("Portfolio rebalanced.");
+            }
+        } catch (NumberFormatException e) {
+            System.out.println("Invalid weight: " + e.getMessage());
+        } catch (IllegalArgumentException e) {
+            System.out.println("Cannot rebalance: " + e.getMessage());
+        } catch (IOException e) {
+            System.out.println("Error reading price history: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * Helper method to reuse the optimizer, and with it its last solution, while the max position
+     * weight stays the same
+     */
+    private static RebalanceOptimizer rebalanceOptimizer(double maxPositionWeight) {
+        if (rebalanceOptimizer == null || rebalanceOptimizer.getMaxPositionWeight() != maxPositionWeight) {
+            rebalanceOptimizer = new RebalanceOptimizer(maxPositionWeight, REBALANCE_TOLERANCE);
+        }
+        return rebalanceOptimizer;
+    }
+    
+    /**
+     * Helper method to print the best levels of both sides of an order book, asks above bids
+     */
+    private static void printOrderBook(OrderBook book, int levels) {
+        double[] prices = new double[levels];
+        long[] quantities = new long[levels];
+        System.out.println("Order book for " + book.getSymbol() + ":");
+        int asks = book.getDepth(Order.SELL, prices, quantities);
+        for (int i = asks - 1; i >= 0; i--) {
+            System.out.printf("  ask %12s %,10d\n", Formats.currency(prices[i]), quantities[i]);
+        }
+        int bids = book.getDepth(Order.BUY, prices, quantities);
+        for (int i = 0; i < bids; i++) {
+            System.out.printf("  bid %12s %,10d\n", Formats.currency(prices[i]), quantities[i]);
+        }
+        if (asks == 0 && bids == 0) {
+            System.out.println("  (empty)");
         }
-        return worst;
+    }
+    
+    /**
+     * Helper method to publish a fetched quote on the market data bus, which applies it to every
+     * holding of the symbol and records it in the price history. Call marketData.drain() before
+     * reading the updated holdings.
+     */
+    private static void applyQuote(String symbol, Stock quote) {
+        marketData.publish(symbol, quote.getCurrentPrice(), System.currentTimeMillis());
     }
     
     /**
@@ -627,11 +1450,11 @@ public class StockPortfolioApp {
     }
     
     /**
-     * Helper method to save portfolios to file
+     * Helper method to save changed portfolios to storage
      */
     private static void savePortfolios() {
         try {
-            fileHandler.savePortfolios(portfolios);
+            portfolioStore.savePortfolios(portfolios);
         } catch (IOException e) {
             System.out.println("Error saving portfolios: " + e.getMessage());
         }
@@ -674,43 +1497,68 @@ public class StockPortfolioApp {
     }
     
     /**
-     * Helper method to truncate strings for display
+     * Helper method to show a table a page at a time. A table that fits on one page is printed
+     * without a prompt; longer ones can be paged through and sorted by any column.
+     * @param latency Histogram for the time until the first page is shown, or null
+     * @param start Time the report started, from System.nanoTime()
      */
-    private static String truncateString(String str, int length) {
-        if (str == null) return "";
-        return str.length() <= length ? str : str.substring(0, length - 3) + "...";
+    private static <T> void showTable(TableRenderer<T> table, List<T> rows, LatencyHistogram latency, long start) {
+        table.pageSize(PAGE_SIZE);
+        int pages = table.getPageCount(rows.size());
+        int page = 0;
+        while (true) {
+            try {
+                table.render(rows, page, tableWriter);
+            } catch (IOException e) {
+                System.out.println("Error printing table: " + e.getMessage());
+                return;
+            }
+            tableWriter.flush();
+            if (latency != null) {
+                latency.recordSince(start);
+                latency = null;
+            }
+            if (pages == 1) {
+                return;
+            }
+            
+            String sort = table.getSortDescription();
+            String command = getStringInput(String.format("Page %d of %d (%,d rows%s). Enter: next, p: previous, " +
+                    "<number>: go to page, s<column>: sort, q: done: ",
+                    page + 1, pages, rows.size(), sort != null ? ", by " + sort : "")).toLowerCase();
+            if (command.equals("q")) {
+                return;
+            } else if (command.isEmpty() || command.equals("n")) {
+                if (page + 1 >= pages) {
+                    return;
+                }
+                page++;
+            } else if (command.equals("p")) {
+                page = Math.max(0, page - 1);
+            } else if (command.startsWith("s")) {
+                int column = parseIntOrZero(command.substring(1).trim());
+                if (column < 1 || column > table.getColumnCount()) {
+                    System.out.println("Columns are numbered 1 to " + table.getColumnCount() + " from the left.");
+                    continue;
+                }
+                table.toggleSort(column - 1);
+                page = 0;
+            } else {
+                int target = parseIntOrZero(command);
+                if (target < 1 || target > pages) {
+                    System.out.println("Invalid choice.");
+                    continue;
+                }
+                page = target - 1;
+            }
+        }
     }
     
-    /**
-     * Helper class to associate a stock with its portfolio
-     */
-    private static class StockWithPortfolio {
-        private final Stock stock;
-        private final String portfolioName;
-        
-        public StockWithPortfolio(Stock stock, String portfolioName) {
-            this.stock = stock;
-            this.portfolioName = portfolioName;
-        }
-        
-        public Stock getStock() {
-            return stock;
-        }
-        
-        public String getPortfolioName() {
-            return portfolioName;
-        }
-        
-        public double getPercentageGainLoss() {
-            return stock.getPercentageGainLoss();
-        }
-        
-        public double getGainLoss() {
-            return stock.getGainLoss();
-        }
-        
-        public double getCurrentValue() {
-            return stock.getCurrentValue();
+    private static int parseIntOrZero(String text) {
+        try {
+            return Integer.parseInt(text);
+        } catch (NumberFormatException e) {
+            return 0;
         }
     }
 }
@@ -0,0 +1,296 @@
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.function.Function;
+import java.util.function.ToDoubleFunction;
+import java.util.function.ToLongFunction;
+
+/**
+ * Renders rows as a fixed-width console table one page at a time. Cells are formatted into a
+ * reused buffer and written to the caller's writer in large chunks, and only the rows of the
+ * requested page are formatted, so the cost of showing a page does not depend on how many rows
+ * there are beyond it. Sorting by a column selects just the rows up to the end of the page with
+ * a bounded heap instead of sorting everything.
+ * <p>
+ * Columns are declared in display order:
+ * <pre>
+ * new TableRenderer&lt;Stock&gt;()
+ *         .text("Symbol", 6, Stock::getSymbol)
+ *         .currency("Value", 15, Stock::getCurrentValue)
+ *         .render(stocks, 0, writer);
+ * </pre>
+ * A renderer is not safe for concurrent use, but the formatting it relies on is stateless.
+ */
+public class TableRenderer<T> {
+    public static final int DEFAULT_PAGE_SIZE = 25;
+    
+    private static final int ROW_NUMBER = 0;
+    private static final int TEXT = 1;
+    private static final int INTEGER = 2;
+    private static final int CURRENCY = 3;
+    private static final int PERCENT = 4;
+    private static final int FLUSH_THRESHOLD = 8192;
+    
+    private final List<Column<T>> columns = new ArrayList<>();
+    private final StringBuilder buffer = new StringBuilder(FLUSH_THRESHOLD + 512);
+    private int pageSize = DEFAULT_PAGE_SIZE;
+    private int sortColumn = -1;
+    private boolean descending;
+    
+    /**
+     * Adds a column showing each row's 1-based position in the unsorted input, such as a rank
+     */
+    public TableRenderer<T> rowNumber(String header, int width) {
+        columns.add(new Column<>(header, width, ROW_NUMBER, null, null));
+        return this;
+    }
+    
+    /**
+     * Adds a text column; longer values are cut to the width with "..."
+     */
+    public TableRenderer<T> text(String header, int width, Function<T, String> value) {
+        columns.add(new Column<>(header, width, TEXT, value, null));
+        return this;
+    }
+    
+    public TableRenderer<T> integer(String header, int width, ToLongFunction<T> value) {
+        columns.add(new Column<>(header, width, INTEGER, null, row -> value.applyAsLong(row)));
+        return this;
+    }
+    
+    public TableRenderer<T> currency(String header, int width, ToDoubleFunction<T> value) {
+        columns.add(new Column<>(header, width, CURRENCY, null, value));
+        return this;
+    }
+    
+    /**
+     * Adds a column of fractions shown as percentages, e.g. 0.25 as 25.00%
+     */
+    public TableRenderer<T> percent(String header, int width, ToDoubleFunction<T> fraction) {
+        columns.add(new Column<>(header, width, PERCENT, null, fraction));
+        return this;
+    }
+    
+    public TableRenderer<T> pageSize(int pageSize) {
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("Page size must be positive");
+        }
+        this.pageSize = pageSize;
+        return this;
+    }
+    
+    /**
+     * Orders rows by a column; ties keep their input order
+     * @param column 0-based column index, or -1 for input order
+     */
+    public TableRenderer<T> sortBy(int column, boolean descending) {
+        if (column < -1 || column >= columns.size()) {
+            throw new IllegalArgumentException("No column " + (column + 1));
+        }
+        this.sortColumn = column;
+        this.descending = descending;
+        return this;
+    }
+    
+    /**
+     * Sorts by a column, reversing the order if the table is already sorted by it. Numbers
+     * start with the largest first and text alphabetically.
+     */
+    public void toggleSort(int column) {
+        if (column == sortColumn) {
+            sortBy(column, !descending);
+        } else {
+            sortBy(column, column >= 0 && columns.get(column).kind != TEXT);
+        }
+    }
+    
+    public int getPageSize() { return pageSize; }
+    public int getColumnCount() { return columns.size(); }
+    
+    public int getPageCount(int rowCount) {
+        return Math.max(1, (rowCount + pageSize - 1) / pageSize);
+    }
+    
+    /**
+     * Describes the current order, e.g. "Value descending", or null for input order
+     */
+    public String getSortDescription() {
+        if (sortColumn < 0) {
+            return null;
+        }
+        return columns.get(sortColumn).header + (descending ? " descending" : " ascending");
+    }
+    
+    /**
+     * Writes the header and one page of rows. The writer is not flushed.
+     * @param page 0-based page number
+     * @return Number of rows written
+     */
+    public int render(List<T> rows, int page, Writer out) throws IOException {
+        buffer.setLength(0);
+        for (int c = 0; c < columns.size(); c++) {
+            Column<T> column = columns.get(c);
+            int start = buffer.length();
+            buffer.append(column.header);
+            endCell(c, start);
+        }
+        buffer.append('\n');
+        int totalWidth = columns.size() - 1;
+        for (Column<T> column : columns) {
+            totalWidth += column.width;
+        }
+        for (int i = 0; i < totalWidth; i++) {
+            buffer.append('-');
+        }
+        buffer.append('\n');
+        
+        int[] selected = selectPage(rows, page);
+        for (int index : selected) {
+            T row = rows.get(index);
+            for (int c = 0; c < columns.size(); c++) {
+                int start = buffer.length();
+                appendCell(columns.get(c), row, index);
+                endCell(c, start);
+            }
+            buffer.append('\n');
+            if (buffer.length() >= FLUSH_THRESHOLD) {
+                out.append(buffer);
+                buffer.setLength(0);
+            }
+        }
+        out.append(buffer);
+        buffer.setLength(0);
+        return selected.length;
+    }
+    
+    /**
+     * Indices into rows of the page's rows, in display order
+     */
+    private int[] selectPage(List<T> rows, int page) {
+        int from = page * pageSize;
+        int to = Math.min(rows.size(), from + pageSize);
+        if (from < 0 || from >= to) {
+            return new int[0];
+        }
+        int[] selected = new int[to - from];
+        if (sortColumn < 0) {
+            for (int i = 0; i < selected.length; i++) {
+                selected[i] = from + i;
+            }
+            return selected;
+        }
+        
+        // Keep the first `to` rows in display order in a heap whose head is the last of them
+        Comparator<Integer> order = comparator(rows);
+        PriorityQueue<Integer> heap = new PriorityQueue<>(to, order.reversed());
+        for (int i = 0; i < rows.size(); i++) {
+            if (heap.size() < to) {
+                heap.add(i);
+            } else if (order.compare(i, heap.peek()) < 0) {
+                heap.poll();
+                heap.add(i);
+            }
+        }
+        Integer[] first = heap.toArray(new Integer[0]);
+        Arrays.sort(first, order);
+        for (int i = 0; i < selected.length; i++) {
+            selected[i] = first[from + i];
+        }
+        return selected;
+    }
+    
+    /**
+     * Display order over row indices; sort keys are extracted once per render
+     */
+    private Comparator<Integer> comparator(List<T> rows) {
+        Column<T> column = columns.get(sortColumn);
+        Comparator<Integer> byKey;
+        if (column.kind == ROW_NUMBER) {
+            byKey = Comparator.naturalOrder();
+        } else if (column.kind == TEXT) {
+            String[] keys = new String[rows.size()];
+            for (int i = 0; i < keys.length; i++) {
+                String key = column.text.apply(rows.get(i));
+                keys[i] = key != null ? key : "";
+            }
+            byKey = (a, b) -> keys[a].compareToIgnoreCase(keys[b]);
+        } else {
+            double[] keys = new double[rows.size()];
+            for (int i = 0; i < keys.length; i++) {
+                keys[i] = column.number.applyAsDouble(rows.get(i));
+            }
+            byKey = (a, b) -> Double.compare(keys[a], keys[b]);
+        }
+        if (descending) {
+            byKey = byKey.reversed();
+        }
+        return byKey.thenComparing(Comparator.naturalOrder());
+    }
+    
+    private void appendCell(Column<T> column, T row, int index) {
+        switch (column.kind) {
+            case ROW_NUMBER:
+                buffer.append(index + 1);
+                break;
+            case TEXT:
+                appendText(column.text.apply(row), column.width);
+                break;
+            case INTEGER:
+                buffer.append((long) column.number.applyAsDouble(row));
+                break;
+            case CURRENCY:
+                Formats.appendCurrency(buffer, column.number.applyAsDouble(row));
+                break;
+            case PERCENT:
+                Formats.appendPercent(buffer, column.number.applyAsDouble(row));
+                break;
+            default:
+                throw new IllegalStateException("Unknown column kind " + column.kind);
+        }
+    }
+    
+    private void appendText(String value, int width) {
+        if (value == null) {
+            return;
+        }
+        if (value.length() <= width) {
+            buffer.append(value);
+        } else {
+            buffer.append(value, 0, Math.max(0, width - 3)).append("...");
+        }
+    }
+    
+    /**
+     * Pads a cell to its column's width followed by the column gap; the last cell is not padded
+     */
+    private void endCell(int column, int start) {
+        if (column == columns.size() - 1) {
+            return;
+        }
+        int end = start + columns.get(column).width;
+        while (buffer.length() < end) {
+            buffer.append(' ');
+        }
+        buffer.append(' ');
+    }
+    
+    private static final class Column<T> {
+        final String header;
+        final int width;
+        final int kind;
+        final Function<T, String> text;
+        final ToDoubleFunction<T> number;
+        
+        Column(String header, int width, int kind, Function<T, String> text, ToDoubleFunction<T> number) {
+            this.header = header;
+            this.width = width;
+            this.kind = kind;
+            this.text = text;
+            this.number = number;
+        }
+    }
+}
@@ -0,0 +1,428 @@
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+
+/**
+ * Holds the portfolios of many accounts. Each account is persisted in its own directory
+ * through a PortfolioStore and loaded on first access. Accounts are spread over shards that
+ * are locked independently, so lookups for different accounts rarely contend, and each
+ * account has its own read-write lock for the work done on its portfolios.
+ * <p>
+ * At most maxResidentTenants accounts are kept in memory: when a shard is over its share the
+ * least recently used accounts are saved and dropped, and a sweeper does the same for accounts
+ * idle longer than the idle timeout. Accounts in use are never evicted. Evicted accounts are
+ * only unlinked under the shard lock and saved after it is released, so a slow save does not
+ * hold up the shard; an account accessed again while it is being saved is taken back as it is.
+ */
+public class TenantStore implements AutoCloseable {
+    private final Path root;
+    private final Shard[] shards;
+    private final int shardMask;
+    private final int perShardCapacity;
+    private final long idleMillis;
+    private final ScheduledExecutorService sweeper;
+    
+    private final AtomicLong loads = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    
+    /**
+     * Uses a shard count of four per available core
+     */
+    public TenantStore(String rootDirectory, int maxResidentTenants, long idleMillis) {
+        this(rootDirectory, 4 * Runtime.getRuntime().availableProcessors(), maxResidentTenants, idleMillis);
+    }
+    
+    /**
+     * @param rootDirectory Directory holding one subdirectory per account
+     * @param shardCount Number of independently locked shards, rounded up to a power of two
+     * @param maxResidentTenants Upper bound on accounts held in memory
+     * @param idleMillis Accounts unused for this long are evicted by a background sweeper; 0 disables it
+     */
+    public TenantStore(String rootDirectory, int shardCount, int maxResidentTenants, long idleMillis) {
+        if (shardCount <= 0 || maxResidentTenants <= 0 || idleMillis < 0) {
+            throw new IllegalArgumentException("Shard count and capacity must be positive");
+        }
+        int size = 1;
+        while (size < shardCount) {
+            size <<= 1;
+        }
+        // Every shard must be able to hold at least one account
+        size = Math.min(size, Integer.highestOneBit(maxResidentTenants));
+        this.root = Paths.get(rootDirectory);
+        this.shards = new Shard[size];
+        for (int i = 0; i < shards.length; i++) {
+            shards[i] = new Shard();
+        }
+        this.shardMask = shards.length - 1;
+        this.perShardCapacity = maxResidentTenants / shards.length;
+        this.idleMillis = idleMillis;
+        
+        if (idleMillis > 0) {
+            sweeper = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "tenant-sweeper");
+                thread.setDaemon(true);
+                return thread;
+            });
+            long period = Math.max(1, idleMillis / 2);
+            sweeper.scheduleWithFixedDelay(() -> {
+                try {
+                    evictIdle(System.currentTimeMillis() - this.idleMillis);
+                } catch (IOException e) {
+                    System.err.println("Error evicting idle accounts: " + e.getMessage());
+                }
+            }, period, period, TimeUnit.MILLISECONDS);
+        } else {
+            sweeper = null;
+        }
+    }
+    
+    /**
+     * Runs an action that only reads the account's portfolios; readers of one account run concurrently
+     */
+    public <T> T read(String accountId, Function<List<Portfolio>, T> action) throws IOException {
+        Tenant tenant = acquire(accountId);
+        try {
+            tenant.lock.readLock().lock();
+            try {
+                return action.apply(Collections.unmodifiableList(tenant.portfolios));
+            } finally {
+                tenant.lock.readLock().unlock();
+            }
+        } finally {
+            release(tenant);
+        }
+    }
+    
+    /**
+     * Runs an action that may change the account's portfolios, including adding or removing them.
+     * Changes are written when the account is flushed or evicted.
+     */
+    public <T> T write(String accountId, Function<List<Portfolio>, T> action) throws IOException {
+        Tenant tenant = acquire(accountId);
+        try {
+            tenant.lock.writeLock().lock();
+            try {
+                return action.apply(tenant.portfolios);
+            } finally {
+                tenant.lock.writeLock().unlock();
+            }
+        } finally {
+            release(tenant);
+        }
+    }
+    
+    /**
+     * Saves every resident account with unsaved changes
+     * @return Number of portfolio shards written
+     */
+    public int flush() throws IOException {
+        int written = 0;
+        for (Shard shard : shards) {
+            // Pinned so that eviction cannot pick them while they are written
+            List<Tenant> resident;
+            shard.lock.lock();
+            try {
+                resident = new ArrayList<>(shard.tenants.values());
+                for (Tenant tenant : resident) {
+                    tenant.pins++;
+                }
+            } finally {
+                shard.lock.unlock();
+            }
+            try {
+                for (Tenant tenant : resident) {
+                    written += save(tenant);
+                }
+            } finally {
+                for (Tenant tenant : resident) {
+                    release(tenant);
+                }
+            }
+        }
+        return written;
+    }
+    
+    /**
+     * Saves and drops accounts not used since the given time. Accounts that fail to save stay
+     * resident and are reported on standard error.
+     * @return Number of accounts evicted
+     */
+    public int evictIdle(long lastUsedBeforeMillis) throws IOException {
+        int evicted = 0;
+        for (Shard shard : shards) {
+            List<Eviction> victims = new ArrayList<>();
+            shard.lock.lock();
+            try {
+                // Access order: the least recently used accounts come first
+                Iterator<Tenant> iterator = shard.tenants.values().iterator();
+                while (iterator.hasNext()) {
+                    Tenant tenant = iterator.next();
+                    if (tenant.lastAccess >= lastUsedBeforeMillis) {
+                        break;
+                    }
+                    if (tenant.pins == 0) {
+                        iterator.remove();
+                        victims.add(shard.unlinked(tenant));
+                    }
+                }
+            } finally {
+                shard.lock.unlock();
+            }
+            evicted += evict(shard, victims);
+        }
+        return evicted;
+    }
+    
+    /**
+     * Stops the sweeper, waiting for a sweep in progress, and saves all resident accounts
+     */
+    @Override
+    public void close() throws IOException {
+        if (sweeper != null) {
+            sweeper.shutdown();
+            try {
+                sweeper.awaitTermination(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        flush();
+    }
+    
+    public int getResidentCount() {
+        int count = 0;
+        for (Shard shard : shards) {
+            shard.lock.lock();
+            try {
+                count += shard.tenants.size();
+            } finally {
+                shard.lock.unlock();
+            }
+        }
+        return count;
+    }
+    
+    public int getShardCount() { return shards.length; }
+    public long getLoadCount() { return loads.get(); }
+    public long getEvictionCount() { return evictions.get(); }
+    
+    /**
+     * Directory an account's portfolios are stored in
+     */
+    public Path directoryFor(String accountId) {
+        return root.resolve(directoryName(accountId));
+    }
+    
+    /**
+     * Name of an account's directory under the root. Characters outside [A-Za-z0-9-] are
+     * hex-escaped so every account id maps to a distinct, safe file name.
+     */
+    public static String directoryName(String accountId) {
+        if (accountId == null || accountId.isEmpty()) {
+            throw new IllegalArgumentException("Account id must not be empty");
+        }
+        StringBuilder name = new StringBuilder("account-");
+        for (byte b : accountId.getBytes(StandardCharsets.UTF_8)) {
+            char c = (char) (b & 0xff);
+            if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '-') {
+                name.append(c);
+            } else {
+                name.append('_').append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+            }
+        }
+        return name.toString();
+    }
+    
+    /**
+     * Finds or creates the account's entry and pins it, then loads it outside the shard lock.
+     * An account still being saved by an eviction is taken back rather than loaded again.
+     */
+    private Tenant acquire(String accountId) throws IOException {
+        Shard shard = shardFor(accountId);
+        Tenant tenant;
+        List<Eviction> victims;
+        shard.lock.lock();
+        try {
+            tenant = shard.tenants.get(accountId);
+            if (tenant == null) {
+                Eviction eviction = shard.evicting.remove(accountId);
+                tenant = eviction != null ? eviction.tenant
+                        : new Tenant(accountId, new PortfolioStore(directoryFor(accountId).toString()));
+                shard.tenants.put(accountId, tenant);
+            }
+            tenant.pins++;
+            tenant.lastAccess = System.currentTimeMillis();
+            victims = unlinkOverCapacity(shard);
+        } finally {
+            shard.lock.unlock();
+        }
+        evict(shard, victims);
+        
+        if (!tenant.loaded) {
+            tenant.lock.writeLock().lock();
+            try {
+                if (!tenant.loaded) {
+                    tenant.portfolios.addAll(tenant.store.loadPortfolios());
+                    tenant.loaded = true;
+                    loads.incrementAndGet();
+                }
+            } catch (IOException | RuntimeException e) {
+                release(tenant);
+                throw e;
+            } finally {
+                tenant.lock.writeLock().unlock();
+            }
+        }
+        return tenant;
+    }
+    
+    private void release(Tenant tenant) {
+        Shard shard = shardFor(tenant.accountId);
+        shard.lock.lock();
+        try {
+            tenant.pins--;
+            if (!tenant.loaded && tenant.pins == 0) {
+                shard.tenants.remove(tenant.accountId, tenant); // Failed to load; retry on next access
+            }
+        } finally {
+            shard.lock.unlock();
+        }
+    }
+    
+    /**
+     * Unlinks least recently used, unpinned accounts while the shard is over its share and marks
+     * them as evicting. Called with the shard lock held; the caller saves them after releasing it.
+     */
+    private List<Eviction> unlinkOverCapacity(Shard shard) {
+        int excess = shard.tenants.size() - perShardCapacity;
+        if (excess <= 0) {
+            return Collections.emptyList();
+        }
+        List<Eviction> victims = new ArrayList<>(excess);
+        Iterator<Tenant> iterator = shard.tenants.values().iterator();
+        while (excess > 0 && iterator.hasNext()) {
+            Tenant tenant = iterator.next();
+            if (tenant.pins > 0) {
+                continue;
+            }
+            iterator.remove();
+            victims.add(shard.unlinked(tenant));
+            excess--;
+        }
+        return victims;
+    }
+    
+    /**
+     * Saves accounts unlinked for eviction, without the shard lock. An account taken back by
+     * acquire in the meantime stays resident, even if it has been unlinked again since; one that
+     * fails to save is linked back in so its changes are not lost.
+     * @return Number of accounts evicted
+     */
+    private int evict(Shard shard, List<Eviction> victims) {
+        int evicted = 0;
+        for (Eviction eviction : victims) {
+            Tenant tenant = eviction.tenant;
+            boolean saved;
+            try {
+                save(tenant);
+                saved = true;
+            } catch (IOException e) {
+                saved = false;
+                System.err.println("Error saving account " + tenant.accountId + ": " + e.getMessage());
+            }
+            shard.lock.lock();
+            try {
+                if (shard.evicting.remove(tenant.accountId, eviction)) {
+                    if (saved) {
+                        evicted++;
+                        evictions.incrementAndGet();
+                    } else {
+                        shard.tenants.put(tenant.accountId, tenant);
+                    }
+                }
+            } finally {
+                shard.lock.unlock();
+            }
+        }
+        return evicted;
+    }
+    
+    /**
+     * Writes an account's changed portfolios. Saves of one account are serialized, and the read
+     * lock keeps writers out while its portfolios are written.
+     * @return Number of portfolio shards written
+     */
+    private int save(Tenant tenant) throws IOException {
+        synchronized (tenant.saveLock) {
+            tenant.lock.readLock().lock();
+            try {
+                return tenant.loaded ? tenant.store.savePortfolios(tenant.portfolios) : 0;
+            } finally {
+                tenant.lock.readLock().unlock();
+            }
+        }
+    }
+    
+    private Shard shardFor(String accountId) {
+        int hash = accountId.hashCode();
+        return shards[(hash ^ (hash >>> 16)) & shardMask];
+    }
+    
+    private static class Shard {
+        final ReentrantLock lock = new ReentrantLock();
+        final LinkedHashMap<String, Tenant> tenants = new LinkedHashMap<>(16, 0.75f, true);
+        final Map<String, Eviction> evicting = new HashMap<>(); // Unlinked and being saved outside the lock
+        
+        /**
+         * Marks an account just removed from the resident map as evicting; called with the lock held
+         */
+        Eviction unlinked(Tenant tenant) {
+            Eviction eviction = new Eviction(tenant);
+            evicting.put(tenant.accountId, eviction);
+            return eviction;
+        }
+    }
+    
+    /**
+     * One pending eviction of an account. An account taken back and evicted again gets a new one,
+     * so only the latest eviction's save can retire it.
+     */
+    private static class Eviction {
+        final Tenant tenant;
+        
+        Eviction(Tenant tenant) {
+            this.tenant = tenant;
+        }
+    }
+    
+    private static class Tenant {
+        final String accountId;
+        final PortfolioStore store;
+        final List<Portfolio> portfolios = new ArrayList<>();
+        final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+        final Object saveLock = new Object();
+        int pins; // Guarded by the shard lock
+        long lastAccess; // Guarded by the shard lock
+        volatile boolean loaded;
+        
+        Tenant(String accountId, PortfolioStore store) {
+            this.accountId = accountId;
+            this.store = store;
+        }
+    }
+}
@@ -0,0 +1,17 @@
+/**
+ * Consumes price ticks from a MarketDataBus. Each handler runs on its own thread and receives
+ * ticks in publication order, in batches of whatever was published since its last batch.
+ */
+public interface TickHandler {
+    /**
+     * Called for every tick. The arguments live in the bus's preallocated ring, so a handler that
+     * wants to keep a tick must copy its fields.
+     * @param symbolId Id from MarketDataBus.symbolId; the symbol is MarketDataBus.getSymbol(symbolId)
+     */
+    void onTick(int symbolId, double price, long timestamp);
+    
+    /**
+     * Called after the last tick of each batch, before the bus lets the producer reuse its slots
+     */
+    void onEndOfBatch();
+}
@@ -0,0 +1,231 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Selects the N holdings with the largest sort key across portfolios without sorting all of them.
+ * Sort keys are computed once per holding into a primitive array and the winners are kept in a
+ * bounded min-heap, so selection is O(n log k). Large inputs are split into chunks that are
+ * selected in parallel and then merged.
+ */
+public class TopNSelector {
+    public static final int SORT_PERCENTAGE = 1;
+    public static final int SORT_DOLLAR = 2;
+    public static final int SORT_VALUE = 3;
+    
+    // Below this many holdings the fork/join overhead outweighs the parallel speedup
+    private static final int PARALLEL_THRESHOLD = 50_000;
+    
+    private TopNSelector() {
+    }
+    
+    /**
+     * Gets the top holdings across all portfolios, best first. Holdings with equal keys keep
+     * their portfolio order, matching a stable sort.
+     * @param sortCriteria The criteria to sort by (1=Percentage, 2=Dollar Amount, 3=Value)
+     * @param numStocks Number of top stocks to return
+     */
+    public static List<TopPerformersPanel.StockWithPortfolio> select(List<Portfolio> portfolios,
+                                                                   int sortCriteria, int numStocks) {
+        if (numStocks <= 0) {
+            return new ArrayList<>();
+        }
+        
+        // Offsets of each portfolio in the flattened holding order
+        int[] offsets = new int[portfolios.size() + 1];
+        for (int i = 0; i < portfolios.size(); i++) {
+            offsets[i + 1] = offsets[i] + portfolios.get(i).getStocks().size();
+        }
+        int total = offsets[portfolios.size()];
+        // Never size the heaps beyond the holdings there are, however large a caller's N
+        int limit = Math.min(numStocks, total);
+        
+        Candidates result;
+        int chunks = Math.min(Runtime.getRuntime().availableProcessors() * 4, total / PARALLEL_THRESHOLD);
+        if (chunks <= 1) {
+            result = selectRange(portfolios, offsets, 0, total, sortCriteria, limit);
+        } else {
+            List<Candidates> partials = IntStream.range(0, chunks).parallel()
+                    .mapToObj(c -> selectRange(portfolios, offsets,
+                            (int) ((long) total * c / chunks), (int) ((long) total * (c + 1) / chunks),
+                            sortCriteria, limit))
+                    .collect(Collectors.toList());
+            result = merge(partials, limit);
+        }
+        
+        return result.toSortedList();
+    }
+    
+    /**
+     * Computes the sort key of one holding
+     */
+    public static double sortKey(Stock stock, int sortCriteria) {
+        switch (sortCriteria) {
+            case SORT_DOLLAR:
+                return stock.getGainLoss();
+            case SORT_VALUE:
+                return stock.getCurrentValue();
+            case SORT_PERCENTAGE:
+            default:
+                return stock.getPercentageGainLoss();
+        }
+    }
+    
+    /**
+     * Selects the top holdings among flattened positions [from, to)
+     */
+    private static Candidates selectRange(List<Portfolio> portfolios, int[] offsets, int from, int to,
+                                          int sortCriteria, int numStocks) {
+        int length = to - from;
+        double[] keys = new double[length];
+        Stock[] stocks = new Stock[length];
+        int[] owners = new int[length];
+        
+        // Locate the portfolio that contains position "from"
+        int p = 0;
+        while (p < portfolios.size() - 1 && offsets[p + 1] <= from) {
+            p++;
+        }
+        
+        int position = from;
+        for (; p < portfolios.size() && position < to; p++) {
+            List<Stock> holdings = portfolios.get(p).getStocks();
+            int end = Math.min(holdings.size(), to - offsets[p]);
+            for (int i = position - offsets[p]; i < end; i++) {
+                Stock stock = holdings.get(i);
+                int slot = position - from;
+                keys[slot] = sortKey(stock, sortCriteria);
+                stocks[slot] = stock;
+                owners[slot] = p;
+                position++;
+            }
+        }
+        
+        Candidates candidates = new Candidates(Math.min(numStocks, length), portfolios);
+        for (int i = 0; i < length; i++) {
+            candidates.offer(keys[i], from + i, stocks[i], owners[i]);
+        }
+        return candidates;
+    }
+    
+    private static Candidates merge(List<Candidates> partials, int numStocks) {
+        int candidates = 0;
+        for (Candidates partial : partials) {
+            candidates += partial.size;
+        }
+        Candidates merged = new Candidates(Math.min(numStocks, candidates), partials.get(0).portfolios);
+        for (Candidates partial : partials) {
+            for (int i = 0; i < partial.size; i++) {
+                merged.offer(partial.keys[i], partial.order[i], partial.stocks[i], partial.owners[i]);
+            }
+        }
+        return merged;
+    }
+    
+    /**
+     * Bounded min-heap of the best holdings seen so far. The root is the weakest winner, so a new
+     * holding only enters when it beats the root.
+     */
+    private static final class Candidates {
+        private final List<Portfolio> portfolios;
+        private final double[] keys;
+        private final int[] order;
+        private final Stock[] stocks;
+        private final int[] owners;
+        private int size;
+        
+        Candidates(int capacity, List<Portfolio> portfolios) {
+            this.portfolios = portfolios;
+            this.keys = new double[capacity];
+            this.order = new int[capacity];
+            this.stocks = new Stock[capacity];
+            this.owners = new int[capacity];
+        }
+        
+        void offer(double key, int position, Stock stock, int owner) {
+            if (size < keys.length) {
+                set(size, key, position, stock, owner);
+                siftUp(size++);
+            } else if (keys.length > 0 && isBetter(key, position, keys[0], order[0])) {
+                set(0, key, position, stock, owner);
+                siftDown(0);
+            }
+        }
+        
+        List<TopPerformersPanel.StockWithPortfolio> toSortedList() {
+            // Draining the min-heap yields winners weakest first
+            int count = size;
+            TopPerformersPanel.StockWithPortfolio[] sorted = new TopPerformersPanel.StockWithPortfolio[count];
+            while (size > 0) {
+                sorted[size - 1] = new TopPerformersPanel.StockWithPortfolio(stocks[0], portfolios.get(owners[0]).getName());
+                size--;
+                if (size > 0) {
+                    set(0, keys[size], order[size], stocks[size], owners[size]);
+                    stocks[size] = null;
+                    siftDown(0);
+                }
+            }
+            
+            List<TopPerformersPanel.StockWithPortfolio> result = new ArrayList<>(count);
+            for (TopPerformersPanel.StockWithPortfolio item : sorted) {
+                result.add(item);
+            }
+            return result;
+        }
+        
+        /**
+         * Higher key wins; on equal keys the earlier holding wins
+         */
+        private static boolean isBetter(double key, int position, double otherKey, int otherPosition) {
+            int cmp = Double.compare(key, otherKey);
+            return cmp > 0 || (cmp == 0 && position < otherPosition);
+        }
+        
+        private void set(int index, double key, int position, Stock stock, int owner) {
+            keys[index] = key;
+            order[index] = position;
+            stocks[index] = stock;
+            owners[index] = owner;
+        }
+        
+        private void swap(int a, int b) {
+            double key = keys[a];
+            int position = order[a];
+            Stock stock = stocks[a];
+            int owner = owners[a];
+            set(a, keys[b], order[b], stocks[b], owners[b]);
+            set(b, key, position, stock, owner);
+        }
+        
+        private void siftUp(int index) {
+            while (index > 0) {
+                int parent = (index - 1) >>> 1;
+                if (!isBetter(keys[parent], order[parent], keys[index], order[index])) {
+                    break;
+                }
+                swap(index, parent);
+                index = parent;
+            }
+        }
+        
+        private void siftDown(int index) {
+            while (true) {
+                int left = 2 * index + 1;
+                if (left >= size) {
+                    break;
+                }
+                int weakest = left;
+                int right = left + 1;
+                if (right < size && isBetter(keys[left], order[left], keys[right], order[right])) {
+                    weakest = right;
+                }
+                if (!isBetter(keys[index], order[index], keys[weakest], order[weakest])) {
+                    break;
+                }
+                swap(index, weakest);
+                index = weakest;
+            }
+        }
+    }
+}
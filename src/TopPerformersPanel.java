@@ -1,23 +1,40 @@
-import java.text.DecimalFormat;
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
 import java.util.List;
 
 /**
  * Class for analyzing top performing stocks across all portfolios
  */
 public class TopPerformersPanel {
-    private static final DecimalFormat CURRENCY_FORMAT = new DecimalFormat("$#,##0.00");
-    private static final DecimalFormat PERCENT_FORMAT = new DecimalFormat("0.00%");
-    private final List<Portfolio> portfolios;
+    private static final LatencyHistogram REPORT_LATENCY = Metrics.latency("report.top");
+    private final PortfolioAnalytics analytics;
     
     /**
      * Constructor for TopPerformersPanel
      * @param portfolios List of portfolios to analyze
      */
     public TopPerformersPanel(List<Portfolio> portfolios) {
-        this.portfolios = portfolios;
+        this(new PortfolioAnalytics(portfolios));
+    }
+    
+    /**
+     * Constructor for TopPerformersPanel backed by a live ranking index
+     * @param portfolios List of portfolios to analyze
+     * @param rankingIndex Index kept up to date with the portfolios, or null to scan them
+     */
+    public TopPerformersPanel(List<Portfolio> portfolios, RankingIndex rankingIndex) {
+        this(new PortfolioAnalytics(portfolios, rankingIndex));
+    }
+    
+    /**
+     * Constructor for TopPerformersPanel sharing an analytics engine with other views
+     * @param analytics Analytics engine over the portfolios to analyze
+     */
+    public TopPerformersPanel(PortfolioAnalytics analytics) {
+        this.analytics = analytics;
     }
     
     /**
@@ -27,32 +44,7 @@ public class TopPerformersPanel {
      * @return List of top performing stocks with their portfolio names
      */
     public List<StockWithPortfolio> getTopStocks(int sortCriteria, int numStocks) {
-        // Collect all stocks from all portfolios
-        List<StockWithPortfolio> allStocks = new ArrayList<>();
-        for (Portfolio portfolio : portfolios) {
-            for (Stock stock : portfolio.getStocks()) {
-                allStocks.add(new StockWithPortfolio(stock, portfolio.getName()));
-            }
-        }
-        
-        // Sort stocks based on selected criteria
-        switch (sortCriteria) {
-            case 1: // Gain/Loss %
-                Collections.sort(allStocks, Comparator.comparing(StockWithPortfolio::getPercentageGainLoss).reversed());
-                break;
-            case 2: // Gain/Loss $
-                Collections.sort(allStocks, Comparator.comparing(StockWithPortfolio::getGainLoss).reversed());
-                break;
-            case 3: // Current Value
-                Collections.sort(allStocks, Comparator.comparing(StockWithPortfolio::getCurrentValue).reversed());
-                break;
-            default:
-                Collections.sort(allStocks, Comparator.comparing(StockWithPortfolio::getPercentageGainLoss).reversed());
-        }
-        
-        // Return top N stocks
-        int count = Math.min(numStocks, allStocks.size());
-        return allStocks.subList(0, count);
+        return analytics.getTopStocks(sortCriteria, numStocks);
     }
     
     /**
@@ -61,41 +53,43 @@ public class TopPerformersPanel {
      * @param numStocks Number of top stocks to display
      */
     public void printTopStocks(int sortCriteria, int numStocks) {
-        List<StockWithPortfolio> topStocks = getTopStocks(sortCriteria, numStocks);
-        
+        long start = System.nanoTime();
+        printStocks(getTopStocks(sortCriteria, numStocks));
+        REPORT_LATENCY.recordSince(start);
+    }
+    
+    /**
+     * Prints holdings as a ranked table
+     * @param topStocks Holdings in the order to display
+     */
+    public static void printStocks(List<StockWithPortfolio> topStocks) {
         if (topStocks.isEmpty()) {
             System.out.println("No stocks found.");
             return;
         }
         
-        // Print header
-        System.out.printf("%-4s %-6s %-20s %-20s %-15s %-15s %-15s %-10s\n", 
-                "Rank", "Symbol", "Name", "Portfolio", "Purchase", "Current", "Gain/Loss", "Gain/Loss %");
-        System.out.println("----------------------------------------------------------------------------------------------------------");
-        
-        // Print each stock
-        for (int i = 0; i < topStocks.size(); i++) {
-            StockWithPortfolio stockInfo = topStocks.get(i);
-            Stock stock = stockInfo.getStock();
-            
-            System.out.printf("%-4d %-6s %-20s %-20s %-15s %-15s %-15s %-10s\n", 
-                    i + 1,
-                    stock.getSymbol(),
-                    truncateString(stock.getName(), 20),
-                    truncateString(stockInfo.getPortfolioName(), 20),
-                    CURRENCY_FORMAT.format(stock.getPurchasePrice()),
-                    CURRENCY_FORMAT.format(stock.getCurrentPrice()),
-                    CURRENCY_FORMAT.format(stock.getGainLoss()),
-                    PERCENT_FORMAT.format(stock.getPercentageGainLoss() / 100));
+        try {
+            Writer out = new BufferedWriter(new OutputStreamWriter(System.out), 1 << 16);
+            newTable().pageSize(topStocks.size()).render(topStocks, 0, out);
+            out.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
         }
     }
     
     /**
-     * Helper method to truncate strings for display
+     * Creates the table layout for ranked holdings; the rank is the position in the given list
      */
-    private String truncateString(String str, int length) {
-        if (str == null) return "";
-        return str.length() <= length ? str : str.substring(0, length - 3) + "...";
+    public static TableRenderer<StockWithPortfolio> newTable() {
+        return new TableRenderer<StockWithPortfolio>()
+                .rowNumber("Rank", 4)
+                .text("Symbol", 6, entry -> entry.getStock().getSymbol())
+                .text("Name", 20, entry -> entry.getStock().getName())
+                .text("Portfolio", 20, StockWithPortfolio::getPortfolioName)
+                .currency("Purchase", 15, entry -> entry.getStock().getPurchasePrice())
+                .currency("Current", 15, entry -> entry.getStock().getCurrentPrice())
+                .currency("Gain/Loss", 15, StockWithPortfolio::getGainLoss)
+                .percent("Gain/Loss %", 10, entry -> entry.getPercentageGainLoss() / 100);
     }
     
     /**
@@ -0,0 +1,21 @@
+/**
+ * Decision rule replayed by the backtest engine. A strategy is called after every price tick
+ * and trades through the context; it must not share mutable state between runs.
+ */
+public interface TradingStrategy {
+    /**
+     * Called once before the first tick
+     */
+    default void onStart(BacktestContext context) {
+    }
+    
+    /**
+     * Called after the price of the symbol at context.getLastSymbol() changed
+     */
+    void onTick(BacktestContext context);
+    
+    /**
+     * Short description including parameters, used to label results
+     */
+    String getName();
+}
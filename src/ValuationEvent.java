@@ -0,0 +1,27 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight Recorder event covering a PortfolioAnalytics stats request for one portfolio or all of them
+ */
+@Name("stockportfolio.Valuation")
+@Label("Portfolio Valuation")
+@Category({"Stock Portfolio", "Analytics"})
+@Description("Computing totals and best/worst holdings")
+@StackTrace(false)
+public class ValuationEvent extends Event {
+    @Label("Portfolio")
+    @Description("Portfolio name, or * for the combined stats of all portfolios")
+    String portfolio;
+    
+    @Label("Holdings")
+    int holdings;
+    
+    @Label("Recomputed")
+    @Description("Portfolios whose stats were not cached and had to be recomputed")
+    int recomputed;
+}
@@ -0,0 +1,397 @@
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Live console view of portfolios whose prices update in place. A price change only marks the
+ * holding's row, and its portfolio's total, as dirty; a drawing thread wakes at most
+ * maxFramesPerSecond times a second, formats the dirty rows and rewrites only the cells whose
+ * text changed, using ANSI cursor addressing. Ticks arriving faster than frames are drawn
+ * coalesce into one redraw of the row, so terminal output grows with the number of visible
+ * changes rather than with the size of the portfolios.
+ * <p>
+ * Holdings that do not fit on the screen are left out. Adding or removing a holding redraws
+ * the whole screen.
+ */
+public class WatchDashboard implements PortfolioListener {
+    private static final String CSI = "\033[";
+    private static final String[] HEADERS = {"Symbol", "Name", "Quantity", "Current Price", "Value", "Gain/Loss", "Gain/Loss %"};
+    private static final int[] WIDTHS = {6, 20, 10, 15, 15, 15, 11};
+    private static final int FIRST_LINE = 4; // Screen row of the first portfolio, after the title, status and a blank line
+    
+    private static final int TEXT = 0;
+    private static final int HOLDING = 1;
+    private static final int TOTAL = 2;
+    
+    private final List<Portfolio> portfolios;
+    private final Writer out;
+    private final long frameNanos;
+    private final int screenRows;
+    private final Thread drawer;
+    
+    // Guarded by this; written by whichever thread changes prices
+    private final BitSet dirty = new BitSet();
+    private Map<Stock, Integer> holdingLines = new IdentityHashMap<>();
+    private Map<Portfolio, Integer> totalLines = new IdentityHashMap<>();
+    private boolean layoutChanged = true;
+    private boolean running;
+    private String message; // Not yet shown
+    private long updates;
+    
+    // Drawing thread only
+    private final StringBuilder frame = new StringBuilder(8192);
+    private final StringBuilder cell = new StringBuilder(32);
+    private final List<Line> lines = new ArrayList<>();
+    private int hiddenHoldings;
+    private String shownMessage;
+    private long frames;
+    private long cellsWritten;
+    private long bytesWritten;
+    
+    /**
+     * @param out Terminal to draw on; nothing else should write to it while the dashboard runs
+     * @param maxFramesPerSecond Upper bound on redraws per second
+     * @param screenRows Height of the terminal in rows
+     */
+    public WatchDashboard(List<Portfolio> portfolios, Writer out, int maxFramesPerSecond, int screenRows) {
+        if (maxFramesPerSecond <= 0 || screenRows <= FIRST_LINE) {
+            throw new IllegalArgumentException("Frame rate must be positive and the screen taller than " + FIRST_LINE + " rows");
+        }
+        this.portfolios = new ArrayList<>(portfolios);
+        this.out = out;
+        this.frameNanos = TimeUnit.SECONDS.toNanos(1) / maxFramesPerSecond;
+        this.screenRows = screenRows;
+        this.drawer = new Thread(this::drawLoop, "watch-dashboard");
+        drawer.setDaemon(true);
+    }
+    
+    /**
+     * Clears the screen, draws every portfolio and starts following their changes
+     */
+    public void start() {
+        synchronized (this) {
+            running = true;
+        }
+        for (Portfolio portfolio : portfolios) {
+            portfolio.addListener(this);
+        }
+        drawer.start();
+    }
+    
+    /**
+     * Stops drawing and leaves the cursor below the dashboard
+     */
+    public void stop() throws IOException {
+        for (Portfolio portfolio : portfolios) {
+            portfolio.removeListener(this);
+        }
+        synchronized (this) {
+            running = false;
+            notifyAll();
+        }
+        try {
+            drawer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        out.write(CSI + (FIRST_LINE + lines.size()) + ";1H" + CSI + "?25h\n");
+        out.flush();
+    }
+    
+    /**
+     * Shows a message on the status line, e.g. a triggered alert, instead of printing over the dashboard
+     */
+    public synchronized void showMessage(String text) {
+        message = text;
+        notifyAll();
+    }
+    
+    public synchronized long getUpdateCount() { return updates; }
+    
+    // Read after stop()
+    public long getFrameCount() { return frames; }
+    public long getCellsWritten() { return cellsWritten; }
+    public long getBytesWritten() { return bytesWritten; }
+    
+    @Override
+    public synchronized void holdingAdded(Portfolio portfolio, Stock stock) {
+        layoutChanged = true;
+        notifyAll();
+    }
+    
+    @Override
+    public synchronized void holdingRemoved(Portfolio portfolio, Stock stock) {
+        layoutChanged = true;
+        notifyAll();
+    }
+    
+    @Override
+    public synchronized void holdingChanged(Portfolio portfolio, Stock stock) {
+        updates++;
+        Integer line = holdingLines.get(stock);
+        if (line != null) {
+            dirty.set(line);
+        }
+        Integer total = totalLines.get(portfolio);
+        if (total != null) {
+            dirty.set(total);
+        }
+        if (line != null || total != null) {
+            notifyAll();
+        }
+    }
+    
+    private void drawLoop() {
+        long lastFrame = System.nanoTime() - frameNanos;
+        BitSet toDraw = new BitSet();
+        try {
+            while (true) {
+                synchronized (this) {
+                    while (running && dirty.isEmpty() && !layoutChanged && message == null) {
+                        wait();
+                    }
+                    if (!running) {
+                        return;
+                    }
+                }
+                // Sleeping out the rest of the frame lets further ticks coalesce into this one
+                long remaining = lastFrame + frameNanos - System.nanoTime();
+                if (remaining > 0) {
+                    TimeUnit.NANOSECONDS.sleep(remaining);
+                }
+                boolean redrawAll;
+                String status;
+                long updateCount;
+                synchronized (this) {
+                    if (!running) {
+                        return;
+                    }
+                    redrawAll = layoutChanged;
+                    layoutChanged = false;
+                    toDraw.clear();
+                    toDraw.or(dirty);
+                    dirty.clear();
+                    status = message;
+                    message = null;
+                    updateCount = updates;
+                    if (redrawAll) {
+                        layOut();
+                    }
+                }
+                lastFrame = System.nanoTime();
+                drawFrame(redrawAll, toDraw, status, updateCount);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            synchronized (this) {
+                running = false;
+            }
+        }
+    }
+    
+    /**
+     * Assigns screen lines to portfolios and holdings; called with the lock held
+     */
+    private void layOut() {
+        lines.clear();
+        holdingLines = new IdentityHashMap<>();
+        totalLines = new IdentityHashMap<>();
+        hiddenHoldings = 0;
+        int available = screenRows - FIRST_LINE;
+        for (Portfolio portfolio : portfolios) {
+            // Title, column headers, separator, total and a blank line around the holdings
+            if (lines.size() + 5 > available) {
+                hiddenHoldings += portfolio.getStocks().size();
+                continue;
+            }
+            lines.add(Line.text(portfolio.getName()));
+            lines.add(Line.text(headerText()));
+            lines.add(Line.text(repeat('-', headerText().length())));
+            int room = available - lines.size() - 2;
+            List<Stock> stocks = portfolio.getStocks();
+            int shown = Math.min(stocks.size(), room);
+            for (int i = 0; i < shown; i++) {
+                holdingLines.put(stocks.get(i), lines.size());
+                lines.add(Line.holding(portfolio, stocks.get(i)));
+            }
+            hiddenHoldings += stocks.size() - shown;
+            totalLines.put(portfolio, lines.size());
+            lines.add(Line.total(portfolio));
+            lines.add(Line.text(""));
+        }
+    }
+    
+    private void drawFrame(boolean redrawAll, BitSet toDraw, String status, long updateCount) throws IOException {
+        frame.setLength(0);
+        if (redrawAll) {
+            frame.append(CSI).append("?25l").append(CSI).append("2J");
+            moveTo(1, 1);
+            frame.append("Watching ").append(portfolios.size()).append(" portfolio(s)");
+            if (hiddenHoldings > 0) {
+                frame.append(", ").append(hiddenHoldings).append(" holding(s) below the screen not shown");
+            }
+            frame.append(". Press Enter to stop.");
+            for (int i = 0; i < lines.size(); i++) {
+                Line line = lines.get(i);
+                line.clearDrawn();
+                if (line.kind == TEXT) {
+                    moveTo(FIRST_LINE + i, 1);
+                    frame.append(line.text);
+                }
+            }
+            for (int i = 0; i < lines.size(); i++) {
+                if (lines.get(i).kind != TEXT) {
+                    drawLine(i);
+                }
+            }
+        } else {
+            for (int i = toDraw.nextSetBit(0); i >= 0; i = toDraw.nextSetBit(i + 1)) {
+                drawLine(i);
+            }
+        }
+        frames++;
+        if (status != null) {
+            shownMessage = status;
+        }
+        moveTo(2, 1);
+        frame.append("Frame ").append(frames).append(", ").append(updateCount).append(" price updates");
+        if (shownMessage != null) {
+            frame.append(" | ").append(shownMessage);
+        }
+        frame.append(CSI).append('K');
+        bytesWritten += frame.length();
+        out.append(frame);
+        out.flush();
+    }
+    
+    /**
+     * Rewrites the cells of a line whose text differs from what is on screen
+     */
+    private void drawLine(int index) {
+        Line line = lines.get(index);
+        double cost;
+        double value;
+        if (line.kind == HOLDING) {
+            cost = line.stock.getCostBasis();
+            value = line.stock.getCurrentValue();
+        } else {
+            PortfolioStats stats = PortfolioAnalytics.computeStats(line.portfolio.getStocks());
+            cost = stats.getTotalCost();
+            value = stats.getTotalValue();
+        }
+        int column = 1;
+        for (int c = 0; c < WIDTHS.length; c++) {
+            cell.setLength(0);
+            formatCell(line, c, cost, value);
+            if (cell.length() > WIDTHS[c]) {
+                cell.setLength(WIDTHS[c]);
+            }
+            if (!line.isDrawn(c, cell)) {
+                moveTo(FIRST_LINE + index, column);
+                int start = frame.length();
+                frame.append(cell);
+                // Blank out what is left of a longer previous value
+                while (frame.length() - start < WIDTHS[c]) {
+                    frame.append(' ');
+                }
+                line.setDrawn(c, cell.toString());
+                cellsWritten++;
+            }
+            column += WIDTHS[c] + 1;
+        }
+    }
+    
+    private void formatCell(Line line, int column, double cost, double value) {
+        Stock stock = line.stock;
+        switch (column) {
+            case 0:
+                cell.append(line.kind == HOLDING ? stock.getSymbol() : "");
+                break;
+            case 1:
+                cell.append(line.kind == HOLDING ? stock.getName() : "Total");
+                break;
+            case 2:
+                if (line.kind == HOLDING) {
+                    cell.append(stock.getQuantity());
+                }
+                break;
+            case 3:
+                if (line.kind == HOLDING) {
+                    Formats.appendCurrency(cell, stock.getCurrentPrice());
+                }
+                break;
+            case 4:
+                Formats.appendCurrency(cell, value);
+                break;
+            case 5:
+                Formats.appendCurrency(cell, value - cost);
+                break;
+            default:
+                Formats.appendPercent(cell, cost > 0 ? (value - cost) / cost : 0);
+        }
+    }
+    
+    private void moveTo(int row, int column) {
+        frame.append(CSI).append(row).append(';').append(column).append('H');
+    }
+    
+    private static String headerText() {
+        StringBuilder header = new StringBuilder();
+        for (int c = 0; c < HEADERS.length; c++) {
+            header.append(HEADERS[c]);
+            if (c < HEADERS.length - 1) {
+                header.append(repeat(' ', WIDTHS[c] + 1 - HEADERS[c].length()));
+            }
+        }
+        return header.toString();
+    }
+    
+    private static String repeat(char c, int count) {
+        StringBuilder builder = new StringBuilder(count);
+        for (int i = 0; i < count; i++) {
+            builder.append(c);
+        }
+        return builder.toString();
+    }
+    
+    /**
+     * One screen line and the cell text currently shown on it
+     */
+    private static final class Line {
+        final int kind;
+        final String text;
+        final Portfolio portfolio;
+        final Stock stock;
+        final String[] drawn = new String[WIDTHS.length];
+        
+        private Line(int kind, String text, Portfolio portfolio, Stock stock) {
+            this.kind = kind;
+            this.text = text;
+            this.portfolio = portfolio;
+            this.stock = stock;
+        }
+        
+        static Line text(String text) { return new Line(TEXT, text, null, null); }
+        static Line holding(Portfolio portfolio, Stock stock) { return new Line(HOLDING, null, portfolio, stock); }
+        static Line total(Portfolio portfolio) { return new Line(TOTAL, null, portfolio, null); }
+        
+        boolean isDrawn(int column, CharSequence text) {
+            return drawn[column] != null && drawn[column].contentEquals(text);
+        }
+        
+        void setDrawn(int column, String text) {
+            drawn[column] = text;
+        }
+        
+        void clearDrawn() {
+            Arrays.fill(drawn, null);
+        }
+    }
+}